@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.elf;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * An index over the symbols of an ELF file that supports both name and address queries without materializing a
+ * {@link ELFSymbolTable.Entry} object per symbol.
+ * <p>
+ * The symbol table ({@code .symtab}, or {@code .dynsym} for stripped files) and its string table are memory-mapped on
+ * the first query. Callers that need the full symbol table rather than just the exported symbols should check
+ * {@link #hasSymbolTable()} and look elsewhere (e.g. a separate debug file) when it is {@code false}. Symbol values, sizes, name offsets, info bytes and section indexes are copied into primitive arrays
+ * sorted by value, so that {@link #findByAddress(long)} is a binary search. Names stay in the mapped string table and
+ * are only decoded by {@link #name(int)}. The name table used by {@link #findByName(String)} is built on first use and
+ * hashes the raw string table bytes.
+ * <p>
+ * Undefined, absolute, common, section and file symbols are not indexed.
+ */
+public final class ELFSymbolIndex {
+
+    private static final int SHN_UNDEF = 0;
+    private static final int SHN_LORESERVE = 0xff00;
+    private static final Charset NAME_CHARSET = Charset.forName("ISO-8859-1");
+
+    private final ELFHeader header;
+    private final ELFSectionHeaderTable sht;
+    private final FileChannel channel;
+    private final ELFSectionHeaderTable.Entry symbolSection;
+
+    private boolean loaded;
+    private ByteBuffer strings;
+    private int count;
+    private long[] values;
+    private long[] sizes;
+    private int[] nameOffsets;
+    private byte[] infos;
+    private int[] sectionIndexes;
+
+    /**
+     * Open-addressed table of symbol indexes (plus one, zero meaning empty) hashed by name, built lazily.
+     */
+    private int[] nameTable;
+
+    /**
+     * Creates an index over the symbols of {@code raf}. The file must remain open until the first query, after which
+     * the index only refers to the mapped buffers.
+     */
+    public ELFSymbolIndex(RandomAccessFile raf, ELFHeader header, ELFSectionHeaderTable sht) {
+        this.header = header;
+        this.sht = sht;
+        this.channel = raf.getChannel();
+        ELFSectionHeaderTable.Entry symtab = null;
+        ELFSectionHeaderTable.Entry dynsym = null;
+        for (ELFSectionHeaderTable.Entry e : sht.entries) {
+            if (e.getType() == ELFSectionHeaderTable.SHT_SYMTAB && symtab == null) {
+                symtab = e;
+            } else if (e.getType() == ELFSectionHeaderTable.SHT_DYNSYM && dynsym == null) {
+                dynsym = e;
+            }
+        }
+        this.symbolSection = symtab != null ? symtab : dynsym;
+    }
+
+    /**
+     * Determines if this index is over a full {@code .symtab} section, as opposed to only the dynamic symbols in
+     * {@code .dynsym} of a stripped file (or no symbols at all).
+     */
+    public boolean hasSymbolTable() {
+        return symbolSection != null && symbolSection.getType() == ELFSectionHeaderTable.SHT_SYMTAB;
+    }
+
+    /**
+     * Returns the number of indexed symbols.
+     */
+    public int size() {
+        ensureLoaded();
+        return count;
+    }
+
+    /**
+     * Returns the value (usually the link-time address) of the {@code i}'th symbol in address order.
+     */
+    public long value(int i) {
+        ensureLoaded();
+        return values[i];
+    }
+
+    /**
+     * Returns the size of the {@code i}'th symbol, which may be zero if the size is unknown.
+     */
+    public long size(int i) {
+        ensureLoaded();
+        return sizes[i];
+    }
+
+    /**
+     * Returns the {@code STT_*} type of the {@code i}'th symbol.
+     */
+    public int type(int i) {
+        ensureLoaded();
+        return infos[i] & 0xf;
+    }
+
+    public boolean isFunction(int i) {
+        return type(i) == ELFSymbolTable.STT_FUNC;
+    }
+
+    /**
+     * Returns the index of the section the {@code i}'th symbol is defined in.
+     */
+    public int sectionIndex(int i) {
+        ensureLoaded();
+        return sectionIndexes[i];
+    }
+
+    /**
+     * Decodes the name of the {@code i}'th symbol from the mapped string table.
+     */
+    public String name(int i) {
+        ensureLoaded();
+        final int start = nameOffsets[i];
+        int end = start;
+        while (strings.get(end) != 0) {
+            end++;
+        }
+        final byte[] bytes = new byte[end - start];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = strings.get(start + k);
+        }
+        return new String(bytes, NAME_CHARSET);
+    }
+
+    /**
+     * Finds the symbol covering a given address: the symbol with the greatest value not above {@code address}, provided
+     * that either its size is unknown or {@code address} lies within it.
+     *
+     * @return the index of the symbol or -1 if there is none
+     */
+    public int findByAddress(long address) {
+        ensureLoaded();
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (!unsignedLess(address, values[mid])) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // Among aliases sharing the value, prefer one whose extent covers the address.
+        int unsized = -1;
+        for (int i = found; i >= 0 && values[i] == values[found]; i--) {
+            if (sizes[i] == 0) {
+                unsized = i;
+            } else if (unsignedLess(address - values[i], sizes[i])) {
+                return i;
+            }
+        }
+        return unsized;
+    }
+
+    /**
+     * Finds a symbol by name.
+     *
+     * @return the index of the symbol or -1 if there is none
+     */
+    public int findByName(String name) {
+        ensureLoaded();
+        if (count == 0) {
+            return -1;
+        }
+        final byte[] key = name.getBytes(NAME_CHARSET);
+        final int[] table = nameTable();
+        final int mask = table.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (nameEquals(nameOffsets[entry - 1], key)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Gets the value of a named symbol, compatible with {@link ELFSymbolLookup#lookupSymbolValue(String)}.
+     *
+     * @return the value or {@code null} if the symbol is not defined
+     */
+    public Number lookupSymbolValue(String name) {
+        final int i = findByName(name);
+        return i < 0 ? null : values[i];
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        try {
+            load();
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read symbols", e);
+        }
+        loaded = true;
+    }
+
+    private void load() throws IOException {
+        values = new long[0];
+        sizes = new long[0];
+        nameOffsets = new int[0];
+        infos = new byte[0];
+        sectionIndexes = new int[0];
+        if (symbolSection == null || symbolSection.getSize() == 0) {
+            return;
+        }
+        final ByteOrder order = header.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        final ELFSectionHeaderTable.Entry strtab = sht.entries[symbolSection.getLink()];
+        strings = channel.map(FileChannel.MapMode.READ_ONLY, strtab.getOffset(), strtab.getSize()).order(order);
+        final ByteBuffer symbols = channel.map(FileChannel.MapMode.READ_ONLY, symbolSection.getOffset(), symbolSection.getSize()).order(order);
+        final boolean is64 = header.is64Bit();
+        final int entrySize = symbolSection.getEntrySize() != 0 ? symbolSection.getEntrySize() : (is64 ? 24 : 16);
+        final int total = (int) (symbolSection.getSize() / entrySize);
+
+        final long[] v = new long[total];
+        final long[] s = new long[total];
+        final int[] n = new int[total];
+        final byte[] inf = new byte[total];
+        final int[] shndx = new int[total];
+        int kept = 0;
+        for (int i = 0; i < total; i++) {
+            final int p = i * entrySize;
+            final int name = symbols.getInt(p);
+            final byte info;
+            final int section;
+            final long value;
+            final long size;
+            if (is64) {
+                info = symbols.get(p + 4);
+                section = symbols.getShort(p + 6) & 0xffff;
+                value = symbols.getLong(p + 8);
+                size = symbols.getLong(p + 16);
+            } else {
+                value = symbols.getInt(p + 4) & 0xffffffffL;
+                size = symbols.getInt(p + 8) & 0xffffffffL;
+                info = symbols.get(p + 12);
+                section = symbols.getShort(p + 14) & 0xffff;
+            }
+            final int type = info & 0xf;
+            if (name == 0 || section == SHN_UNDEF || section >= SHN_LORESERVE || type == ELFSymbolTable.STT_SECTION || type == ELFSymbolTable.STT_FILE) {
+                continue;
+            }
+            v[kept] = value;
+            s[kept] = size;
+            n[kept] = name;
+            inf[kept] = info;
+            shndx[kept] = section;
+            kept++;
+        }
+
+        final int[] order2 = new int[kept];
+        for (int i = 0; i < kept; i++) {
+            order2[i] = i;
+        }
+        sortByValue(order2, new int[kept], 0, kept, v);
+
+        values = new long[kept];
+        sizes = new long[kept];
+        nameOffsets = new int[kept];
+        infos = new byte[kept];
+        sectionIndexes = new int[kept];
+        for (int i = 0; i < kept; i++) {
+            final int j = order2[i];
+            values[i] = v[j];
+            sizes[i] = s[j];
+            nameOffsets[i] = n[j];
+            infos[i] = inf[j];
+            sectionIndexes[i] = shndx[j];
+        }
+        count = kept;
+    }
+
+    /**
+     * Stable merge sort of the permutation {@code a[from, to)} by unsigned {@code keys}.
+     */
+    private static void sortByValue(int[] a, int[] tmp, int from, int to, long[] keys) {
+        if (to - from < 2) {
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        sortByValue(a, tmp, from, mid, keys);
+        sortByValue(a, tmp, mid, to, keys);
+        if (!unsignedLess(keys[a[mid]], keys[a[mid - 1]])) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && !unsignedLess(keys[tmp[j]], keys[tmp[i]]))) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+    private synchronized int[] nameTable() {
+        if (nameTable == null) {
+            final int[] table = new int[Integer.highestOneBit(count * 2 - 1) << 1];
+            final int mask = table.length - 1;
+            // Linear probing finds earlier insertions first, so the lowest addressed symbol of a given name wins.
+            for (int i = 0; i < count; i++) {
+                int slot = hashAt(nameOffsets[i]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+            nameTable = table;
+        }
+        return nameTable;
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return a + Long.MIN_VALUE < b + Long.MIN_VALUE;
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private int hashAt(int offset) {
+        int h = 0;
+        for (int p = offset;; p++) {
+            final byte b = strings.get(p);
+            if (b == 0) {
+                return h ^ (h >>> 16);
+            }
+            h = 31 * h + b;
+        }
+    }
+
+    private boolean nameEquals(int offset, byte[] key) {
+        for (int k = 0; k < key.length; k++) {
+            if (strings.get(offset + k) != key[k]) {
+                return false;
+            }
+        }
+        return strings.get(offset + key.length) == 0;
+    }
+}
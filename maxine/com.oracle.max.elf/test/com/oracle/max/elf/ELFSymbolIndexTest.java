@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.elf;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.oracle.max.elf.ELFSymbolTable.*;
+
+/**
+ * Checks {@link ELFSymbolIndex} against {@link ELFSymbolLookup} on the {@code libjvm.so} of the JDK running the test,
+ * which is large and has a full {@code .symtab} in the usual JDK builds.
+ */
+public class ELFSymbolIndexTest {
+
+    private static final int SHN_LORESERVE = 0xff00;
+
+    private RandomAccessFile raf;
+    private ELFSymbolIndex index;
+
+    /**
+     * The symbols that {@link ELFSymbolIndex} indexes, read with {@link ELFLoader} from the same section.
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private ELFSymbolLookup lookup;
+
+    @Before
+    public void setUp() throws Exception {
+        final File libjvm = findLibjvm();
+        Assume.assumeTrue("no libjvm.so in " + System.getProperty("java.home"), libjvm != null);
+        raf = new RandomAccessFile(libjvm, "r");
+        final ELFHeader header = ELFLoader.readELFHeader(raf);
+        final ELFSectionHeaderTable sht = ELFLoader.readSHT(raf, header);
+        index = new ELFSymbolIndex(raf, header, sht);
+        final int type = index.hasSymbolTable() ? ELFSectionHeaderTable.SHT_SYMTAB : ELFSectionHeaderTable.SHT_DYNSYM;
+        ELFSymbolTable indexed = null;
+        for (ELFSymbolTable table : ELFLoader.readSymbolTables(raf, header, sht)) {
+            if (table.entry.getType() == type) {
+                indexed = table;
+                break;
+            }
+        }
+        assertNotNull(indexed);
+        lookup = new ELFSymbolLookup(Collections.singletonList(indexed));
+        for (Entry e : indexed.entries) {
+            if (isIndexed(e)) {
+                entries.add(e);
+            }
+        }
+        assertTrue("too few symbols for a meaningful test", entries.size() > 1000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (raf != null) {
+            raf.close();
+        }
+    }
+
+    private static File findLibjvm() {
+        final String home = System.getProperty("java.home");
+        final String[] paths = {"lib/server/libjvm.so", "lib/amd64/server/libjvm.so", "lib/aarch64/server/libjvm.so", "jre/lib/amd64/server/libjvm.so"};
+        for (String path : paths) {
+            final File file = new File(home, path);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIndexed(Entry e) {
+        final int section = e.getSectionHeaderIndex() & 0xffff;
+        final int type = e.getInfo() & 0xf;
+        return e.getNameIndex() != 0 && section != 0 && section < SHN_LORESERVE && type != ELFSymbolTable.STT_SECTION && type != ELFSymbolTable.STT_FILE;
+    }
+
+    private static long value(Entry e) {
+        return e.is32Bit() ? ((Entry32) e).st_value & 0xffffffffL : ((Entry64) e).st_value;
+    }
+
+    private static long size(Entry e) {
+        return e.is32Bit() ? ((Entry32) e).st_size & 0xffffffffL : ((Entry64) e).st_size;
+    }
+
+    @Test
+    public void size() {
+        assertEquals(entries.size(), index.size());
+    }
+
+    /**
+     * Every name is found, and is resolved to the lowest addressed of the symbols with that name.
+     */
+    @Test
+    public void findByName() {
+        for (Map.Entry<String, List<Entry>> e : lookup.symbolMap.entrySet()) {
+            long lowest = -1;
+            for (Entry entry : e.getValue()) {
+                if (isIndexed(entry) && (lowest == -1 || value(entry) < lowest)) {
+                    lowest = value(entry);
+                }
+            }
+            final int i = index.findByName(e.getKey());
+            if (lowest == -1) {
+                assertEquals(e.getKey(), -1, i);
+            } else {
+                assertTrue(e.getKey(), i >= 0);
+                assertEquals(e.getKey(), e.getKey(), index.name(i));
+                assertEquals(e.getKey(), lowest, index.value(i));
+                assertEquals(e.getKey(), lowest, index.lookupSymbolValue(e.getKey()).longValue());
+            }
+        }
+        assertEquals(-1, index.findByName("no such symbol"));
+        assertEquals(-1, index.findByName(""));
+    }
+
+    /**
+     * Looks up the first, last and one-past-the-end address of every symbol, and the address before the lowest one,
+     * comparing with a search of the symbols read by {@link ELFLoader}. All values are assumed to be below
+     * {@link Long#MAX_VALUE}, so that signed comparison agrees with the index's unsigned one.
+     */
+    @Test
+    public void findByAddress() {
+        final long[] sortedValues = new long[entries.size()];
+        for (int i = 0; i < sortedValues.length; i++) {
+            sortedValues[i] = value(entries.get(i));
+        }
+        Arrays.sort(sortedValues);
+        final Map<Long, List<Entry>> byValue = new HashMap<Long, List<Entry>>();
+        for (Entry e : entries) {
+            List<Entry> aliases = byValue.get(value(e));
+            if (aliases == null) {
+                aliases = new ArrayList<Entry>();
+                byValue.put(value(e), aliases);
+            }
+            aliases.add(e);
+        }
+        if (sortedValues[0] > 0) {
+            checkAddress(sortedValues[0] - 1, sortedValues, byValue);
+        }
+        for (Entry e : entries) {
+            checkAddress(value(e), sortedValues, byValue);
+            if (size(e) != 0) {
+                checkAddress(value(e) + size(e) - 1, sortedValues, byValue);
+                checkAddress(value(e) + size(e), sortedValues, byValue);
+            }
+        }
+    }
+
+    private void checkAddress(long address, long[] sortedValues, Map<Long, List<Entry>> byValue) {
+        // the expected symbol: among those with the greatest value not above the address, one that covers it, or else one of unknown size
+        final int position = Arrays.binarySearch(sortedValues, address);
+        final int below = position >= 0 ? position : -position - 2;
+        Entry covering = null;
+        Entry unsized = null;
+        if (below >= 0) {
+            final long value = sortedValues[below];
+            for (Entry e : byValue.get(value)) {
+                if (size(e) == 0) {
+                    unsized = e;
+                } else if (address - value < size(e)) {
+                    covering = e;
+                }
+            }
+        }
+        final String label = Long.toHexString(address);
+        final int i = index.findByAddress(address);
+        if (covering == null && unsized == null) {
+            assertEquals(label, -1, i);
+            return;
+        }
+        assertTrue(label, i >= 0);
+        assertEquals(label, sortedValues[below], index.value(i));
+        if (covering != null) {
+            assertTrue(label, address - index.value(i) < index.size(i));
+        } else {
+            assertEquals(label, 0, index.size(i));
+        }
+        // the attributes of the found symbol are those of one of its aliases
+        boolean matched = false;
+        for (Entry e : byValue.get(sortedValues[below])) {
+            matched |= e.getName().equals(index.name(i)) && size(e) == index.size(i) && (e.getInfo() & 0xf) == index.type(i) &&
+                (e.getSectionHeaderIndex() & 0xffff) == index.sectionIndex(i);
+        }
+        assertTrue(label, matched);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.tools.perfdata;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.vm.management.*;
+
+/**
+ * Prints the counters published by running VMs with {@code -XX:+UsePerfData}, one line per VM, optionally polling
+ * at an interval. Each counter file is mapped once and then read directly from memory, so polling many VMs costs them
+ * nothing and the tool only a few page reads.
+ * <ul>
+ * <li>-i interval poll every {@code interval} milliseconds
+ * <li>-n count stop after {@code count} polls
+ * <li>-a include VMs that have exited
+ * </ul>
+ * A VM deletes its counter file when it exits, so the files of exited VMs are only seen if they were already
+ * mapped by an earlier poll, or if the VM crashed and left its file behind with the {@link PerfDataFormat#ALIVE}
+ * flag still set. The latter are recognized by a file name that is the process id of a process that is no longer
+ * running.
+ * The remaining arguments are counter files or directories of counter files, by default the
+ * {@linkplain PerfDataFormat#defaultDirectory() default directory}.
+ */
+public class PerfDataTool {
+
+    private static long interval;
+    private static int polls = 1;
+    private static boolean all;
+
+    /**
+     * The readers of the files seen so far, by path.
+     */
+    private static final Map<String, PerfDataFormat.Reader> readers = new TreeMap<String, PerfDataFormat.Reader>();
+
+    public static void main(String[] args) throws Exception {
+        final ArrayList<File> files = new ArrayList<File>();
+        // Checkstyle: stop modified control variable check
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.equals("-i")) {
+                interval = Long.parseLong(args[++i]);
+                polls = Integer.MAX_VALUE;
+            } else if (arg.equals("-n")) {
+                polls = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-a")) {
+                all = true;
+            } else if (arg.startsWith("-")) {
+                usage();
+            } else {
+                files.add(new File(arg));
+            }
+        }
+        // Checkstyle: resume modified control variable check
+        if (files.isEmpty()) {
+            files.add(PerfDataFormat.defaultDirectory());
+        }
+        for (int poll = 0; poll < polls; poll++) {
+            if (poll > 0) {
+                Thread.sleep(interval);
+            }
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    final File[] vmFiles = file.listFiles();
+                    if (vmFiles != null) {
+                        for (File vmFile : vmFiles) {
+                            print(vmFile);
+                        }
+                    }
+                } else {
+                    print(file);
+                }
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: [-i interval] [-n count] [-a] [file | dir]...");
+        System.exit(1);
+    }
+
+    private static void print(File file) {
+        PerfDataFormat.Reader reader = readers.get(file.getPath());
+        if (reader == null) {
+            try {
+                reader = new PerfDataFormat.Reader(file);
+            } catch (IOException ex) {
+                // not a counter file, or still being created
+                return;
+            }
+            readers.put(file.getPath(), reader);
+        }
+        final boolean alive = reader.isAlive() && isRunning(file);
+        if (!all && !alive) {
+            return;
+        }
+        final StringBuilder sb = new StringBuilder(file.getName());
+        if (!alive) {
+            sb.append(reader.isAlive() ? " (crashed)" : " (exited)");
+        }
+        sb.append(" uptime=").append(System.currentTimeMillis() - reader.startTime()).append("ms");
+        for (int i = 0; i < reader.count(); i++) {
+            sb.append(' ').append(reader.name(i)).append('=').append(reader.value(i));
+            if (reader.units(i) == PerfDataFormat.UNITS_NANOS) {
+                sb.append("ns");
+            } else if (reader.units(i) == PerfDataFormat.UNITS_BYTES) {
+                sb.append('B');
+            }
+        }
+        System.out.println(sb);
+    }
+
+    /**
+     * Determines if the process that created a counter file is still running. Only files named after a process id,
+     * as created by {@code -XX:+UsePerfData}, can be checked; any other file is assumed to belong to a running process.
+     */
+    private static boolean isRunning(File file) {
+        final String name = file.getName();
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return true;
+            }
+        }
+        // without /proc the process id cannot be checked
+        return name.isEmpty() || !new File("/proc/self").exists() || new File("/proc", name).exists();
+    }
+}
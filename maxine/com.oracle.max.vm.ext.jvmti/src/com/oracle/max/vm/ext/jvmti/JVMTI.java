@@ -357,6 +357,7 @@ public class JVMTI {
     public static synchronized int disposeJVMTIJavaEnv(Env env) {
         for (int i = MAX_NATIVE_ENVS; i < MAX_ENVS; i++) {
             if (jvmtiEnvs[i] == env) {
+                env.tags.dispose();
                 jvmtiEnvs[i] = null;
                 activeEnvCount--;
                 return JVMTI_ERROR_NONE;
@@ -380,6 +381,7 @@ public class JVMTI {
             NativeEnv nativeEnv = (NativeEnv) jvmtiEnvs[i];
             if (nativeEnv.cstruct.equals(env)) {
                 // TODO cleanup
+                nativeEnv.tags.dispose();
                 nativeEnv.cstruct = Pointer.zero();
                 activeEnvCount--;
                 return JVMTI_ERROR_NONE;
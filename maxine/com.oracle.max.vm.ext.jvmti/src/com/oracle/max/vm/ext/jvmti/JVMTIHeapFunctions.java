@@ -29,6 +29,7 @@ import static com.oracle.max.vm.ext.jvmti.JVMTICallbacks.*;
 import static com.oracle.max.vm.ext.jvmti.JVMTIConstants.*;
 import static com.oracle.max.vm.ext.jvmti.JVMTIUtil.*;
 
+import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
@@ -37,6 +38,7 @@ import com.sun.max.vm.layout.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
 
 /**
  * All the JVMTI functions that relate to the heap.
@@ -67,56 +69,86 @@ public class JVMTIHeapFunctions {
     /** A {@link VmOperation} that prevents any allocgtion while we walk the heap.
      * We don't care about the threads, just that they are blocked, so we
      * override the {@link VmOperation#doIt} method.
+     *
+     * If there are {@linkplain ParallelHeapWalker#workers() several heap walking threads}, the heap partitions are
+     * filtered in parallel, each into its own {@link PartitionFilter} buffer. The agent callbacks are then invoked by the
+     * VM operation thread alone, partition by partition, so they see the objects in the same order as a serial walk.
      */
     static class IterateThroughHeapVmOperation extends VmOperation {
         private final CBCV cbcv;
 
+        /**
+         * The JVMTI error code of the iteration.
+         */
+        private int error = JVMTI_ERROR_NONE;
+
         abstract class CBCV extends CallbackCellVisitor {
             protected final JVMTI.Env env;
             protected final int heapFilter;
-            protected final Class klass;
+            protected final Class<?> klass;
 
-            CBCV(JVMTI.Env env, int heapFilter, Class klass) {
+            CBCV(JVMTI.Env env, int heapFilter, Class<?> klass) {
                 this.env = env;
                 this.heapFilter = heapFilter;
                 this.klass = klass;
             }
 
-            @Override
-            protected boolean callback(Object object) {
+            /* To avoid the tricky case where we encounter an object whose Class mirror
+             * has not been set in the ClassActor yet, which would require allocation
+             * we check the field in classActor directly and observe that such
+             * an object cannot have been tagged, otherwise its class mirror would be set.
+             */
+            Class<?> objectClass(Object object) {
                 ClassActor classActor = ObjectAccess.readClassActor(object);
-                ClassActorProxy proxyClassActor = ClassActorProxy.asClassActorProxy(classActor);
-
-                /* To avoid the tricky case where we encounter an object whose Class mirror
-                 * has not been set in the ClassActor yet, which would require allocation
-                 * we check the field in classActor directly and observe that such
-                 * an object cannot have been tagged, otherwise its class mirror would be set.
-                 */
-                Class objectClass = proxyClassActor.javaClass;
+                return ClassActorProxy.asClassActorProxy(classActor).javaClass;
+            }
 
+            /**
+             * Determines if an object passes the class and heap filters. This neither allocates nor locks, so it
+             * may be called by {@linkplain ParallelHeapWalker parallel heap walking} threads.
+             */
+            boolean accept(Object object, Class<?> objectClass) {
                 if (klass != null && objectClass != klass)  {
-                    return true;
+                    return false;
                 }
                 if ((heapFilter & JVMTI_HEAP_FILTER_CLASS_TAGGED) != 0) {
                     if (objectClass != null && env.tags.isTagged(objectClass)) {
-                        return true;
+                        return false;
                     }
                 }
                 if ((heapFilter & JVMTI_HEAP_FILTER_CLASS_UNTAGGED) != 0) {
                     if (!(objectClass != null && env.tags.isTagged(objectClass))) {
-                        return true;
+                        return false;
                     }
                 }
                 if ((heapFilter & JVMTI_HEAP_FILTER_TAGGED) != 0) {
                     if (env.tags.isTagged(object)) {
-                        return true;
+                        return false;
                     }
                 }
                 if ((heapFilter & JVMTI_HEAP_FILTER_UNTAGGED) != 0) {
                     if (!env.tags.isTagged(object)) {
-                        return true;
+                        return false;
                     }
                 }
+                return true;
+            }
+
+            @Override
+            protected boolean callback(Object object) {
+                Class<?> objectClass = objectClass(object);
+                if (!accept(object, objectClass)) {
+                    return true;
+                }
+                return report(object, objectClass);
+            }
+
+            /**
+             * Invokes the agent callback for an accepted object.
+             *
+             * @return {@code false} if the agent aborted the iteration
+             */
+            boolean report(Object object, Class<?> objectClass) {
                 int flags = doCallback(object, objectClass);
                 if ((flags & JVMTI_VISIT_ABORT) != 0) {
                     return false;
@@ -124,14 +156,14 @@ public class JVMTIHeapFunctions {
                 return true;
             }
 
-            protected abstract int doCallback(Object object, Class objectClass);
+            protected abstract int doCallback(Object object, Class<?> objectClass);
         }
 
         class CBCVNative extends CBCV {
             private final Pointer callbacks;
             private final Word userData;
 
-            CBCVNative(JVMTI.Env env, int heapFilter, Class klass, Pointer callbacks, Word userData) {
+            CBCVNative(JVMTI.Env env, int heapFilter, Class<?> klass, Pointer callbacks, Word userData) {
                 super(env, heapFilter, klass);
                 this.callbacks = callbacks;
                 this.userData = userData;
@@ -139,7 +171,7 @@ public class JVMTIHeapFunctions {
             }
 
             @Override
-            protected int doCallback(Object object, Class objectClass) {
+            protected int doCallback(Object object, Class<?> objectClass) {
                 Pointer tagPtr = Intrinsics.alloca(Word.size(), false);
                 Reference objectRef = Reference.fromJava(object);
                 Word heapIterationCallback = HeapCallbacks.HEAP_ITERATION.getCallback(callbacks);
@@ -168,14 +200,14 @@ public class JVMTIHeapFunctions {
             protected final JJVMTI.HeapCallbacks heapCallbacks;
             protected final Object userData;
 
-            CBCVJava(JVMTI.Env env, int heapFilter, Class klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
+            CBCVJava(JVMTI.Env env, int heapFilter, Class<?> klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
                 super(env, heapFilter, klass);
                 this.heapCallbacks = heapCallbacks;
                 this.userData = userData;
             }
 
             @Override
-            protected int doCallback(Object object, Class objectClass) {
+            protected int doCallback(Object object, Class<?> objectClass) {
                 Reference objectRef = Reference.fromJava(object);
                 return heapCallbacks.heapIteration(objectClass == null ? 0 : env.tags.getObjectTag(objectClass),
                                 Layout.size(objectRef).toInt(), env.tags.getObjectTag(object), Layout.isArray(objectRef) ? Layout.readArrayLength(objectRef) : -1, objectClass);
@@ -183,28 +215,91 @@ public class JVMTIHeapFunctions {
         }
 
         class CBCVJavaMax extends CBCVJava {
-            CBCVJavaMax(JVMTI.Env env, int heapFilter, Class klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
+            CBCVJavaMax(JVMTI.Env env, int heapFilter, Class<?> klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
                 super(env, heapFilter, klass, heapCallbacks, userData);
             }
 
             @Override
-            protected int doCallback(Object object, Class objectClass) {
+            protected int doCallback(Object object, Class<?> objectClass) {
                 return heapCallbacks.heapIterationMax(object, userData);
             }
         }
 
 
-        IterateThroughHeapVmOperation(JVMTI.Env env, int heapFilter, Class klass, Pointer callbacks, Word userData) {
+        /**
+         * Buffers the origins of the objects of one heap partition that pass the filters, in native memory.
+         */
+        final class PartitionFilter extends CallbackCellVisitor {
+            private Pointer origins = Pointer.zero();
+            private int count;
+            private int capacity;
+
+            /**
+             * Set if the buffer could not be grown, in which case the partition walk was stopped and the buffer freed.
+             */
+            boolean outOfMemory;
+
+            @Override
+            protected boolean callback(Object object) {
+                if (cbcv.accept(object, cbcv.objectClass(object))) {
+                    if (count == capacity) {
+                        capacity = capacity == 0 ? 1024 : capacity * 2;
+                        final Pointer newOrigins = Memory.reallocate(origins, Size.fromInt(capacity).times(Word.size()));
+                        if (newOrigins.isZero()) {
+                            free();
+                            outOfMemory = true;
+                            return false;
+                        }
+                        origins = newOrigins;
+                    }
+                    origins.setWord(count++, Reference.fromJava(object).toOrigin());
+                }
+                return true;
+            }
+
+            /**
+             * Reports the buffered objects to the agent, unless an earlier partition aborted the iteration, and frees
+             * the buffer.
+             *
+             * @param deliver {@code false} if the iteration has been aborted
+             * @return {@code false} if the iteration has been aborted
+             */
+            boolean report(boolean deliver) {
+                try {
+                    for (int i = 0; deliver && i < count; i++) {
+                        final Object object = Reference.fromOrigin(origins.getWord(i).asPointer()).toJava();
+                        deliver = cbcv.report(object, cbcv.objectClass(object));
+                    }
+                    return deliver;
+                } finally {
+                    free();
+                }
+            }
+
+            /**
+             * Frees the buffer, if any.
+             */
+            void free() {
+                if (!origins.isZero()) {
+                    Memory.deallocate(origins);
+                    origins = Pointer.zero();
+                }
+                count = 0;
+                capacity = 0;
+            }
+        }
+
+        IterateThroughHeapVmOperation(JVMTI.Env env, int heapFilter, Class<?> klass, Pointer callbacks, Word userData) {
             super("JVMTI_IterateThroughHeap", null, Mode.Safepoint, false);
             this.cbcv = new CBCVNative(env, heapFilter, klass, callbacks, userData);
         }
 
-        IterateThroughHeapVmOperation(JVMTI.Env env, int heapFilter, Class klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
+        IterateThroughHeapVmOperation(JVMTI.Env env, int heapFilter, Class<?> klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
             super("JVMTI_IterateThroughHeap", null, Mode.Safepoint, false);
             this.cbcv = new CBCVJava(env, heapFilter, klass, heapCallbacks, userData);
         }
 
-        IterateThroughHeapVmOperation(JVMTI.Env env, int heapFilter, Class klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData, boolean max) {
+        IterateThroughHeapVmOperation(JVMTI.Env env, int heapFilter, Class<?> klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData, boolean max) {
             super("JVMTI_IterateThroughHeapMax", null, Mode.Safepoint, false);
             this.cbcv = new CBCVJavaMax(env, heapFilter, klass, heapCallbacks, userData);
         }
@@ -218,27 +313,77 @@ public class JVMTIHeapFunctions {
             // TODO revisit this when Maxine addresses VM and application heap separation
             try {
                 Heap.enableImmortalMemoryAllocation();
-                vmConfig().heapScheme().walkHeap(cbcv);
+                if (ParallelHeapWalker.workers() > 1) {
+                    walkHeapInParallel();
+                } else {
+                    vmConfig().heapScheme().walkHeap(cbcv);
+                }
             } finally {
                 Heap.disableImmortalMemoryAllocation();
             }
         }
+
+        /**
+         * Walks the heap partitions and applies the heap filter and class filter in parallel. Only that part runs
+         * in parallel: the agent callbacks are then invoked serially on the VM operation thread, still inside the
+         * safepoint, as in the serial walk.
+         */
+        private void walkHeapInParallel() {
+            final HeapScheme heapScheme = vmConfig().heapScheme();
+            final PartitionFilter[] filters = new PartitionFilter[heapScheme.prepareHeapWalk()];
+            for (int i = 0; i < filters.length; i++) {
+                filters[i] = new PartitionFilter();
+            }
+            ParallelHeapWalker.walk(filters.length, new ParallelHeapWalker.PartitionVisitor() {
+                public void visitPartition(int partition, int worker) {
+                    heapScheme.walkHeapPartition(partition, filters[partition]);
+                }
+            });
+            for (PartitionFilter filter : filters) {
+                if (filter.outOfMemory) {
+                    // Report nothing rather than an arbitrary subset of the heap
+                    for (PartitionFilter f : filters) {
+                        f.free();
+                    }
+                    error = JVMTI_ERROR_OUT_OF_MEMORY;
+                    return;
+                }
+            }
+            boolean deliver = true;
+            for (PartitionFilter filter : filters) {
+                deliver = filter.report(deliver);
+            }
+        }
+
+        @Override
+        protected boolean operateOnThread(VmThread thread) {
+            return !ParallelHeapWalker.isHelper(thread);
+        }
     }
 
-    static int iterateThroughHeap(JVMTI.Env jvmtiEnv, int heapFilter, Class klass, Pointer callbacks, Pointer userData) {
+    static int iterateThroughHeap(JVMTI.Env jvmtiEnv, int heapFilter, Class<?> klass, Pointer callbacks, Pointer userData) {
         IterateThroughHeapVmOperation op = new IterateThroughHeapVmOperation(jvmtiEnv, heapFilter, klass, callbacks, userData);
+        ParallelHeapWalker.ensureHelpers();
         op.submit();
-        return JVMTI_ERROR_NONE;
+        return op.error;
     }
 
     static void iterateThroughHeap(JVMTI.Env jvmtiEnv, int heapFilter, ClassActor klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
         IterateThroughHeapVmOperation op = new IterateThroughHeapVmOperation(jvmtiEnv, heapFilter, klass == null ? null : klass.toJava(), heapCallbacks, userData);
+        ParallelHeapWalker.ensureHelpers();
         op.submit();
+        if (op.error != JVMTI_ERROR_NONE) {
+            throw new JJVMTI.JJVMTIException(op.error);
+        }
     }
 
     static void iterateThroughHeapMax(JVMTI.Env jvmtiEnv, int heapFilter, ClassActor klass, JJVMTI.HeapCallbacks heapCallbacks, Object userData) {
         IterateThroughHeapVmOperation op = new IterateThroughHeapVmOperation(jvmtiEnv, heapFilter, klass == null ? null : klass.toJava(), heapCallbacks, userData, true);
+        ParallelHeapWalker.ensureHelpers();
         op.submit();
+        if (op.error != JVMTI_ERROR_NONE) {
+            throw new JJVMTI.JJVMTIException(op.error);
+        }
     }
 
 }
@@ -22,354 +22,457 @@
  */
 package com.oracle.max.vm.ext.jvmti;
 
-import java.lang.ref.*;
-import java.util.*;
-
 import static com.oracle.max.vm.ext.jvmti.JVMTIConstants.*;
 
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.*;
 import com.sun.max.vm.jni.*;
+import com.sun.max.vm.reference.*;
 
 /**
- * JVMTI object tagging support. The tag map is allocated lazily. We cannot use a standard {@link WeakHashMap} because
- * that invokes the class-specific {@link Object#hashCode()} method, which can have all kinds of inappropriate side
- * effects. Plus we only need a handful of the standard {@link Map} methods.
+ * JVMTI object tagging support.
  *
- * We support {@link Object} (for JJVMTI) and {@code long} values, not via {@link Long} to avoid unnecessary allocation.
+ * The tagged objects are recorded by address in {@code long} arrays, which the GC does not trace, and the table is
+ * registered as {@linkplain SpecialReferenceManager.WeakRoots weak roots} so that each GC clears the entries of dead
+ * objects and updates the addresses of moved ones. No {@link java.lang.ref.Reference} is allocated per tag. Entries are
+ * hashed by {@link System#identityHashCode(Object)}, which does not change when an object moves, so a moving GC does
+ * not require a rehash. We cannot use the class-specific {@link Object#hashCode()} method, which can have all kinds of
+ * inappropriate side effects.
  *
+ * The table is split into segments, each an open addressed table with its own lock for updates. Lookups take no lock:
+ * they read a segment's current {@link Table}, probe it and read the found slot in one method without safepoint polls.
+ * A GC only processes the current table of each segment, so a lookup that kept a table across a safepoint could probe
+ * a table that has since been replaced and holds stale addresses. All other code that handles raw object addresses
+ * also runs without safepoint polls, so that no GC can move an object in the middle of it. The table is
+ * {@linkplain #dispose() unregistered} from the GC when its environment is disposed.
+ *
+ * We support {@link Object} (for JJVMTI) and {@code long} values, not via {@link Long} to avoid unnecessary allocation.
+ * The value 0 (or {@code null}) is not allowed, and used to mean lookup failure.
  */
-class JVMTITags {
+class JVMTITags extends SpecialReferenceManager.WeakRoots {
+
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_SHIFT;
+    private static final int INITIAL_CAPACITY = 16;
 
     /**
-     * A cut down and modified version of {@link WeakHashMap}.
-     * The value 0 is not allowed, and used to mean lookup failure.
+     * Key of a slot that has never been used.
      */
-    static class Map {
-        static abstract class Entry extends WeakReference<Object> {
-            final int hash;
-            Entry next;
-
-            Entry(Object object, int hash, Entry next) {
-                super(object);
-                this.hash = hash;
-                this.next = next;
-            }
-
-        }
+    private static final long EMPTY = 0;
 
-        static class LongEntry extends Entry {
-            long value;
-            LongEntry(Object object, long value, int hash, Entry next) {
-                super(object, hash, next);
-                this.value = value;
-            }
+    /**
+     * Key of a slot whose entry has been removed or whose object has died. Object addresses are word aligned so cannot
+     * have this value.
+     */
+    private static final long DELETED = 1;
 
+    /**
+     * The arrays of a segment, replaced as a whole when the segment grows.
+     */
+    static final class Table {
+        final long[] keys;
+        final int[] hashes;
+        final long[] tags;
+        final Object[] objectTags;
+
+        Table(int capacity, boolean hasObjectTags) {
+            keys = new long[capacity];
+            hashes = new int[capacity];
+            tags = new long[capacity];
+            objectTags = hasObjectTags ? new Object[capacity] : null;
         }
+    }
 
-        static class ObjectEntry extends Entry {
-            Object value;
-            ObjectEntry(Object object, Object value, int hash, Entry next) {
-                super(object, hash, next);
-                this.value = value;
-            }
-        }
+    static final class Segment {
+        volatile Table table;
 
-        private static final int DEFAULT_INITIAL_CAPACITY = 16;
-        private static final int MAXIMUM_CAPACITY = 1 << 30;
-        private static final float DEFAULT_LOAD_FACTOR = 0.75f;
-        private int size;
-        private int threshold;
-        private final float loadFactor;
-        private Entry[] table;
-
-        private Entry[] getTable() {
-            // expungeStaleEntries(); TODO
-            return table;
-        }
+        /**
+         * Number of live entries.
+         */
+        int size;
 
-        Map(boolean isNative) {
-            this.loadFactor = DEFAULT_LOAD_FACTOR;
-            threshold = DEFAULT_INITIAL_CAPACITY;
-            if (isNative) {
-                table = new LongEntry[DEFAULT_INITIAL_CAPACITY];
-            } else {
-                table = new ObjectEntry[DEFAULT_INITIAL_CAPACITY];
-            }
-        }
+        /**
+         * Number of slots that are not {@link #EMPTY}, including {@link #DELETED} ones.
+         */
+        int used;
+    }
 
-        static int indexFor(int h, int length) {
-            return h & (length - 1);
-        }
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
 
-        void put(Object key, long value) {
-            LongEntry e = (LongEntry) putCommon(key, true);
-            e.value = value;
+    JVMTITags() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
         }
+        SpecialReferenceManager.registerWeakRoots(this);
+    }
 
-        void put(Object key, Object value) {
-            ObjectEntry e = (ObjectEntry) putCommon(key, false);
-            e.value = value;
-        }
+    @INLINE
+    private static int hash(Object object) {
+        return System.identityHashCode(object) * 0x9E3779B9;
+    }
 
-        private Entry putCommon(Object key, boolean isNative) {
-            int h = System.identityHashCode(key);
-            Entry[] tab = getTable();
-            int i = indexFor(h, tab.length);
+    @INLINE
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_SHIFT)];
+    }
 
-            for (Entry e = tab[i]; e != null; e = e.next) {
-                if (h == e.hash && key == e.get()) {
-                    return e;
-                }
-            }
+    @INLINE
+    private static long addressOf(Object object) {
+        return Reference.fromJava(object).toOrigin().toLong();
+    }
 
-            Entry e = tab[i];
-            Entry ne = isNative ? new LongEntry(key, 0, h, e) : new ObjectEntry(key, null, h, e);
-            tab[i] = ne;
-            if (++size >= threshold) {
-                resize(tab.length * 2);
+    /**
+     * Finds the slot of an object in a table.
+     *
+     * @return the slot index or -1 if the object is not in the table
+     */
+    @NO_SAFEPOINT_POLLS("object addresses must not be invalidated by a GC")
+    private static int indexOf(Table table, Object object, int hash) {
+        final long[] keys = table.keys;
+        final int mask = keys.length - 1;
+        final long address = addressOf(object);
+        for (int i = hash & mask, n = 0; n < keys.length; i = (i + 1) & mask, n++) {
+            final long key = keys[i];
+            if (key == address) {
+                return i;
+            }
+            if (key == EMPTY) {
+                return -1;
             }
-            return ne;
         }
+        return -1;
+    }
 
-        long getLong(Object key) {
-            LongEntry e = (LongEntry) getCommon(key);
-            return e == null ? 0 : e.value;
+    /**
+     * Adds or replaces the entry for an object. The caller holds the segment lock and has ensured there is a free slot.
+     */
+    @NO_SAFEPOINT_POLLS("object addresses must not be invalidated by a GC")
+    private static void put(Segment segment, Object object, int hash, long tag, Object objectTag) {
+        final Table table = segment.table;
+        int index = indexOf(table, object, hash);
+        if (index < 0) {
+            final long[] keys = table.keys;
+            final int mask = keys.length - 1;
+            index = hash & mask;
+            while (keys[index] != EMPTY && keys[index] != DELETED) {
+                index = (index + 1) & mask;
+            }
+            if (keys[index] == EMPTY) {
+                segment.used++;
+            }
+            segment.size++;
+            table.hashes[index] = hash;
+            table.tags[index] = tag;
+            if (table.objectTags != null) {
+                table.objectTags[index] = objectTag;
+            }
+            // publish the key last, for the benefit of lock-free readers
+            MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+            keys[index] = addressOf(object);
+        } else {
+            table.tags[index] = tag;
+            if (table.objectTags != null) {
+                table.objectTags[index] = objectTag;
+            }
         }
+    }
 
-        Object getObject(Object key) {
-            ObjectEntry e = (ObjectEntry) getCommon(key);
-            return e == null ? null : e.value;
+    /**
+     * Removes the entry for an object, if any. The caller holds the segment lock.
+     */
+    @NO_SAFEPOINT_POLLS("object addresses must not be invalidated by a GC")
+    private static void remove(Segment segment, Object object, int hash) {
+        final Table table = segment.table;
+        final int index = indexOf(table, object, hash);
+        if (index >= 0) {
+            table.keys[index] = DELETED;
+            table.tags[index] = 0;
+            if (table.objectTags != null) {
+                table.objectTags[index] = null;
+            }
+            segment.size--;
         }
+    }
 
-        private Entry getCommon(Object key) {
-            int h = System.identityHashCode(key);
-            Entry[] tab = getTable();
-            int index = indexFor(h, tab.length);
-            Entry e = tab[index];
-            while (e != null) {
-                if (e.hash == h && e.get() == key) {
-                    return e;
-                }
-                e = e.next;
-            }
-            return null;
+    /**
+     * Ensures the segment has a table with a free slot and, if {@code needObjectTags}, an object tag array.
+     * The caller holds the segment lock.
+     */
+    private static void ensureCapacity(Segment segment, boolean needObjectTags) {
+        final Table table = segment.table;
+        if (table == null) {
+            segment.table = new Table(INITIAL_CAPACITY, needObjectTags);
+            return;
+        }
+        final int capacity = table.keys.length;
+        final boolean hasObjectTags = table.objectTags != null || needObjectTags;
+        if (segment.used + 1 > capacity - (capacity >> 2) || hasObjectTags != (table.objectTags != null)) {
+            // grow unless most of the used slots are deleted ones
+            final int newCapacity = segment.size + 1 > capacity >> 1 ? capacity << 1 : capacity;
+            // this allocation may trigger a GC, which processes the current table
+            final Table newTable = new Table(newCapacity, hasObjectTags);
+            rehash(segment, newTable);
         }
+    }
 
-        public void remove(Object key) {
-            int h = System.identityHashCode(key);
-            Entry[] tab = getTable();
-            int i = indexFor(h, tab.length);
-            Entry prev = tab[i];
-            Entry e = prev;
-
-            while (e != null) {
-                Entry next = e.next;
-                if (h == e.hash && key == e.get()) {
-                    size--;
-                    if (prev == e) {
-                        tab[i] = next;
-                    } else {
-                        prev.next = next;
-                    }
-                    return;
+    @NO_SAFEPOINT_POLLS("the new table must not miss a GC update")
+    private static void rehash(Segment segment, Table newTable) {
+        final Table table = segment.table;
+        final int mask = newTable.keys.length - 1;
+        int size = 0;
+        for (int i = 0; i < table.keys.length; i++) {
+            final long key = table.keys[i];
+            if (key != EMPTY && key != DELETED) {
+                int index = table.hashes[i] & mask;
+                while (newTable.keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                newTable.keys[index] = key;
+                newTable.hashes[index] = table.hashes[i];
+                newTable.tags[index] = table.tags[i];
+                if (table.objectTags != null) {
+                    newTable.objectTags[index] = table.objectTags[i];
                 }
-                prev = e;
-                e = next;
+                size++;
             }
         }
+        segment.size = size;
+        segment.used = size;
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        segment.table = newTable;
+    }
 
-        void resize(int newCapacity) {
-            Entry[] oldTable = getTable();
-            int oldCapacity = oldTable.length;
-            if (oldCapacity == MAXIMUM_CAPACITY) {
-                threshold = Integer.MAX_VALUE;
-                return;
-            }
-
-            Entry[] newTable = new Entry[newCapacity];
-            transfer(oldTable, newTable);
-            table = newTable;
-
-            /*
-             * If ignoring null elements and processing ref queue caused massive
-             * shrinkage, then restore old table.  This should be rare, but avoids
-             * unbounded expansion of garbage-filled tables.
-             */
-            if (size >= threshold / 2) {
-                threshold = (int) (newCapacity * loadFactor);
-            } else {
-                // expungeStaleEntries();
-                transfer(newTable, oldTable);
-                table = oldTable;
+    /**
+     * Processes the tagged objects after a GC has determined which objects are live. The entries of dead objects are
+     * marked {@link #DELETED} rather than {@link #EMPTY}, so that lock-free probes for other objects do not stop at them.
+     * {@link #put} may reuse such a slot, and a rehash drops the remaining ones.
+     */
+    @Override
+    protected void processWeakRoots(SpecialReferenceManager.GC gc) {
+        final boolean relocate = gc.mayRelocateLiveObjects();
+        for (int s = 0; s < SEGMENT_COUNT; s++) {
+            final Segment segment = segments[s];
+            final Table table = segment.table;
+            if (table == null) {
+                continue;
             }
-        }
-
-        private void transfer(Entry[] src, Entry[] dest) {
-            for (int j = 0; j < src.length; ++j) {
-                Entry e = src[j];
-                src[j] = null;
-                while (e != null) {
-                    Entry next = e.next;
-                    Object key = e.get();
-                    if (key == null) {
-                        e.next = null;  // Help GC
-                        size--;
-                    } else {
-                        int i = indexFor(e.hash, dest.length);
-                        e.next = dest[i];
-                        dest[i] = e;
+            final long[] keys = table.keys;
+            for (int i = 0; i < keys.length; i++) {
+                final long key = keys[i];
+                if (key == EMPTY || key == DELETED) {
+                    continue;
+                }
+                final Reference ref = Reference.fromOrigin(Pointer.fromLong(key));
+                if (!gc.isReachable(ref)) {
+                    keys[i] = DELETED;
+                    table.tags[i] = 0;
+                    if (table.objectTags != null) {
+                        table.objectTags[i] = null;
                     }
-                    e = next;
+                    segment.size--;
+                } else if (relocate) {
+                    keys[i] = gc.preserve(ref).toOrigin().toLong();
                 }
             }
         }
+    }
 
-        static abstract class Visitor {
-            abstract void visit(Entry e);
-            Object getResult() {
-                return null;
+    /**
+     * Stops the GC from processing this table and drops its entries. Called when the owning environment is disposed.
+     */
+    void dispose() {
+        SpecialReferenceManager.unregisterWeakRoots(this);
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.table = null;
+                segment.size = 0;
+                segment.used = 0;
             }
         }
+    }
 
-        Visitor apply(Visitor visitor) {
-            for (int t = 0; t < table.length; t++) {
-                Map.Entry e = table[t];
-                while (e != null) {
-                    if (e.get() != null) {
-                        visitor.visit(e);
-                    }
-                    e = e.next;
-                }
-            }
-            return visitor;
-        }
+    /*
+     * Lock-free lookups, also used by JVMTIHeapFunctions. The identity hash is computed first, as that may reach a
+     * safepoint, and the segment's table is then read and probed without one.
+     */
 
+    @NO_SAFEPOINT_POLLS("the table must not be replaced and missed by a GC between reading and probing it")
+    private static boolean contains(Segment segment, Object object, int hash) {
+        final Table table = segment.table;
+        return table != null && indexOf(table, object, hash) >= 0;
     }
 
-    private Map tagMap;
+    @NO_SAFEPOINT_POLLS("the table must not be replaced and missed by a GC between reading and probing it")
+    private static long longTagOf(Segment segment, Object object, int hash) {
+        final Table table = segment.table;
+        if (table == null) {
+            return 0;
+        }
+        final int index = indexOf(table, object, hash);
+        return index < 0 ? 0 : table.tags[index];
+    }
 
-    /*
-     * Next two functions are for use by JVMTIHeapFunctions, where no synchronization is necessary.
-     */
+    @NO_SAFEPOINT_POLLS("the table must not be replaced and missed by a GC between reading and probing it")
+    private static Object objectTagOf(Segment segment, Object object, int hash) {
+        final Table table = segment.table;
+        if (table == null || table.objectTags == null) {
+            return null;
+        }
+        final int index = indexOf(table, object, hash);
+        return index < 0 ? null : table.objectTags[index];
+    }
 
     boolean isTagged(Object object) {
-        if (tagMap == null) {
-            return false;
-        } else {
-            return tagMap.getCommon(object) != null;
-        }
+        final int hash = hash(object);
+        return contains(segmentFor(hash), object, hash);
     }
 
     long getLongTag(Object object) {
-        return checkMap(true).getLong(object);
+        final int hash = hash(object);
+        return longTagOf(segmentFor(hash), object, hash);
     }
 
     Object getObjectTag(Object object) {
-        return checkMap(false).getObject(object);
+        final int hash = hash(object);
+        return objectTagOf(segmentFor(hash), object, hash);
     }
 
     /*
-     * Implementation of API methods where we need to protect against concurrent access.
+     * Implementation of API methods. Updates lock the segment of the object.
      */
 
-    synchronized int getTag(Object object, Pointer tagPtr) {
-        long tag = checkMap(true).getLong(object);
-        tagPtr.writeLong(0, tag);
+    int getTag(Object object, Pointer tagPtr) {
+        tagPtr.writeLong(0, getLongTag(object));
         return JVMTI_ERROR_NONE;
     }
 
-    synchronized int setTag(Object object, long tag) {
-        if (tag == 0) {
-            checkMap(true).remove(object);
-        } else {
-            checkMap(true).put(object, tag);
+    int setTag(Object object, long tag) {
+        final int hash = hash(object);
+        final Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            if (tag == 0) {
+                if (segment.table != null) {
+                    remove(segment, object, hash);
+                }
+            } else {
+                ensureCapacity(segment, false);
+                put(segment, object, hash, tag, null);
+            }
         }
         return JVMTI_ERROR_NONE;
     }
 
-    public synchronized void setTag(Object object, Object tag) {
-        checkMap(false).put(object, tag);
+    public void setTag(Object object, Object tag) {
+        final int hash = hash(object);
+        final Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            if (tag == null) {
+                if (segment.table != null) {
+                    remove(segment, object, hash);
+                }
+            } else {
+                ensureCapacity(segment, true);
+                put(segment, object, hash, 0, tag);
+            }
+        }
+    }
+
+    public Object getTag(Object object) {
+        return getObjectTag(object);
     }
 
-    public synchronized Object getTag(Object object) {
-        return checkMap(false).getObject(object);
+    /**
+     * Gets the object at a slot as a reference, which is then kept up to date by the GC like any other.
+     *
+     * @return the object or {@code null} if the slot is not in use
+     */
+    @NO_SAFEPOINT_POLLS("object addresses must not be invalidated by a GC")
+    private static Object objectAt(Table table, int index) {
+        final long key = table.keys[index];
+        if (key == EMPTY || key == DELETED) {
+            return null;
+        }
+        return Reference.fromOrigin(Pointer.fromLong(key)).toJava();
     }
 
-    private Map checkMap(boolean isNative) {
-        if (tagMap == null) {
-            tagMap  = new Map(isNative);
+    private static boolean matches(long tag, int tagCount, Pointer tags) {
+        for (int i = 0; i < tagCount; i++) {
+            if (tags.getLong(i) == tag) {
+                return true;
+            }
         }
-        return tagMap;
+        return false;
     }
 
-    synchronized int getObjectsWithTags(final int tagCount, final Pointer tags, Pointer countPtr, Pointer objectResultPtrPtr, Pointer tagResultPtrPtr) {
+    int getObjectsWithTags(final int tagCount, final Pointer tags, Pointer countPtr, Pointer objectResultPtrPtr, Pointer tagResultPtrPtr) {
         if (tagCount < 0) {
             return JVMTI_ERROR_ILLEGAL_ARGUMENT;
         }
         for (int i = 0; i < tagCount; i++) {
-            long givenTag = tags.getInt(i);
-            if (givenTag == 0) {
+            if (tags.getLong(i) == 0) {
                 return JVMTI_ERROR_ILLEGAL_ARGUMENT;
             }
         }
 
-        Map.Visitor counter = new Map.Visitor() {
-            private int count;
-
-            @Override
-            void visit(Map.Entry e) {
-                for (int i = 0; i < tagCount; i++) {
-                    long givenTag = tags.getInt(i);
-                    if (givenTag == ((Map.LongEntry) e).value) {
+        int count = 0;
+        for (Segment segment : segments) {
+            final Table table = segment.table;
+            if (table != null) {
+                for (int i = 0; i < table.keys.length; i++) {
+                    if (table.keys[i] != EMPTY && table.keys[i] != DELETED && matches(table.tags[i], tagCount, tags)) {
                         count++;
                     }
                 }
             }
+        }
 
-            @Override
-            Object getResult() {
-                return new Integer(count);
-            }
-        };
-
-        final int count = (Integer) tagMap.apply(counter).getResult();
         // count is an upper bound, entries may disappear through GC actions
         final Pointer objectResultPtr = objectResultPtrPtr.isZero() ? Pointer.zero() : Memory.allocate(Size.fromInt(count * Word.size()));
-        if (objectResultPtr.isZero()) {
+        if (!objectResultPtrPtr.isZero() && objectResultPtr.isZero()) {
             return JVMTI_ERROR_OUT_OF_MEMORY;
         }
-        final Pointer tagResultPtr = tagResultPtrPtr.isZero() ? Pointer.zero() : Memory.allocate(Size.fromInt(count * Word.size()));
-        if (tagResultPtr.isZero()) {
-            Memory.deallocate(objectResultPtr);
+        final Pointer tagResultPtr = tagResultPtrPtr.isZero() ? Pointer.zero() : Memory.allocate(Size.fromInt(count * 8));
+        if (!tagResultPtrPtr.isZero() && tagResultPtr.isZero()) {
+            if (!objectResultPtr.isZero()) {
+                Memory.deallocate(objectResultPtr);
+            }
             return JVMTI_ERROR_OUT_OF_MEMORY;
         }
 
-        Map.Visitor copier = new Map.Visitor() {
-            @Override
-            void visit(Map.Entry e) {
-                int index = 0;
-                Object key = e.get();
-                if (key != null) {
-                    for (int i = 0; i < tagCount; i++) {
-                        long givenTag = tags.getInt(i);
-                        if (givenTag == ((Map.LongEntry) e).value) {
-                            assert index < count;
+        int index = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                final Table table = segment.table;
+                if (table == null) {
+                    continue;
+                }
+                for (int i = 0; i < table.keys.length && index < count; i++) {
+                    final long tag = table.tags[i];
+                    if (tag != 0 && matches(tag, tagCount, tags)) {
+                        final Object object = objectAt(table, i);
+                        if (object != null) {
                             if (!objectResultPtr.isZero()) {
-                                objectResultPtr.setWord(index, JniHandles.createLocalHandle(key));
+                                objectResultPtr.setWord(index, JniHandles.createLocalHandle(object));
                             }
                             if (!tagResultPtr.isZero()) {
-                                tagResultPtr.setLong(index, givenTag);
+                                tagResultPtr.setLong(index, tag);
                             }
                             index++;
-                            break;
                         }
                     }
                 }
             }
-        };
-        tagMap.apply(copier);
-        countPtr.setInt(count);
+        }
+        countPtr.setInt(index);
+        if (!objectResultPtrPtr.isZero()) {
+            objectResultPtrPtr.setWord(objectResultPtr);
+        }
+        if (!tagResultPtrPtr.isZero()) {
+            tagResultPtrPtr.setWord(tagResultPtr);
+        }
         return JVMTI_ERROR_NONE;
     }
 }
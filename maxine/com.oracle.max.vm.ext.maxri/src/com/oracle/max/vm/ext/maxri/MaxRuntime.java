@@ -169,6 +169,11 @@ public class MaxRuntime implements RiRuntime {
             }
         }
 
+        // Cannot inline a method that has not been verified yet.
+        if (classMethodActor.isVerificationPending()) {
+            return true;
+        }
+
         // Cannot inline a method that has a breakpoint set.
         if (VMTI.handler().hasBreakpoints(classMethodActor)) {
             return true;
@@ -669,7 +669,7 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
         Pointer fp = current.fp();
         Throwable throwable = context.throwable;
         ClassMethodActor calleeCMA = context.lastCalleeCMA;
-        CodePointer catchAddress = throwAddressToCatchAddress(ip, throwable);
+        CodePointer catchAddress = cachedThrowAddressToCatchAddress(ip, throwable);
         boolean isMethodDeoptimized = invalidated() != null;
         boolean isMethodHandlerFound = !catchAddress.isZero();
         boolean isOriginalHandlerFoundOrMethodSynchronized = false;
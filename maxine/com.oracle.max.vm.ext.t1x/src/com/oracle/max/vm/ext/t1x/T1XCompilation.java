@@ -283,6 +283,40 @@ public abstract class T1XCompilation {
      */
     private int initializedArgs;
 
+    /**
+     * Denotes whether the value on top of the operand stack may be kept in a register from one bytecode
+     * to the next in the method being compiled.
+     *
+     * @see T1XOptions#CacheTopOfStack
+     */
+    protected boolean cacheTopOfStack;
+
+    /**
+     * The kind of the value on top of the operand stack that is held in {@link #cachedTOSReg} instead
+     * of in memory. This is {@code null} when the whole operand stack is in memory.
+     * <p/>
+     * The value is only cached when the next bytecode is known to consume it (see {@link #canCacheTopOfStack(Kind)}),
+     * is not a branch target or exception handler entry, and cannot reach a safepoint before consuming it.
+     * This keeps the operand stack in memory consistent with the reference maps at every safepoint.
+     */
+    protected Kind<?> cachedTOSKind;
+
+    /**
+     * The register holding the cached top of stack value if {@link #cachedTOSKind} is not {@code null}.
+     */
+    protected CiRegister cachedTOSReg;
+
+    /**
+     * The number of operand stack slots the current template takes from {@link #cachedTOSReg} instead of memory.
+     */
+    private int cachedTOSSlotsConsumed;
+
+    /**
+     * The BCIs that are the target of a branch or switch, or the entry of an exception handler.
+     * Only computed when {@link #cacheTopOfStack} is {@code true}.
+     */
+    private boolean[] jumpTargetBCIs;
+
     /**
      * Map of BCIs to target code positions. Entries in the table corresponding to the start of a bytecode instruction
      * hold the position in the code buffer where the first byte of the template was emitted. This map
@@ -338,6 +372,44 @@ public abstract class T1XCompilation {
         initFrame(method, codeAttribute);
 
         initHandlers(method, code);
+
+        cacheTopOfStack = useTopOfStackCache();
+        if (cacheTopOfStack) {
+            initJumpTargets(code);
+        }
+    }
+
+    /**
+     * Determines if the top of the operand stack may be cached in a register for the method about to be compiled.
+     * Subclasses that inspect the operand stack at arbitrary bytecode boundaries should override this to return {@code false}.
+     */
+    protected boolean useTopOfStackCache() {
+        return T1XOptions.CacheTopOfStack && !T1XOptions.DebugMethods;
+    }
+
+    private void initJumpTargets(byte[] code) {
+        jumpTargetBCIs = new boolean[code.length];
+        if (handlerBCIs != null) {
+            for (int bci = 0; bci < code.length; bci++) {
+                jumpTargetBCIs[bci] = handlerBCIs[bci];
+            }
+        }
+        BytecodeStream s = new BytecodeStream(code);
+        while (s.currentBCI() < s.endBCI()) {
+            int opcode = s.currentBC();
+            if (opcode == Bytecodes.GOTO_W || opcode == Bytecodes.JSR_W) {
+                jumpTargetBCIs[s.readFarBranchDest()] = true;
+            } else if (Bytecodes.isBranch(opcode)) {
+                jumpTargetBCIs[s.readBranchDest()] = true;
+            } else if (opcode == Bytecodes.TABLESWITCH || opcode == Bytecodes.LOOKUPSWITCH) {
+                BytecodeSwitch sw = opcode == Bytecodes.TABLESWITCH ? new BytecodeTableSwitch(s, s.currentBCI()) : new BytecodeLookupSwitch(s, s.currentBCI());
+                for (int i = 0; i < sw.numberOfCases(); i++) {
+                    jumpTargetBCIs[sw.targetAt(i)] = true;
+                }
+                jumpTargetBCIs[sw.defaultTarget()] = true;
+            }
+            s.next();
+        }
     }
 
     static void startTimer(T1XTimer timer) {
@@ -382,6 +454,11 @@ public abstract class T1XCompilation {
         stream = null;
         handlerBCIs = null;
         handlers = null;
+        cacheTopOfStack = false;
+        cachedTOSKind = null;
+        cachedTOSReg = null;
+        cachedTOSSlotsConsumed = 0;
+        jumpTargetBCIs = null;
         syncHandlerStartPos = -1;
         syncHandlerEndPos = -1;
         syncRefMapStartPos = -1;
@@ -620,29 +697,33 @@ public abstract class T1XCompilation {
         this.template = startTemplate;
         initializedArgs = 0;
         Sig sig = template.sig;
+        if (cachedTOSKind != null) {
+            consumeCachedTopOfStack(sig);
+        }
         if (sig.stackArgs != 0) {
             for (int i = 0; i < sig.in.length; i++) {
                 Arg a = sig.in[i];
-                if (a.isStack()) {
+                if (a.isStack() && (initializedArgs & (1 << i)) == 0) {
                     initializedArgs |= 1 << i;
+                    int slot = a.slot - cachedTOSSlotsConsumed;
                     switch (a.kind.asEnum) {
                         case INT:
-                            peekInt(a.reg, a.slot);
+                            peekInt(a.reg, slot);
                             break;
                         case FLOAT:
-                            peekFloat(a.reg, a.slot);
+                            peekFloat(a.reg, slot);
                             break;
                         case LONG:
-                            peekLong(a.reg, a.slot);
+                            peekLong(a.reg, slot);
                             break;
                         case DOUBLE:
-                            peekDouble(a.reg, a.slot);
+                            peekDouble(a.reg, slot);
                             break;
                         case WORD:
-                            peekWord(a.reg, a.slot);
+                            peekWord(a.reg, slot);
                             break;
                         case REFERENCE:
-                            peekObject(a.reg, a.slot);
+                            peekObject(a.reg, slot);
                             break;
                         default:
                             assert false;
@@ -670,20 +751,30 @@ public abstract class T1XCompilation {
         }
 
         // Adjust the stack to model the net effect of the template including
-        // the slot for the value pushed (if any) by the template.
+        // the slot for the value pushed (if any) by the template. Slots taken from
+        // or left in a register for the cached top of stack are not in memory.
         Sig sig = template.sig;
-        if (sig.stackDelta < 0) {
-            decStack(-sig.stackDelta);
-        } else if (sig.stackDelta > 0) {
-            incStack(sig.stackDelta);
+        boolean cacheResult = canCacheTemplateResult(sig.out);
+        int stackDelta = sig.stackDelta + cachedTOSSlotsConsumed;
+        if (cacheResult) {
+            stackDelta -= sig.out.kind.stackSlots;
         }
+        if (stackDelta < 0) {
+            decStack(-stackDelta);
+        } else if (stackDelta > 0) {
+            incStack(stackDelta);
+        }
+        cachedTOSSlotsConsumed = 0;
 
         // The stack parameters to an invoke are popped by the callee so they should not also be
         // popped as part of the stack adjustment above.
         assert sig.stackArgs == 0 || template.tag == null || !Bytecodes.isInvoke(template.tag.opcode) : template + ": invoke templates should not use @" + Slot.class.getSimpleName() + " annotation";
 
         // Push the result of the template (if any)
-        if (sig.out.isStack()) {
+        if (cacheResult) {
+            cachedTOSKind = sig.out.kind;
+            cachedTOSReg = sig.out.reg;
+        } else if (sig.out.isStack()) {
             Arg out = sig.out;
             switch (out.kind.asEnum) {
                 case INT:
@@ -750,6 +841,180 @@ public abstract class T1XCompilation {
         return true;
     }
 
+    /**
+     * Passes the cached top of stack value to the template being started if the template takes it as its
+     * top operand stack argument in a register and contains no safepoint. Otherwise the value is pushed
+     * onto the operand stack in memory first.
+     */
+    private void consumeCachedTopOfStack(Sig sig) {
+        if (template.safepoints.length == 0) {
+            for (int i = 0; i < sig.in.length; i++) {
+                Arg a = sig.in[i];
+                if (a.slot == 0 && a.kind == cachedTOSKind && a.reg != null) {
+                    if (a.kind.isReference) {
+                        assignObjectReg(a.reg, cachedTOSReg);
+                    } else {
+                        assignWordReg(a.reg, cachedTOSReg);
+                    }
+                    initializedArgs |= 1 << i;
+                    cachedTOSSlotsConsumed = a.kind.stackSlots;
+                    cachedTOSKind = null;
+                    cachedTOSReg = null;
+                    T1XMetrics.TopOfStackCacheHits++;
+                    return;
+                }
+            }
+        }
+        flushTopOfStack();
+    }
+
+    /**
+     * Determines if the result of the current template can be left in its register for the next bytecode.
+     */
+    private boolean canCacheTemplateResult(Arg out) {
+        if (!cacheTopOfStack || !out.isStack() || out.slot != 0 || out.reg == null || template.tag == null) {
+            return false;
+        }
+        int opcode = template.tag.opcode;
+        if (opcode != stream.currentBC() || !isRegisterTemplateBytecode(opcode)) {
+            // Only the templates that are the whole translation of a bytecode
+            // are guaranteed not to be followed by code clobbering the result
+            return false;
+        }
+        switch (out.kind.asEnum) {
+            case INT:
+            case LONG:
+            case REFERENCE:
+                return canCacheTopOfStack(out.kind);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determines if a value of a given kind produced by the current bytecode can be left in a register instead
+     * of being pushed to the operand stack in memory. This is the case if the next bytecode consumes it,
+     * is not a jump target and has no safepoint before it consumes the value.
+     */
+    protected boolean canCacheTopOfStack(Kind<?> kind) {
+        if (!cacheTopOfStack) {
+            return false;
+        }
+        int nextBCI = stream.nextBCI();
+        if (nextBCI >= stream.endBCI() || jumpTargetBCIs[nextBCI]) {
+            return false;
+        }
+        int opcode = stream.readUByte(nextBCI);
+        if (opcode == Bytecodes.WIDE) {
+            opcode = stream.readUByte(nextBCI + 1);
+        }
+        return consumesTopOfStack(opcode, kind);
+    }
+
+    /**
+     * Determines if the translation of a given bytecode consumes a cached top of stack value of a given kind.
+     */
+    private static boolean consumesTopOfStack(int opcode, Kind<?> kind) {
+        // Checkstyle: stop
+        switch (opcode) {
+            case Bytecodes.ISTORE: case Bytecodes.ISTORE_0: case Bytecodes.ISTORE_1: case Bytecodes.ISTORE_2: case Bytecodes.ISTORE_3:
+                return kind == Kind.INT;
+            case Bytecodes.FSTORE: case Bytecodes.FSTORE_0: case Bytecodes.FSTORE_1: case Bytecodes.FSTORE_2: case Bytecodes.FSTORE_3:
+                return kind == Kind.FLOAT;
+            case Bytecodes.ASTORE: case Bytecodes.ASTORE_0: case Bytecodes.ASTORE_1: case Bytecodes.ASTORE_2: case Bytecodes.ASTORE_3:
+                return kind == Kind.REFERENCE;
+            case Bytecodes.LSTORE: case Bytecodes.LSTORE_0: case Bytecodes.LSTORE_1: case Bytecodes.LSTORE_2: case Bytecodes.LSTORE_3:
+                return kind == Kind.LONG;
+            case Bytecodes.DSTORE: case Bytecodes.DSTORE_0: case Bytecodes.DSTORE_1: case Bytecodes.DSTORE_2: case Bytecodes.DSTORE_3:
+                return kind == Kind.DOUBLE;
+            case Bytecodes.POP:
+                return kind.stackSlots == 1;
+            case Bytecodes.POP2:
+                return kind.stackSlots == 2;
+            default:
+                return isRegisterTemplateBytecode(opcode);
+        }
+        // Checkstyle: resume
+    }
+
+    /**
+     * Determines if a given bytecode is translated by a single template that takes its operands in registers, contains
+     * no safepoint and emits no other code before it. Such a bytecode can take the cached top of stack value
+     * from a register and leave its result in a register.
+     */
+    private static boolean isRegisterTemplateBytecode(int opcode) {
+        // Checkstyle: stop
+        switch (opcode) {
+            case Bytecodes.IADD: case Bytecodes.ISUB: case Bytecodes.IMUL: case Bytecodes.INEG:
+            case Bytecodes.IAND: case Bytecodes.IOR: case Bytecodes.IXOR:
+            case Bytecodes.ISHL: case Bytecodes.ISHR: case Bytecodes.IUSHR:
+            case Bytecodes.LADD: case Bytecodes.LSUB: case Bytecodes.LMUL: case Bytecodes.LNEG:
+            case Bytecodes.LAND: case Bytecodes.LOR: case Bytecodes.LXOR:
+            case Bytecodes.LSHL: case Bytecodes.LSHR: case Bytecodes.LUSHR:
+            case Bytecodes.LCMP:
+            case Bytecodes.I2L: case Bytecodes.L2I: case Bytecodes.I2B: case Bytecodes.I2C: case Bytecodes.I2S:
+                return true;
+            default:
+                return false;
+        }
+        // Checkstyle: resume
+    }
+
+    /**
+     * Pushes the cached top of stack value (if any) onto the operand stack in memory.
+     */
+    protected void flushTopOfStack() {
+        if (cachedTOSKind != null) {
+            incStack(cachedTOSKind.stackSlots);
+            switch (cachedTOSKind.asEnum) {
+                case INT:
+                case FLOAT:
+                    pokeInt(cachedTOSReg, 0);
+                    break;
+                case LONG:
+                case DOUBLE:
+                    pokeLong(cachedTOSReg, 0);
+                    break;
+                case REFERENCE:
+                    pokeObject(cachedTOSReg, 0);
+                    break;
+                default:
+                    throw new InternalError("Unexpected kind: " + cachedTOSKind);
+            }
+            cachedTOSKind = null;
+            cachedTOSReg = null;
+        }
+    }
+
+    /**
+     * Pushes a value held in a register onto the operand stack or, if {@linkplain #canCacheTopOfStack(Kind) possible},
+     * leaves it in the register as the cached top of stack value.
+     */
+    protected void pushValue(CiRegister src, Kind<?> kind) {
+        assert cachedTOSKind == null;
+        if (canCacheTopOfStack(kind)) {
+            cachedTOSKind = kind;
+            cachedTOSReg = src;
+            return;
+        }
+        incStack(kind.stackSlots);
+        switch (kind.asEnum) {
+            case INT:
+            case FLOAT:
+                pokeInt(src, 0);
+                break;
+            case LONG:
+            case DOUBLE:
+                pokeLong(src, 0);
+                break;
+            case REFERENCE:
+                pokeWord(src, 0);
+                break;
+            default:
+                throw new InternalError("Unexpected kind: " + kind);
+        }
+    }
+
     /**
      * Factored out to support JVMTI exception catch events by override.
      */
@@ -1789,6 +2054,7 @@ public abstract class T1XCompilation {
                 throw new CiBailout("Unsupported opcode" + errorSuffix());
                 // Checkstyle: resume
         }
+        assert cachedTOSKind == null || canCacheTopOfStack(cachedTOSKind) : "cached top of stack not consumed" + errorSuffix();
     }
 
     protected void do_uncommonTrap() {
@@ -1864,26 +2130,22 @@ public abstract class T1XCompilation {
 
     protected void do_iconst(int value) {
         assignInt(scratch, value);
-        incStack(1);
-        pokeInt(scratch, 0);
+        pushValue(scratch, Kind.INT);
     }
 
     protected void do_dconst(double value) {
         assignLong(scratch, Double.doubleToRawLongBits(value));
-        incStack(2);
-        pokeLong(scratch, 0);
+        pushValue(scratch, Kind.DOUBLE);
     }
 
     protected void do_fconst(float value) {
         assignInt(scratch, Float.floatToRawIntBits(value));
-        incStack(1);
-        pokeInt(scratch, 0);
+        pushValue(scratch, Kind.FLOAT);
     }
 
     protected void do_lconst(long value) {
         assignLong(scratch, value);
-        incStack(2);
-        pokeLong(scratch, 0);
+        pushValue(scratch, Kind.LONG);
     }
 
     protected void do_load(int index, Kind kind) {
@@ -1891,26 +2153,44 @@ public abstract class T1XCompilation {
             case INT:
             case FLOAT:
                 loadInt(scratch, index);
-                incStack(1);
-                pokeInt(scratch, 0);
                 break;
             case REFERENCE:
                 loadWord(scratch, index);
-                incStack(1);
-                pokeWord(scratch, 0);
                 break;
             case LONG:
             case DOUBLE:
                 loadLong(scratch, index);
-                incStack(2);
-                pokeLong(scratch, 0);
                 break;
             default:
                 throw new InternalError("Unexpected kind: " + kind);
         }
+        pushValue(scratch, kind);
     }
 
     protected void do_store(int index, Kind kind) {
+        if (cachedTOSKind != null) {
+            assert cachedTOSKind == kind;
+            CiRegister src = cachedTOSReg;
+            cachedTOSKind = null;
+            cachedTOSReg = null;
+            T1XMetrics.TopOfStackCacheHits++;
+            switch (kind.asEnum) {
+                case INT:
+                case FLOAT:
+                    storeInt(src, index);
+                    break;
+                case REFERENCE:
+                    storeWord(src, index);
+                    break;
+                case LONG:
+                case DOUBLE:
+                    storeLong(src, index);
+                    break;
+                default:
+                    throw new InternalError("Unexpected kind: " + kind);
+            }
+            return;
+        }
         switch (kind.asEnum) {
             case INT:
             case FLOAT:
@@ -2648,10 +2928,22 @@ public abstract class T1XCompilation {
     }
 
     protected void do_pop() {
+        if (cachedTOSKind != null) {
+            assert cachedTOSKind.stackSlots == 1;
+            cachedTOSKind = null;
+            cachedTOSReg = null;
+            return;
+        }
         decStack(1);
     }
 
     protected void do_pop2() {
+        if (cachedTOSKind != null) {
+            assert cachedTOSKind.stackSlots == 2;
+            cachedTOSKind = null;
+            cachedTOSReg = null;
+            return;
+        }
         decStack(2);
     }
 
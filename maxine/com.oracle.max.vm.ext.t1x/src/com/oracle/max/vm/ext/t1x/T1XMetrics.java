@@ -35,6 +35,7 @@ public class T1XMetrics {
     public static int BytecodesCompiled;
     public static int CodeBytesEmitted;
     public static int Bailouts;
+    public static int TopOfStackCacheHits;
 
     public static void print() {
         TTY.printFields(T1XMetrics.class);
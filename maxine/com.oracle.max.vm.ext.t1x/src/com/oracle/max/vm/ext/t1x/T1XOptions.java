@@ -40,6 +40,8 @@ public final class T1XOptions {
 
     public static boolean DebugMethods                       = ____;
 
+    public static boolean CacheTopOfStack                    = ____;
+
     /**
      * See {@link Filter#Filter(String, Object)}.
      */
@@ -85,6 +87,9 @@ public final class T1XOptions {
                 "Trace calls to T1X compiled methods.");
         map.put("DebugMethods",
                         "Create file with T1X compiled method IDs for debugging.");
+        map.put("CacheTopOfStack",
+                "Keep the top of the operand stack in a register between bytecodes " +
+                "instead of pushing it to memory when the next bytecode consumes it.");
         map.put("PrintJsrRetRewrites",
                 "Print a message when T1X rewrites a method to inline jsr/ret subroutines.");
 
@@ -184,6 +184,17 @@ public class T1XTargetMethod extends TargetMethod {
      */
     private int survivedEvictions = 0;
 
+    /**
+     * Value of the {@linkplain MethodProfile#entryBackedgeCount entry counter} at the last
+     * {@linkplain #sampleUsage() usage sample}, or {@link Integer#MIN_VALUE} if none has been taken yet.
+     */
+    private int usageSample = Integer.MIN_VALUE;
+
+    /**
+     * Number of consecutive eviction cycles during which this method was not entered.
+     */
+    private int idleEvictionEpochs = 0;
+
     public T1XTargetMethod(T1XCompilation comp, boolean install) {
         super(comp.method, CallEntryPoint.BASELINE_ENTRY_POINT);
         codeAttribute = comp.codeAttribute;
@@ -305,6 +316,30 @@ public class T1XTargetMethod extends TargetMethod {
         return survivedEvictions < CodeEviction.evictionCount();
     }
 
+    /**
+     * A method that has not been sampled before was compiled since the last eviction cycle and
+     * therefore counts as used in the current epoch.
+     */
+    @Override
+    public void sampleUsage() {
+        if (profile == null) {
+            idleEvictionEpochs = Integer.MAX_VALUE;
+            return;
+        }
+        final int count = profile.entryBackedgeCount;
+        if (count != usageSample) {
+            usageSample = count;
+            idleEvictionEpochs = 0;
+        } else if (idleEvictionEpochs != Integer.MAX_VALUE) {
+            idleEvictionEpochs++;
+        }
+    }
+
+    @Override
+    public int idleEvictionEpochs() {
+        return idleEvictionEpochs;
+    }
+
     /**
      * The number of times this method was relocated is equal to the number of {@linkplain CodeEviction
      * eviction cycles} it survived.
@@ -930,7 +965,7 @@ public class T1XTargetMethod extends TargetMethod {
         StackFrameWalker sfw = current.stackFrameWalker();
         Throwable throwable = context.throwable;
         CodePointer throwAddress = throwAddress(current);
-        CodePointer catchAddress = throwAddressToCatchAddress(throwAddress, throwable);
+        CodePointer catchAddress = cachedThrowAddressToCatchAddress(throwAddress, throwable);
 
         recordExceptionSeen(current);
         if (!catchAddress.isZero()) {
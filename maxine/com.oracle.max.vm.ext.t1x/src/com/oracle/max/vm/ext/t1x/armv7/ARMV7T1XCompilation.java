@@ -322,6 +322,15 @@ public class ARMV7T1XCompilation extends T1XCompilation {
         asm.vmov(ConditionFlag.Always, dst, ARMV7.r12, null, CiKind.Float, CiKind.Int);
     }
 
+    /**
+     * The top of stack cache is not supported on ARMv7: the local variable, constant and store
+     * emitters below work through {@code r8}/{@code r9} and the operand stack in memory.
+     */
+    @Override
+    protected boolean useTopOfStackCache() {
+        return false;
+    }
+
     @Override
     protected void do_store(int index, Kind kind) {
         switch (kind.asEnum) {
@@ -297,6 +297,14 @@ public class VMAT1XCompilation extends AMD64T1XCompilation {
         super.do_oconst(value);
     }
 
+    /**
+     * The instrumentation templates read operands from the stack in memory.
+     */
+    @Override
+    protected boolean useTopOfStackCache() {
+        return false;
+    }
+
     @Override
     protected void do_iconst(int value) {
         if (templates != defaultTemplates) {
@@ -33,6 +33,8 @@
 
 #define ALLOC_FAILED ((Address) 0)  // return value for failed allocations
 
+extern Address virtualMemory_mapFileShared(Size size, jint fd, Size offset);
+
 extern Address virtualMemory_mapFileIn31BitSpace(jint size, jint fd, Size offset);
 
 extern Address virtualMemory_mapFileAtFixedAddress(Address address, Size size, jint fd, Size offset);
@@ -51,4 +53,5 @@ extern Address virtualMemory_pageAlign(Address address);
 
 extern void virtualMemory_protectPages(Address address, int count);
 extern void virtualMemory_unprotectPages(Address address, int count);
+extern boolean virtualMemory_adviseHugePages(Address address, Size size);
 #endif /*__virtualMemory_h__*/
@@ -59,6 +59,10 @@ extern void *maxvm_image_start;
 extern void *maxvm_image_end;
 #endif
 
+#if os_LINUX
+#include <sys/mman.h>
+#endif
+
 /*
  * The data loaded/initialized from the boot image.
  */
@@ -67,6 +71,7 @@ static image_StringInfo theStringInfo = 0;
 static Address          theHeap = 0;
 static Address          theCode = 0;
 static Address          theCodeEnd = 0;
+static jboolean         trackResidency = JNI_FALSE;
 
 /*************************************************************************
  Functions for accessing image sections (once they are loaded).
@@ -403,6 +408,48 @@ static void relocate(int fd) {
 #endif
 }
 
+#if os_LINUX
+/*
+ * Relocation writes to nearly every page of the boot heap and code, which leaves them all resident.
+ * To make residency reflect actual use, the relocated contents are copied to an unlinked temporary
+ * file that is then mapped shared over the original mapping. None of the pages of the new mapping
+ * is present in the page tables of the process until it is accessed.
+ */
+static void remapForResidencyTracking(void) {
+    Size size = theHeader->heapSize + theHeader->codeSize;
+    char path[] = "/tmp/maxine-image-XXXXXX";
+    char *p = (char *) theHeap;
+    Size remaining = size;
+    int fd = mkstemp(path);
+    if (fd < 0) {
+        log_println("WARNING: could not create temporary file for tracking boot image residency");
+        return;
+    }
+    unlink(path);
+    while (remaining > 0) {
+        ssize_t n = write(fd, p, remaining);
+        if (n <= 0) {
+            log_println("WARNING: could not write temporary file for tracking boot image residency");
+            close(fd);
+            return;
+        }
+        p += n;
+        remaining -= n;
+    }
+    if (mmap((void *) theHeap, (size_t) size, PROT_EXEC | PROT_READ | PROT_WRITE, MAP_SHARED | MAP_FIXED, fd, (off_t) 0) == MAP_FAILED) {
+        log_exit(1, "could not remap boot heap and code for tracking residency");
+    }
+    close(fd);
+#if log_LOADER
+    log_println("image.remapForResidencyTracking: done");
+#endif
+}
+#endif
+
+void image_trackResidency(void) {
+    trackResidency = JNI_TRUE;
+}
+
 void image_load(char *imageFileName) {
     if (theHeap != 0) {
         // loaded already (via inspector)
@@ -430,6 +477,11 @@ void image_load(char *imageFileName) {
     relocate(fd);
 #if log_LOADER
     log_println("code @%p codeEnd @%p heap @%p", theCode, theCodeEnd, theHeap);
+#endif
+#if os_LINUX
+    if (trackResidency) {
+        remapForResidencyTracking();
+    }
 #endif
     int error = close(fd);
     if (error != 0) {
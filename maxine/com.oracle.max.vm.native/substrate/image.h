@@ -133,6 +133,13 @@ typedef struct image_Trailer {
  */
 extern void image_load(char *imageFileName);
 
+/**
+ * Requests that 'image_load()' leaves only those pages of the boot heap and code resident that are
+ * subsequently accessed, instead of all the pages written by relocation. Only has an effect on Linux.
+ * Must be called before 'image_load()'.
+ */
+extern void image_trackResidency(void);
+
 /**
  * Must only be called after calling 'load_image()'.
  *
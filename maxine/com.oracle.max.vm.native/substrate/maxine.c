@@ -310,6 +310,14 @@ int maxine(int argc, char *argv[], char *executablePath) {
     }
     log_initialize(logFilePath);
 
+    /* A startup profile is derived from the boot image pages that are resident when the main method is invoked. */
+    for (i = 1; i < argc; i++) {
+        if (argv[i] != NULL && strncmp(argv[i], "-XX:StartupProfile=", 19) == 0) {
+            image_trackResidency();
+            break;
+        }
+    }
+
 #if os_DARWIN
     _executablePath = executablePath;
 #endif
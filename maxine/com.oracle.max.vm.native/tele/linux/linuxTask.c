@@ -33,6 +33,9 @@
 #include <sys/wait.h>
 #include <sys/time.h>
 #include <sys/prctl.h>
+#include <sys/uio.h>
+#include <sys/syscall.h>
+#include <limits.h>
 
 #include "log.h"
 #include "ptrace.h"
@@ -724,6 +727,9 @@ Java_com_sun_max_tele_debug_linux_LinuxTask_nativeCreateChildProcess(JNIEnv *env
 
 JNIEXPORT jboolean JNICALL
 Java_com_sun_max_tele_debug_linux_LinuxTask_nativeDetach(JNIEnv *env, jclass c, jint tgid, jint tid) {
+    if (tgid == tid) {
+        task_memory_fd_close();
+    }
     return ptrace(PT_DETACH, tid, 0, 0) == 0;
 }
 
@@ -769,6 +775,7 @@ Java_com_sun_max_tele_debug_linux_LinuxTask_nativeWait(JNIEnv *env, jclass c, ji
 
 JNIEXPORT jboolean JNICALL
 Java_com_sun_max_tele_debug_linux_LinuxTask_nativeKill(JNIEnv *env, jclass c, jint tgid, jint tid) {
+    task_memory_fd_close();
     pid_t killID = -getpgid(tgid);
     tele_log_println("Sending SIGKILL to %d", tid, killID);
     if (kill(killID, SIGKILL) != 0) {
@@ -808,18 +815,80 @@ int task_memory_read_fd(int tgid, const void *address) {
     return fd;
 }
 
+/* The process whose memory file is cached in '_memoryFd'. */
+static pid_t _memoryFdTgid = -1;
+static int _memoryFd = -1;
+
 /**
- * Copies 'size' bytes from 'src' in the address space of 'tgid' to 'dst' in the caller's address space.
+ * Gets a file descriptor on /proc/<pid>/mem for the traced process 'tgid'. The descriptor is opened
+ * on first use and kept open for subsequent reads so that each read is a single pread(2).
+ *
+ * @return the cached file descriptor or -1 if it could not be opened
  */
-size_t task_read(pid_t tgid, pid_t tid, const void *src, void *dst, size_t size) {
-    char state;
-    if ((state = task_state(tgid, tid)) != 'T') {
-        log_println("Cannot read memory of task %d while it is in state '%c'", tid, state);
-        return 0;
+int task_memory_fd(pid_t tgid) {
+    if (_memoryFdTgid != tgid) {
+        task_memory_fd_close();
+        ptrace_check_tracer(POS, tgid);
+        char *memoryFileName;
+        asprintf(&memoryFileName, "/proc/%d/mem", tgid);
+        c_ASSERT(memoryFileName != NULL);
+        _memoryFd = open(memoryFileName, O_RDONLY);
+        if (_memoryFd < 0) {
+            log_println("Error opening %s: %s", memoryFileName, strerror(errno));
+        } else {
+            _memoryFdTgid = tgid;
+        }
+        free(memoryFileName);
     }
+    return _memoryFd;
+}
+
+void task_memory_fd_close(void) {
+    if (_memoryFd >= 0) {
+        close(_memoryFd);
+    }
+    _memoryFd = -1;
+    _memoryFdTgid = -1;
+}
+
+/**
+ * Reads 'size' bytes at 'src' through the cached memory file, retrying short reads.
+ *
+ * @return the number of bytes read or -1 if nothing could be read
+ */
+static ssize_t task_pread(int fd, const void *src, void *dst, size_t size) {
+    size_t done = 0;
+    while (done < size) {
+        ssize_t n = pread64(fd, (char *) dst + done, size - done, (off64_t) (intptr_t) ((const char *) src + done));
+        if (n < 0 && errno == EINTR) {
+            continue;
+        }
+        if (n <= 0) {
+            return done == 0 ? -1 : (ssize_t) done;
+        }
+        done += n;
+    }
+    return done;
+}
 
+/**
+ * Copies 'size' bytes from 'src' in the address space of 'tgid' to 'dst' in the caller's address space.
+ *
+ * The caller (i.e. the Inspector) only reads memory while the process is stopped, so unlike {@link task_write}
+ * this does not re-check the task state via /proc on every call.
+ */
+size_t task_read(pid_t tgid, pid_t tid, const void *src, void *dst, size_t size) {
     //tele_log_println("Reading %d bytes from memory of task %d at %p", size, tid, src);
+    int fd = task_memory_fd(tgid);
+    if (fd >= 0) {
+        ssize_t bytesRead = task_pread(fd, src, dst, size);
+        if (bytesRead >= 0 && (size_t) bytesRead != size) {
+            log_println("Only read %d of %d bytes from %p: %s", bytesRead, size, src, strerror(errno));
+        }
+        return bytesRead;
+    }
     if (size <= sizeof(Address)) {
+        errno = 0;
         Address word = ptrace(PT_READ_D, tid, (Address) src, NULL);
         if (errno != 0) {
             int error = errno;
@@ -829,18 +898,64 @@ size_t task_read(pid_t tgid, pid_t tid, const void *src, void *dst, size_t size)
             memcpy(dst, &word, size);
         }
         return size;
-    } else {
-        int fd = task_memory_read_fd(tgid, src);
-        if (fd < 0) {
-            return -1;
+    }
+    return -1;
+}
+
+/**
+ * Reads a number of ranges from the address space of 'tgid' into consecutive locations starting at 'dst'.
+ * process_vm_readv(2) is used to transfer up to IOV_MAX ranges per system call. If it is not available
+ * (ENOSYS, or EPERM under some Yama settings) the ranges are read one by one through the cached memory file.
+ *
+ * @return the number of leading ranges that were read completely
+ */
+int task_read_ranges(pid_t tgid, pid_t tid, const jlong *srcs, const jint *lengths, int count, void *dst) {
+    char *out = (char *) dst;
+    int done = 0;
+#if defined(SYS_process_vm_readv)
+    static int processVmReadvUnavailable = 0;
+    struct iovec local[IOV_MAX];
+    struct iovec remote[IOV_MAX];
+    while (!processVmReadvUnavailable && done < count) {
+        int n = count - done < IOV_MAX ? count - done : IOV_MAX;
+        size_t total = 0;
+        int i;
+        for (i = 0; i < n; i++) {
+            local[i].iov_base = out + total;
+            local[i].iov_len = (size_t) lengths[done + i];
+            remote[i].iov_base = (void *) (Address) srcs[done + i];
+            remote[i].iov_len = (size_t) lengths[done + i];
+            total += (size_t) lengths[done + i];
         }
-        size_t bytesRead = read(fd, dst, size);
-        if (bytesRead != size) {
-            log_println("Only read %d of %d bytes from %p: %s", bytesRead, size, src, strerror(errno));
+        ssize_t result = syscall(SYS_process_vm_readv, tgid, local, (unsigned long) n, remote, (unsigned long) n, 0UL);
+        if (result < 0) {
+            if (errno == ENOSYS || errno == EPERM) {
+                processVmReadvUnavailable = 1;
+                break;
+            }
+            return done;
         }
-        close(fd);
-        return bytesRead;
+        /* A partial transfer stops at the first range that could not be read completely. */
+        size_t consumed = 0;
+        for (i = 0; i < n && consumed + (size_t) lengths[done + i] <= (size_t) result; i++) {
+            consumed += (size_t) lengths[done + i];
+        }
+        out += consumed;
+        done += i;
+        if (i < n) {
+            return done;
+        }
+    }
+#endif
+    int fd = task_memory_fd(tgid);
+    while (done < count) {
+        if (fd < 0 || task_pread(fd, (const void *) (Address) srcs[done], out, (size_t) lengths[done]) != lengths[done]) {
+            return done;
+        }
+        out += lengths[done];
+        done++;
     }
+    return done;
 }
 
 /**
@@ -924,6 +1039,110 @@ Java_com_sun_max_tele_debug_linux_LinuxTask_nativeReadBytes(JNIEnv *env, jclass
     return teleProcess_read(&ph, env, c, src, dst, isDirectByteBuffer, dstOffset, length);
 }
 
+/* Bit 55 of a /proc/<pid>/pagemap entry is the soft-dirty flag. See Documentation/admin-guide/mm/soft-dirty.rst. */
+#define PAGEMAP_SOFT_DIRTY ((jlong) 1 << 55)
+
+/**
+ * Determines if the kernel tracks soft-dirty pages for 'tgid'. A kernel built without CONFIG_MEM_SOFT_DIRTY accepts
+ * writes to /proc/<pid>/clear_refs but never sets the soft-dirty bit in /proc/<pid>/pagemap, so the support is
+ * detected from the "sd" flag it shows in the VmFlags of new mappings in /proc/<pid>/smaps. As clearing the
+ * soft-dirty bits also clears that flag, this must be called before the first call to task_collect_dirty_pages().
+ */
+boolean task_has_soft_dirty(pid_t tgid) {
+    char path[64];
+    char line[256];
+    boolean result = false;
+    snprintf(path, sizeof(path), "/proc/%d/smaps", tgid);
+    FILE *smaps = fopen(path, "r");
+    if (smaps == NULL) {
+        return false;
+    }
+    while (!result && fgets(line, sizeof(line), smaps) != NULL) {
+        if (strncmp(line, "VmFlags:", 8) == 0) {
+            char *flag;
+            for (flag = strtok(line + 8, " \n"); flag != NULL; flag = strtok(NULL, " \n")) {
+                if (strcmp(flag, "sd") == 0) {
+                    result = true;
+                    break;
+                }
+            }
+        }
+    }
+    fclose(smaps);
+    return result;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_sun_max_tele_debug_linux_LinuxTask_nativeHasSoftDirty(JNIEnv *env, jclass c, jint tgid) {
+    return task_has_soft_dirty(tgid);
+}
+
+/**
+ * Determines which of a set of pages of 'tgid' were written since the previous call (or since the process started)
+ * and then clears the soft-dirty bits of the whole process so that the next call reports writes from now on.
+ *
+ * @param pages the page-aligned addresses to query
+ * @param count the number of pages to query
+ * @param dirty receives 1 for each page that is soft-dirty and 0 otherwise
+ * @return 0 if successful, -1 if the pagemap or clear_refs file of 'tgid' cannot be accessed
+ */
+int task_collect_dirty_pages(pid_t tgid, const jlong *pages, int count, jboolean *dirty) {
+    char path[64];
+    int i;
+    if (count > 0) {
+        snprintf(path, sizeof(path), "/proc/%d/pagemap", tgid);
+        int fd = open(path, O_RDONLY);
+        if (fd < 0) {
+            return -1;
+        }
+        const unsigned int pageSize = getpagesize();
+        for (i = 0; i < count; i++) {
+            jlong entry;
+            off64_t offset = (off64_t) (((Address) pages[i]) / pageSize) * sizeof(entry);
+            if (pread64(fd, &entry, sizeof(entry), offset) != sizeof(entry)) {
+                close(fd);
+                return -1;
+            }
+            dirty[i] = (entry & PAGEMAP_SOFT_DIRTY) != 0;
+        }
+        close(fd);
+    }
+    snprintf(path, sizeof(path), "/proc/%d/clear_refs", tgid);
+    int fd = open(path, O_WRONLY);
+    if (fd < 0) {
+        return -1;
+    }
+    /* Writing "4" clears the soft-dirty bits of all the process's pages. */
+    boolean ok = write(fd, "4", 1) == 1;
+    close(fd);
+    return ok ? 0 : -1;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_sun_max_tele_debug_linux_LinuxTask_nativeCollectDirtyPages(JNIEnv *env, jclass c, jint tgid, jlongArray pages, jint count, jbooleanArray dirty) {
+    jlong *pagesElements = (*env)->GetLongArrayElements(env, pages, NULL);
+    jboolean *dirtyElements = (*env)->GetBooleanArrayElements(env, dirty, NULL);
+    int result = task_collect_dirty_pages(tgid, pagesElements, count, dirtyElements);
+    (*env)->ReleaseBooleanArrayElements(env, dirty, dirtyElements, result == 0 ? 0 : JNI_ABORT);
+    (*env)->ReleaseLongArrayElements(env, pages, pagesElements, JNI_ABORT);
+    return result;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_sun_max_tele_debug_linux_LinuxTask_nativeReadRanges(JNIEnv *env, jclass c, jint tgid, jint tid, jlongArray srcs, jintArray lengths, jint count, jobject dst, jint dstOffset) {
+    void *dstBuffer = (*env)->GetDirectBufferAddress(env, dst);
+    if (dstBuffer == 0) {
+        log_println("Failed to get address from NIO direct buffer");
+        return 0;
+    }
+    jlong *srcsElements = (*env)->GetLongArrayElements(env, srcs, NULL);
+    jint *lengthsElements = (*env)->GetIntArrayElements(env, lengths, NULL);
+    int result = task_read_ranges(tgid, tid, srcsElements, lengthsElements, count, (jbyte *) dstBuffer + dstOffset);
+    (*env)->ReleaseIntArrayElements(env, lengths, lengthsElements, JNI_ABORT);
+    (*env)->ReleaseLongArrayElements(env, srcs, srcsElements, JNI_ABORT);
+    return result;
+}
+
 JNIEXPORT jboolean JNICALL
 Java_com_sun_max_tele_debug_linux_LinuxTask_nativeSetInstructionPointer(JNIEnv *env, jclass c, jint tid, jlong instructionPointer) {
     user_regs_structure registers;
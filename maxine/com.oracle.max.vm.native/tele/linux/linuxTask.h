@@ -82,11 +82,45 @@ extern pid_t _ptracerTask;
  */
 int task_memory_read_fd(int tgid, const void *address);
 
+/**
+ * Gets a cached file descriptor on /proc/<pid>/mem for reading the memory of the traced process 'tgid'.
+ * The descriptor is owned by this module and must not be closed by the caller.
+ */
+int task_memory_fd(pid_t tgid);
+
+/**
+ * Closes the cached /proc/<pid>/mem file descriptor, if any.
+ */
+void task_memory_fd_close(void);
+
 /**
  * Copies 'size' bytes from 'src' in the address space of 'tgid' to 'dst' in the caller's address space.
  */
 size_t task_read(pid_t tgid, pid_t tid, const void *src, void *dst, size_t size);
 
+/**
+ * Copies 'count' ranges described by 'srcs' and 'lengths' from the address space of 'tgid' to
+ * consecutive locations starting at 'dst' in the caller's address space.
+ *
+ * @return the number of leading ranges that were copied completely
+ */
+int task_read_ranges(pid_t tgid, pid_t tid, const jlong *srcs, const jint *lengths, int count, void *dst);
+
+/**
+ * Determines if the kernel tracks soft-dirty pages for 'tgid'. Must be called before the first call
+ * to task_collect_dirty_pages() for 'tgid'.
+ */
+boolean task_has_soft_dirty(pid_t tgid);
+
+/**
+ * Reports which of 'count' pages of 'tgid' have been written since the previous call, using the soft-dirty
+ * bits in /proc/<pid>/pagemap, and then clears those bits for the whole process. The result is only meaningful
+ * if task_has_soft_dirty() returned true for 'tgid'.
+ *
+ * @return 0 if successful, -1 if the pagemap or clear_refs file cannot be accessed
+ */
+int task_collect_dirty_pages(pid_t tgid, const jlong *pages, int count, jboolean *dirty);
+
 /**
  * Copies 'size' bytes from 'src' in the caller's address space to 'dst' in the address space of 'tgid'.
  * The value of 'size' must be >= 0 and < sizeof(Word).
@@ -332,6 +332,8 @@ public class MaxineTesterConfiguration {
         imageConfig("jtt-c1xt1x", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", build, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-native-tests", testCalleeT1X, "--XX:+FailOverCompilation");
         imageConfig("jtt-t1xt1x", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", build, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-native-tests",
                         joinCompileCommands(testCallerT1X, testCalleeT1X), "--XX:+FailOverCompilation");
+        imageConfig("jtt-t1xt1x-tos", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", build, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-native-tests",
+                        joinCompileCommands(testCallerT1X, testCalleeT1X), "--XX:+FailOverCompilation", "--T1X:+CacheTopOfStack");
 
         imageConfig("jtt-c1xc1x", opt_c1x, tmpVMArgs, gcScheme, "-threads=4", "-run=com.oracle.max.vm.tests.vm.jtrun.all", build, "-native-tests");
         imageConfig("jtt-c1xgraal", opt_c1xgraal, "-run=com.oracle.max.vm.tests.vm.jtrun.all", "-native-tests", joinCompileCommands(testCallerT1X, testCalleeGraal));
@@ -531,7 +533,7 @@ public class MaxineTesterConfiguration {
         if (platform.cpu == CPU.SPARCV9 || platform.cpu == CPU.ARMV7) {
             return "jtt-c1xc1x,jtt-c1xt1x,jtt-t1xc1x,jtt-t1xt1x";
         }
-        return "jtt-c1xc1x,jtt-t1xc1x,jtt-c1xt1x,jtt-t1xt1x,jtt-c1xgraal";
+        return "jtt-c1xc1x,jtt-t1xc1x,jtt-c1xt1x,jtt-t1xt1x,jtt-t1xt1x-tos,jtt-c1xgraal";
     }
 
     public static List<String> defaultVMOutputImageConfigs() {
@@ -33,6 +33,7 @@ import com.oracle.max.vm.ext.vma.store.txt.*;
 import com.oracle.max.vm.ext.vma.store.*;
 import com.oracle.max.vma.tools.qa.*;
 import com.sun.max.program.*;
+import com.sun.max.vm.log.*;
 
 /**
  * Rewrites a log file making various transformations:
@@ -41,6 +42,7 @@ import com.sun.max.program.*;
  * <li>-reltime convert absolute times to relative
  * <li>-batch convert to per-thread batches of records (i.e., non-time-ordered)
  * <li>-unbatch convert unordered (i.e. per thread batches) to time-ordered
+ * <li>-vmlog convert a binary {@link VMLogFileFormat VMLog file} to text
  * </ul>
  *
  */
@@ -50,6 +52,7 @@ public class ConvertLog {
     private static boolean toRelTime;
     private static boolean verbose;
     private static boolean timeChange;
+    private static boolean vmLog;
     private static PrintStream out;
 
     public static void main(String[] args) throws Exception {
@@ -85,12 +88,22 @@ public class ConvertLog {
                 command = new TextKeyCommand();
             } else if (arg.equals("-stats")) {
                 command = new StatsCommand();
+            } else if (arg.equals("-vmlog")) {
+                vmLog = true;
             } else {
                 usage();
             }
         }
         // Checkstyle: resume modified control variable check
 
+        if (vmLog) {
+            if (logFileIn == null) {
+                usage();
+            }
+            convertVMLog(new File(logFileIn), logFileOut);
+            return;
+        }
+
         String logFileDir = null;
         if (logFileIn == null) {
             logFileIn = VMAStoreFile.DEFAULT_STOREFILE;
@@ -122,10 +135,46 @@ public class ConvertLog {
     }
 
     private static void usage() {
-        System.err.println("usage: -f logfileIn [-o logFileOut] [-batch | -unbatch | -ajtrace] [-abstime] [-reltime]");
+        System.err.println("usage: -f logfileIn [-o logFileOut] [-batch | -unbatch | -ajtrace | -vmlog] [-abstime] [-reltime]");
         System.exit(1);
     }
 
+    /**
+     * Converts a binary VMLog file to text, one record per line: the record id, the thread id, the logger, the
+     * operation and the arguments in hex.
+     */
+    private static void convertVMLog(File inFile, String outFile) throws IOException {
+        final VMLogFileFormat.Reader reader = new VMLogFileFormat.Reader(inFile);
+        try {
+            out = outFile == null ? System.out : new PrintStream(new FileOutputStream(outFile));
+            if (!reader.isClosed()) {
+                System.err.println("warning: " + inFile + " was not closed, records may be incomplete");
+            }
+            reader.read(new VMLogFileFormat.RecordVisitor() {
+                public void visitRecord(int header, int id, long[] args) {
+                    final StringBuilder sb = new StringBuilder();
+                    final int loggerId = VMLog.Record.getLoggerId(header);
+                    sb.append(id);
+                    sb.append(' ');
+                    sb.append(VMLog.Record.getThreadId(header));
+                    sb.append(' ');
+                    sb.append(reader.loggerName(loggerId));
+                    sb.append(' ');
+                    sb.append(reader.operationName(loggerId, VMLog.Record.getOperation(header)));
+                    for (int i = 0; i < VMLog.Record.getArgCount(header); i++) {
+                        sb.append(" 0x");
+                        sb.append(Long.toHexString(args[i]));
+                    }
+                    out.println(sb);
+                }
+            });
+        } finally {
+            if (outFile != null && out != null) {
+                out.close();
+            }
+        }
+    }
+
     private static void processLogFiles(File[] inFiles, String outFile, Command command) throws IOException {
         try {
             out = outFile == null ? System.out : new PrintStream(new FileOutputStream(outFile));
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.oracle.max.vma.tools.log;
+
+import static com.sun.max.vm.log.VMLogFileFormat.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import com.sun.max.ide.*;
+import com.sun.max.vm.log.*;
+
+/**
+ * Round trip tests of the {@linkplain VMLogFileFormat binary VM log file}: files are written outside the VM by
+ * {@link Writer}, which follows the steps of {@link VMLogFileFlusher#flushRecord}, and read back with
+ * {@link VMLogFileFormat.Reader} and with {@code ConvertLog -vmlog}.
+ */
+public class VMLogFileFormatTest extends MaxTestCase {
+
+    public VMLogFileFormatTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(VMLogFileFormatTest.class);
+    }
+
+    private static final int LOGGER_A = 1;
+    private static final int LOGGER_B = 3;
+    private static final String[] LOGGER_NAMES = {null, "First", null, "Second"};
+    private static final String[][] OPERATION_NAMES = {null, {"alpha", "beta"}, null, {"gamma"}};
+
+    /**
+     * A record as written, and as it should be read back.
+     */
+    private static final class Record {
+        final long start;
+        final int header;
+        final int id;
+        final long[] args;
+
+        Record(long start, int header, int id, long[] args) {
+            this.start = start;
+            this.header = header;
+            this.id = id;
+            this.args = args;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Record) {
+                final Record r = (Record) obj;
+                return header == r.header && id == r.id && Arrays.equals(args, r.args);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return id + " " + VMLog.Record.getThreadId(header) + " " + LOGGER_NAMES[VMLog.Record.getLoggerId(header)] + " " +
+                OPERATION_NAMES[VMLog.Record.getLoggerId(header)][VMLog.Record.getOperation(header)] + argsToString();
+        }
+
+        private String argsToString() {
+            final StringBuilder sb = new StringBuilder();
+            for (long arg : args) {
+                sb.append(" 0x").append(Long.toHexString(arg));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Writes a log file in memory the way {@link VMLogFileFlusher} writes it into the mapped file.
+     */
+    private static final class Writer {
+        final ByteBuffer file;
+        final int wordSize;
+        final long capacity;
+        final long pages;
+        final int syncTable;
+        final int data;
+
+        Writer(int wordSize, ByteOrder order, long capacity) {
+            this.wordSize = wordSize;
+            this.capacity = capacity;
+            this.pages = capacity >> SYNC_PAGE_SHIFT;
+            int tableSize = 4;
+            for (int loggerId = 0; loggerId < LOGGER_NAMES.length; loggerId++) {
+                if (LOGGER_NAMES[loggerId] != null) {
+                    tableSize += 4 + nameSize(utf8(LOGGER_NAMES[loggerId])) + 4;
+                    for (String op : OPERATION_NAMES[loggerId]) {
+                        tableSize += nameSize(utf8(op));
+                    }
+                }
+            }
+            syncTable = (HEADER_SIZE + tableSize + 7) & ~7;
+            data = (int) ((syncTable + pages * 8 + 4095) & ~4095);
+            file = ByteBuffer.allocate((int) (data + capacity)).order(order);
+            file.putInt(MAGIC_OFFSET, MAGIC);
+            file.putInt(VERSION_OFFSET, VERSION);
+            file.putInt(WORD_SIZE_OFFSET, wordSize);
+            file.putLong(CAPACITY_OFFSET, capacity);
+            file.putLong(SYNC_TABLE_OFFSET, syncTable);
+            file.putLong(DATA_OFFSET, data);
+            file.position(HEADER_SIZE);
+            for (int loggerId = 0; loggerId < LOGGER_NAMES.length; loggerId++) {
+                if (LOGGER_NAMES[loggerId] != null) {
+                    file.putInt(loggerId);
+                    putName(LOGGER_NAMES[loggerId]);
+                    file.putInt(OPERATION_NAMES[loggerId].length);
+                    for (String op : OPERATION_NAMES[loggerId]) {
+                        putName(op);
+                    }
+                }
+            }
+        }
+
+        private void putName(String name) {
+            final byte[] utf8 = utf8(name);
+            file.putInt(utf8.length);
+            file.put(utf8);
+            file.position(file.position() + nameSize(utf8) - 4 - utf8.length);
+        }
+
+        long cursor() {
+            return file.getLong(CURSOR_OFFSET);
+        }
+
+        /**
+         * Writes a record, or only its first {@code argsWritten} arguments to model a writer that has not finished.
+         */
+        Record write(int header, int id, long[] args, int argsWritten) {
+            final long size = RECORD_ARGS_OFFSET + args.length * wordSize;
+            final long cursor = cursor();
+            final long start = recordStart(cursor, size, capacity);
+            file.putLong(CURSOR_OFFSET, start + size);
+            if (start != cursor) {
+                file.putInt(data + (int) (cursor % capacity), PAD);
+                updateSyncTable(cursor, start);
+            }
+            updateSyncTable(start, start + size);
+            final int record = data + (int) (start % capacity);
+            file.putInt(record, 0);
+            file.putInt(record + RECORD_ID_OFFSET, id);
+            final long[] values = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = wordSize == 8 ? args[i] : args[i] & 0xFFFFFFFFL;
+                if (i < argsWritten) {
+                    if (wordSize == 8) {
+                        file.putLong(record + RECORD_ARGS_OFFSET + i * wordSize, args[i]);
+                    } else {
+                        file.putInt(record + RECORD_ARGS_OFFSET + i * wordSize, (int) args[i]);
+                    }
+                }
+            }
+            if (argsWritten == args.length) {
+                file.putInt(record, header);
+            }
+            return new Record(start, header, id, values);
+        }
+
+        private void updateSyncTable(long start, long end) {
+            for (long page = firstSyncPage(start); page < end; page += SYNC_PAGE_SIZE) {
+                file.putLong(syncTable + syncTableIndex(page, pages) * 8, page == start ? start : end);
+            }
+        }
+
+        File save(boolean closed) throws IOException {
+            file.putInt(FLAGS_OFFSET, closed ? CLOSED : 0);
+            final File path = File.createTempFile("vmlog", ".bin");
+            path.deleteOnExit();
+            final FileOutputStream out = new FileOutputStream(path);
+            try {
+                out.write(file.array());
+            } finally {
+                out.close();
+            }
+            return path;
+        }
+    }
+
+    private static byte[] utf8(String name) {
+        try {
+            return name.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new InternalError();
+        }
+    }
+
+    private static int header(int loggerId, int op, int thread, int argCount) {
+        return (thread << VMLog.Record.THREAD_SHIFT) | (op << VMLog.Record.OPERATION_SHIFT) | (loggerId << VMLog.Record.LOGGER_ID_SHIFT) | argCount;
+    }
+
+    /**
+     * Writes {@code count} complete records with random loggers, operations, threads and argument counts. Every byte of
+     * an argument is non-zero, so that a stale slot is never mistaken for a record in progress.
+     */
+    private static List<Record> writeRecords(Writer writer, Random random, int count, int firstId) {
+        final List<Record> written = new ArrayList<Record>();
+        for (int id = firstId; id < firstId + count; id++) {
+            final boolean a = random.nextBoolean();
+            final long[] args = new long[random.nextInt(VMLog.Record.MAX_ARGS + 1)];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = 0x0101010101010101L * (1 + random.nextInt(255));
+            }
+            final int header = header(a ? LOGGER_A : LOGGER_B, a ? random.nextInt(2) : 0, 1 + random.nextInt(20), args.length);
+            written.add(writer.write(header, id, args, args.length));
+        }
+        return written;
+    }
+
+    private static List<Record> read(File file) throws IOException {
+        final List<Record> read = new ArrayList<Record>();
+        new VMLogFileFormat.Reader(file).read(new VMLogFileFormat.RecordVisitor() {
+            public void visitRecord(int header, int id, long[] args) {
+                read.add(new Record(-1, header, id, Arrays.copyOf(args, VMLog.Record.getArgCount(header))));
+            }
+        });
+        return read;
+    }
+
+    private static List<String> convert(File file) throws Exception {
+        final File text = File.createTempFile("vmlog", ".txt");
+        text.deleteOnExit();
+        ConvertLog.main(new String[] {"-vmlog", "-f", file.getPath(), "-o", text.getPath()});
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader in = new BufferedReader(new FileReader(text));
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    /**
+     * Checks that a file holds exactly the newest intact records of those written: an unbroken run ending with the
+     * last complete record, including every record that starts more than a sync page after the overwritten part of
+     * the data area.
+     */
+    private static void check(Writer writer, List<Record> written, boolean closed) throws Exception {
+        final File file = writer.save(closed);
+        assertEquals(closed, new VMLogFileFormat.Reader(file).isClosed());
+        final List<Record> read = read(file);
+        assertFalse(read.isEmpty());
+        final int first = written.size() - read.size();
+        assertTrue(first >= 0);
+        assertEquals(written.subList(first, written.size()), read);
+        final long overwritten = writer.cursor() - writer.capacity;
+        assertTrue(written.get(first).start >= overwritten);
+        if (first > 0) {
+            assertTrue(written.get(first - 1).start < overwritten + SYNC_PAGE_SIZE);
+        }
+
+        final List<String> expected = new ArrayList<String>();
+        for (Record r : read) {
+            expected.add(r.toString());
+        }
+        assertEquals(expected, convert(file));
+    }
+
+    public void test_unwrapped() throws Exception {
+        final Writer writer = new Writer(8, ByteOrder.LITTLE_ENDIAN, 4 * SYNC_PAGE_SIZE);
+        final List<Record> written = writeRecords(writer, new Random(1), 100, 1);
+        assertTrue(writer.cursor() < writer.capacity);
+        check(writer, written, true);
+        assertEquals(100, read(writer.save(true)).size());
+    }
+
+    /**
+     * Writes many laps of the data area, for both word sizes and byte orders, and checks the result after each of
+     * several batches so that the cursor ends at various points of the last lap.
+     */
+    public void test_wrapped() throws Exception {
+        final Random random = new Random(2);
+        for (int wordSize : new int[] {8, 4}) {
+            for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+                final Writer writer = new Writer(wordSize, order, 4 * SYNC_PAGE_SIZE);
+                final List<Record> written = new ArrayList<Record>();
+                for (int batch = 0; batch < 10; batch++) {
+                    written.addAll(writeRecords(writer, random, 500 + random.nextInt(500), written.size() + 1));
+                    assertTrue(writer.cursor() > writer.capacity);
+                    check(writer, written, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * A writer that has cleared the header of its slot but not yet written all arguments hides the record, even though
+     * the slot still holds parts of an older record, and the reader stops there.
+     */
+    public void test_unfinishedRecordAfterWrap() throws Exception {
+        final Random random = new Random(3);
+        final Writer writer = new Writer(8, ByteOrder.LITTLE_ENDIAN, 4 * SYNC_PAGE_SIZE);
+        final List<Record> written = writeRecords(writer, random, 2000, 1);
+        final long[] args = {0x1111111111111111L, 0x2222222222222222L, 0x3333333333333333L, 0x4444444444444444L, 0x5555555555555555L};
+        final long start = recordStart(writer.cursor(), RECORD_ARGS_OFFSET + args.length * 8, writer.capacity);
+        // the slot holds data of an older record, which would be read as a header had it not been cleared
+        assertTrue(writer.file.getInt(writer.data + (int) (start % writer.capacity)) != 0);
+        writer.write(header(LOGGER_A, 1, 7, args.length), written.size() + 1, args, 3);
+        check(writer, written, false);
+    }
+
+    /**
+     * The records written after an unfinished one are not read, since the reader cannot tell where the unfinished
+     * record ends without its header.
+     */
+    public void test_unfinishedRecordFollowedByOthers() throws Exception {
+        final Random random = new Random(4);
+        final Writer writer = new Writer(8, ByteOrder.LITTLE_ENDIAN, 4 * SYNC_PAGE_SIZE);
+        final List<Record> written = writeRecords(writer, random, 1000, 1);
+        writer.write(header(LOGGER_B, 0, 2, 1), written.size() + 1, new long[] {0x0101010101010101L}, 0);
+        writeRecords(writer, random, 10, written.size() + 2);
+        check(writer, written, false);
+    }
+}
@@ -73,6 +73,7 @@ import com.sun.max.jdwp.vm.proxy.VMValue;
 /**
  * This class is respondible for handling a JDWP session in terms of managing the JDWP object space.
  * It contains utility functions for looking up the identifier of an object or looking up an object based on the identifier.
+ * The identifier maps are guarded by the session's monitor, as the server may handle query commands concurrently.
  *
  */
 public class JDWPSession {
@@ -156,7 +157,7 @@ public class JDWPSession {
      * @param idKlass the class of the ID object
      * @return the ID object representing the given Provider object
      */
-    private <Provider_Type extends Provider, ID_Type extends ID> ID_Type makeID(Provider_Type provider, Class<ID_Type> idKlass) {
+    private synchronized <Provider_Type extends Provider, ID_Type extends ID> ID_Type makeID(Provider_Type provider, Class<ID_Type> idKlass) {
         if (provider == null) {
             return ID.create(0, idKlass);
         }
@@ -192,7 +193,7 @@ public class JDWPSession {
      * @throws JDWPException this exception is thrown, when no provider object was found
      */
     @SuppressWarnings("unchecked")
-    private <Provider_Type extends Provider, ID_Type extends ID> Provider_Type lookup(int errorCode, Class<Provider_Type> klass, ID_Type id) throws JDWPException {
+    private synchronized <Provider_Type extends Provider, ID_Type extends ID> Provider_Type lookup(int errorCode, Class<Provider_Type> klass, ID_Type id) throws JDWPException {
 
         if (id.value() == 0) {
             return null;
@@ -236,7 +237,7 @@ public class JDWPSession {
      * @param f
      * @throws JDWPException
      */
-    private void checkField(ReferenceTypeProvider referenceTypeProvider, FieldProvider fieldProvider) throws JDWPException {
+    private synchronized void checkField(ReferenceTypeProvider referenceTypeProvider, FieldProvider fieldProvider) throws JDWPException {
 
         if (!this.fieldToReferenceType.containsKey(fieldProvider)) {
             fieldToReferenceType.put(fieldProvider, referenceTypeProvider);
@@ -248,7 +249,7 @@ public class JDWPSession {
         // }
     }
 
-    private void checkMethod(ReferenceTypeProvider refType, MethodProvider m) throws JDWPException {
+    private synchronized void checkMethod(ReferenceTypeProvider refType, MethodProvider m) throws JDWPException {
         if (!this.methodToReferenceType.containsKey(m)) {
             methodToReferenceType.put(m, refType);
         }
@@ -260,7 +261,7 @@ public class JDWPSession {
         // }
     }
 
-    private void checkFrame(ThreadProvider thread, FrameProvider frameProvider) throws JDWPException {
+    private synchronized void checkFrame(ThreadProvider thread, FrameProvider frameProvider) throws JDWPException {
         if (!this.frameToThread.containsKey(frameProvider)) {
             frameToThread.put(frameProvider, thread);
         }
@@ -23,15 +23,22 @@
 package com.sun.max.jdwp.server;
 
 import java.io.*;
-import java.net.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import com.sun.max.jdwp.constants.Error;
 import com.sun.max.jdwp.data.*;
+import com.sun.max.jdwp.protocol.*;
 
 /**
  * A JDWPServer object manages a command handler registry and can be started to listen for incoming JDWP connections.
+ * <p>
+ * A single selector thread accepts connections, reads packets and writes queued replies for all clients. The packets of
+ * each client are handed to a {@link CommandDispatcher}, which runs consecutive {@linkplain #isQuery query} commands
+ * concurrently on a shared pool and runs every other command alone, after all earlier commands have completed.
+ * Replies may therefore be sent out of order, which JDWP permits as they are matched to commands by id.
  *
  */
 public class JDWPServer {
@@ -39,29 +46,110 @@ public class JDWPServer {
     private static final Logger LOGGER = Logger.getLogger(JDWPServer.class.getName());
     private static final int TIMEOUT = 2000;
 
-    private ServerSocket serverSocket;
-    private boolean shutdown;
+    /**
+     * Packed command set and command ids of the commands that may run concurrently with each other. These only read
+     * immutable VM information or the local copies of class and method metadata. Commands that may create
+     * {@code TeleObject}s, such as those reading values, threads, frames or the fields and methods of a class, must
+     * hold the VM lock and are therefore not queries.
+     */
+    private static final Set<Integer> QUERY_COMMANDS = new HashSet<Integer>();
+
+    /**
+     * Command sets all of whose commands are queries.
+     */
+    private static final Set<Integer> QUERY_COMMAND_SETS = new HashSet<Integer>();
+
+    static {
+        QUERY_COMMAND_SETS.add(MethodCommands.COMMAND_SET);
+
+        addQuery(VirtualMachineCommands.COMMAND_SET, VirtualMachineCommands.Version.COMMAND);
+        addQuery(VirtualMachineCommands.COMMAND_SET, VirtualMachineCommands.IDSizes.COMMAND);
+        addQuery(VirtualMachineCommands.COMMAND_SET, VirtualMachineCommands.Capabilities.COMMAND);
+        addQuery(VirtualMachineCommands.COMMAND_SET, VirtualMachineCommands.ClassPaths.COMMAND);
+        addQuery(VirtualMachineCommands.COMMAND_SET, VirtualMachineCommands.CapabilitiesNew.COMMAND);
+
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.Signature.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.Modifiers.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.SourceFile.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.Status.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.SourceDebugExtension.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.SignatureWithGeneric.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.ClassFileVersion.COMMAND);
+        addQuery(ReferenceTypeCommands.COMMAND_SET, ReferenceTypeCommands.ConstantPool.COMMAND);
+    }
+
+    private static void addQuery(int commandSetId, byte commandId) {
+        QUERY_COMMANDS.add((commandSetId << 8) | (commandId & 0xff));
+    }
+
+    /**
+     * Determines whether a command may run concurrently with other queries.
+     */
+    static boolean isQuery(byte commandSetId, byte commandId) {
+        final int set = commandSetId & 0xff;
+        return QUERY_COMMAND_SETS.contains(set) || QUERY_COMMANDS.contains((set << 8) | (commandId & 0xff));
+    }
+
+    private final int dispatchThreads;
+    private ExecutorService queryExecutor;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private volatile boolean shutdown;
+
+    /**
+     * Clients with newly queued output, to be flushed by the selector thread.
+     */
+    private final ConcurrentLinkedQueue<Client> flushRequests = new ConcurrentLinkedQueue<Client>();
+
+    /**
+     * Creates a server that runs query commands on as many threads as there are processors.
+     */
+    public JDWPServer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a server.
+     *
+     * @param dispatchThreads the number of threads on which query commands are run concurrently, or zero to run all
+     *            commands of a client one after the other
+     */
+    public JDWPServer(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+    }
 
     /**
      * Shuts down the JDWP server. The server must be running.
      */
     public void shutdown() {
-        assert serverSocket != null : "Not running!";
+        assert serverChannel != null : "Not running!";
         assert !shutdown : "Already shutting down!";
         shutdown = true;
+        selector.wakeup();
     }
 
     /**
-     * Starts the thread that waits for incoming JDWP connections.
+     * Starts the thread that waits for incoming JDWP connections and serves the connected clients.
      *
-     * @param serverSocket the server socket on which to listen for incoming connections
-     * @throws IOException this exception is thrown, when the server socket could not be created
+     * @param serverChannel the bound server socket channel on which to listen for incoming connections
+     * @throws IOException this exception is thrown, when the selector could not be created
      */
-    public void start(ServerSocket serverSocket) throws IOException {
-        assert this.serverSocket == null : "Already started!";
-        this.serverSocket = serverSocket;
-        this.serverSocket.setSoTimeout(TIMEOUT);
-        new Thread(waitForClientsThread).start();
+    public void start(ServerSocketChannel serverChannel) throws IOException {
+        assert this.serverChannel == null : "Already started!";
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        if (dispatchThreads > 0) {
+            queryExecutor = Executors.newFixedThreadPool(dispatchThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "JDWP query handler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        new Thread(selectorThread, "JDWP selector").start();
     }
 
     /**
@@ -74,24 +162,59 @@ public class JDWPServer {
     }
 
     /**
-     * Thread waiting for clients to connect to the JDWP server.
+     * Thread accepting clients, reading their packets and writing their queued output.
      */
-    private Runnable waitForClientsThread = new Runnable() {
+    private Runnable selectorThread = new Runnable() {
         public void run() {
             LOGGER.info("JDWPServer waiting for clients");
             try {
                 while (!shutdown) {
-                    try {
-                        final Socket clientSocket = serverSocket.accept();
-                        new ClientThread(clientSocket).start();
-                    } catch (SocketTimeoutException e) {
+                    selector.select(TIMEOUT);
+                    for (Client client = flushRequests.poll(); client != null; client = flushRequests.poll()) {
+                        client.flush();
+                    }
+                    final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        final SelectionKey key = iterator.next();
+                        iterator.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            final SocketChannel channel = serverChannel.accept();
+                            if (channel != null) {
+                                new Client(channel);
+                            }
+                            continue;
+                        }
+                        final Client client = (Client) key.attachment();
+                        if (key.isReadable()) {
+                            client.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.flush();
+                        }
                     }
                 }
             } catch (IOException e) {
-                LOGGER.severe("Exception occurred while waiting for clients: " + e.toString());
+                LOGGER.severe("Exception occurred while serving clients: " + e.toString());
             } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Client) {
+                        ((Client) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "IO exception when closing selector", e);
+                }
+                if (queryExecutor != null) {
+                    queryExecutor.shutdown();
+                    queryExecutor = null;
+                }
                 LOGGER.info("JDWP server is shut down");
-                serverSocket = null;
+                serverChannel = null;
                 shutdown = false;
             }
         }
@@ -135,59 +258,180 @@ public class JDWPServer {
     };
 
     /**
-     * Thread that is started for each client connection.
+     * A connected client. Its socket is served by the selector thread and its commands by its {@link CommandDispatcher}.
      */
-    private class ClientThread extends Thread {
+    private final class Client {
 
-        private Socket socket;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final JDWPStream stream;
+        private final CommandDispatcher dispatcher;
 
-        ClientThread(Socket socket) {
-            this.socket = socket;
+        Client(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+            this.stream = new JDWPStream(channel, new Runnable() {
+                public void run() {
+                    flushRequests.add(Client.this);
+                    selector.wakeup();
+                }
+            });
+            this.dispatcher = new CommandDispatcher(this);
+            new Thread(dispatcher, "JDWP dispatcher").start();
         }
 
-        @Override
-        public void run() {
+        void read() {
+            try {
+                final List<byte[]> packets = stream.read();
+                if (packets == null) {
+                    close();
+                    return;
+                }
+                for (byte[] packet : packets) {
+                    dispatcher.submit(packet);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "IO exception while reading from client", e);
+                close();
+            }
+        }
 
+        void flush() {
+            if (!key.isValid()) {
+                return;
+            }
             try {
-                final JDWPStream stream = new JDWPStream(socket.getInputStream(), socket.getOutputStream());
-                stream.handshake();
-                LOGGER.info("Handshake passed successfully!");
+                if (stream.flush()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                } else {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "IO exception while writing to client", e);
+                close();
+            }
+        }
 
-                while (!shutdown) {
-                    try {
-                        final IncomingPacket<? extends IncomingData, ? extends OutgoingData> incomingPacket = stream.receive(commandHandlerRegistry);
-                        try {
-                            final ReplyPacket<? extends IncomingData, ? extends OutgoingData> replyPacket = incomingPacket.handle(stream);
-                            if (replyPacket == null) {
-                                LOGGER.warning("No handler found for command " + incomingPacket.getCommandSetId() + "/" + incomingPacket.getCommandId() + "!");
-                                throw new JDWPNotImplementedException();
-                            }
-                            stream.send(replyPacket);
-                        } catch (JDWPException e) {
-                            LOGGER.warning("JDWP exception occured: " + e);
-                            stream.send(incomingPacket.createErrorReply((short) e.errorCode()));
-                        } catch (Throwable t) {
-                            LOGGER.log(Level.SEVERE, "Severe generic exception occured while handling packet", t);
-                            stream.send(incomingPacket.createErrorReply((short) Error.INTERNAL));
+        void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            dispatcher.close();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "IO exception when closing socket", e);
+            }
+            LOGGER.info("Client shutdown!");
+        }
+    }
 
-                        }
+    /**
+     * Handles the commands of one client in the order received, except that consecutive query commands are run
+     * concurrently. A command that is not a query waits for all earlier commands to complete and then runs alone on the
+     * dispatcher thread.
+     */
+    private final class CommandDispatcher implements Runnable {
+
+        private final Client client;
+        private final LinkedBlockingQueue<byte[]> packets = new LinkedBlockingQueue<byte[]>();
+        private final List<Future<?>> queriesInFlight = new ArrayList<Future<?>>();
+        private final byte[] closeMarker = new byte[0];
+
+        CommandDispatcher(Client client) {
+            this.client = client;
+        }
+
+        void submit(byte[] packet) {
+            packets.add(packet);
+        }
+
+        void close() {
+            packets.add(closeMarker);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    final byte[] packet = packets.take();
+                    if (packet == closeMarker) {
+                        break;
+                    }
+                    final IncomingPacket<? extends IncomingData, ? extends OutgoingData> incomingPacket;
+                    try {
+                        incomingPacket = client.stream.decode(packet, commandHandlerRegistry);
                     } catch (JDWPIncomingPacketException e) {
                         LOGGER.warning("JDWP exception occured while reading packet: " + e.innerException());
-                        stream.send(e.packet().createErrorReply((short) e.innerException().errorCode()));
+                        send(e.packet().createErrorReply((short) e.innerException().errorCode()));
+                        continue;
+                    } catch (IOException e) {
+                        LOGGER.log(Level.SEVERE, "IO exception while decoding packet", e);
+                        continue;
+                    }
+                    final ExecutorService executor = queryExecutor;
+                    if (executor != null && incomingPacket.getHandler() != null && isQuery(incomingPacket.getCommandSetId(), incomingPacket.getCommandId())) {
+                        retireCompletedQueries();
+                        queriesInFlight.add(executor.submit(new Runnable() {
+                            public void run() {
+                                handle(incomingPacket);
+                            }
+                        }));
+                    } else {
+                        awaitQueries();
+                        handle(incomingPacket);
                     }
                 }
+                awaitQueries();
+            } catch (InterruptedException e) {
+                LOGGER.warning("JDWP dispatcher interrupted");
+            }
+        }
 
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "IO exception in the client thread", e);
-            } finally {
+        private void retireCompletedQueries() {
+            final Iterator<Future<?>> iterator = queriesInFlight.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isDone()) {
+                    iterator.remove();
+                }
+            }
+        }
 
+        private void awaitQueries() throws InterruptedException {
+            for (Future<?> query : queriesInFlight) {
                 try {
-                    socket.close();
-                } catch (IOException e) {
-                    LOGGER.log(Level.SEVERE, "IO exception when closing socket", e);
+                    query.get();
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "Query handler failed", e.getCause());
+                }
+            }
+            queriesInFlight.clear();
+        }
+
+        private void handle(IncomingPacket<? extends IncomingData, ? extends OutgoingData> incomingPacket) {
+            try {
+                final ReplyPacket<? extends IncomingData, ? extends OutgoingData> replyPacket = incomingPacket.handle(client.stream);
+                if (replyPacket == null) {
+                    LOGGER.warning("No handler found for command " + incomingPacket.getCommandSetId() + "/" + incomingPacket.getCommandId() + "!");
+                    throw new JDWPNotImplementedException();
                 }
+                send(replyPacket);
+            } catch (JDWPException e) {
+                LOGGER.warning("JDWP exception occured: " + e);
+                send(incomingPacket.createErrorReply((short) e.errorCode()));
+            } catch (Throwable t) {
+                LOGGER.log(Level.SEVERE, "Severe generic exception occured while handling packet", t);
+                send(incomingPacket.createErrorReply((short) Error.INTERNAL));
+            }
+        }
 
-                LOGGER.info("Client shutdown!");
+        private void send(ReplyPacket<? extends IncomingData, ? extends OutgoingData> replyPacket) {
+            try {
+                client.stream.send(replyPacket);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "IO exception while encoding reply", e);
             }
         }
     }
@@ -24,11 +24,14 @@ package com.sun.max.jdwp.server;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,126 +47,190 @@ import com.sun.max.jdwp.data.JDWPSender;
 import com.sun.max.jdwp.data.OutgoingData;
 import com.sun.max.jdwp.data.ReplyPacket;
 
+/**
+ * The JDWP packet stream of one client connection over a non-blocking socket channel.
+ * <p>
+ * Incoming bytes are {@linkplain #read() read} by the server's selector thread, which splits them into complete packets.
+ * Outgoing packets may be sent from any thread: each is encoded into a single buffer and queued, and the selector thread
+ * is asked to {@linkplain #flush() flush} the queue. Replies queued while a flush is pending are written together with a
+ * single gathering write.
+ */
 class JDWPStream implements JDWPSender {
 
     private static final Logger LOGGER = Logger.getLogger(JDWPStream.class.getName());
     private static final String HANDSHAKE = "JDWP-Handshake";
     private static final int HEADER_SIZE = 11;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
 
-    private DataInputStream in;
-    private DataOutputStream out;
-
-    // Counter that is increased for each sent outgoing command.
-    private int outgoingID;
+    private final SocketChannel channel;
 
-    JDWPStream(InputStream is, OutputStream os) {
-        in = new DataInputStream(is);
-        out = new DataOutputStream(os);
-    }
+    /**
+     * Called when output is queued on an empty queue, to get the selector thread to {@linkplain #flush() flush} it.
+     */
+    private final Runnable flushRequest;
 
-    public synchronized void sendCommand(OutgoingData outgoingData) throws IOException {
-        outgoingID++;
-        send(outgoingID, outgoingData);
-    }
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean handshakeDone;
 
-    private void send(int id, OutgoingData outgoingData) throws IOException {
+    /**
+     * Encoded packets not yet completely written to the channel.
+     */
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
 
-        LOGGER.info("***************************************************************************");
-        LOGGER.info("Sending eventPacket with id=" + id);
-        LOGGER.info(outgoingData.toString());
+    // Counter that is increased for each sent outgoing command.
+    private final AtomicInteger outgoingID = new AtomicInteger();
 
-        final byte[] dataBytes = toByteArray(outgoingData);
-        final int length = HEADER_SIZE + dataBytes.length;
-        out.writeInt(length);
-        out.writeInt(id);
-        out.writeByte(0);
-        out.writeByte(outgoingData.getCommandSetId());
-        out.writeByte(outgoingData.getCommandId());
-        out.write(dataBytes);
+    JDWPStream(SocketChannel channel, Runnable flushRequest) {
+        this.channel = channel;
+        this.flushRequest = flushRequest;
     }
 
-    private byte[] toByteArray(OutgoingData outgoingData) {
-        if (outgoingData == null) {
-            return new byte[0];
-        }
-
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            outgoingData.write(new JDWPOutputStream(out));
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, null, ex);
+    public void sendCommand(OutgoingData outgoingData) throws IOException {
+        final int id = outgoingID.incrementAndGet();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Sending eventPacket with id=" + id + ": " + outgoingData);
         }
-        return out.toByteArray();
+        enqueue(encode(id, (byte) 0, outgoingData.getCommandSetId(), outgoingData.getCommandId(), outgoingData));
     }
 
     /**
      * Sends a reply packet to the client.
      *
      * @param packet the packet to be sent
-     * @throws IOException this exception is thrown when a problem occurred while writing the packet bytes
+     * @throws IOException this exception is thrown when a problem occurred while encoding the packet bytes
      */
-    public synchronized <IncomingData_Type extends IncomingData, OutgoingData_Type extends OutgoingData> void send(ReplyPacket<IncomingData_Type, OutgoingData_Type> packet) throws IOException {
-
-        LOGGER.info("Sending reply packet: " + packet);
-        final byte[] dataBytes = toByteArray(packet.getData());
-        final int length = HEADER_SIZE + dataBytes.length;
-        out.writeInt(length);
-        out.writeInt(packet.getId());
-        out.writeByte(packet.getFlags());
-        out.writeShort(packet.getErrorCode());
-        out.write(dataBytes);
+    public <IncomingData_Type extends IncomingData, OutgoingData_Type extends OutgoingData> void send(ReplyPacket<IncomingData_Type, OutgoingData_Type> packet) throws IOException {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Sending reply packet: " + packet);
+        }
+        final short errorCode = packet.getErrorCode();
+        enqueue(encode(packet.getId(), packet.getFlags(), (byte) (errorCode >> 8), (byte) errorCode, packet.getData()));
     }
 
     /**
-     * Performs a JDWP handshake and throws an exception if the handshake fails.
-     *
-     * @throws IOException this exception is thrown if the handshake fails
+     * Encodes a packet with its 11 byte header, the last two bytes of which are either the command set and command of a
+     * command packet or the error code of a reply packet.
      */
-    public void handshake() throws IOException {
-        if (readAndCheckStringAsBytes(HANDSHAKE)) {
-            writeStringAsBytes(HANDSHAKE);
-        } else {
-            throw new IOException("JDWP handshake failed");
+    private static byte[] encode(int id, byte flags, byte header9, byte header10, OutgoingData outgoingData) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(0);
+        header.writeInt(id);
+        header.writeByte(flags);
+        header.writeByte(header9);
+        header.writeByte(header10);
+        if (outgoingData != null) {
+            outgoingData.write(new JDWPOutputStream(bytes));
+        }
+        final byte[] result = bytes.toByteArray();
+        final int length = result.length;
+        result[0] = (byte) (length >>> 24);
+        result[1] = (byte) (length >>> 16);
+        result[2] = (byte) (length >>> 8);
+        result[3] = (byte) length;
+        return result;
+    }
+
+    private void enqueue(byte[] bytes) {
+        final boolean wasEmpty;
+        synchronized (pending) {
+            wasEmpty = pending.isEmpty();
+            pending.add(ByteBuffer.wrap(bytes));
+        }
+        if (wasEmpty) {
+            flushRequest.run();
         }
     }
 
-    private void writeStringAsBytes(String s) throws IOException {
-        for (int i = 0; i < s.length(); i++) {
-            assert ((byte) s.charAt(i)) == s.charAt(i) : "String may only consist of ASCII characters";
-            out.writeByte((byte) s.charAt(i));
+    /**
+     * Writes as much of the queued output as the channel accepts. Must only be called by the selector thread.
+     *
+     * @return {@code true} if all queued output has been written
+     */
+    boolean flush() throws IOException {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                final long written = channel.write(pending.toArray(new ByteBuffer[pending.size()]));
+                while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+                    pending.poll();
+                }
+                if (written == 0 && !pending.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 
-    private boolean readAndCheckStringAsBytes(String s) throws IOException {
-        for (int i = 0; i < s.length(); i++) {
-            assert ((byte) s.charAt(i)) == s.charAt(i) : "String may only consist of ASCII characters";
-            final byte b = in.readByte();
-            if (b != ((byte) s.charAt(i))) {
-                return false;
+    /**
+     * Reads the bytes available on the channel, checking the JDWP handshake first. Must only be called by the selector
+     * thread.
+     *
+     * @return the complete packets received, or {@code null} if the client closed the connection
+     * @throws IOException this exception is thrown if reading fails or the handshake fails
+     */
+    List<byte[]> read() throws IOException {
+        if (channel.read(in) < 0) {
+            return null;
+        }
+        in.flip();
+        final List<byte[]> packets = new ArrayList<byte[]>();
+        int needed = 0;
+        if (!handshakeDone) {
+            if (in.remaining() < HANDSHAKE.length()) {
+                in.compact();
+                return packets;
+            }
+            for (int i = 0; i < HANDSHAKE.length(); i++) {
+                if (in.get() != (byte) HANDSHAKE.charAt(i)) {
+                    throw new IOException("JDWP handshake failed");
+                }
+            }
+            enqueue(HANDSHAKE.getBytes("US-ASCII"));
+            handshakeDone = true;
+            LOGGER.info("Handshake passed successfully!");
+        }
+        while (in.remaining() >= 4) {
+            final int length = in.getInt(in.position());
+            if (length < HEADER_SIZE) {
+                throw new IOException("Invalid JDWP packet length " + length);
             }
+            if (in.remaining() < length) {
+                needed = length;
+                break;
+            }
+            final byte[] packet = new byte[length];
+            in.get(packet);
+            packets.add(packet);
+        }
+        in.compact();
+        if (needed > in.capacity()) {
+            final ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, in.capacity() * 2));
+            in.flip();
+            larger.put(in);
+            in = larger;
         }
-        return true;
+        return packets;
     }
 
     /**
-     * Tries to receive a new JDWP packet and decode it by lookup up a command handler in the given command handler
-     * registry.
+     * Decodes a complete packet received by {@link #read()} by looking up a command handler in the given command
+     * handler registry.
      *
+     * @param packet the bytes of the packet, including its header
      * @param registry the registry that is used to lookup the command handler based on the bytes in the packet header
-     * @return a newly created IncomingPacket object representing the read packet
-     * @throws IOException this exception is thrown, when a problem occurred while reading the packet bytes
+     * @return a newly created IncomingPacket object representing the packet
+     * @throws IOException this exception is thrown, when the packet is shorter than its contents require
      * @throws JDWPIncomingPacketException this exception is thrown, when a problem occurred while translating the
      *             packet bytes
      */
-    public IncomingPacket<? extends IncomingData, ? extends OutgoingData> receive(CommandHandlerRegistry registry) throws IOException, JDWPIncomingPacketException {
-
-        final int length = in.readInt();
-        final int id = in.readInt();
-        final byte flags = in.readByte();
-        final byte commandSetId = in.readByte();
-        final byte commandId = in.readByte();
-        final byte[] data = new byte[length - HEADER_SIZE];
-        in.read(data);
+    IncomingPacket<? extends IncomingData, ? extends OutgoingData> decode(byte[] packet, CommandHandlerRegistry registry) throws IOException, JDWPIncomingPacketException {
+        final ByteBuffer header = ByteBuffer.wrap(packet);
+        final int length = header.getInt();
+        final int id = header.getInt();
+        final byte flags = header.get();
+        final byte commandSetId = header.get();
+        final byte commandId = header.get();
 
         final CommandHandler<? extends IncomingData, ? extends OutgoingData> handler = registry.findCommandHandler(commandSetId, commandId);
         if (handler == null) {
@@ -179,11 +246,12 @@ class JDWPStream implements JDWPSender {
             @SuppressWarnings("unchecked")
             final CommandHandler<IncomingData, OutgoingData> handlerDownCast = (CommandHandler<IncomingData, OutgoingData>) handler;
 
-            incomingData.read(new JDWPInputStream(new ByteArrayInputStream(data), handlerDownCast, incomingData));
+            incomingData.read(new JDWPInputStream(new ByteArrayInputStream(packet, HEADER_SIZE, length - HEADER_SIZE), handlerDownCast, incomingData));
             final IncomingPacket<? extends IncomingData, ? extends OutgoingData> p = createIncomingPacket(length, id, flags, commandSetId, commandId, incomingData, handler);
 
-            LOGGER.info("#####################################################################################");
-            LOGGER.info(CommandHandler.Static.getCommandName(handler) + ": " + p);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(CommandHandler.Static.getCommandName(handler) + ": " + p);
+            }
             return p;
 
         } catch (JDWPException e) {
@@ -54,6 +54,25 @@ public interface TeleChannelProtocol extends TeleChannelDataIOProtocol {
      * @return number of bytes actually written
      */
     int writeBytes(long dst, ByteBuffer src, int srcOffset, int length);
+    /**
+     * Reads a number of ranges from the target VM in a single request. The ranges are stored consecutively in {@code dst}.
+     * @param srcs virtual addresses of the ranges to read
+     * @param lengths number of bytes in each range
+     * @param count number of ranges to read
+     * @param dst the {@link java.nio.ByteBuffer byte buffer} to write to
+     * @param dstOffset offset in the byte buffer where writing of the first range should begin
+     * @return the number of leading ranges that were read completely
+     */
+    int readRanges(long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset);
+    /**
+     * Determines which of a set of pages have been written in the target VM since the previous call, and starts
+     * a new tracking interval.
+     * @param pages page-aligned addresses of the pages to query
+     * @param count number of pages to query
+     * @param dirty receives {@code true} for each page that was written
+     * @return 0 if successful, -1 if the channel cannot track dirty pages
+     */
+    int collectDirtyPages(long[] pages, int count, boolean[] dirty);
     /**
      * Gathers the set of active threads in the target VM.
      * This avoids explicit types so that different versions of the Inspector types can be used on the two sides
@@ -54,6 +54,22 @@ public class TeleChannelTransferBytes {
         return length;
     }
 
+    /**
+     * Reads a number of ranges one by one, for protocols that have no native support for batched reads.
+     *
+     * @return the number of leading ranges that were read completely
+     */
+    public static int readRanges(TeleChannelProtocol protocol, long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset) {
+        int localOffset = dstOffset;
+        for (int i = 0; i < count; i++) {
+            if (readBytes(protocol, dst, localOffset, lengths[i], Address.fromLong(srcs[i])) != lengths[i]) {
+                return i;
+            }
+            localOffset += lengths[i];
+        }
+        return count;
+    }
+
     public static int writeBytes(TeleChannelProtocol protocol, ByteBuffer src, int offset, int length, Address address) {
         int lengthLeft = length;
         int localOffset = offset;
@@ -55,6 +55,16 @@ public abstract class TeleChannelDataIOProtocolAdaptor extends TeleChannelDataIO
         return result;
     }
 
+    @Override
+    public int readRanges(long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset) {
+        return TeleChannelTransferBytes.readRanges(this, srcs, lengths, count, dst, dstOffset);
+    }
+
+    @Override
+    public int collectDirtyPages(long[] pages, int count, boolean[] dirty) {
+        return -1;
+    }
+
     @Override
     public int writeBytes(long dst, ByteBuffer src, int srcOffset, int length) {
         byte[] bytes;
@@ -54,7 +54,7 @@ public final class MappedByteBufferDataAccess extends DataAccessAdapter {
         int srcViewPos = asOffset(src);
         int srcViewLimit = srcViewPos + toRead;
         final ByteBuffer srcView = (ByteBuffer) buffer.duplicate().position(srcViewPos).limit(srcViewLimit);
-        dst.put(srcView);
+        ((ByteBuffer) dst.duplicate().position(dstOffset)).put(srcView);
         return toRead;
     }
 
@@ -750,6 +750,23 @@ public abstract class TeleProcess extends AbstractVmHolder implements TeleVMCach
         return bytesRead;
     }
 
+    public final int readRanges(long[] addresses, int[] lengths, int count, ByteBuffer buffer, int offset) throws DataIOError, TerminatedProcessIOException {
+        if (processState == TERMINATED) {
+            throw new TerminatedProcessIOException("Memory read of " + count + " ranges (process TERMINATED)");
+        }
+        if (processState != STOPPED && processState != null && Thread.currentThread() != requestHandlingThread) {
+            throw new DataIOError(Address.fromLong(addresses[0]), "Reading from process memory while processed not stopped [thread: " + Thread.currentThread().getName() + "]");
+        }
+        return readRanges0(addresses, lengths, count, buffer, offset);
+    }
+
+    public final int collectDirtyPages(long[] pageAddresses, int count, boolean[] dirty) {
+        if (processState == TERMINATED) {
+            return -1;
+        }
+        return collectDirtyPages0(pageAddresses, count, dirty);
+    }
+
     public final int write(ByteBuffer buffer, int offset, int length, Address address) throws DataIOError, IndexOutOfBoundsException, TerminatedProcessIOException {
         if (processState == TERMINATED) {
             final StringBuilder msg = new StringBuilder();
@@ -1056,6 +1073,35 @@ public abstract class TeleProcess extends AbstractVmHolder implements TeleVMCach
      */
     protected abstract int read0(Address address, ByteBuffer buffer, int offset, int length);
 
+    /**
+     * Reads a number of ranges from process memory. This default implementation reads them one at a time;
+     * platforms that can transfer many ranges in one request override it.
+     *
+     * @return the number of leading ranges that were read completely
+     * @see #readRanges(long[], int[], int, ByteBuffer, int)
+     */
+    protected int readRanges0(long[] addresses, int[] lengths, int count, ByteBuffer buffer, int offset) {
+        int localOffset = offset;
+        for (int i = 0; i < count; i++) {
+            if (read0(Address.fromLong(addresses[i]), buffer, localOffset, lengths[i]) != lengths[i]) {
+                return i;
+            }
+            localOffset += lengths[i];
+        }
+        return count;
+    }
+
+
+    /**
+     * Determines which pages were modified since the previous call, platform-specific implementation.
+     * By default dirty page tracking is not supported.
+     *
+     * @return 0 if successful, -1 if not supported
+     * @see #collectDirtyPages(long[], int, boolean[])
+     */
+    protected int collectDirtyPages0(long[] pageAddresses, int count, boolean[] dirty) {
+        return -1;
+    }
 
     /**
      * Writes bytes to process memory, platform-specific implementation.
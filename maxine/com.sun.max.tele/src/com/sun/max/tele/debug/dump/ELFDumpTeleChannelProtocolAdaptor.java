@@ -25,6 +25,7 @@ package com.sun.max.tele.debug.dump;
 import static com.oracle.max.elf.ELFProgramHeaderTable.*;
 
 import java.io.*;
+import java.nio.*;
 
 import com.oracle.max.elf.*;
 import com.sun.max.program.*;
@@ -34,7 +35,6 @@ import com.sun.max.tele.channel.iostream.*;
 import com.sun.max.tele.debug.*;
 import com.sun.max.tele.heap.*;
 import com.sun.max.tele.util.*;
-import com.sun.max.unsafe.*;
 import com.sun.max.vm.hosted.*;
 
 public class ELFDumpTeleChannelProtocolAdaptor extends TeleChannelDataIOProtocolAdaptor implements TeleChannelProtocol {
@@ -44,6 +44,7 @@ public class ELFDumpTeleChannelProtocolAdaptor extends TeleChannelDataIOProtocol
     protected RandomAccessFile dumpRaf;
     protected ELFHeader header;
     protected ELFProgramHeaderTable programHeaderTable;
+    private MappedDumpSegments segments;
     protected ELFSymbolLookup symbolLookup;
     protected MaxVM teleVM;
     protected static final String HEAP_SYMBOL_NAME = "theHeap";  // defined in image.c, holds the base address of the boot heap
@@ -58,6 +59,7 @@ public class ELFDumpTeleChannelProtocolAdaptor extends TeleChannelDataIOProtocol
             dumpRaf = new RandomAccessFile(dump, "r");
             this.header = ELFLoader.readELFHeader(dumpRaf);
             this.programHeaderTable = ELFLoader.readPHT(dumpRaf, header);
+            this.segments = new MappedDumpSegments(dumpRaf, programHeaderTable, header.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
             // This is not needed currently as we cannot look up symbols from shared libraries.
             //symbolLookup = new ELFSymbolLookup(new File(vm.getParent(), "libjvm.so"));
         } catch (Exception ex) {
@@ -147,17 +149,8 @@ public class ELFDumpTeleChannelProtocolAdaptor extends TeleChannelDataIOProtocol
     }
 
     protected ELFProgramHeaderTable.Entry64 findAddress(long addr) {
-        final Address address = Address.fromLong(addr);
-        for (ELFProgramHeaderTable.Entry entry : programHeaderTable.entries) {
-            ELFProgramHeaderTable.Entry64 entry64 = (ELFProgramHeaderTable.Entry64) entry;
-            if (entry64.p_type == PT_LOAD && entry64.p_filesz != 0) {
-                final Address end = Address.fromLong(entry64.p_vaddr).plus(entry64.p_memsz);
-                if (address.greaterEqual(Address.fromLong(entry64.p_vaddr)) && address.lessThan(end)) {
-                    return entry64;
-                }
-            }
-        }
-        return null;
+        final int index = segments.indexOf(addr);
+        return index < 0 ? null : segments.segmentAt(index);
     }
 
     /**
@@ -243,17 +236,12 @@ public class ELFDumpTeleChannelProtocolAdaptor extends TeleChannelDataIOProtocol
 
     @Override
     public int readBytes(long src, byte[] dst, int dstOffset, int length) {
-        final ELFProgramHeaderTable.Entry64 entry64 = findAddress(src);
-        if (entry64 == null) {
-            return 0;
-        }
-        try {
-            dumpRaf.seek(entry64.p_offset + (src - entry64.p_vaddr));
-            return dumpRaf.read(dst, dstOffset, length);
-        } catch (IOException ex) {
-            return 0;
-        }
+        return segments.read(src, ByteBuffer.wrap(dst), dstOffset, length);
+    }
 
+    @Override
+    public int readBytes(long src, ByteBuffer dst, int dstOffset, int length) {
+        return segments.read(src, dst, dstOffset, length);
     }
 
     @Override
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.debug.dump;
+
+import static com.oracle.max.elf.ELFProgramHeaderTable.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import com.oracle.max.elf.*;
+import com.sun.max.lang.*;
+import com.sun.max.tele.data.*;
+import com.sun.max.tele.util.*;
+import com.sun.max.unsafe.*;
+
+/**
+ * The {@code PT_LOAD} segments of an ELF core dump, memory mapped and indexed by virtual address.
+ * <p>
+ * The segments are kept in an array sorted by start address so that an address is resolved to its
+ * segment by binary search. Each segment is mapped lazily, in windows of at most {@link #WINDOW_SIZE}
+ * bytes, since a single {@link MappedByteBuffer} cannot exceed 2GB. Each window is served by a
+ * {@link MappedByteBufferDataAccess}. Bytes that are in the memory image of a segment but not in
+ * the file (i.e. beyond {@code p_filesz}) read as zero.
+ * <p>
+ * Reads take no lock, so that the threads of a parallel heap walk can read the dump at the same time. Each read
+ * goes through its own {@linkplain ByteBuffer#duplicate() duplicate} of a window's buffer, and a window that two
+ * threads map at the same time is installed only once.
+ */
+final class MappedDumpSegments {
+
+    /**
+     * The maximum size of a single mapping. Windows are aligned to this size relative to the start of
+     * their segment.
+     */
+    static final int WINDOW_SHIFT = 30;
+    static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    private final FileChannel channel;
+    private final ByteOrder byteOrder;
+
+    /**
+     * The segments sorted by {@link ELFProgramHeaderTable.Entry64#p_vaddr}.
+     */
+    private final ELFProgramHeaderTable.Entry64[] segments;
+
+    /**
+     * The start address of each segment, for binary search.
+     */
+    private final long[] starts;
+
+    /**
+     * The index in {@link #windows} of the first window of each segment.
+     */
+    private final int[] firstWindow;
+
+    /**
+     * The (lazily created) mapped windows of all segments.
+     */
+    private final AtomicReferenceArray<MappedByteBufferDataAccess> windows;
+
+    MappedDumpSegments(RandomAccessFile file, ELFProgramHeaderTable programHeaderTable, ByteOrder byteOrder) {
+        this.channel = file.getChannel();
+        this.byteOrder = byteOrder;
+        final ArrayList<ELFProgramHeaderTable.Entry64> loadSegments = new ArrayList<ELFProgramHeaderTable.Entry64>();
+        for (ELFProgramHeaderTable.Entry entry : programHeaderTable.entries) {
+            final ELFProgramHeaderTable.Entry64 entry64 = (ELFProgramHeaderTable.Entry64) entry;
+            if (entry64.p_type == PT_LOAD && entry64.p_filesz != 0) {
+                loadSegments.add(entry64);
+            }
+        }
+        segments = loadSegments.toArray(new ELFProgramHeaderTable.Entry64[loadSegments.size()]);
+        Arrays.sort(segments, new Comparator<ELFProgramHeaderTable.Entry64>() {
+            public int compare(ELFProgramHeaderTable.Entry64 a, ELFProgramHeaderTable.Entry64 b) {
+                return Long.compare(a.p_vaddr, b.p_vaddr);
+            }
+        });
+        starts = new long[segments.length];
+        firstWindow = new int[segments.length];
+        int windowCount = 0;
+        for (int i = 0; i < segments.length; i++) {
+            starts[i] = segments[i].p_vaddr;
+            firstWindow[i] = windowCount;
+            windowCount += (int) ((segments[i].p_filesz + WINDOW_SIZE - 1) >>> WINDOW_SHIFT);
+        }
+        windows = new AtomicReferenceArray<MappedByteBufferDataAccess>(windowCount);
+    }
+
+    /**
+     * Gets the index of the segment containing a given address.
+     *
+     * @return the index of the segment or -1 if {@code address} is not in any segment
+     */
+    int indexOf(long address) {
+        int index = Arrays.binarySearch(starts, address);
+        if (index < 0) {
+            index = -index - 2;
+            if (index < 0) {
+                return -1;
+            }
+        }
+        final ELFProgramHeaderTable.Entry64 segment = segments[index];
+        return address - segment.p_vaddr < segment.p_memsz ? index : -1;
+    }
+
+    ELFProgramHeaderTable.Entry64 segmentAt(int index) {
+        return segments[index];
+    }
+
+    private MappedByteBufferDataAccess window(int index, int windowIndex) {
+        final int slot = firstWindow[index] + windowIndex;
+        MappedByteBufferDataAccess window = windows.get(slot);
+        if (window == null) {
+            final ELFProgramHeaderTable.Entry64 segment = segments[index];
+            final long windowStart = (long) windowIndex << WINDOW_SHIFT;
+            final long size = Math.min(WINDOW_SIZE, segment.p_filesz - windowStart);
+            try {
+                final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, segment.p_offset + windowStart, size);
+                buffer.order(byteOrder);
+                window = new MappedByteBufferDataAccess(buffer, Address.fromLong(segment.p_vaddr + windowStart), WordWidth.BITS_64);
+            } catch (IOException ex) {
+                TeleError.unexpected("failed to map dump file segment at " + Long.toHexString(segment.p_vaddr + windowStart), ex);
+            }
+            if (!windows.compareAndSet(slot, null, window)) {
+                window = windows.get(slot);
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Reads bytes from the dump, crossing window and adjacent segment boundaries as necessary.
+     *
+     * @return the number of bytes read, which is less than {@code length} only if the range runs into an
+     *         address that is not in any segment
+     */
+    int read(long src, ByteBuffer dst, int dstOffset, int length) {
+        int n = 0;
+        int index = -1;
+        while (n < length) {
+            final long address = src + n;
+            if (index < 0 || address - segments[index].p_vaddr >= segments[index].p_memsz) {
+                index = indexOf(address);
+                if (index < 0) {
+                    break;
+                }
+            }
+            final ELFProgramHeaderTable.Entry64 segment = segments[index];
+            final long segmentOffset = address - segment.p_vaddr;
+            final int chunk;
+            if (segmentOffset < segment.p_filesz) {
+                final long windowEnd = Math.min((segmentOffset | (WINDOW_SIZE - 1)) + 1, segment.p_filesz);
+                chunk = (int) Math.min(length - n, windowEnd - segmentOffset);
+                window(index, (int) (segmentOffset >>> WINDOW_SHIFT)).read(Address.fromLong(address), dst, dstOffset + n, chunk);
+            } else {
+                chunk = (int) Math.min(length - n, segment.p_memsz - segmentOffset);
+                for (int i = 0; i < chunk; i++) {
+                    dst.put(dstOffset + n + i, (byte) 0);
+                }
+            }
+            n += chunk;
+        }
+        return n;
+    }
+}
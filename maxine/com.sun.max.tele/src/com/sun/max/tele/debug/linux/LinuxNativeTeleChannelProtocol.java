@@ -94,6 +94,16 @@ public class LinuxNativeTeleChannelProtocol extends UnixNativeTeleChannelProtoco
         return leaderTask.writeBytes(dst, src, false, srcOffset, length);
     }
 
+    @Override
+    public int readRanges(long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset) {
+        return leaderTask.readRanges(srcs, lengths, count, dst, dstOffset);
+    }
+
+    @Override
+    public int collectDirtyPages(long[] pages, int count, boolean[] dirty) {
+        return leaderTask.collectDirtyPages(pages, count, dirty);
+    }
+
     @Override
     public int writeBytes(long dst, ByteBuffer src, int srcOffset, int length) {
         if (src.isDirect()) {
@@ -68,6 +68,12 @@ public final class LinuxTask {
 
     private final LinuxTask leader;
 
+    /**
+     * Determines if the kernel tracks soft-dirty pages for this process. This is probed when the leader task is
+     * created, as {@linkplain #collectDirtyPages collecting} the dirty pages clears the flag used to detect it.
+     */
+    private final boolean hasSoftDirty;
+
     /**
      * Gets the (system-wide) unique task identifier (TID) of this task. The first task in a thread group is
      * the <i>leader</i> of the new thread group and its {@link #tgid TGID} is the same as its {@link #tid TID}.
@@ -104,6 +110,7 @@ public final class LinuxTask {
         this.tgid = tgid;
         this.tid = tid;
         this.leader = this;
+        this.hasSoftDirty = nativeHasSoftDirty(tgid);
     }
 
     /**
@@ -116,6 +123,7 @@ public final class LinuxTask {
         this.tgid = leader.tgid;
         this.tid = tid;
         this.leader = leader;
+        this.hasSoftDirty = leader.hasSoftDirty;
     }
 
     @Override
@@ -355,6 +363,83 @@ public final class LinuxTask {
         });
     }
 
+    /**
+     * Copies a number of ranges from the tele process into consecutive locations of a
+     * {@linkplain ByteBuffer#isDirect() direct ByteBuffer}, using as few system calls as possible.
+     *
+     * @return the number of leading ranges that were copied completely
+     */
+    private static native int nativeReadRanges(int tgid, int tid, long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset);
+
+    /**
+     * Reads a number of ranges in one request to the ptrace thread. Direct buffers are filled with a single
+     * native call; otherwise the ranges are read one by one through the /proc memory file.
+     *
+     * @return the number of leading ranges that were read completely
+     */
+    public int readRanges(final long[] srcs, final int[] lengths, final int count, final ByteBuffer dst, final int dstOffset) {
+        if (!isLeader()) {
+            return leader().readRanges(srcs, lengths, count, dst, dstOffset);
+        }
+        return execute(new Function<Integer>() {
+            public Integer call() throws Exception {
+                if (dst.isDirect()) {
+                    return nativeReadRanges(tgid, tid, srcs, lengths, count, dst, dstOffset);
+                }
+                int offset = dstOffset;
+                for (int i = 0; i < count; i++) {
+                    final int n = srcs[i] < 0 ?
+                        nativeReadBytes(tgid, tid, srcs[i], dst.array(), false, dst.arrayOffset() + offset, lengths[i]) :
+                        readFromMemoryFile(srcs[i], dst, offset, lengths[i]);
+                    if (n != lengths[i]) {
+                        return i;
+                    }
+                    offset += lengths[i];
+                }
+                return count;
+            }
+        });
+    }
+
+    private static native boolean nativeHasSoftDirty(int tgid);
+
+    private static native int nativeCollectDirtyPages(int tgid, long[] pages, int count, boolean[] dirty);
+
+    /**
+     * Queries and then clears the soft-dirty bits of the process.
+     *
+     * @return 0 if successful, -1 if the kernel does not support soft-dirty tracking
+     */
+    public int collectDirtyPages(final long[] pages, final int count, final boolean[] dirty) {
+        if (!isLeader()) {
+            return leader().collectDirtyPages(pages, count, dirty);
+        }
+        if (!hasSoftDirty) {
+            return -1;
+        }
+        return execute(new Function<Integer>() {
+            public Integer call() throws Exception {
+                return nativeCollectDirtyPages(tgid, pages, count, dirty);
+            }
+        });
+    }
+
+    private int readFromMemoryFile(long src, ByteBuffer dst, int offset, int length) throws IOException {
+        if (memory == null) {
+            memory = new RandomAccessFile("/proc/" + tgid() + "/mem", "r");
+        }
+        final ByteBuffer dstView = (ByteBuffer) dst.duplicate().limit(offset + length).position(offset);
+        int n = 0;
+        while (dstView.hasRemaining()) {
+            final int r = memory.getChannel().read(dstView, src + n);
+            if (r <= 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
     /**
      * Copies bytes from a given {@linkplain ByteBuffer#isDirect() direct ByteBuffer} or byte array into the tele process.
      *
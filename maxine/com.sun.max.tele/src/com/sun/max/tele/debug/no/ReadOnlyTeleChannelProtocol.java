@@ -184,6 +184,17 @@ public class ReadOnlyTeleChannelProtocol implements TeleChannelProtocol {
         return 0;
     }
 
+    @Override
+    public int readRanges(long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset) {
+        unexpected();
+        return 0;
+    }
+
+    @Override
+    public int collectDirtyPages(long[] pages, int count, boolean[] dirty) {
+        return -1;
+    }
+
     @Override
     public int writeBytes(long dst, ByteBuffer src, int srcOffset, int length) {
         unexpected();
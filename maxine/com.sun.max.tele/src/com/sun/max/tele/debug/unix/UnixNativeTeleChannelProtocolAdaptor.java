@@ -214,6 +214,16 @@ public class UnixNativeTeleChannelProtocolAdaptor implements TeleChannelProtocol
         return natives.readBytes(processHandle, src, dst.array(), false, dst.arrayOffset() + dstOffset, length);
     }
 
+    @Override
+    public int readRanges(long[] srcs, int[] lengths, int count, ByteBuffer dst, int dstOffset) {
+        return TeleChannelTransferBytes.readRanges(this, srcs, lengths, count, dst, dstOffset);
+    }
+
+    @Override
+    public int collectDirtyPages(long[] pages, int count, boolean[] dirty) {
+        return -1;
+    }
+
     @Override
     public int writeBytes(long dst, ByteBuffer src, int srcOffset, int length) {
         if (src.isDirect()) {
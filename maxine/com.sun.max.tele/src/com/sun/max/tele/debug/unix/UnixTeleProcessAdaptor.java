@@ -130,6 +130,16 @@ public abstract class UnixTeleProcessAdaptor extends TeleProcess {
         return TeleChannelTransferBytes.readBytes(protocol, dst, offset, length, src);
     }
 
+    @Override
+    protected int readRanges0(long[] addresses, int[] lengths, int count, ByteBuffer buffer, int offset) {
+        return protocol.readRanges(addresses, lengths, count, buffer, offset);
+    }
+
+    @Override
+    protected int collectDirtyPages0(long[] pageAddresses, int count, boolean[] dirty) {
+        return protocol.collectDirtyPages(pageAddresses, count, dirty);
+    }
+
     @Override
     protected int write0(ByteBuffer src, int offset, int length, Address dst) {
         return TeleChannelTransferBytes.writeBytes(protocol, src, offset, length, dst);
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.heap.analysis;
+
+import java.util.*;
+
+/**
+ * The dominator tree of a {@link HeapSnapshot} object graph and the retained size of each object.
+ * <p>
+ * The graph is given a virtual root, node 0, whose successors are the snapshot's {@linkplain HeapSnapshot#roots roots}
+ * and, since stack and native roots are not visible in a heap walk, the first object (in address order) of each part
+ * of the graph that is not reachable from them.
+ * Object {@code i} is node {@code i + 1}. Immediate dominators are computed with the iterative algorithm of Cooper,
+ * Harvey and Kennedy ("A Simple, Fast Dominance Algorithm"), which converges in a few passes over the reverse
+ * postorder on heap graphs. The retained size of an object is the sum of the sizes of the objects it dominates,
+ * including itself.
+ */
+final class DominatorTree {
+
+    private static final int ROOT = 0;
+
+    private final int nodeCount;
+
+    /**
+     * Immediate dominator of each node; the root is its own dominator.
+     */
+    private final int[] idom;
+
+    /**
+     * Postorder number of each node.
+     */
+    private final int[] postorderNumber;
+
+    /**
+     * The nodes in postorder.
+     */
+    private final int[] postorder;
+
+    private final long[] retained;
+
+    private DominatorTree(int nodeCount) {
+        this.nodeCount = nodeCount;
+        this.idom = new int[nodeCount];
+        this.postorderNumber = new int[nodeCount];
+        this.postorder = new int[nodeCount];
+        this.retained = new long[nodeCount];
+    }
+
+    /**
+     * Computes the dominator tree of an object graph given in the form used by {@link HeapSnapshot}.
+     *
+     * @param objectCount the number of objects
+     * @param edgeStart the start of the outgoing edges of each object in {@code edges}, with a final entry giving the
+     *            number of edges
+     * @param edges the target object of each edge
+     * @param roots the objects treated as roots
+     * @param sizes the size of each object
+     */
+    static DominatorTree compute(int objectCount, int[] edgeStart, int[] edges, int[] roots, long[] sizes) {
+        final DominatorTree tree = new DominatorTree(objectCount + 1);
+        final boolean[] isRootSuccessor = new boolean[objectCount + 1];
+        tree.computePostorder(edgeStart, edges, roots, isRootSuccessor);
+        final int[] predecessorStart = new int[objectCount + 2];
+        final int[] predecessors = computePredecessors(objectCount, edgeStart, edges, isRootSuccessor, predecessorStart);
+        tree.computeDominators(predecessorStart, predecessors);
+        tree.computeRetainedSizes(sizes);
+        return tree;
+    }
+
+    /**
+     * Numbers the nodes in depth-first postorder, starting from the root.
+     */
+    private void computePostorder(int[] edgeStart, int[] edges, int[] roots, boolean[] isRootSuccessor) {
+        final boolean[] visited = new boolean[nodeCount];
+        final int[] nodeStack = new int[nodeCount];
+        final int[] edgeStack = new int[nodeCount];
+        int next = 0;
+        for (int root : roots) {
+            isRootSuccessor[root + 1] = true;
+        }
+        for (int root : roots) {
+            next = depthFirst(root + 1, edgeStart, edges, visited, nodeStack, edgeStack, next);
+        }
+        for (int node = 1; node < nodeCount; node++) {
+            if (!visited[node]) {
+                isRootSuccessor[node] = true;
+                next = depthFirst(node, edgeStart, edges, visited, nodeStack, edgeStack, next);
+            }
+        }
+        postorderNumber[ROOT] = next;
+        postorder[next] = ROOT;
+    }
+
+    private int depthFirst(int start, int[] edgeStart, int[] edges, boolean[] visited, int[] nodeStack, int[] edgeStack, int next) {
+        if (visited[start]) {
+            return next;
+        }
+        visited[start] = true;
+        int depth = 0;
+        nodeStack[0] = start;
+        edgeStack[0] = edgeStart[start - 1];
+        while (depth >= 0) {
+            final int node = nodeStack[depth];
+            final int edge = edgeStack[depth];
+            if (edge < edgeStart[node]) {
+                edgeStack[depth] = edge + 1;
+                final int successor = edges[edge] + 1;
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    depth++;
+                    nodeStack[depth] = successor;
+                    edgeStack[depth] = edgeStart[successor - 1];
+                }
+            } else {
+                postorderNumber[node] = next;
+                postorder[next++] = node;
+                depth--;
+            }
+        }
+        return next;
+    }
+
+    private static int[] computePredecessors(int objectCount, int[] edgeStart, int[] edges, boolean[] isRootSuccessor, int[] predecessorStart) {
+        final int nodeCount = objectCount + 1;
+        final int[] counts = new int[nodeCount];
+        for (int edge = 0; edge < edgeStart[objectCount]; edge++) {
+            counts[edges[edge] + 1]++;
+        }
+        for (int node = 1; node < nodeCount; node++) {
+            if (isRootSuccessor[node]) {
+                counts[node]++;
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            predecessorStart[node + 1] = predecessorStart[node] + counts[node];
+        }
+        final int[] predecessors = new int[predecessorStart[nodeCount]];
+        final int[] fill = counts;
+        System.arraycopy(predecessorStart, 0, fill, 0, nodeCount);
+        for (int object = 0; object < objectCount; object++) {
+            for (int edge = edgeStart[object]; edge < edgeStart[object + 1]; edge++) {
+                final int target = edges[edge] + 1;
+                predecessors[fill[target]++] = object + 1;
+            }
+        }
+        for (int node = 1; node < nodeCount; node++) {
+            if (isRootSuccessor[node]) {
+                predecessors[fill[node]++] = ROOT;
+            }
+        }
+        return predecessors;
+    }
+
+    private void computeDominators(int[] predecessorStart, int[] predecessors) {
+        Arrays.fill(idom, -1);
+        idom[ROOT] = ROOT;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            // reverse postorder, skipping the root which is last in postorder
+            for (int i = nodeCount - 2; i >= 0; i--) {
+                final int node = postorder[i];
+                int newIdom = -1;
+                for (int p = predecessorStart[node]; p < predecessorStart[node + 1]; p++) {
+                    final int predecessor = predecessors[p];
+                    if (idom[predecessor] != -1) {
+                        newIdom = newIdom == -1 ? predecessor : intersect(predecessor, newIdom);
+                    }
+                }
+                if (idom[node] != newIdom) {
+                    idom[node] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (postorderNumber[a] < postorderNumber[b]) {
+                a = idom[a];
+            }
+            while (postorderNumber[b] < postorderNumber[a]) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Accumulates retained sizes bottom up: a node's dominator follows it in postorder.
+     */
+    private void computeRetainedSizes(long[] sizes) {
+        for (int i = 0; i < nodeCount - 1; i++) {
+            final int node = postorder[i];
+            retained[node] += sizes[node - 1];
+            retained[idom[node]] += retained[node];
+        }
+    }
+
+    /**
+     * Gets the immediate dominator of an object.
+     *
+     * @return the index of the dominating object or -1 if the object is only dominated by the virtual root
+     */
+    int immediateDominator(int object) {
+        return idom[object + 1] - 1;
+    }
+
+    /**
+     * Gets the retained size of an object.
+     */
+    long retainedSize(int object) {
+        return retained[object + 1];
+    }
+
+    /**
+     * Gets the total size of all objects in the graph.
+     */
+    long totalSize() {
+        return retained[ROOT];
+    }
+}
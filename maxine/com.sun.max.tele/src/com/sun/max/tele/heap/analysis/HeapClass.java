@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.heap.analysis;
+
+import java.util.*;
+
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.heap.gcx.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * The layout and reporting attributes of objects sharing one hub, as needed by the {@link HeapSnapshot} walker.
+ * Instances are created once per distinct hub address and are immutable thereafter, so they can be shared
+ * freely by the walker threads.
+ */
+final class HeapClass {
+
+    enum Category {
+        /**
+         * Fixed-size object with reference fields given by {@link HeapClass#referenceOffsets}.
+         */
+        TUPLE,
+        /**
+         * Array object sized by its length.
+         */
+        ARRAY,
+        /**
+         * Hybrid object (i.e. a hub) sized by its length, with reference fields in its tuple part.
+         */
+        HYBRID,
+        /**
+         * Free space or dark matter; skipped by the walker and not part of the snapshot.
+         */
+        FILLER
+    }
+
+    private static final int[] NO_OFFSETS = {};
+
+    final int id;
+    final String name;
+    final Category category;
+    final ClassActor classActor;
+
+    /**
+     * Size of instances if this is a {@link Category#TUPLE}.
+     */
+    final int tupleSize;
+
+    /**
+     * Element kind if this is an {@link Category#ARRAY}.
+     */
+    final Kind<?> elementKind;
+
+    /**
+     * Offsets from the origin of the reference fields of an instance, in increasing order.
+     */
+    final int[] referenceOffsets;
+
+    /**
+     * Offset of the word holding the size of a free chunk, or -1 if instances are sized by their layout.
+     */
+    final int fillerSizeOffset;
+
+    /**
+     * Offset of the {@code int} field holding the number of elements of a collection, or -1 if this is not
+     * a recognized collection class.
+     */
+    final int collectionSizeOffset;
+
+    final boolean isString;
+    final boolean isCharArray;
+
+    private HeapClass(int id, String name, Category category, ClassActor classActor, int tupleSize, Kind<?> elementKind, int[] referenceOffsets,
+                    int fillerSizeOffset, int collectionSizeOffset) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.classActor = classActor;
+        this.tupleSize = tupleSize;
+        this.elementKind = elementKind;
+        this.referenceOffsets = referenceOffsets;
+        this.fillerSizeOffset = fillerSizeOffset;
+        this.collectionSizeOffset = collectionSizeOffset;
+        this.isString = category == Category.TUPLE && name.equals("java.lang.String");
+        this.isCharArray = category == Category.ARRAY && elementKind == Kind.CHAR;
+    }
+
+    /**
+     * Gets the size of an array or hybrid instance of this class.
+     */
+    long arraySize(int length) {
+        if (category == Category.HYBRID) {
+            return Layout.hybridLayout().getArraySize(length).toLong();
+        }
+        return Layout.getArraySize(elementKind, length).toLong();
+    }
+
+    /**
+     * Creates the description of the instances of a class.
+     *
+     * @param id the index of the new description in the analyzer's class table
+     * @param classActor the local surrogate for the class of the instances
+     * @param isStaticTuple specifies if the instances are the static tuple of {@code classActor}
+     */
+    static HeapClass create(int id, ClassActor classActor, boolean isStaticTuple) {
+        if (isStaticTuple) {
+            return new HeapClass(id, classActor.name() + " (static)", Category.TUPLE, classActor, classActor.staticHub().tupleSize.toInt(), null,
+                            referenceOffsets(classActor, true), -1, -1);
+        }
+        if (classActor.name().equals(DarkMatter.DARK_MATTER_CLASS_NAME)) {
+            return new HeapClass(id, classActor.name(), Category.FILLER, classActor, 0, Kind.LONG, NO_OFFSETS, -1, -1);
+        }
+        if (classActor.isArrayClass()) {
+            final Kind<?> elementKind = classActor.componentClassActor().kind;
+            return new HeapClass(id, classActor.name(), Category.ARRAY, classActor, 0, elementKind, NO_OFFSETS, -1, -1);
+        }
+        final int tupleSize = classActor.dynamicTupleSize().toInt();
+        if (classActor.isHybridClass()) {
+            return new HeapClass(id, classActor.name(), Category.HYBRID, classActor, tupleSize, null, referenceOffsets(classActor, false), -1, -1);
+        }
+        if (ClassActor.fromJava(HeapFreeChunk.class).isAssignableFrom(classActor)) {
+            final int sizeOffset = ClassActor.fromJava(HeapFreeChunk.class).findLocalInstanceFieldActor("size").offset();
+            return new HeapClass(id, classActor.name(), Category.FILLER, classActor, tupleSize, null, NO_OFFSETS, sizeOffset, -1);
+        }
+        if (classActor == ClassActor.fromJava(DarkMatter.SmallestDarkMatter.class)) {
+            return new HeapClass(id, classActor.name(), Category.FILLER, classActor, tupleSize, null, NO_OFFSETS, -1, -1);
+        }
+        return new HeapClass(id, classActor.name(), Category.TUPLE, classActor, tupleSize, null, referenceOffsets(classActor, false), -1,
+                        collectionSizeOffset(classActor));
+    }
+
+    /**
+     * Collection classes whose emptiness can be read from a single {@code int} field, paired with the name of that field.
+     * Subclasses are recognized too, so for example {@link LinkedHashMap} is covered by {@link HashMap}.
+     */
+    private static final Object[] COLLECTION_SIZE_FIELDS = {
+        ArrayList.class, "size",
+        LinkedList.class, "size",
+        Vector.class, "elementCount",
+        HashMap.class, "size",
+        Hashtable.class, "count",
+        IdentityHashMap.class, "size",
+        TreeMap.class, "size",
+        WeakHashMap.class, "size"
+    };
+
+    private static int collectionSizeOffset(ClassActor classActor) {
+        for (int i = 0; i < COLLECTION_SIZE_FIELDS.length; i += 2) {
+            final String fieldName = (String) COLLECTION_SIZE_FIELDS[i + 1];
+            final ClassActor collectionClassActor = ClassActor.fromJava((Class<?>) COLLECTION_SIZE_FIELDS[i]);
+            if (collectionClassActor.isAssignableFrom(classActor)) {
+                final FieldActor sizeField = collectionClassActor.findLocalInstanceFieldActor(fieldName);
+                return sizeField == null ? -1 : sizeField.offset();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the offsets of the reference fields of an instance of a class, excluding
+     * {@link java.lang.ref.Reference#referent} which does not keep its target alive.
+     */
+    private static int[] referenceOffsets(ClassActor classActor, boolean isStaticTuple) {
+        final ArrayList<Integer> offsets = new ArrayList<Integer>();
+        if (isStaticTuple) {
+            addReferenceOffsets(classActor.localStaticFieldActors(), offsets);
+        } else {
+            for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+                addReferenceOffsets(c.localInstanceFieldActors(), offsets);
+            }
+        }
+        final int[] result = new int[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static void addReferenceOffsets(FieldActor[] fieldActors, List<Integer> offsets) {
+        for (FieldActor fieldActor : fieldActors) {
+            if (fieldActor.kind.isReference && !isReferent(fieldActor)) {
+                offsets.add(fieldActor.offset());
+            }
+        }
+    }
+
+    private static boolean isReferent(FieldActor fieldActor) {
+        return fieldActor.name.string.equals("referent") && fieldActor.holder().name().equals("java.lang.ref.Reference");
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
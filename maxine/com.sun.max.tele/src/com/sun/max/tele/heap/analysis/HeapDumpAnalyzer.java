@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.heap.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.program.*;
+import com.sun.max.program.option.*;
+import com.sun.max.tele.*;
+import com.sun.max.tele.TeleVM.Options;
+import com.sun.max.tele.util.*;
+import com.sun.max.vm.hosted.*;
+
+/**
+ * Headless batch analysis of the heap of a VM core dump (or of any VM the Inspector can attach to).
+ * <p>
+ * The heap is captured as a {@link HeapSnapshot} by walking its regions in parallel. The analyzer then computes
+ * the {@link DominatorTree} of the object graph and writes a plain text report with these sections:
+ * <ul>
+ * <li>{@code [histogram]}: instance count and shallow size per class;</li>
+ * <li>{@code [dominators]}: the objects with the largest retained size;</li>
+ * <li>{@code [duplicate-strings]}: groups of strings with equal contents held in distinct {@code char[]}s, by wasted bytes;</li>
+ * <li>{@code [empty-collections]}: instances of common collection classes that hold no elements, per class.</li>
+ * </ul>
+ * Each section is a header line followed by one tab-separated entry per line. Accepts all the options of
+ * {@link TeleVM.Options}, with the mode and target defaulting to a dump file, e.g.:
+ * <pre>
+ *     mx heapanalyze -location=core.1234 -out=core.1234.heap
+ * </pre>
+ */
+public final class HeapDumpAnalyzer {
+
+    private static final int TRACE_VALUE = 1;
+    private static final String tracePrefix = "[HeapDumpAnalyzer] ";
+
+    /**
+     * The maximum number of characters of a duplicated string shown in the report.
+     */
+    private static final int MAX_SAMPLE_LENGTH = 60;
+
+    private final HeapSnapshot snapshot;
+    private final DominatorTree dominatorTree;
+    private final int top;
+
+    private HeapDumpAnalyzer(HeapSnapshot snapshot, DominatorTree dominatorTree, int top) {
+        this.snapshot = snapshot;
+        this.dominatorTree = dominatorTree;
+        this.top = top;
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Options options = new Options();
+        options.modeOption.setDefaultValue("attach");
+        options.targetKindOption.setDefaultValue("file");
+        Trace.addTo(options);
+        final Option<File> outputOption = options.newFileOption("out", "heap-analysis.txt",
+            "File to which the analysis report is written.");
+        final Option<Integer> threadsOption = options.newIntegerOption("threads", Runtime.getRuntime().availableProcessors(),
+            "Number of threads walking the heap.");
+        final Option<Integer> topOption = options.newIntegerOption("top", 100,
+            "Maximum number of entries in the dominators and duplicate-strings sections.");
+        final Option<Boolean> helpOption = options.newBooleanOption("help", false, "Show help message and exits.");
+        options.parseArguments(args);
+
+        if (helpOption.getValue()) {
+            options.printHelp(System.out, 80);
+            return;
+        }
+
+        final TeleVM vm;
+        try {
+            vm = TeleVM.create(options);
+        } catch (BootImageException bootImageException) {
+            throw TeleError.unexpected("could not load boot image", bootImageException);
+        }
+
+        final List<MaxMemoryRegion> regions = new ArrayList<MaxMemoryRegion>();
+        for (MaxHeapRegion heapRegion : vm.heap().heapRegions()) {
+            if (heapRegion.memoryRegion().isAllocated()) {
+                regions.add(heapRegion.memoryRegion());
+            }
+        }
+        final List<MaxMemoryRegion> rootRegions = new ArrayList<MaxMemoryRegion>();
+        rootRegions.add(vm.heap().bootHeapRegion().memoryRegion());
+        if (vm.heap().immortalHeapRegion() != null) {
+            rootRegions.add(vm.heap().immortalHeapRegion().memoryRegion());
+        }
+
+        long startTimeMillis = System.currentTimeMillis();
+        Trace.begin(TRACE_VALUE, tracePrefix + "walking " + regions.size() + " heap regions");
+        final HeapSnapshot snapshot = HeapSnapshot.build(vm, regions, rootRegions, Math.max(1, threadsOption.getValue()));
+        Trace.end(TRACE_VALUE, tracePrefix + "walking " + regions.size() + " heap regions", startTimeMillis);
+
+        startTimeMillis = System.currentTimeMillis();
+        Trace.begin(TRACE_VALUE, tracePrefix + "computing dominators");
+        final DominatorTree dominatorTree = DominatorTree.compute(snapshot.objectCount, snapshot.edgeStart, snapshot.edges, snapshot.roots, snapshot.sizes);
+        Trace.end(TRACE_VALUE, tracePrefix + "computing dominators", startTimeMillis);
+
+        final File outputFile = outputOption.getValue();
+        final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+        try {
+            new HeapDumpAnalyzer(snapshot, dominatorTree, topOption.getValue()).report(out);
+        } finally {
+            out.close();
+        }
+        Trace.line(TRACE_VALUE, tracePrefix + "wrote " + outputFile);
+        System.exit(0);
+    }
+
+    private void report(PrintStream out) {
+        out.println("# Maxine heap analysis");
+        out.println("objects\t" + snapshot.objectCount);
+        out.println("bytes\t" + dominatorTree.totalSize());
+        out.println("classes\t" + snapshot.classes.length);
+        out.println("references\t" + snapshot.edges.length);
+        out.println("roots\t" + snapshot.roots.length);
+        out.println("unparsed-bytes\t" + snapshot.unparsedBytes);
+        reportHistogram(out);
+        reportDominators(out);
+        reportDuplicateStrings(out);
+        reportEmptyCollections(out);
+    }
+
+    /**
+     * Sorts indexes in descending order of a key.
+     */
+    private static Integer[] sortDescending(int count, final long[] keys) {
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(keys[b], keys[a]);
+            }
+        });
+        return order;
+    }
+
+    private void reportHistogram(PrintStream out) {
+        final int classCount = snapshot.classes.length;
+        final long[] instances = new long[classCount];
+        final long[] bytes = new long[classCount];
+        for (int i = 0; i < snapshot.objectCount; i++) {
+            instances[snapshot.classIds[i]]++;
+            bytes[snapshot.classIds[i]] += snapshot.sizes[i];
+        }
+        out.println();
+        out.println("[histogram]\tinstances\tbytes\tclass");
+        for (int c : sortDescending(classCount, bytes)) {
+            if (instances[c] != 0) {
+                out.println("\t" + instances[c] + "\t" + bytes[c] + "\t" + snapshot.classes[c]);
+            }
+        }
+    }
+
+    private void reportDominators(PrintStream out) {
+        // Keep the top entries in a min-heap on retained size rather than sorting every object.
+        final PriorityQueue<Integer> largest = new PriorityQueue<Integer>(top + 1, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(dominatorTree.retainedSize(a), dominatorTree.retainedSize(b));
+            }
+        });
+        for (int i = 0; i < snapshot.objectCount && top > 0; i++) {
+            if (largest.size() < top) {
+                largest.add(i);
+            } else if (dominatorTree.retainedSize(i) > dominatorTree.retainedSize(largest.peek())) {
+                largest.poll();
+                largest.add(i);
+            }
+        }
+        final List<Integer> entries = new ArrayList<Integer>(largest);
+        Collections.sort(entries, Collections.reverseOrder(largest.comparator()));
+        out.println();
+        out.println("[dominators]\tretained\tshallow\taddress\tdominator\tclass");
+        for (int i : entries) {
+            final int dominator = dominatorTree.immediateDominator(i);
+            out.println("\t" + dominatorTree.retainedSize(i) + "\t" + snapshot.sizes[i] + "\t0x" + Long.toHexString(snapshot.origins[i]) + "\t" +
+                            (dominator < 0 ? "-" : "0x" + Long.toHexString(snapshot.origins[dominator])) + "\t" + snapshot.classOf(i));
+        }
+    }
+
+    /**
+     * The strings whose values are equal to the {@code char[]} {@link #representative}.
+     */
+    private static final class StringGroup {
+        final int representative;
+        /**
+         * The contents of {@link #representative}, read when another value with the same hash and size is found.
+         */
+        char[] chars;
+        /**
+         * The number of distinct {@code char[]}s in this group.
+         */
+        long copies;
+        long strings;
+
+        StringGroup(int representative) {
+            this.representative = representative;
+        }
+    }
+
+    /**
+     * Finds the group in a bucket of values with equal content hash and size whose value is equal to that of a
+     * given {@code char[]}, comparing contents since the hash does not tell apart different values.
+     */
+    private StringGroup findGroup(List<StringGroup> bucket, int value) {
+        char[] chars = null;
+        for (StringGroup group : bucket) {
+            if (group.representative == value) {
+                return group;
+            }
+            if (chars == null) {
+                chars = snapshot.readChars(value);
+            }
+            if (group.chars == null) {
+                group.chars = snapshot.readChars(group.representative);
+            }
+            if (Arrays.equals(chars, group.chars)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    private void reportDuplicateStrings(PrintStream out) {
+        // Groups of equal string values, bucketed by content hash and size of their char[]
+        final boolean[] seen = new boolean[snapshot.objectCount];
+        final Map<Long, List<StringGroup>> buckets = new HashMap<Long, List<StringGroup>>();
+        final List<StringGroup> groups = new ArrayList<StringGroup>();
+        for (int i = 0; i < snapshot.objectCount; i++) {
+            if (!snapshot.classOf(i).isString) {
+                continue;
+            }
+            for (int e = snapshot.edgeStart[i]; e < snapshot.edgeStart[i + 1]; e++) {
+                final int value = snapshot.edges[e];
+                if (snapshot.classOf(value).isCharArray) {
+                    final Long key = ((long) snapshot.aux[value] << 32) ^ snapshot.sizes[value];
+                    List<StringGroup> bucket = buckets.get(key);
+                    if (bucket == null) {
+                        bucket = new ArrayList<StringGroup>(1);
+                        buckets.put(key, bucket);
+                    }
+                    StringGroup group = findGroup(bucket, value);
+                    if (group == null) {
+                        group = new StringGroup(value);
+                        bucket.add(group);
+                        groups.add(group);
+                    }
+                    if (!seen[value]) {
+                        seen[value] = true;
+                        group.copies++;
+                    }
+                    group.strings++;
+                    break;
+                }
+            }
+        }
+        final List<StringGroup> duplicates = new ArrayList<StringGroup>();
+        for (StringGroup group : groups) {
+            if (group.copies > 1) {
+                duplicates.add(group);
+            }
+        }
+        final long[] wasted = new long[duplicates.size()];
+        long totalWasted = 0;
+        for (int i = 0; i < wasted.length; i++) {
+            final StringGroup group = duplicates.get(i);
+            wasted[i] = (group.copies - 1) * snapshot.sizes[group.representative];
+            totalWasted += wasted[i];
+        }
+        out.println();
+        out.println("[duplicate-strings]\tcopies\tstrings\twasted-bytes\tvalue\t(" + duplicates.size() + " groups, " + totalWasted + " bytes)");
+        final Integer[] order = sortDescending(wasted.length, wasted);
+        for (int n = 0; n < order.length && n < top; n++) {
+            final StringGroup group = duplicates.get(order[n]);
+            out.println("\t" + group.copies + "\t" + group.strings + "\t" + wasted[order[n]] + "\t" + quote(snapshot.readChars(group.representative, MAX_SAMPLE_LENGTH)));
+        }
+    }
+
+    private void reportEmptyCollections(PrintStream out) {
+        final int classCount = snapshot.classes.length;
+        final long[] instances = new long[classCount];
+        final long[] bytes = new long[classCount];
+        final long[] retained = new long[classCount];
+        for (int i = 0; i < snapshot.objectCount; i++) {
+            final HeapClass heapClass = snapshot.classOf(i);
+            if (heapClass.collectionSizeOffset >= 0 && snapshot.aux[i] == 0) {
+                instances[heapClass.id]++;
+                bytes[heapClass.id] += snapshot.sizes[i];
+                retained[heapClass.id] += dominatorTree.retainedSize(i);
+            }
+        }
+        out.println();
+        out.println("[empty-collections]\tinstances\tbytes\tretained\tclass");
+        for (int c : sortDescending(classCount, retained)) {
+            if (instances[c] != 0) {
+                out.println("\t" + instances[c] + "\t" + bytes[c] + "\t" + retained[c] + "\t" + snapshot.classes[c]);
+            }
+        }
+    }
+
+    private static String quote(String s) {
+        final StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ' || c > '~') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.heap.analysis;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.sun.max.platform.*;
+import com.sun.max.tele.*;
+import com.sun.max.tele.data.*;
+import com.sun.max.tele.object.*;
+import com.sun.max.tele.util.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.layout.Layout.HeaderField;
+import com.sun.max.vm.layout.hom.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * A compact, immutable image of the object graph of a VM heap, built by walking the heap regions of a
+ * stopped or dumped VM in parallel.
+ * <p>
+ * Objects are identified by their index in {@link #origins}, which is sorted by address. The graph is stored
+ * as arrays rather than as one Java object per VM object so that heaps of hundreds of millions of objects can
+ * be analyzed: per object there is an origin, a class index, a size, an auxiliary value and the start of its
+ * outgoing edges in {@link #edges}. The auxiliary value is the content hash of a {@code char[]}, the element
+ * count of a recognized collection and 0 otherwise.
+ * <p>
+ * Each region is walked by one task, which reads VM memory in large chunks into a private buffer and
+ * decodes objects from there. Regions must be parsable, i.e. contain a contiguous sequence of objects and
+ * formatted free space up to their allocation mark. The walk of a region stops at the first location that
+ * does not hold a plausible object; the remainder of the region is counted in {@link #unparsedBytes}.
+ */
+final class HeapSnapshot {
+
+    /**
+     * The number of bytes of VM memory buffered by each walker.
+     */
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private final TeleVM vm;
+    private final int wordSize;
+    private final ByteOrder byteOrder;
+    private final int hubOffset;
+    private final int arrayLengthOffset;
+    private final int referenceArrayBaseOffset;
+    private final int charArrayBaseOffset;
+
+    /**
+     * Map from hub address to the class it describes, shared by the walkers.
+     */
+    private final ConcurrentHashMap<Long, HeapClass> hubs = new ConcurrentHashMap<Long, HeapClass>();
+    private final Set<Long> invalidHubs = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final List<HeapClass> classList = new ArrayList<HeapClass>();
+
+    HeapClass[] classes;
+    int objectCount;
+    long[] origins;
+    int[] classIds;
+    long[] sizes;
+    int[] aux;
+    int[] edgeStart;
+    int[] edges;
+    int[] roots;
+    long unparsedBytes;
+
+    private HeapSnapshot(TeleVM vm) {
+        if (Layout.generalLayout() instanceof HomGeneralLayout) {
+            throw TeleError.unimplemented("heap analysis of a VM using the HOM layout");
+        }
+        this.vm = vm;
+        this.wordSize = vm.platform().nBytesInWord();
+        this.byteOrder = Platform.platform().endianness().asByteOrder();
+        this.hubOffset = Layout.generalLayout().getOffsetFromOrigin(HeaderField.HUB).toInt();
+        this.arrayLengthOffset = Layout.arrayLayout().arrayLengthOffset();
+        this.referenceArrayBaseOffset = vm.objects().arrayLayout(Kind.REFERENCE).getElementOffsetFromOrigin(0).toInt();
+        this.charArrayBaseOffset = vm.objects().arrayLayout(Kind.CHAR).getElementOffsetFromOrigin(0).toInt();
+    }
+
+    /**
+     * Builds a snapshot of the objects in a set of memory regions.
+     *
+     * @param vm the VM, which must be stopped (or a dump) and must not be locked by the calling thread
+     * @param regions the regions to walk
+     * @param rootRegions regions (among {@code regions}) all of whose objects are treated as roots of the graph
+     * @param threads the number of walker threads
+     */
+    static HeapSnapshot build(TeleVM vm, List<MaxMemoryRegion> regions, List<MaxMemoryRegion> rootRegions, int threads) {
+        final HeapSnapshot snapshot = new HeapSnapshot(vm);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<MaxMemoryRegion> sortedRegions = new ArrayList<MaxMemoryRegion>(regions);
+            Collections.sort(sortedRegions, MaxMemoryRegion.Util.startComparator());
+            final List<Future<Scan>> futures = new ArrayList<Future<Scan>>();
+            for (MaxMemoryRegion region : sortedRegions) {
+                futures.add(executor.submit(snapshot.new Walker(region)));
+            }
+            final List<Scan> scans = new ArrayList<Scan>();
+            for (Future<Scan> future : futures) {
+                scans.add(getResult(future));
+            }
+            snapshot.merge(scans);
+            snapshot.resolveEdges(executor, threads, scans);
+        } finally {
+            executor.shutdown();
+        }
+        snapshot.collectRoots(rootRegions);
+        return snapshot;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw TeleError.unexpected(e);
+        } catch (ExecutionException e) {
+            throw TeleError.unexpected("heap walk failed", e.getCause());
+        }
+    }
+
+    /**
+     * Gets the index of the object at a given origin.
+     *
+     * @return the index of the object or -1 if there is no object at {@code origin}
+     */
+    int indexOf(long origin) {
+        final int index = Arrays.binarySearch(origins, 0, objectCount, origin);
+        return index < 0 ? -1 : index;
+    }
+
+    HeapClass classOf(int index) {
+        return classes[classIds[index]];
+    }
+
+    /**
+     * Reads up to {@code maxLength} characters from the {@code char[]} at a given index.
+     */
+    String readChars(int index, int maxLength) {
+        return new String(readCharArray(index, maxLength));
+    }
+
+    /**
+     * Reads all the characters of the {@code char[]} at a given index.
+     */
+    char[] readChars(int index) {
+        return readCharArray(index, Integer.MAX_VALUE);
+    }
+
+    private char[] readCharArray(int index, int maxLength) {
+        final long origin = origins[index];
+        final int length = Math.min(vm.memoryIO().readInt(Address.fromLong(origin), arrayLengthOffset), maxLength);
+        final ByteBuffer buffer = ByteBuffer.allocate(length * 2).order(byteOrder);
+        vm.teleProcess().read(Address.fromLong(origin + charArrayBaseOffset), buffer, 0, length * 2);
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(i * 2);
+        }
+        return chars;
+    }
+
+    /**
+     * Gets the class described by the hub at a given address, resolving it on first use.
+     *
+     * @return {@code null} if {@code hub} is not the address of a hub
+     */
+    private HeapClass classForHub(long hub) {
+        final HeapClass heapClass = hubs.get(hub);
+        if (heapClass != null || invalidHubs.contains(hub)) {
+            return heapClass;
+        }
+        return resolveHub(hub);
+    }
+
+    private synchronized HeapClass resolveHub(long hub) {
+        HeapClass heapClass = hubs.get(hub);
+        if (heapClass != null || invalidHubs.contains(hub)) {
+            return heapClass;
+        }
+        vm.lock();
+        try {
+            final TeleObject teleObject = vm.objects().findObjectAt(Address.fromLong(hub));
+            if (teleObject instanceof TeleHub) {
+                final TeleHub teleHub = (TeleHub) teleObject;
+                heapClass = HeapClass.create(classList.size(), teleHub.getTeleClassActor().classActor(), teleHub instanceof TeleStaticHub);
+                classList.add(heapClass);
+                hubs.put(hub, heapClass);
+            } else {
+                invalidHubs.add(hub);
+            }
+        } catch (DataIOError dataIOError) {
+            invalidHubs.add(hub);
+        } finally {
+            vm.unlock();
+        }
+        return heapClass;
+    }
+
+    /**
+     * The objects found in one region, in address order.
+     */
+    private static final class Scan {
+        final MaxMemoryRegion region;
+        int count;
+        long[] origins = new long[1024];
+        int[] classIds = new int[1024];
+        long[] sizes = new long[1024];
+        int[] aux = new int[1024];
+        int[] edgeCounts = new int[1024];
+        int edgeCount;
+        long[] edgeTargets = new long[4096];
+        long unparsedBytes;
+
+        /**
+         * Index of the first edge of this scan in the snapshot-wide edge arrays.
+         */
+        int firstEdge;
+
+        Scan(MaxMemoryRegion region) {
+            this.region = region;
+        }
+
+        void addObject(long origin, int classId, long size, int auxValue) {
+            if (count == origins.length) {
+                final int newLength = count * 2;
+                origins = Arrays.copyOf(origins, newLength);
+                classIds = Arrays.copyOf(classIds, newLength);
+                sizes = Arrays.copyOf(sizes, newLength);
+                aux = Arrays.copyOf(aux, newLength);
+                edgeCounts = Arrays.copyOf(edgeCounts, newLength);
+            }
+            origins[count] = origin;
+            classIds[count] = classId;
+            sizes[count] = size;
+            aux[count] = auxValue;
+            count++;
+        }
+
+        /**
+         * Adds an edge from the most recently added object.
+         */
+        void addEdge(long target) {
+            if (edgeCount == edgeTargets.length) {
+                edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            }
+            edgeTargets[edgeCount++] = target;
+            edgeCounts[count - 1]++;
+        }
+    }
+
+    /**
+     * Walks the objects of one region.
+     */
+    private final class Walker implements Callable<Scan> {
+
+        private final MaxMemoryRegion region;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(byteOrder);
+        private long bufferStart;
+        private long bufferEnd;
+        private long limit;
+
+        Walker(MaxMemoryRegion region) {
+            this.region = region;
+        }
+
+        public Scan call() {
+            final Scan scan = new Scan(region);
+            final long start = region.start().toLong();
+            final Address mark = region.mark();
+            limit = mark.greaterThan(region.start()) && mark.lessEqual(region.end()) ? mark.toLong() : region.end().toLong();
+            long cell = start;
+            try {
+                while (cell < limit) {
+                    final long origin = cell; // cell == origin in the OHM and XOHM layouts
+                    final HeapClass heapClass = classForHub(word(origin + hubOffset));
+                    if (heapClass == null) {
+                        break;
+                    }
+                    final long size = sizeOf(heapClass, origin);
+                    if (size <= 0 || size > limit - cell) {
+                        break;
+                    }
+                    if (heapClass.category != HeapClass.Category.FILLER) {
+                        record(scan, heapClass, origin, size);
+                    }
+                    cell += size;
+                }
+            } catch (DataIOError dataIOError) {
+                // unreadable memory: account for the rest of the region as unparsed
+            }
+            scan.unparsedBytes = limit - cell;
+            return scan;
+        }
+
+        private long sizeOf(HeapClass heapClass, long origin) {
+            switch (heapClass.category) {
+                case TUPLE:
+                    return heapClass.tupleSize;
+                case FILLER:
+                    if (heapClass.fillerSizeOffset >= 0) {
+                        return word(origin + heapClass.fillerSizeOffset);
+                    }
+                    return heapClass.elementKind == null ? heapClass.tupleSize : heapClass.arraySize(int32(origin + arrayLengthOffset));
+                default:
+                    final int length = int32(origin + arrayLengthOffset);
+                    return length < 0 ? -1 : heapClass.arraySize(length);
+            }
+        }
+
+        private void record(Scan scan, HeapClass heapClass, long origin, long size) {
+            int auxValue = 0;
+            if (heapClass.collectionSizeOffset >= 0) {
+                auxValue = int32(origin + heapClass.collectionSizeOffset);
+            } else if (heapClass.isCharArray) {
+                auxValue = hashChars(origin + charArrayBaseOffset, int32(origin + arrayLengthOffset));
+            }
+            scan.addObject(origin, heapClass.id, size, auxValue);
+            for (int offset : heapClass.referenceOffsets) {
+                addEdge(scan, word(origin + offset));
+            }
+            if (heapClass.category == HeapClass.Category.ARRAY && heapClass.elementKind.isReference) {
+                final int length = int32(origin + arrayLengthOffset);
+                long address = origin + referenceArrayBaseOffset;
+                for (int i = 0; i < length; i++, address += wordSize) {
+                    addEdge(scan, word(address));
+                }
+            }
+        }
+
+        private void addEdge(Scan scan, long target) {
+            if (target != 0) {
+                scan.addEdge(target);
+            }
+        }
+
+        private int hashChars(long address, int length) {
+            int hash = length;
+            final long end = address + length * 2L;
+            while (address < end) {
+                final int n = (int) Math.min(end - address, CHUNK_SIZE);
+                ensure(address, n);
+                final int offset = (int) (address - bufferStart);
+                for (int i = 0; i < n; i += 2) {
+                    hash = 31 * hash + buffer.getChar(offset + i);
+                }
+                address += n;
+            }
+            return hash;
+        }
+
+        private void ensure(long address, int length) {
+            if (address >= bufferStart && address + length <= bufferEnd) {
+                return;
+            }
+            final int n = (int) Math.min(CHUNK_SIZE, limit - address);
+            if (n < length) {
+                throw new DataIOError(Address.fromLong(address));
+            }
+            final int bytesRead = vm.teleProcess().read(Address.fromLong(address), buffer, 0, n);
+            bufferStart = address;
+            bufferEnd = address + bytesRead;
+            if (bytesRead < length) {
+                throw new DataIOError(Address.fromLong(address));
+            }
+        }
+
+        private long word(long address) {
+            ensure(address, wordSize);
+            final int offset = (int) (address - bufferStart);
+            return wordSize == 8 ? buffer.getLong(offset) : buffer.getInt(offset) & 0xFFFFFFFFL;
+        }
+
+        private int int32(long address) {
+            ensure(address, 4);
+            return buffer.getInt((int) (address - bufferStart));
+        }
+    }
+
+    /**
+     * Concatenates the per-region scans, which are in address order, into the snapshot-wide arrays.
+     */
+    private void merge(List<Scan> scans) {
+        int count = 0;
+        int edgeCount = 0;
+        for (Scan scan : scans) {
+            scan.firstEdge = edgeCount;
+            count += scan.count;
+            edgeCount += scan.edgeCount;
+            unparsedBytes += scan.unparsedBytes;
+        }
+        objectCount = count;
+        origins = new long[count];
+        classIds = new int[count];
+        sizes = new long[count];
+        aux = new int[count];
+        edgeStart = new int[count + 1];
+        int index = 0;
+        int edge = 0;
+        for (Scan scan : scans) {
+            System.arraycopy(scan.origins, 0, origins, index, scan.count);
+            System.arraycopy(scan.classIds, 0, classIds, index, scan.count);
+            System.arraycopy(scan.sizes, 0, sizes, index, scan.count);
+            System.arraycopy(scan.aux, 0, aux, index, scan.count);
+            for (int i = 0; i < scan.count; i++) {
+                edgeStart[index++] = edge;
+                edge += scan.edgeCounts[i];
+            }
+            scan.origins = null;
+            scan.classIds = null;
+            scan.sizes = null;
+            scan.aux = null;
+            scan.edgeCounts = null;
+        }
+        edgeStart[count] = edge;
+        classes = classList.toArray(new HeapClass[classList.size()]);
+    }
+
+    /**
+     * Translates edge target addresses to object indexes, in parallel, dropping edges to locations that are not
+     * object origins in the snapshot (e.g. references into the code cache).
+     */
+    private void resolveEdges(ExecutorService executor, int threads, List<Scan> scans) {
+        final int edgeCount = edgeStart[objectCount];
+        final int[] resolved = new int[edgeCount];
+        final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (final Scan scan : scans) {
+            final int stride = Math.max(1, (scan.edgeCount + threads - 1) / threads);
+            for (int first = 0; first < scan.edgeCount; first += stride) {
+                final int from = first;
+                final int to = Math.min(scan.edgeCount, first + stride);
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int dropped = 0;
+                        for (int i = from; i < to; i++) {
+                            final int target = indexOf(scan.edgeTargets[i]);
+                            resolved[scan.firstEdge + i] = target;
+                            if (target < 0) {
+                                dropped++;
+                            }
+                        }
+                        return dropped;
+                    }
+                }));
+            }
+        }
+        int dropped = 0;
+        for (Future<Integer> future : futures) {
+            dropped += getResult(future);
+        }
+        for (Scan scan : scans) {
+            scan.edgeTargets = null;
+        }
+        edges = new int[edgeCount - dropped];
+        int edge = 0;
+        for (int i = 0; i < objectCount; i++) {
+            final int from = edgeStart[i];
+            final int to = edgeStart[i + 1];
+            edgeStart[i] = edge;
+            for (int e = from; e < to; e++) {
+                if (resolved[e] >= 0) {
+                    edges[edge++] = resolved[e];
+                }
+            }
+        }
+        edgeStart[objectCount] = edge;
+    }
+
+    private void collectRoots(List<MaxMemoryRegion> rootRegions) {
+        int count = 0;
+        final int[][] ranges = new int[rootRegions.size()][];
+        for (int r = 0; r < ranges.length; r++) {
+            final MaxMemoryRegion region = rootRegions.get(r);
+            final int from = insertionPoint(region.start().toLong());
+            final int to = insertionPoint(region.end().toLong());
+            ranges[r] = new int[] {from, to};
+            count += to - from;
+        }
+        roots = new int[count];
+        int next = 0;
+        for (int[] range : ranges) {
+            for (int i = range[0]; i < range[1]; i++) {
+                roots[next++] = i;
+            }
+        }
+    }
+
+    private int insertionPoint(long address) {
+        final int index = Arrays.binarySearch(origins, 0, objectCount, address);
+        return index < 0 ? -index - 1 : index;
+    }
+}
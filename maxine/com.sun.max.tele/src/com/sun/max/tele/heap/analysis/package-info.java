@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+/**
+ * Offline analysis of the heap of a VM, typically of a core dump, without the interactive Inspector.
+ * <p>
+ * {@link com.sun.max.tele.heap.analysis.HeapDumpAnalyzer} is the command line entry point; it captures the object
+ * graph as a compact {@link com.sun.max.tele.heap.analysis.HeapSnapshot}, computes its
+ * {@link com.sun.max.tele.heap.analysis.DominatorTree} and writes a report.
+ */
+package com.sun.max.tele.heap.analysis;
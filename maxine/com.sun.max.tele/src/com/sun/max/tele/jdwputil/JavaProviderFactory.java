@@ -23,6 +23,7 @@
 package com.sun.max.tele.jdwputil;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import com.sun.max.jdwp.vm.proxy.*;
@@ -31,7 +32,11 @@ public class JavaProviderFactory {
 
     private static final Logger LOGGER = Logger.getLogger(JavaProviderFactory.class.getName());
 
-    private Map<Class, ReferenceTypeProvider> referenceTypeCache = new HashMap<Class, ReferenceTypeProvider>();
+    /**
+     * Providers by class. Concurrent JDWP query commands may look up the same class, so the first provider put in the
+     * map is the one every caller gets.
+     */
+    private final ConcurrentMap<Class, ReferenceTypeProvider> referenceTypeCache = new ConcurrentHashMap<Class, ReferenceTypeProvider>();
     private VMAccess vm;
     private ClassLoaderProvider classLoaderProvider;
 
@@ -44,13 +49,17 @@ public class JavaProviderFactory {
 
     public ReferenceTypeProvider getReferenceTypeProvider(Class c) {
 
-        if (!referenceTypeCache.containsKey(c)) {
-            final ReferenceTypeProvider referenceTypeProvider = createReferenceTypeProvider(c);
-            LOGGER.info("Created reference type provider " + referenceTypeProvider + "for Java class " + c);
-            referenceTypeCache.put(c, referenceTypeProvider);
+        final ReferenceTypeProvider cached = referenceTypeCache.get(c);
+        if (cached != null) {
+            return cached;
         }
-
-        return referenceTypeCache.get(c);
+        final ReferenceTypeProvider referenceTypeProvider = createReferenceTypeProvider(c);
+        final ReferenceTypeProvider existing = referenceTypeCache.putIfAbsent(c, referenceTypeProvider);
+        if (existing != null) {
+            return existing;
+        }
+        LOGGER.info("Created reference type provider " + referenceTypeProvider + "for Java class " + c);
+        return referenceTypeProvider;
     }
 
     private ReferenceTypeProvider createReferenceTypeProvider(Class c) {
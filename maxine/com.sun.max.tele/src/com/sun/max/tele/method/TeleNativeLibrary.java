@@ -77,6 +77,11 @@ public abstract class TeleNativeLibrary extends AbstractVmHolder implements MaxN
     private String entityName;
     private Address sentinelAddress;
     private TeleNativeFunction[] functions;
+
+    /**
+     * The same functions as {@link #functions}, which ends up sorted by name, kept in address order for lookups.
+     */
+    private TeleNativeFunction[] functionsByAddress;
     private NativeLibraryMemoryRegion nativeLibraryMemoryRegion;
     private final RemoteCodePointerManager codePointerManager;
     private boolean sortByName;
@@ -139,6 +144,7 @@ public abstract class TeleNativeLibrary extends AbstractVmHolder implements MaxN
         for (int i = 0; i < functions.length; i++) {
             nativeLibraryMemoryRegion.addChild(functions[i]);
         }
+        functionsByAddress = functions.clone();
         //ok, now sort by name
         sortByName = true;
         Arrays.sort(functions);
@@ -190,9 +196,20 @@ public abstract class TeleNativeLibrary extends AbstractVmHolder implements MaxN
     }
 
     public TeleNativeFunction findNativeFunction(Address address) {
-        for (TeleNativeFunction teleNativeFunction : functions) {
-            if (teleNativeFunction.contains(address)) {
-                return teleNativeFunction;
+        if (functionsByAddress == null) {
+            return null;
+        }
+        int low = 0;
+        int high = functionsByAddress.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final TeleNativeFunction function = functionsByAddress[mid];
+            if (function.getCodeStart().greaterThan(address)) {
+                high = mid - 1;
+            } else if (function.contains(address)) {
+                return function;
+            } else {
+                low = mid + 1;
             }
         }
         return null;
@@ -275,35 +292,38 @@ public abstract class TeleNativeLibrary extends AbstractVmHolder implements MaxN
             RandomAccessFile raf = new RandomAccessFile(path, "r");
             ELFHeader header = ELFLoader.readELFHeader(raf);
             ELFSectionHeaderTable elfSHT = ELFLoader.readSHT(raf, header);
-            ELFSymbolLookup elfSym = new ELFSymbolLookup(raf, header, elfSHT);
-            if (elfSym.symbolMap.isEmpty()) { // Debug symbols are probably in a separate .debug file
+            ELFSymbolIndex elfSym = new ELFSymbolIndex(raf, header, elfSHT);
+            if (!elfSym.hasSymbolTable()) { // Debug symbols are probably in a separate .debug file
                 for (ELFSectionHeaderTable.Entry entry : elfSHT.entries) {
                     if (entry.getName().equals(".note.gnu.build-id")) {
                         final ELFNoteGNUbuildID note = new ELFNoteGNUbuildID(entry);
                         final String buildID = note.getBuildID(raf, header);
                         String debugPath = "/usr/lib/debug/.build-id/" + buildID.substring(0, 2) + "/" + buildID.substring(2) + ".debug";
+                        raf.close();
                         raf = new RandomAccessFile(debugPath, "r");
                         header = ELFLoader.readELFHeader(raf);
                         elfSHT = ELFLoader.readSHT(raf, header);
-                        elfSym = new ELFSymbolLookup(raf, header, elfSHT);
+                        elfSym = new ELFSymbolIndex(raf, header, elfSHT);
                         break;
                     }
                 }
             }
-            for (Map.Entry<String, List<ELFSymbolTable.Entry>> mapEntry : elfSym.symbolMap.entrySet()) {
-                List<ELFSymbolTable.Entry> entryList = mapEntry.getValue();
-                for (ELFSymbolTable.Entry entry : entryList) {
-                    ELFSymbolTable.Entry64 entry64 = (ELFSymbolTable.Entry64) entry;
-                    if (entry64.isFunction() && entry64.st_value != 0) {
-                        ELFSectionHeaderTable.Entry64 section = getSection(elfSHT, entry64.st_shndx);
-                        if (section.getName().equals(".text")) {
-                            functionList.add(new TeleNativeFunction(vm(), entry64.getName(), Address.fromLong(entry64.st_value), this));
-                            if (sentinel != null && entry64.getName().equals(sentinel)) {
-                                sentinelOffset = entry64.st_value;
-                                base = Address.fromLong(section.sh_addr);
-                                length = section.sh_size;
-                            }
-                        }
+            int textIndex = -1;
+            for (int i = 0; i < elfSHT.entries.length; i++) {
+                if (elfSHT.entries[i].getName().equals(".text")) {
+                    textIndex = i;
+                    break;
+                }
+            }
+            for (int i = 0; i < elfSym.size(); i++) {
+                if (elfSym.isFunction(i) && elfSym.value(i) != 0 && elfSym.sectionIndex(i) == textIndex) {
+                    final String name = elfSym.name(i);
+                    functionList.add(new TeleNativeFunction(vm(), name, Address.fromLong(elfSym.value(i)), this));
+                    if (sentinel != null && name.equals(sentinel)) {
+                        final ELFSectionHeaderTable.Entry64 section = getSection(elfSHT, textIndex);
+                        sentinelOffset = elfSym.value(i);
+                        base = Address.fromLong(section.sh_addr);
+                        length = section.sh_size;
                     }
                 }
             }
@@ -315,7 +335,7 @@ public abstract class TeleNativeLibrary extends AbstractVmHolder implements MaxN
             return sentinelOffset;
         }
 
-        private ELFSectionHeaderTable.Entry64 getSection(ELFSectionHeaderTable elfSHT, short shIndex) {
+        private ELFSectionHeaderTable.Entry64 getSection(ELFSectionHeaderTable elfSHT, int shIndex) {
             return (ELFSectionHeaderTable.Entry64) elfSHT.entries[shIndex];
         }
     }
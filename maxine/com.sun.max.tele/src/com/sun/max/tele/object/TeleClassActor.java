@@ -40,7 +40,7 @@ import com.sun.max.vm.type.*;
  */
 public abstract class TeleClassActor extends TeleActor implements ReferenceTypeProvider {
 
-    private ClassActor classActor;
+    private volatile ClassActor classActor;
 
     private boolean initialized = false;
 
@@ -54,7 +54,7 @@ public class Page extends AbstractVmHolder {
      */
     private long epoch = -1;
 
-    private final long index;
+    private long index;
 
 
     /**
@@ -121,6 +121,37 @@ public class Page extends AbstractVmHolder {
         this.buffer = allocate(teleIO, byteOrder, index);
     }
 
+    /**
+     * @return the index of this page, i.e. its address divided by the page size.
+     */
+    public long index() {
+        return index;
+    }
+
+    /**
+     * @return the epoch as of which the cached contents are valid, or -1 if they are not valid.
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Reuses this page, and its buffer, to cache a different remote page. The contents become invalid.
+     */
+    void rebind(long index) {
+        this.index = index;
+        epoch = -1;
+        lastFailureEpoch = -1;
+    }
+
+    /**
+     * Declares the cached contents to be valid in a later epoch, because the remote page is known not to have been
+     * modified in the meantime.
+     */
+    void revalidate(long epoch) {
+        this.epoch = epoch;
+    }
+
     /**
      * @return size of the page in bytes.
      */
@@ -142,6 +173,28 @@ public class Page extends AbstractVmHolder {
         epoch = -1;
     }
 
+    /**
+     * @return whether the cached contents are out of date with respect to the remote memory.
+     */
+    public boolean isStale() {
+        return epoch < teleIO.epoch();
+    }
+
+    /**
+     * Refreshes the cached contents from a buffer into which the remote memory page was read as part of a batch.
+     *
+     * @param src the buffer holding the page contents
+     * @param srcOffset the offset of the page contents in {@code src}
+     */
+    public void refresh(ByteBuffer src, int srcOffset) {
+        final ByteBuffer srcSlice = src.duplicate();
+        srcSlice.limit(srcOffset + size()).position(srcOffset);
+        final ByteBuffer dstSlice = buffer.duplicate();
+        dstSlice.clear();
+        dstSlice.put(srcSlice);
+        epoch = teleIO.epoch();
+    }
+
     /**
      * Reads into the cache the contents of the remote memory page.
      *
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.page;
+
+import java.util.*;
+
+/**
+ * A bounded map from page indexes to pages (normally {@link Page}s), keyed by primitive {@code long}s so that lookups
+ * do not box.
+ * <p>
+ * When the cache is full, a victim is chosen with the CLOCK approximation of LRU: every lookup sets a reference
+ * bit for the page, and the clock hand evicts the first page whose bit is clear, clearing the bits it passes.
+ * The victim is handed back to the caller so that its buffer can be reused for the new page.
+ */
+final class PageCache<P> {
+
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+
+    /**
+     * Open-addressed (linear probing) hash table from page index to slot in {@link #pages}.
+     */
+    private final long[] tableKeys;
+    private final int[] tableSlots;
+    private final int tableMask;
+
+    private final P[] pages;
+
+    /**
+     * The page index of the page in each slot.
+     */
+    private final long[] pageIndexes;
+    private final boolean[] referenced;
+    private int size;
+    private int hand;
+    private int freeSlot = EMPTY;
+
+    @SuppressWarnings("unchecked")
+    PageCache(int capacity) {
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        tableKeys = new long[tableSize];
+        tableSlots = new int[tableSize];
+        Arrays.fill(tableSlots, EMPTY);
+        tableMask = tableSize - 1;
+        pages = (P[]) new Object[capacity];
+        pageIndexes = new long[capacity];
+        referenced = new boolean[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == capacity && freeSlot == EMPTY;
+    }
+
+    /**
+     * Gets the page in a given slot, for iterating over all cached pages. Slots may be {@code null}.
+     */
+    P pageAt(int slot) {
+        return pages[slot];
+    }
+
+    /**
+     * Number of slots to iterate over with {@link #pageAt(int)}.
+     */
+    int slots() {
+        return size;
+    }
+
+    static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long index) {
+        int i = hash(index) & tableMask;
+        while (tableSlots[i] != EMPTY) {
+            if (tableKeys[i] == index) {
+                return i;
+            }
+            i = (i + 1) & tableMask;
+        }
+        return ~i;
+    }
+
+    /**
+     * Gets the cached page with a given index and marks it as recently used.
+     *
+     * @return {@code null} if the page is not cached
+     */
+    P get(long index) {
+        final int i = find(index);
+        if (i < 0) {
+            return null;
+        }
+        final int slot = tableSlots[i];
+        referenced[slot] = true;
+        return pages[slot];
+    }
+
+    /**
+     * Adds a page that is not yet cached. The cache must not be {@linkplain #isFull() full}.
+     */
+    void put(long index, P page) {
+        assert !isFull();
+        final int i = find(index);
+        assert i < 0 : "page already cached";
+        final int slot;
+        if (freeSlot != EMPTY) {
+            slot = freeSlot;
+            freeSlot = EMPTY;
+        } else {
+            slot = size++;
+        }
+        tableKeys[~i] = index;
+        tableSlots[~i] = slot;
+        pages[slot] = page;
+        pageIndexes[slot] = index;
+        referenced[slot] = true;
+    }
+
+    /**
+     * Removes the least recently used page (approximately) from a full cache.
+     *
+     * @return the evicted page, whose buffer may be reused
+     */
+    P evict() {
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % size;
+        }
+        final int slot = hand;
+        hand = (hand + 1) % size;
+        final P victim = pages[slot];
+        remove(pageIndexes[slot]);
+        pages[slot] = null;
+        freeSlot = slot;
+        return victim;
+    }
+
+    /**
+     * Removes the entry for a given index from the hash table, shifting back later entries of its probe sequence
+     * so that lookups never need tombstones.
+     */
+    private void remove(long index) {
+        int i = find(index);
+        assert i >= 0;
+        int j = i;
+        while (true) {
+            j = (j + 1) & tableMask;
+            if (tableSlots[j] == EMPTY) {
+                break;
+            }
+            final int home = hash(tableKeys[j]) & tableMask;
+            // Move the entry at j back to i unless its home lies cyclically in (i, j]
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                continue;
+            }
+            tableKeys[i] = tableKeys[j];
+            tableSlots[i] = tableSlots[j];
+            i = j;
+        }
+        tableSlots[i] = EMPTY;
+    }
+}
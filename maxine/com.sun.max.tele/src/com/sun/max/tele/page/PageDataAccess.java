@@ -49,6 +49,16 @@ public class PageDataAccess extends DataAccessAdapter {
     private final int offsetMask;
     private final ByteBuffer writeBuffer;
 
+    /**
+     * Maximum number of stale pages refreshed with a single {@linkplain TeleIO#readRanges batched read}.
+     */
+    private static final int MAX_BATCH_PAGES = 64;
+
+    private ByteBuffer batchBuffer;
+    private final long[] batchAddresses = new long[MAX_BATCH_PAGES];
+    private final int[] batchLengths = new int[MAX_BATCH_PAGES];
+    private final Page[] batchPages = new Page[MAX_BATCH_PAGES];
+
     public PageDataAccess(TeleVM vm, TeleIO teleProcess, DataModel dataModel) {
         super(dataModel.wordWidth, dataModel.endianness.asByteOrder());
         this.vm = vm;
@@ -57,6 +67,7 @@ public class PageDataAccess extends DataAccessAdapter {
         indexShift = Integer.numberOfTrailingZeros(teleProcess.pageSize());
         offsetMask = teleProcess.pageSize() - 1;
         writeBuffer = ByteBuffer.wrap(new byte[Longs.SIZE]).order(byteOrder);
+        cache = new PageCache<Page>(cacheCapacity(teleProcess.pageSize()));
     }
 
     public int pageSize() {
@@ -71,7 +82,40 @@ public class PageDataAccess extends DataAccessAdapter {
         return address.toInt() & offsetMask;
     }
 
-    private final HashMap<Long, Page> indexToPage = new HashMap<Long, Page>();
+    /**
+     * Default bound on the number of cached pages: as many as fit in the {@linkplain Page#globalDirectBufferPoolSize
+     * direct buffer pool}, so that recycled pages keep using direct buffers.
+     */
+    private static int cacheCapacity(int pageSize) {
+        final long defaultCapacity = Math.max(1024, Page.globalDirectBufferPoolSize / pageSize);
+        long capacity = defaultCapacity;
+        final String value = System.getProperty("max.tele.page.cacheSize");
+        if (value != null) {
+            try {
+                capacity = Long.parseLong(value);
+            } catch (NumberFormatException numberFormatException) {
+                TeleWarning.message("Malformed value for the \"max.tele.page.cacheSize\" property", numberFormatException);
+            }
+        }
+        return (int) Math.min(Math.max(capacity, 4 * MAX_BATCH_PAGES), 1 << 24);
+    }
+
+    private final PageCache<Page> cache;
+
+    /**
+     * The process epoch as of which the cache was last {@linkplain #revalidate() revalidated}.
+     */
+    private long validatedEpoch = -1;
+
+    /**
+     * Whether the target can report which pages were written while it ran. If not, every cached page is
+     * refetched after each stop.
+     */
+    private boolean dirtyPageTracking = true;
+
+    private long[] dirtyQueryAddresses = new long[0];
+    private boolean[] dirtyQueryResults = new boolean[0];
+    private Page[] dirtyQueryPages = new Page[0];
 
     private static void checkNullPointer(Address address) {
         if (address.isZero()) {
@@ -80,7 +124,7 @@ public class PageDataAccess extends DataAccessAdapter {
     }
 
     private void invalidatePage(long index) {
-        final Page page = indexToPage.get(index);
+        final Page page = cache.get(index);
         if (page != null) {
             page.invalidate();
         }
@@ -103,23 +147,132 @@ public class PageDataAccess extends DataAccessAdapter {
     }
 
     private Page getPage(long index) {
-        Page page = indexToPage.get(index);
+        revalidate();
+        Page page = cache.get(index);
         if (page == null) {
-            page = new Page(vm, teleIO, index, byteOrder);
-            indexToPage.put(index, page);
-            if ((indexToPage.size() % 1000) == 0) {
-                Trace.line(TRACE_VALUE, tracePrefix() + "Memory cache: " + indexToPage.size() + " pages");
+            if (cache.isFull()) {
+                page = cache.evict();
+                page.rebind(index);
+            } else {
+                page = new Page(vm, teleIO, index, byteOrder);
+                if (((cache.size() + 1) % 1000) == 0) {
+                    Trace.line(TRACE_VALUE, tracePrefix() + "Memory cache: " + (cache.size() + 1) + " pages");
+                }
             }
+            cache.put(index, page);
         }
         return page;
     }
 
+    /**
+     * Carries the cached pages that are known to be unmodified over into the current process epoch, the first time
+     * the cache is used in that epoch. A page is carried over if it was valid as of the previous revalidation and the
+     * target reports that it has not been written since then; each query also starts a new tracking interval.
+     * Pages that were not valid at the previous revalidation are simply left stale.
+     */
+    private void revalidate() {
+        final long epoch = teleIO.epoch();
+        if (epoch == validatedEpoch) {
+            return;
+        }
+        final long previousEpoch = validatedEpoch;
+        validatedEpoch = epoch;
+        if (!dirtyPageTracking) {
+            return;
+        }
+        int count = 0;
+        if (previousEpoch >= 0) {
+            final int slots = cache.slots();
+            if (dirtyQueryAddresses.length < slots) {
+                dirtyQueryAddresses = new long[slots];
+                dirtyQueryResults = new boolean[slots];
+                dirtyQueryPages = new Page[slots];
+            }
+            for (int slot = 0; slot < slots; slot++) {
+                final Page page = cache.pageAt(slot);
+                if (page != null && page.epoch() == previousEpoch) {
+                    dirtyQueryPages[count] = page;
+                    dirtyQueryAddresses[count] = page.index() << indexShift;
+                    count++;
+                }
+            }
+        }
+        if (teleIO.collectDirtyPages(dirtyQueryAddresses, count, dirtyQueryResults) != 0) {
+            Trace.line(TRACE_VALUE, tracePrefix() + "Dirty page tracking not available");
+            dirtyPageTracking = false;
+            Arrays.fill(dirtyQueryPages, 0, count, null);
+            return;
+        }
+        int carried = 0;
+        for (int i = 0; i < count; i++) {
+            if (!dirtyQueryResults[i]) {
+                dirtyQueryPages[i].revalidate(epoch);
+                carried++;
+            }
+            dirtyQueryPages[i] = null;
+        }
+        Trace.line(TRACE_VALUE + 1, tracePrefix() + "Epoch " + epoch + ": " + carried + " of " + count + " cached pages unmodified");
+    }
+
     private Page getPage(Address address) {
         return getPage(getIndex(address));
     }
 
+    /**
+     * Brings the pages covering a given range up to date, fetching the stale ones in as few requests as possible.
+     * Pages that cannot be read this way are left stale and will be read individually (and report any error) on access.
+     */
+    public synchronized void prefetch(Address address, Size size) {
+        if (size.isZero()) {
+            return;
+        }
+        refreshPages(getIndex(address), getIndex(address.plus(size).minus(1)));
+    }
+
+    private void refreshPages(long firstIndex, long lastIndex) {
+        final int pageSize = pageSize();
+        if (batchBuffer == null) {
+            batchBuffer = ByteBuffer.allocateDirect(MAX_BATCH_PAGES * pageSize).order(byteOrder);
+        }
+        long index = firstIndex;
+        while (index <= lastIndex) {
+            int count = 0;
+            while (index <= lastIndex && count < MAX_BATCH_PAGES) {
+                final Page page = getPage(index);
+                if (page.isStale()) {
+                    batchPages[count] = page;
+                    batchAddresses[count] = index << indexShift;
+                    batchLengths[count] = pageSize;
+                    count++;
+                }
+                index++;
+            }
+            if (count == 0) {
+                continue;
+            }
+            final int n;
+            try {
+                n = teleIO.readRanges(batchAddresses, batchLengths, count, batchBuffer, 0);
+            } catch (DataIOError dataIOError) {
+                return;
+            } catch (TerminatedProcessIOException e) {
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                // The page may have been recycled for another index while the batch was being collected
+                if (batchPages[i].index() == batchAddresses[i] >>> indexShift) {
+                    batchPages[i].refresh(batchBuffer, i * pageSize);
+                }
+            }
+            Arrays.fill(batchPages, 0, count, null);
+        }
+    }
+
     public synchronized int read(Address address, ByteBuffer buffer, int offset, int length) {
         final int toRead = Math.min(length, buffer.limit() - offset);
+        if (toRead > 0 && getOffset(address) + toRead > pageSize()) {
+            refreshPages(getIndex(address), getIndex(address.plus(toRead - 1)));
+        }
         long pageIndex = getIndex(address);
         int pageOffset = getOffset(address);
         int i = 0;
@@ -146,7 +299,7 @@ public class PageDataAccess extends DataAccessAdapter {
         return getPage(address).readInt(getOffset(address));
     }
 
-    public long readLong(Address address) {
+    public synchronized long readLong(Address address) {
         checkNullPointer(address);
         return getPage(address).readLong(getOffset(address));
     }
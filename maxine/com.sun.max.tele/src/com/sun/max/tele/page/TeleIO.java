@@ -22,6 +22,8 @@
  */
 package com.sun.max.tele.page;
 
+import java.nio.*;
+
 import com.sun.max.tele.data.*;
 import com.sun.max.unsafe.*;
 
@@ -36,6 +38,28 @@ public interface TeleIO extends DataIO {
      */
     int pageSize();
 
+    /**
+     * Reads a number of ranges in a single request, storing them consecutively in {@code buffer}.
+     *
+     * @param addresses the start addresses of the ranges
+     * @param lengths the number of bytes in each range
+     * @param count the number of ranges
+     * @param buffer the buffer into which the ranges are read
+     * @param offset the offset in {@code buffer} of the first range
+     * @return the number of leading ranges that were read completely
+     */
+    int readRanges(long[] addresses, int[] lengths, int count, ByteBuffer buffer, int offset);
+
+    /**
+     * Determines which of a set of pages have been modified since the previous call, and starts a new tracking interval.
+     *
+     * @param pageAddresses the start addresses of the pages
+     * @param count the number of pages
+     * @param dirty receives {@code true} for each page that was modified
+     * @return 0 if successful, -1 if modifications cannot be tracked at page granularity
+     */
+    int collectDirtyPages(long[] pageAddresses, int count, boolean[] dirty);
+
     /**
      * @return the number of times the I/O source/destination has been modified.
      */
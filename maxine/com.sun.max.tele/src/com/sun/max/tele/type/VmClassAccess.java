@@ -81,16 +81,18 @@ public final class VmClassAccess extends AbstractVmHolder implements MaxClasses,
 
     private long lastUpdateEpoch = -1L;
 
+    // The maps below are read by JDWP query commands, which run concurrently with each other and with cache updates.
+
     // TODO (mlvdv)  Generalize to map either  (TypeDescriptor, ClassLoader) -> ClassActor Reference *or*  TypeDescriptor -> ClassActor Reference*
-    private final Map<TypeDescriptor, RemoteReference> typeDescriptorToClassActorReference = new HashMap<TypeDescriptor, RemoteReference>();
+    private final Map<TypeDescriptor, RemoteReference> typeDescriptorToClassActorReference = new ConcurrentHashMap<TypeDescriptor, RemoteReference>();
 
     // ClassID of a {@link ClassActor} in the VM -> reference to the ClassActor
-    private final Map<Integer, RemoteReference> idToClassActorReference = new HashMap<Integer, RemoteReference>();
+    private final Map<Integer, RemoteReference> idToClassActorReference = new ConcurrentHashMap<Integer, RemoteReference>();
 
     /**
      * ClassID Mapping.
      */
-    private final Map<Integer, ClassActor> idToClassActor = new HashMap<Integer, ClassActor>();
+    private final Map<Integer, ClassActor> idToClassActor = new ConcurrentHashMap<Integer, ClassActor>();
 
     /**
      * Special handling for magical system classes that cannot be put into the VM class registry.
@@ -114,7 +116,12 @@ public final class VmClassAccess extends AbstractVmHolder implements MaxClasses,
      * Lazily initialized; can re re-initialized.
      * @see #updateLoadableTypeDescriptorsFromClasspath()
      */
-    private Set<TypeDescriptor> typesOnClasspath;
+    private volatile Set<TypeDescriptor> typesOnClasspath;
+
+    /**
+     * Serializes the definition of classes from class files copied from the VM, so that a class is defined only once.
+     */
+    private final Object classfileCopyLock = new Object();
 
     /**
      * A set of ConcurrentHashMap.HashEntry values in the class registry table that need processing after the {@link VmObjectAccess} is fully initialized.
@@ -403,12 +410,11 @@ public final class VmClassAccess extends AbstractVmHolder implements MaxClasses,
      * @return surrogates for all {@link ClassActor}s loaded in the VM.
      */
     public ReferenceTypeProvider[] teleClassActors() {
-        final ReferenceTypeProvider[] result = new ReferenceTypeProvider[idToClassActorReference.size()];
-        int index = 0;
+        final List<ReferenceTypeProvider> result = new ArrayList<ReferenceTypeProvider>(idToClassActorReference.size());
         for (RemoteReference classActorReference : idToClassActorReference.values()) {
-            result[index++] = (TeleClassActor) objects().makeTeleObject(classActorReference);
+            result.add((TeleClassActor) objects().makeTeleObject(classActorReference));
         }
-        return result;
+        return result.toArray(new ReferenceTypeProvider[result.size()]);
     }
 
     /**
@@ -451,12 +457,19 @@ public final class VmClassAccess extends AbstractVmHolder implements MaxClasses,
                     name, ClassfileReader.saveClassDir));
             }
             final byte[] classfile = (byte[]) teleByteArrayObject.shallowCopy();
-            try {
-                return HostedVMClassLoader.HOSTED_VM_CLASS_LOADER.makeClassActor(name, classfile);
-            } catch (ClassFormatError classFormatError) {
-                final String msg = "in " + tracePrefix() + " unable to load classfile copied from VM, error message follows:\n   " + classFormatError;
-                TeleError.unexpected(msg, null);
-                return null;
+            synchronized (classfileCopyLock) {
+                try {
+                    return makeClassActor(name);
+                } catch (ClassNotFoundException e) {
+                    // Not defined by another thread since the lookup above
+                }
+                try {
+                    return HostedVMClassLoader.HOSTED_VM_CLASS_LOADER.makeClassActor(name, classfile);
+                } catch (ClassFormatError classFormatError) {
+                    final String msg = "in " + tracePrefix() + " unable to load classfile copied from VM, error message follows:\n   " + classFormatError;
+                    TeleError.unexpected(msg, null);
+                    return null;
+                }
             }
         }
     }
@@ -526,7 +539,9 @@ public final class VmClassAccess extends AbstractVmHolder implements MaxClasses,
             final RemoteReference classActorReference = idToClassActorReference.get(id);
             if (classActorReference != null) {
                 classActor = makeClassActor(classActorReference);
-                idToClassActor.put(id, classActor);
+                if (classActor != null) {
+                    idToClassActor.put(id, classActor);
+                }
             }
         }
         return classActor;
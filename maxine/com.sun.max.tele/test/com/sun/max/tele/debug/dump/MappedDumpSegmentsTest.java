@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.debug.dump;
+
+import static com.oracle.max.elf.ELFProgramHeaderTable.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import com.oracle.max.elf.*;
+import com.sun.max.ide.*;
+
+/**
+ * Tests for {@link MappedDumpSegments}, against a small file laid out like the {@code PT_LOAD} segments of a core dump.
+ */
+public class MappedDumpSegmentsTest extends MaxTestCase {
+
+    public MappedDumpSegmentsTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(MappedDumpSegmentsTest.class);
+    }
+
+    private static final int FILE_SIZE = 0x200;
+
+    /**
+     * Segment A, partly in the file: the last 0x100 bytes of its memory image read as zero.
+     */
+    private static final long A = 0x10000;
+    private static final long A_FILESZ = 0x100;
+    private static final long A_MEMSZ = 0x200;
+
+    /**
+     * Segment B, directly after A in memory.
+     */
+    private static final long B = A + A_MEMSZ;
+    private static final long B_SIZE = 0x80;
+
+    /**
+     * Segment C, after a gap.
+     */
+    private static final long C = 0x20000;
+    private static final long C_SIZE = 0x40;
+
+    private File file;
+    private RandomAccessFile raf;
+    private MappedDumpSegments segments;
+
+    private static byte fileByte(long offset) {
+        return (byte) (offset * 31 + 7);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("dump", ".core");
+        final byte[] contents = new byte[FILE_SIZE];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = fileByte(i);
+        }
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        raf = new RandomAccessFile(file, "r");
+
+        final ELFHeader header = new ELFHeader();
+        header.e_phnum = 5;
+        final ELFProgramHeaderTable table = new ELFProgramHeaderTable(header);
+        // Deliberately not in address order
+        table.entries[0] = entry(table, PT_LOAD, C, 0x180, C_SIZE, C_SIZE);
+        table.entries[1] = entry(table, PT_NOTE, 0x30000, 0, 0x10, 0x10);
+        table.entries[2] = entry(table, PT_LOAD, B, 0x100, B_SIZE, B_SIZE);
+        table.entries[3] = entry(table, PT_LOAD, 0x40000, 0, 0, 0x1000);
+        table.entries[4] = entry(table, PT_LOAD, A, 0, A_FILESZ, A_MEMSZ);
+        segments = new MappedDumpSegments(raf, table, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        raf.close();
+        file.delete();
+    }
+
+    private static ELFProgramHeaderTable.Entry64 entry(ELFProgramHeaderTable table, int type, long vaddr, long offset, long filesz, long memsz) {
+        final ELFProgramHeaderTable.Entry64 entry = table.new Entry64();
+        entry.p_type = type;
+        entry.p_vaddr = vaddr;
+        entry.p_offset = offset;
+        entry.p_filesz = filesz;
+        entry.p_memsz = memsz;
+        return entry;
+    }
+
+    /**
+     * Gets the byte a read of a given address should return.
+     */
+    private static byte expected(long address) {
+        if (address >= A && address < A + A_FILESZ) {
+            return fileByte(address - A);
+        }
+        if (address >= A + A_FILESZ && address < A + A_MEMSZ) {
+            return 0;
+        }
+        if (address >= B && address < B + B_SIZE) {
+            return fileByte(0x100 + address - B);
+        }
+        if (address >= C && address < C + C_SIZE) {
+            return fileByte(0x180 + address - C);
+        }
+        throw new IllegalArgumentException(Long.toHexString(address));
+    }
+
+    /**
+     * Reads a range into a buffer filled with a marker, checks the bytes read and that the rest of the buffer is
+     * untouched, and returns the number of bytes read.
+     */
+    private int readAndCheck(long src, int length) {
+        final int dstOffset = 3;
+        final ByteBuffer dst = ByteBuffer.allocate(dstOffset + length + 3);
+        for (int i = 0; i < dst.limit(); i++) {
+            dst.put(i, (byte) 0x5a);
+        }
+        final int n = segments.read(src, dst, dstOffset, length);
+        for (int i = 0; i < dst.limit(); i++) {
+            if (i >= dstOffset && i < dstOffset + n) {
+                assertEquals(expected(src + i - dstOffset), dst.get(i));
+            } else {
+                assertEquals((byte) 0x5a, dst.get(i));
+            }
+        }
+        return n;
+    }
+
+    public void test_indexOf() {
+        assertEquals(-1, segments.indexOf(A - 1));
+        assertEquals(A, segments.segmentAt(segments.indexOf(A)).p_vaddr);
+        assertEquals(A, segments.segmentAt(segments.indexOf(A + A_FILESZ)).p_vaddr);
+        assertEquals(A, segments.segmentAt(segments.indexOf(A + A_MEMSZ - 1)).p_vaddr);
+        assertEquals(B, segments.segmentAt(segments.indexOf(B)).p_vaddr);
+        assertEquals(-1, segments.indexOf(B + B_SIZE));
+        assertEquals(C, segments.segmentAt(segments.indexOf(C + C_SIZE - 1)).p_vaddr);
+        assertEquals(-1, segments.indexOf(C + C_SIZE));
+        // Notes and segments without file contents are ignored
+        assertEquals(-1, segments.indexOf(0x30000));
+        assertEquals(-1, segments.indexOf(0x40000));
+    }
+
+    public void test_readWithinSegment() {
+        assertEquals(0x20, readAndCheck(A + 0x10, 0x20));
+        assertEquals((int) C_SIZE, readAndCheck(C, (int) C_SIZE));
+        assertEquals(1, readAndCheck(B + B_SIZE - 1, 1));
+    }
+
+    public void test_readBeyondFileSize() {
+        assertEquals(0x20, readAndCheck(A + A_FILESZ - 0x10, 0x20));
+        assertEquals(0x10, readAndCheck(A + A_FILESZ + 0x10, 0x10));
+    }
+
+    public void test_readAcrossAdjacentSegments() {
+        assertEquals(0x20, readAndCheck(B - 0x10, 0x20));
+        assertEquals((int) (A_MEMSZ + B_SIZE), readAndCheck(A, (int) (A_MEMSZ + B_SIZE)));
+    }
+
+    public void test_readIntoGap() {
+        assertEquals(0x10, readAndCheck(B + B_SIZE - 0x10, 0x20));
+        assertEquals(0, readAndCheck(B + B_SIZE, 0x10));
+        assertEquals(0, readAndCheck(A - 0x10, 0x20));
+    }
+
+    /**
+     * Reads random ranges from several threads at once, as the parallel heap walk of a dump does.
+     */
+    public void test_concurrentReads() throws Exception {
+        final long[] starts = {A, B, C};
+        final long[] ends = {B + B_SIZE, B + B_SIZE, C + C_SIZE};
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final Random random = new Random(t);
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            final int s = random.nextInt(starts.length);
+                            final long src = starts[s] + random.nextInt((int) (ends[s] - starts[s]));
+                            final int length = 1 + random.nextInt((int) (ends[s] - src));
+                            assertEquals(length, readAndCheck(src, length));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new Exception(failure[0]);
+            }
+        }
+    }
+}
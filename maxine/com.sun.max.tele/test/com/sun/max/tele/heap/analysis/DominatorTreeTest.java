@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.heap.analysis;
+
+import com.sun.max.ide.*;
+
+/**
+ * Tests for {@link DominatorTree} on small graphs whose dominators and retained sizes are worked out by hand.
+ * Object {@code i} has size {@code 1 << i}, so a retained size spells out the set of objects it includes.
+ */
+public class DominatorTreeTest extends MaxTestCase {
+
+    public DominatorTreeTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(DominatorTreeTest.class);
+    }
+
+    /**
+     * Computes the dominator tree of a graph given as the successors of each object.
+     */
+    private static DominatorTree compute(int[][] successors, int... roots) {
+        final int objectCount = successors.length;
+        final int[] edgeStart = new int[objectCount + 1];
+        for (int object = 0; object < objectCount; object++) {
+            edgeStart[object + 1] = edgeStart[object] + successors[object].length;
+        }
+        final int[] edges = new int[edgeStart[objectCount]];
+        final long[] sizes = new long[objectCount];
+        for (int object = 0; object < objectCount; object++) {
+            System.arraycopy(successors[object], 0, edges, edgeStart[object], successors[object].length);
+            sizes[object] = 1L << object;
+        }
+        return DominatorTree.compute(objectCount, edgeStart, edges, roots, sizes);
+    }
+
+    private static void check(DominatorTree tree, int[] idoms, long[] retainedSizes) {
+        long total = 0;
+        for (int object = 0; object < idoms.length; object++) {
+            assertEquals("idom of " + object, idoms[object], tree.immediateDominator(object));
+            assertEquals("retained size of " + object, retainedSizes[object], tree.retainedSize(object));
+            total += 1L << object;
+        }
+        assertEquals(total, tree.totalSize());
+    }
+
+    /**
+     * 0 -> 1 -> 3 and 0 -> 2 -> 3: the join is dominated by the fork, not by either branch.
+     */
+    public void test_diamond() {
+        final DominatorTree tree = compute(new int[][] {{1, 2}, {3}, {3}, {}}, 0);
+        check(tree, new int[] {-1, 0, 0, 0}, new long[] {15, 2, 4, 8});
+    }
+
+    /**
+     * 0 -> 1 -> 2 -> 0 and 2 -> 3: a back edge to the root does not change the dominators of the chain.
+     */
+    public void test_cycle() {
+        final DominatorTree tree = compute(new int[][] {{1}, {2}, {0, 3}, {}}, 0);
+        check(tree, new int[] {-1, 0, 1, 2}, new long[] {15, 14, 12, 8});
+    }
+
+    /**
+     * A cycle 1 -> 2 -> 3 -> 1 entered at 1 from the root 0 and at 3 from the root 4: no object of the cycle dominates
+     * another, because each can be reached from a root without passing through the others.
+     */
+    public void test_cycleWithTwoEntries() {
+        final DominatorTree tree = compute(new int[][] {{1}, {2}, {3}, {1}, {3}}, 0, 4);
+        check(tree, new int[] {-1, -1, 1, -1, -1}, new long[] {1, 6, 4, 8, 16});
+    }
+
+    /**
+     * 0 -> 1 from the root, plus 2 -> 3 and a cycle 4 -> 5 -> 4 that no root reaches: the first object in address order
+     * of each unreachable part becomes a root.
+     */
+    public void test_unreachableComponents() {
+        final DominatorTree tree = compute(new int[][] {{1}, {}, {3}, {}, {5}, {4}}, 0);
+        check(tree, new int[] {-1, 0, -1, 2, -1, 4}, new long[] {3, 2, 12, 8, 48, 32});
+    }
+
+    /**
+     * 2 -> 1 and 3 -> 1 where neither 2 nor 3 is reachable from the root 0: 3 is still unvisited after the walk from 2
+     * and becomes a root too, so 1 is not dominated by 2.
+     */
+    public void test_unreachableSharedTarget() {
+        final DominatorTree tree = compute(new int[][] {{}, {}, {1}, {1}}, 0);
+        check(tree, new int[] {-1, -1, -1, -1}, new long[] {1, 2, 4, 8});
+    }
+
+    /**
+     * Roots {1, 0, 1} with 0 -> 1, 0 -> 2 and 1 -> 2: a root is only dominated by the virtual root even when another
+     * root refers to it, and listing a root twice changes nothing.
+     */
+    public void test_duplicateRoots() {
+        final int[][] graph = {{1, 2}, {2}, {}};
+        check(compute(graph, 1, 0, 1), new int[] {-1, -1, -1}, new long[] {1, 2, 4});
+        check(compute(graph, 1, 0), new int[] {-1, -1, -1}, new long[] {1, 2, 4});
+        check(compute(graph, 0), new int[] {-1, 0, 0}, new long[] {7, 2, 4});
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.tele.page;
+
+import java.util.*;
+
+import com.sun.max.ide.*;
+
+/**
+ * Tests for {@link PageCache}.
+ */
+public class PageCacheTest extends MaxTestCase {
+
+    public PageCacheTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PageCacheTest.class);
+    }
+
+    private static final class TestPage {
+        final long index;
+
+        TestPage(long index) {
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "page " + index;
+        }
+    }
+
+    /**
+     * Adds a page for an index that is not cached, evicting first if the cache is full.
+     *
+     * @return the evicted page or {@code null}
+     */
+    private static TestPage add(PageCache<TestPage> cache, long index) {
+        TestPage victim = null;
+        if (cache.isFull()) {
+            victim = cache.evict();
+        }
+        cache.put(index, new TestPage(index));
+        return victim;
+    }
+
+    /**
+     * Finds {@code count} page indexes that hash to a given home entry in a table of {@code tableLength} entries.
+     */
+    private static long[] keysWithHome(int home, int tableLength, int count, long start) {
+        final long[] keys = new long[count];
+        int n = 0;
+        for (long key = start; n < count; key++) {
+            if ((PageCache.hash(key) & (tableLength - 1)) == home) {
+                keys[n++] = key;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Runs random lookups and insertions, evicting whenever the cache is full, against a map holding what should be
+     * cached. Indexes are drawn from a range a few times the capacity so that hits, misses and evictions all occur.
+     */
+    public void test_random() {
+        final Random random = new Random(42);
+        for (int capacity : new int[] {1, 2, 3, 16, 100}) {
+            final PageCache<TestPage> cache = new PageCache<TestPage>(capacity);
+            final Map<Long, TestPage> reference = new HashMap<Long, TestPage>();
+            for (int op = 0; op < 200000; op++) {
+                final long index = random.nextInt(capacity * 3) - capacity;
+                final TestPage page = cache.get(index);
+                assertSame(reference.get(index), page);
+                if (page == null) {
+                    final boolean full = reference.size() == capacity;
+                    assertEquals(full, cache.isFull());
+                    final TestPage victim = add(cache, index);
+                    if (full) {
+                        assertNotNull(victim);
+                        assertSame(victim, reference.remove(victim.index));
+                    } else {
+                        assertNull(victim);
+                    }
+                    reference.put(index, cache.get(index));
+                    assertEquals(index, reference.get(index).index);
+                }
+                if (op % 1000 == 0) {
+                    // Every cached page is reachable by iteration and by lookup, and nothing else is cached.
+                    int cached = 0;
+                    for (int slot = 0; slot < cache.slots(); slot++) {
+                        final TestPage p = cache.pageAt(slot);
+                        if (p != null) {
+                            assertSame(reference.get(p.index), p);
+                            cached++;
+                        }
+                    }
+                    assertEquals(reference.size(), cached);
+                    for (long i = -capacity; i < 2 * capacity; i++) {
+                        assertSame(reference.get(i), cache.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicting the head of a probe sequence that wraps around the end of the table must shift the later entries back,
+     * including one whose home is past the evicted entry's, so that all of them are still found.
+     */
+    public void test_backwardShiftDeletion() {
+        // A capacity of 4 gives a table of 8 entries.
+        final int tableLength = 8;
+        final long[] atEnd = keysWithHome(tableLength - 1, tableLength, 3, 0);
+        final long[] atStart = keysWithHome(0, tableLength, 2, 0);
+        final PageCache<TestPage> cache = new PageCache<TestPage>(4);
+        // Occupies entries 7, 0 and 1, then 2 for a key whose home is 0.
+        cache.put(atEnd[0], new TestPage(atEnd[0]));
+        cache.put(atEnd[1], new TestPage(atEnd[1]));
+        cache.put(atEnd[2], new TestPage(atEnd[2]));
+        cache.put(atStart[0], new TestPage(atStart[0]));
+        assertTrue(cache.isFull());
+
+        assertEquals(atEnd[0], cache.evict().index);
+        assertNull(cache.get(atEnd[0]));
+        assertEquals(atEnd[1], cache.get(atEnd[1]).index);
+        assertEquals(atEnd[2], cache.get(atEnd[2]).index);
+        assertEquals(atStart[0], cache.get(atStart[0]).index);
+        assertNull(cache.get(atStart[1]));
+
+        cache.put(atStart[1], new TestPage(atStart[1]));
+        assertEquals(atStart[1], cache.get(atStart[1]).index);
+        assertEquals(atStart[0], cache.get(atStart[0]).index);
+        assertEquals(atEnd[1], cache.get(atEnd[1]).index);
+        assertEquals(atEnd[2], cache.get(atEnd[2]).index);
+    }
+
+    /**
+     * Follows the clock hand through a sequence of evictions and insertions: pages put or looked up since the hand
+     * last passed them are skipped once.
+     */
+    public void test_clock() {
+        final PageCache<TestPage> cache = new PageCache<TestPage>(4);
+        // slots 0-3 hold pages 10, 11, 12, 13, all referenced
+        for (long index = 10; index < 14; index++) {
+            assertNull(add(cache, index));
+        }
+        // the hand clears all four bits and comes back to slot 0
+        assertEquals(10, add(cache, 20).index);
+        // page 20 now in slot 0 is referenced, and the lookup references page 12 in slot 2
+        cache.get(12);
+        assertEquals(11, add(cache, 21).index);
+        // the hand clears page 12 and evicts page 13 in slot 3
+        assertEquals(13, add(cache, 22).index);
+        // the hand clears pages 20 and 21 and comes to page 12 again
+        assertEquals(12, add(cache, 23).index);
+        // the hand clears page 22 in slot 3, then finds pages 20 and 21 still cleared, then passes page 23 once
+        assertEquals(20, add(cache, 24).index);
+        assertEquals(21, add(cache, 25).index);
+        assertEquals(22, add(cache, 26).index);
+        for (long index = 23; index <= 26; index++) {
+            assertEquals(index, cache.get(index).index);
+        }
+        assertEquals(4, cache.size());
+    }
+}
@@ -270,6 +270,22 @@ public final class VirtualMemory {
     @C_FUNCTION
     private static native void virtualMemory_unprotectPages(Address address, int count);
 
+    /**
+     * Advises the operating system that a range of memory should be backed by large pages where possible.
+     * This is only a hint; it has no effect on platforms that do not support transparent large pages.
+     *
+     * @param address the start of the range. This value must be aligned to the
+     *            underlying platform's {@linkplain Platform#pageSize page size}.
+     * @param size the size of the range
+     * @return {@code true} if the advice was accepted
+     */
+    public static boolean adviseLargePages(Address address, Size size) {
+        return virtualMemory_adviseHugePages(address, size);
+    }
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_adviseHugePages(Address address, Size size);
+
     /* File mapping methods */
 
     /**
@@ -297,6 +313,20 @@ public final class VirtualMemory {
         return Pointer.fromLong(virtualMemory_mapFile(size.toLong(), fd, fileOffset.toLong()));
     }
 
+    /**
+     * Maps an open file into virtual memory such that writes to the mapped memory are written through to the file and
+     * are visible to other processes mapping the same file.
+     *
+     * @param size
+     * @param fileDescriptor
+     * @param fileOffset
+     * @throws IOException
+     */
+    public static Pointer mapFileShared(Size size, FileDescriptor fileDescriptor, Address fileOffset) throws IOException {
+        final int fd = asJIOFDAlias(fileDescriptor).fd;
+        return Pointer.fromLong(virtualMemory_mapFileShared(size.toLong(), fd, fileOffset.toLong()));
+    }
+
     /**
      * Maps an open file into virtual memory restricted to the address range available in 31 bits, i.e. up to 2GB.
      * This is only available on Linux.
@@ -318,6 +348,8 @@ public final class VirtualMemory {
 
     private static native long virtualMemory_mapFile(long size, int fd, long fileOffset);
 
+    private static native long virtualMemory_mapFileShared(long size, int fd, long fileOffset);
+
     private static native long virtualMemory_mapFileIn31BitSpace(int size, int fd, long fileOffset);
 
     public static void traceRange(String label, Address start, Size size) {
@@ -145,11 +145,16 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
      * Links are updated only by the {@link DependenciesManager}.
      * Relevant only for tuple and hybrid class actors. All other class actors are direct sub-classes
      * of the Object class.
+     * <p>
+     * Compiler dependencies are {@linkplain Dependencies#validateDependencies validated} without holding the class
+     * hierarchy lock, so this field is volatile: a thread that reads the id of a sub-class from it also sees the
+     * sub-class registered with the {@link ClassIDManager} and its {@link #nextSiblingId} set.
      */
-    public int firstSubclassActorId;
+    public volatile int firstSubclassActorId;
 
     /**
      * Class id of the next sibling of this actor in its superclass' list of sub-classes.
+     * It is set once, before this actor is published in {@link #firstSubclassActorId} of its superclass.
      */
     private int nextSiblingId;
 
@@ -206,6 +211,18 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
 
     private ProtectionDomain protectionDomain;
 
+    /**
+     * The {@linkplain ClassfileDigest digest} of the class file from which this class was defined,
+     * or {@code null} if it was not computed.
+     */
+    private String classfileDigest;
+
+    /**
+     * The verifier for the methods of this class if its verification was {@linkplain Verifier#LazyVerification deferred}
+     * to the first compilation of each method, {@code null} otherwise.
+     */
+    private volatile ClassVerifier deferredVerifier;
+
     /**
      * An object representing the initialization state of this class. This value will either be one of the sentinel
      * objects representing a state (i.e. {@link #VERIFIED_}, {@link #PREPARED}, {@link #INITIALIZED}) or be an object
@@ -1599,9 +1616,55 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
     private void verify() {
         if (isReflectionStub() || !ClassVerifier.shouldBeVerified(classLoader, isRemote())) {
             // generated stubs do not necessarily pass the verifier, even if they work as intended
+        } else if (VerificationCache.isVerified(this)) {
+            // verified by a previous run and neither its class file nor those of the classes it depends on changed
+        } else if (Verifier.LazyVerification && majorVersion >= 50) {
+            // methods are verified as they are compiled, which requires that verification does not rewrite them
+            deferredVerifier = Verifier.verifierFor(this);
         } else {
-            Verifier.verifierFor(this).verify();
+            final ClassVerifier verifier = Verifier.verifierFor(this);
+            verifier.verify();
+            VerificationCache.recordVerified(verifier);
+        }
+    }
+
+    /**
+     * Gets the verifier for the methods of this class if its verification was {@linkplain Verifier#LazyVerification deferred}.
+     *
+     * @return {@code null} if the verification of this class was not deferred
+     */
+    public final ClassVerifier deferredVerifier() {
+        return deferredVerifier;
+    }
+
+    /**
+     * Drops the {@linkplain #deferredVerifier() deferred verifier} of this class once none of its methods is
+     * {@linkplain ClassMethodActor#isVerificationPending() pending} verification, so that it is not kept alive for
+     * the life of the class.
+     *
+     * @param verifier the verifier that verified a method of this class
+     */
+    public final void releaseDeferredVerifier(ClassVerifier verifier) {
+        synchronized (verifier) {
+            if (deferredVerifier != verifier) {
+                return;
+            }
+            if (hasVerificationPending(localVirtualMethodActors()) ||
+                hasVerificationPending(localStaticMethodActors()) ||
+                hasVerificationPending(localInterfaceMethodActors())) {
+                return;
+            }
+            deferredVerifier = null;
+        }
+    }
+
+    private static boolean hasVerificationPending(MethodActor[] methodActors) {
+        for (MethodActor methodActor : methodActors) {
+            if (methodActor instanceof ClassMethodActor && ((ClassMethodActor) methodActor).isVerificationPending()) {
+                return true;
+            }
         }
+        return false;
     }
 
     /**
@@ -1763,6 +1826,19 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
         this.protectionDomain = protectionDomain;
     }
 
+    /**
+     * Gets the {@linkplain ClassfileDigest digest} of the class file from which this class was defined.
+     *
+     * @return {@code null} if no digest was computed for this class
+     */
+    public String classfileDigest() {
+        return classfileDigest;
+    }
+
+    public void setClassfileDigest(String digest) {
+        this.classfileDigest = digest;
+    }
+
     public ConstantPool constantPool() {
         return null;
     }
@@ -386,6 +386,30 @@ public abstract class ClassMethodActor extends MethodActor {
         return this;
     }
 
+    /**
+     * Determines if this method has not been verified yet as the verification of its holder was
+     * {@linkplain Verifier#LazyVerification deferred}.
+     */
+    public final boolean isVerificationPending() {
+        return holder().deferredVerifier() != null && !isVerified(flags()) && !isProxyToDefault() && compilee() == this && codeAttribute != null;
+    }
+
+    /**
+     * Verifies this method if its verification is {@linkplain #isVerificationPending() pending}. The verifier is
+     * shared by all methods of the holder, so methods of the same class are verified one at a time.
+     *
+     * @throws VerifyError if this method fails verification
+     */
+    public final void verifyIfPending() {
+        final ClassVerifier verifier = holder().deferredVerifier();
+        if (verifier != null && isVerificationPending()) {
+            synchronized (verifier) {
+                verify(verifier);
+            }
+            holder().releaseDeferredVerifier(verifier);
+        }
+    }
+
     public synchronized void verify(ClassVerifier classVerifier) {
         assert !this.isProxyToDefault();
         if (codeAttribute() != null && !isVerified(flags())) {
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.classfile;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+
+/**
+ * Computes a digest of the bytes of a class file so that data derived from a class (e.g. compilation decisions
+ * or verification results) can be persisted across VM runs and matched against an unchanged class. The digest is
+ * the SHA-256 hash of the class file in hexadecimal, so that a modified class file cannot be crafted to match the
+ * digest recorded for the original one.
+ * <p>
+ * Digests are only computed while some consumer has {@linkplain #enable() enabled} them,
+ * so that class definition does not pay for them otherwise. Consumers persist their data as
+ * {@linkplain #readTable tables} mapping a key derived from a class to the digest of its class file.
+ *
+ * @see com.sun.max.vm.actor.holder.ClassActor#classfileDigest()
+ */
+public final class ClassfileDigest {
+
+    private ClassfileDigest() {
+    }
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static volatile boolean enabled;
+
+    /**
+     * A message digest that is {@linkplain MessageDigest#clone() cloned} for each digest computed, so that the security
+     * providers are only looked up once, before class definition starts computing digests.
+     */
+    @RESET
+    private static MessageDigest prototype;
+
+    /**
+     * Requests that a digest is computed for every class defined from now on.
+     */
+    public static void enable() {
+        newMessageDigest();
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    private static synchronized MessageDigest newMessageDigest() {
+        try {
+            if (prototype == null) {
+                prototype = MessageDigest.getInstance(ALGORITHM);
+            }
+            try {
+                return (MessageDigest) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                return MessageDigest.getInstance(ALGORITHM);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalError(ALGORITHM + " message digest is not available");
+        }
+    }
+
+    /**
+     * Computes the digest of a class file.
+     *
+     * @param bytes the array containing the class file
+     * @param offset the offset of the class file in {@code bytes}
+     * @param length the length of the class file
+     * @return the SHA-256 hash of the class file as a string of hexadecimal digits
+     */
+    public static String compute(byte[] bytes, int offset, int length) {
+        final MessageDigest md = newMessageDigest();
+        md.update(bytes, offset, length);
+        final byte[] hash = md.digest();
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = Character.forDigit((hash[i] >> 4) & 0xf, 16);
+            hex[2 * i + 1] = Character.forDigit(hash[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Reads a table of digests written by {@link #writeTable}.
+     *
+     * @param file the file to read
+     * @param header the expected first line of the file
+     * @param description describes the table in error messages
+     * @return the entries of the table, which is empty if the file does not exist or cannot be read
+     */
+    public static HashMap<String, String> readTable(File file, String header, String description) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        if (!file.exists()) {
+            return map;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line = reader.readLine();
+                if (!header.equals(line)) {
+                    Log.println("Ignoring " + description + " with unrecognized header: " + file);
+                    return map;
+                }
+                while ((line = reader.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        map.put(line.substring(space + 1), line.substring(0, space));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            Log.println("Error reading " + description + " " + file + ": " + e);
+            map.clear();
+        }
+        return map;
+    }
+
+    /**
+     * Writes a table of digests, one entry per line and sorted by key. The file is replaced atomically.
+     *
+     * @param file the file to write
+     * @param header the first line of the file
+     * @param description describes the table in error messages
+     * @param entries the entries of the table
+     */
+    public static void writeTable(File file, String header, String description, SortedMap<String, String> entries) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+            try {
+                out.println(header);
+                for (Map.Entry<String, String> e : entries.entrySet()) {
+                    out.print(e.getValue());
+                    out.print(' ');
+                    out.println(e.getKey());
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    Log.println("Could not write " + description + " " + file);
+                }
+            }
+        } catch (IOException e) {
+            Log.println("Error writing " + description + " " + file + ": " + e);
+        }
+    }
+}
@@ -1751,6 +1751,9 @@ public final class ClassfileReader {
         final ClassfileReader classfileReader = new ClassfileReader(classfileStream, classLoader);
         ClassActor classActor = classfileReader.loadClass(name, source, isRemote);
         classActor.setProtectionDomain(protectionDomain);
+        if (ClassfileDigest.isEnabled()) {
+            classActor.setClassfileDigest(ClassfileDigest.compute(bytes, offset, length));
+        }
 
         final ClassActor definedClassActor = ClassRegistry.define(classActor);
 
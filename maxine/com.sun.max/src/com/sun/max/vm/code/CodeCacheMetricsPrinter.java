@@ -156,6 +156,59 @@ public final class CodeCacheMetricsPrinter {
             table.addRow(e.getKey(), pct(m.n, t.n), pct(m.bc, t.bc), pct(m.mc, t.mc));
         }
         out.println(CiUtil.tabulate(table.cells.toArray(), table.cols, 1, 1));
+
+        printFragmentationTo(cr, out);
+    }
+
+    /**
+     * Prints how well the allocated part of a region is packed. Holes are the bytes between consecutive
+     * target methods that are not covered by any live method (e.g. left behind by invalidated code),
+     * the tail is what remains available for linear allocation.
+     */
+    void printFragmentationTo(CodeRegion cr, PrintStream out) {
+        final long base = cr.gcstart().toLong();
+        final long mark = cr.getAllocationMark().toLong();
+        final long limit = cr.allocationLimit().toLong();
+        long live = 0;
+        long holes = 0;
+        long largestHole = 0;
+        int holeCount = 0;
+        long cursor = base;
+        for (TargetMethod targetMethod : cr.copyOfTargetMethods()) {
+            final long tmStart = targetMethod.start().toLong();
+            final long tmEnd = targetMethod.end().toLong();
+            if (tmStart > cursor) {
+                final long hole = tmStart - cursor;
+                holes += hole;
+                holeCount++;
+                largestHole = Math.max(largestHole, hole);
+            }
+            live += tmEnd - tmStart;
+            cursor = Math.max(cursor, tmEnd);
+        }
+        if (mark > cursor) {
+            holes += mark - cursor;
+            holeCount++;
+            largestHole = Math.max(largestHole, mark - cursor);
+        }
+        final long allocated = mark - base;
+        final long tail = limit - mark;
+        final long free = holes + tail;
+        final long largestFree = Math.max(largestHole, tail);
+
+        out.println();
+        out.println("========== Fragmentation ==========");
+        Table table = new Table("Metric", "Value");
+        table.addRow("------");
+        table.addRow("Capacity", limit - base);
+        table.addRow("Allocated", allocated);
+        table.addRow("Live", live);
+        table.addRow("Holes", holeCount + " (" + holes + " bytes)");
+        table.addRow("LargestHole", largestHole);
+        table.addRow("Tail", tail);
+        table.addRow("Waste", allocated == 0 ? "0%" : ((holes * 100) / allocated) + "%");
+        table.addRow("Fragmentation", free == 0 ? "0%" : (((free - largestFree) * 100) / free) + "%");
+        out.println(CiUtil.tabulate(table.cells.toArray(), table.cols, 1, 1));
     }
 
     private static String pct(int a, int b) {
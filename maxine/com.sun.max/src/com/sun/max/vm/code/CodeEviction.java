@@ -68,6 +68,34 @@ public final class CodeEviction extends VmOperation {
             MaxineVM.Phase.STARTING);
     }
 
+    /**
+     * Retain baseline methods that were entered during the last N eviction epochs.
+     */
+    private static int CodeEvictionMinIdleEpochs = 0;
+
+    /**
+     * Upper bound on the number of methods evicted in one cycle.
+     */
+    private static int CodeEvictionMaxVictims = 0;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "CodeEvictionMinIdleEpochs", CodeEviction.class,
+            "During code eviction, only evict baseline methods that were not entered in the given number of " +
+            "preceding eviction cycles (default: 0, evict all unreachable methods).",
+            MaxineVM.Phase.STARTING);
+        VMOptions.addFieldOption("-XX:", "CodeEvictionMaxVictims", CodeEviction.class,
+            "Bound the number of methods evicted in one cycle, preferring the longest idle ones (default: 0, unbounded). " +
+            "This bounds the dispatch table patching in a cycle, not its compaction, which copies every retained method.",
+            MaxineVM.Phase.STARTING);
+    }
+
+    private static boolean PrintCodeEvictionStatistics;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "PrintCodeEvictionStatistics", CodeEviction.class,
+            "Print the time each code eviction spent invalidating and compacting, and the bytes it copied, when the VM exits.");
+    }
+
     /**
      * Marks all target methods on the stack as live that are short-lived (baseline),
      * and all baseline methods directly invoked from those.
@@ -146,6 +174,80 @@ public final class CodeEviction extends VmOperation {
         }
     }
 
+    /**
+     * Number of idle epoch buckets tracked by {@link VictimSelector}. Methods idle for longer fall in the last bucket.
+     */
+    private static final int IDLE_EPOCH_BUCKETS = 32;
+
+    /**
+     * Narrows the set of eviction victims among the methods left unmarked after stack and protection marking.
+     * <p>
+     * The first pass samples the usage of every method, retains those that were entered too recently, and
+     * builds a histogram of the idle epochs of the remaining candidates. If there are more candidates than
+     * {@link #CodeEvictionMaxVictims}, the second pass retains the most recently used ones so that the
+     * dispatch table patching done in this pause stays bounded; they remain candidates for the next cycle.
+     * <p>
+     * Neither policy shortens the pause as a whole. Eviction still walks all stacks twice and compaction copies
+     * every method that is retained, so retaining more methods makes compaction copy more code. The split of each
+     * pause is reported by {@code -XX:+PrintCodeEvictionStatistics}.
+     */
+    final class VictimSelector implements TargetMethod.Closure {
+        final int[] histogram = new int[IDLE_EPOCH_BUCKETS];
+        boolean bounding;
+        int cutoff;
+        int quotaAtCutoff;
+
+        @Override
+        public boolean doTargetMethod(TargetMethod targetMethod) {
+            if (!bounding) {
+                targetMethod.sampleUsage();
+                if (!targetMethod.isMarked()) {
+                    final int idle = targetMethod.idleEvictionEpochs();
+                    if (idle < CodeEvictionMinIdleEpochs) {
+                        logMark("RETAINED (recently used)", targetMethod);
+                        targetMethod.mark();
+                    } else {
+                        histogram[bucket(idle)]++;
+                    }
+                }
+            } else if (!targetMethod.isMarked()) {
+                final int b = bucket(targetMethod.idleEvictionEpochs());
+                if (b < cutoff || (b == cutoff && quotaAtCutoff-- <= 0)) {
+                    logMark("RETAINED (victim budget)", targetMethod);
+                    targetMethod.mark();
+                }
+            }
+            return true;
+        }
+
+        private int bucket(int idle) {
+            return idle >= IDLE_EPOCH_BUCKETS ? IDLE_EPOCH_BUCKETS - 1 : idle;
+        }
+
+        /**
+         * Determines the idle bucket at which the victim budget is exhausted.
+         *
+         * @return {@code true} if a second pass is needed to enforce the budget
+         */
+        boolean computeCutoff(int budget) {
+            int remaining = budget;
+            for (int b = IDLE_EPOCH_BUCKETS - 1; b >= 0; b--) {
+                if (histogram[b] > remaining) {
+                    cutoff = b;
+                    quotaAtCutoff = remaining;
+                    return true;
+                }
+                remaining -= histogram[b];
+            }
+            return false;
+        }
+
+        void reset() {
+            Arrays.fill(histogram, 0);
+            bounding = false;
+        }
+    }
+
     final class InvalidateDispatchTables implements TargetMethod.Closure {
         @Override
         public boolean doTargetMethod(TargetMethod targetMethod) {
@@ -346,6 +448,7 @@ public final class CodeEviction extends VmOperation {
                 targetMethod.setCodeArrays(code, codeStart, trampolines, trampolineStart, scalarLiterals, referenceLiterals);
                 targetMethod.maybeCleanCache();
                 cr.setMark(cr.mark().plus(size));
+                nCopiedBytes += size.toLong();
                 CodeManager.runtimeBaselineCodeRegion.add(targetMethod);
                 targetMethod.survivedEviction();
             } else {
@@ -527,6 +630,11 @@ public final class CodeEviction extends VmOperation {
         super("code cache cleaner", null, Mode.Safepoint);
     }
 
+    @Override
+    protected boolean allowsCoalescing() {
+        return true;
+    }
+
     private static int evictionCount = 0;
 
     public static int evictionCount() {
@@ -569,6 +677,7 @@ public final class CodeEviction extends VmOperation {
 
         timerStart();
         markProtectedMethods();
+        selectVictims();
         tMarkProtected = timerEnd();
 
         invalidateDirectCalls();
@@ -600,12 +709,17 @@ public final class CodeEviction extends VmOperation {
         doAllThreads();
         tPatchStacks = timerEnd();
 
+        recordPause();
+
         if (/*VMTI.handler().activeAgents() > 0*/true) {
             CodeManager.runtimeBaselineCodeRegion.doOldTargetMethods(vmtiUnload);
             CodeManager.runtimeBaselineCodeRegion.doNewTargetMethods(vmtiMove);
         }
 
         CodeManager.runtimeBaselineCodeRegion.resetFromSpace();
+
+        // cached exception handler lookups refer to evicted and moved methods
+        ExceptionDispatchCache.invalidateAll();
         if (logging()) {
             codeEvictionLogger.logMove_Progress("FINISHED walking threads");
         }
@@ -678,6 +792,25 @@ public final class CodeEviction extends VmOperation {
         CodeManager.runtimeBaselineCodeRegion.doNewTargetMethods(protectedMethodsMarker);
     }
 
+    private final VictimSelector victimSelector = new VictimSelector();
+
+    /**
+     * Applies the usage-based victim selection policy. If neither policy option is set, which they cannot be
+     * after startup, this does nothing so that the pause is not lengthened by another pass over the code region.
+     */
+    private void selectVictims() {
+        if (CodeEvictionMinIdleEpochs == 0 && CodeEvictionMaxVictims == 0) {
+            return;
+        }
+        final VictimSelector selector = victimSelector;
+        selector.reset();
+        CodeManager.runtimeBaselineCodeRegion.doNewTargetMethods(selector);
+        if (CodeEvictionMaxVictims > 0 && selector.computeCutoff(CodeEvictionMaxVictims)) {
+            selector.bounding = true;
+            CodeManager.runtimeBaselineCodeRegion.doNewTargetMethods(selector);
+        }
+    }
+
     /**
      * Iterate over the baseline code region and invalidate references to stale methods.
      * This includes vtable and itable entries as well as {@linkplain MethodActor} target states.
@@ -993,6 +1126,7 @@ public final class CodeEviction extends VmOperation {
         nCallBaseline = 0;
         nCallOpt = 0;
         nCallBoot = 0;
+        nCopiedBytes = 0;
     }
 
     int nStale = 0;
@@ -1012,6 +1146,7 @@ public final class CodeEviction extends VmOperation {
     int nCallBaseline = 0;
     int nCallOpt = 0;
     int nCallBoot = 0;
+    long nCopiedBytes = 0;
 
     private long timer;
     private long tMarking;
@@ -1027,6 +1162,60 @@ public final class CodeEviction extends VmOperation {
     private long tFixCallsBoot;
     private long tTotal;
 
+    /**
+     * Accumulated and maximum time spent invalidating (marking and patching call sites and dispatch tables) and
+     * compacting (copying survivors and fixing calls and stacks to moved code) per cycle, and bytes copied per cycle.
+     */
+    private static long totalInvalidateNanos;
+    private static long maxInvalidateNanos;
+    private static long totalCompactNanos;
+    private static long maxCompactNanos;
+    private static long totalCopiedBytes;
+    private static long maxCopiedBytes;
+
+    /**
+     * Records the split of the pause of the cycle that just finished compacting.
+     */
+    private void recordPause() {
+        final long invalidate = tMarking + tMarkProtected +
+            tInvalidateCallsBaseline + tInvalidateCallsOpt + tInvalidateCallsBoot + tInvalidateTables;
+        final long compact = tCompact + tFixCallsBaseline + tFixCallsOpt + tFixCallsBoot + tPatchStacks;
+        totalInvalidateNanos += invalidate;
+        maxInvalidateNanos = Math.max(maxInvalidateNanos, invalidate);
+        totalCompactNanos += compact;
+        maxCompactNanos = Math.max(maxCompactNanos, compact);
+        totalCopiedBytes += nCopiedBytes;
+        maxCopiedBytes = Math.max(maxCopiedBytes, nCopiedBytes);
+    }
+
+    /**
+     * Prints the pause statistics if {@code -XX:+PrintCodeEvictionStatistics} was given. Called when the VM exits.
+     */
+    public static void printStatisticsIfEnabled() {
+        if (!PrintCodeEvictionStatistics) {
+            return;
+        }
+        boolean lockDisabledSafepoints = Log.lock();
+        Log.print("Code eviction statistics: ");
+        Log.print(evictionCount);
+        Log.println(" cycles");
+        if (evictionCount > 0) {
+            Log.print("  invalidation (microseconds): average ");
+            Log.print(totalInvalidateNanos / evictionCount / 1000);
+            Log.print(", max ");
+            Log.println(maxInvalidateNanos / 1000);
+            Log.print("  compaction (microseconds): average ");
+            Log.print(totalCompactNanos / evictionCount / 1000);
+            Log.print(", max ");
+            Log.println(maxCompactNanos / 1000);
+            Log.print("  copied (bytes): average ");
+            Log.print(totalCopiedBytes / evictionCount);
+            Log.print(", max ");
+            Log.println(maxCopiedBytes);
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
+
     private void timerStart() {
         timer = System.nanoTime();
     }
@@ -26,6 +26,7 @@ import static com.sun.max.vm.VMOptions.*;
 import java.util.*;
 
 import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
@@ -66,6 +67,18 @@ public abstract class CodeManager {
         register(new VMSizeOption("-XX:ReservedOptCodeCacheSize=", Size.M.times(16),
             "Memory allocated for runtime code region cache."), MaxineVM.Phase.PRISTINE);
 
+    /**
+     * Back the opt code region with large pages where the platform supports it. Optimized code is long-lived and
+     * hot, so keeping it on as few pages as possible may reduce iTLB pressure. This is off by default as the effect
+     * has not been measured. Where large pages are unavailable the advice fails and the region stays on normal pages.
+     */
+    public static boolean CodeCacheLargePages;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "CodeCacheLargePages", CodeManager.class,
+            "Advise the OS to back the opt code region with large pages.", MaxineVM.Phase.PRISTINE);
+    }
+
     private int nAllocations = 0;
 
     private int lastSurvivorSize;
@@ -129,6 +142,14 @@ public abstract class CodeManager {
     @INSPECTED
     protected static final CodeRegion runtimeOptCodeRegion = new CodeRegion("Code-Runtime-Opt");
 
+    /**
+     * Gets the number of bytes allocated in the runtime code regions.
+     */
+    public static Size runtimeCodeUsed() {
+        return runtimeBaselineCodeRegion.getAllocationMark().minus(runtimeBaselineCodeRegion.gcstart()).asSize().plus(
+            runtimeOptCodeRegion.getAllocationMark().minus(runtimeOptCodeRegion.gcstart()));
+    }
+
     /**
      * Get the runtime baseline code region.
      * @return the runtime baseline code region
@@ -151,6 +172,17 @@ public abstract class CodeManager {
     void initialize() {
     }
 
+    /**
+     * Applies the {@link #CodeCacheLargePages} policy to the opt code region once it has been bound to memory.
+     */
+    protected void adviseLargePages() {
+        if (CodeCacheLargePages && !runtimeOptCodeRegion.size().isZero()) {
+            if (!VirtualMemory.adviseLargePages(runtimeOptCodeRegion.start(), runtimeOptCodeRegion.size()) && Code.TraceCodeAllocation) {
+                Log.println("Could not back " + runtimeOptCodeRegion.regionName() + " with large pages");
+            }
+        }
+    }
+
     private static int BOOT_TO_BASELINE_INITIAL_SIZE = 10;
 
     /**
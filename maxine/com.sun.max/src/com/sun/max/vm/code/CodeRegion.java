@@ -102,6 +102,13 @@ public class CodeRegion extends LinearAllocatorRegion {
         this.mark.set(start);
     }
 
+    /**
+     * Gets the address up to which this region can currently allocate.
+     */
+    public Address allocationLimit() {
+        return end();
+    }
+
     /**
      * Gets the address at which the GC should start traversing this region.
      * In case it is managed, this may be different from the value obtained from {@link #start()}.
@@ -47,6 +47,7 @@ public class NearBootRegionCodeManager extends CodeManager {
         tryAllocate(runtimeBaselineCodeRegionSize, runtimeBaselineCodeRegion, baselineAddress);
         final Address optAddress = runtimeBaselineCodeRegion.end().alignUp(Platform.platform().pageSize);
         tryAllocate(runtimeOptCodeRegionSize, runtimeOptCodeRegion, optAddress);
+        adviseLargePages();
     }
 
     private void tryAllocate(VMSizeOption s, CodeRegion cr, Address address) {
@@ -100,6 +100,14 @@ public final class SemiSpaceCodeRegion extends CodeRegion {
         return toSpace;
     }
 
+    /**
+     * For semi-space code regions, allocation is bounded by the top of to-space.
+     */
+    @Override
+    public Address allocationLimit() {
+        return topOfSpace;
+    }
+
     /**
      * Flip to-space and from-space, set topOfSpace accordingly.
      */
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.code;
+
+import static com.sun.max.platform.Platform.*;
+import static com.sun.max.vm.VMOptions.*;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * A record of the boot image methods and classes used while the VM starts up, i.e. before the main method of the
+ * application is invoked.
+ * <p>
+ * The profile is recorded by a VM run with {@code -XX:StartupProfile=<file>}. It is derived from the pages of the
+ * boot code and boot heap regions that are resident in the address space of the VM process when the main method is
+ * about to be invoked, as reported by the {@code /proc/self/pagemap} interface of Linux. A method is recorded if any
+ * page of its code is resident and a class is recorded if the page holding its class actor, one of its hubs or its
+ * static tuple is resident. Relocation writes to nearly every page of the image, so when the option is present the
+ * substrate moves the relocated image into a fresh shared mapping in which a page only becomes resident once it is
+ * accessed. The kernel maps pages around a faulting page as well, so the profile still over-approximates the set of
+ * methods and classes that were actually used.
+ * <p>
+ * The boot image generator {@linkplain #read reads} the profile given by its {@code -startup-profile} option and
+ * allocates the profiled methods and the metadata of the profiled classes before all others in their respective
+ * regions, so that the pages touched during startup are clustered at the start of the regions.
+ */
+public final class StartupProfile {
+
+    private static final String HEADER = "# Maxine startup profile v1";
+    private static final String CLASS_PREFIX = "class ";
+    private static final String METHOD_PREFIX = "method ";
+
+    @RESET
+    static String StartupProfile;
+
+    static {
+        addFieldOption("-XX:", "StartupProfile", StartupProfile.class,
+            "Path of a file to which the boot image methods and classes used before the main method is invoked are written. " +
+            "The file can be passed to the -startup-profile option of the boot image generator (Linux only).");
+    }
+
+    /**
+     * The names of the profiled classes.
+     */
+    private final Set<String> classes;
+
+    /**
+     * The {@linkplain #key keys} of the profiled methods, in the order in which they were laid out in the profiled image.
+     */
+    private final List<String> methods;
+
+    private final Set<String> methodSet;
+
+    private StartupProfile(Set<String> classes, List<String> methods) {
+        this.classes = classes;
+        this.methods = methods;
+        this.methodSet = new HashSet<String>(methods);
+    }
+
+    /**
+     * Gets the names of the profiled classes.
+     */
+    @HOSTED_ONLY
+    public Set<String> classes() {
+        return classes;
+    }
+
+    /**
+     * Gets the {@linkplain #key keys} of the profiled methods, in the order in which they were laid out in the
+     * profiled image.
+     */
+    @HOSTED_ONLY
+    public List<String> methods() {
+        return methods;
+    }
+
+    /**
+     * Determines if a given method is profiled.
+     */
+    @HOSTED_ONLY
+    public boolean contains(MethodActor methodActor) {
+        return methodSet.contains(key(methodActor));
+    }
+
+    /**
+     * Gets the string identifying a method in a profile.
+     */
+    public static String key(MethodActor methodActor) {
+        return methodActor.holder().name.string + "." + methodActor.name.string + methodActor.descriptor();
+    }
+
+    /**
+     * Reads a profile written by a VM run with {@code -XX:StartupProfile}.
+     */
+    @HOSTED_ONLY
+    public static StartupProfile read(File file) throws IOException {
+        final Set<String> classes = new HashSet<String>();
+        final List<String> methods = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("Unrecognized header in startup profile " + file + ": " + line);
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(CLASS_PREFIX)) {
+                    classes.add(line.substring(CLASS_PREFIX.length()));
+                } else if (line.startsWith(METHOD_PREFIX)) {
+                    methods.add(line.substring(METHOD_PREFIX.length()));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new StartupProfile(classes, methods);
+    }
+
+    /**
+     * Records the profile if {@code -XX:StartupProfile} was specified. This is called just before the main method of
+     * the application is invoked.
+     */
+    public static void recordIfEnabled() {
+        if (StartupProfile == null) {
+            return;
+        }
+        final File file = new File(StartupProfile);
+        try {
+            final CodeRegion codeRegion = Code.bootCodeRegion();
+            final BootHeapRegion heapRegion = Heap.bootHeapRegion;
+            final boolean[] residentCode = residentPages(codeRegion);
+            final boolean[] residentHeap = residentPages(heapRegion);
+
+            final List<String> methods = new ArrayList<String>();
+            for (TargetMethod targetMethod : codeRegion.copyOfTargetMethods()) {
+                final ClassMethodActor classMethodActor = targetMethod.classMethodActor();
+                if (classMethodActor != null && isResident(residentCode, codeRegion, targetMethod.start(), targetMethod.end())) {
+                    methods.add(key(classMethodActor));
+                }
+            }
+
+            final List<String> classes = new ArrayList<String>();
+            for (ClassActor classActor : ClassRegistry.allBootImageClasses()) {
+                if (isResident(residentHeap, heapRegion, classActor) ||
+                    isResident(residentHeap, heapRegion, classActor.dynamicHub()) ||
+                    isResident(residentHeap, heapRegion, classActor.staticHub()) ||
+                    isResident(residentHeap, heapRegion, classActor.staticTuple())) {
+                    classes.add(classActor.name.string);
+                }
+            }
+
+            final PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+            try {
+                out.println(HEADER);
+                for (String className : classes) {
+                    out.print(CLASS_PREFIX);
+                    out.println(className);
+                }
+                for (String method : methods) {
+                    out.print(METHOD_PREFIX);
+                    out.println(method);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.println("Error writing startup profile " + file + ": " + e);
+        }
+    }
+
+    private static boolean isResident(boolean[] resident, MemoryRegion region, Object object) {
+        if (object == null) {
+            return false;
+        }
+        final Address origin = Reference.fromJava(object).toOrigin();
+        return isResident(resident, region, origin, origin.plus(1));
+    }
+
+    private static boolean isResident(boolean[] resident, MemoryRegion region, Address start, Address end) {
+        if (!region.contains(start)) {
+            return false;
+        }
+        final long pageSize = platform().pageSize;
+        final long base = region.start().toLong() / pageSize;
+        final long last = Math.min(end.toLong() - 1, region.end().toLong() - 1) / pageSize;
+        for (long page = start.toLong() / pageSize; page <= last; page++) {
+            if (resident[(int) (page - base)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines which pages of a given region are mapped in the address space of the VM process.
+     *
+     * @return an array with one element per page of {@code region}
+     */
+    private static boolean[] residentPages(MemoryRegion region) throws IOException {
+        final long pageSize = platform().pageSize;
+        final long firstPage = region.start().toLong() / pageSize;
+        final long lastPage = (region.end().toLong() - 1) / pageSize;
+        final int pages = (int) (lastPage - firstPage + 1);
+        final boolean[] resident = new boolean[pages];
+
+        // Each page is described by a little endian 64-bit entry whose bits 63 and 62 are set if the page is
+        // present in memory or swapped out, respectively.
+        final byte[] entries = new byte[pages * 8];
+        final RandomAccessFile pagemap = new RandomAccessFile("/proc/self/pagemap", "r");
+        try {
+            pagemap.seek(firstPage * 8);
+            pagemap.readFully(entries);
+        } finally {
+            pagemap.close();
+        }
+        for (int i = 0; i < pages; i++) {
+            resident[i] = (entries[i * 8 + 7] & 0xC0) != 0;
+        }
+        return resident;
+    }
+}
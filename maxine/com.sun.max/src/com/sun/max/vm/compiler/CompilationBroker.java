@@ -430,6 +430,9 @@ public class CompilationBroker {
     public TargetMethod compile(ClassMethodActor cma, Nature nature, boolean isDeopt) {
         try {
             return compile(cma, nature, isDeopt, false);
+        } catch (VerifyError e) {
+            // a verification error is raised in the thread requiring the method, not reported as a compilation failure
+            throw e;
         } catch (Throwable t) {
             throw new RuntimeException("unexpected compilation failure: ", t);
         }
@@ -449,6 +452,7 @@ public class CompilationBroker {
      * @throws iff failFast the exception that was thrown by first selected compiler
      */
     public TargetMethod compile(ClassMethodActor cma, Nature nature, boolean isDeopt, boolean failFast) throws Throwable {
+        cma.verifyIfPending();
         boolean retryRun = false;
         while (true) {
             Compilation compilation;
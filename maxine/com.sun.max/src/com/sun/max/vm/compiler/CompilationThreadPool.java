@@ -28,6 +28,7 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.Log;
 import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.management.*;
 import com.sun.max.vm.thread.*;
 import com.sun.max.vm.ti.*;
 
@@ -77,6 +78,7 @@ public class CompilationThreadPool {
     public void addCompilationToQueue(Compilation compilation) {
         synchronized (pending) {
             pending.add(compilation);
+            PerfData.set(PerfData.COMPILATION_QUEUE_LENGTH, pending.size());
             pending.notify();
         }
     }
@@ -126,6 +128,7 @@ public class CompilationThreadPool {
                         pending.wait();
                     }
                 }
+                PerfData.set(PerfData.COMPILATION_QUEUE_LENGTH, pending.size());
             }
             compilation.compilingThread = Thread.currentThread();
             if (GCOnRecompilation) {
@@ -194,6 +194,10 @@ public class Deoptimization extends VmOperation {
             }
         }
 
+        if (!methods.isEmpty()) {
+            ExceptionDispatchCache.invalidateAll();
+        }
+
         // Scan the stacks to patch return addresses
         doAllThreads();
     }
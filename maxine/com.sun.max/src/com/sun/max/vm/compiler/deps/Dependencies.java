@@ -299,77 +299,135 @@ public final class Dependencies {
         return (short) mindex;
     }
 
+    /**
+     * The number of times {@link #validateDependencies(CiAssumptions)} validates without holding the class hierarchy
+     * lock before it falls back to validating under the lock.
+     */
+    private static final int OPTIMISTIC_VALIDATION_ATTEMPTS = 2;
+
     /**
      * Validates a given set of assumptions and returns them encoded in a {@link Dependencies} object
      * if validation succeeds. If validation fails, {@link Dependencies#INVALID} is returned instead.
      * If {@code assumptions == null}, then {@code null} is returned.
+     * <p>
+     * The assumptions are validated without holding the {@linkplain DependenciesManager#classHierarchyLock class
+     * hierarchy lock}, so that compilations do not wait for class definitions. Only the installation of the result
+     * takes the lock in read mode, and it is discarded and validation retried if the
+     * {@linkplain DependenciesManager#hierarchyVersion hierarchy changed} in the meantime. After a few failed
+     * attempts, or if a class is being added when validation starts, validation is done under the lock instead.
+     * <p>
+     * Validation without the lock reads {@link ClassActor#uniqueConcreteType} and the sub-class lists while they may
+     * change. Both {@code uniqueConcreteType} and the head of each list ({@link ClassActor#firstSubclassActorId}) are
+     * volatile and only ever refer to classes that were registered before they were published. A validation can
+     * therefore see a hierarchy that is out of date, but never a class id that does not denote a class, and never a
+     * class with multiple concrete sub-types but no sub-classes.
      */
     public static Dependencies validateDependencies(CiAssumptions assumptions) {
         if (assumptions == null) {
             return null;
         }
+        HashMap<ClassActor, ClassDeps> packedDeps = new HashMap<ClassActor, ClassDeps>(10);
+        for (int attempt = 0; attempt < OPTIMISTIC_VALIDATION_ATTEMPTS; attempt++) {
+            final int version = DependenciesManager.hierarchyVersion;
+            if ((version & 1) != 0) {
+                // A class is being added: wait for it on the lock
+                break;
+            }
+            packedDeps.clear();
+            short[] packed = pack(assumptions, packedDeps);
+            classHierarchyLock.readLock().lock();
+            try {
+                if (DependenciesManager.hierarchyVersion == version) {
+                    return install(packed, packedDeps);
+                }
+            } finally {
+                classHierarchyLock.readLock().unlock();
+            }
+        }
         classHierarchyLock.readLock().lock();
         try {
-            FatalError.check(ClassIDManager.largestClassId() <= Short.MAX_VALUE, "Support for 1 << 16 number of classes not supported yet");
-            HashMap<ClassActor, ClassDeps> packedDeps = new HashMap<ClassActor, ClassDeps>(10);
-            for (Assumption a : assumptions) {
-                ClassActor contextClassActor = (ClassActor) ((ContextAssumption) a).context;
-                ClassDeps classDeps = get(packedDeps, contextClassActor);
-                DependencyProcessor dependencyProcessor = DependenciesManager.dependencyProcessors.get(a.getClass());
-
-                if (dependencyProcessor != null) {
-                    classDeps.flags |= dependencyProcessor.bitMask;
-                    if (!dependencyProcessor.validate(a, classDeps)) {
-                        return Dependencies.INVALID;
-                    }
-                } else {
-                    assert false : "unhandled subtype of CiAssumptions: " + a.getClass().getName();
-                }
+            packedDeps.clear();
+            return install(pack(assumptions, packedDeps), packedDeps);
+        } finally {
+            classHierarchyLock.readLock().unlock();
+        }
+    }
 
+    /**
+     * Validates a given set of assumptions and encodes them.
+     *
+     * @param packedDeps an empty map in which the validated dependencies are collected per context type
+     * @return the encoded dependencies or {@code null} if an assumption is not valid
+     */
+    private static short[] pack(CiAssumptions assumptions, HashMap<ClassActor, ClassDeps> packedDeps) {
+        FatalError.check(ClassIDManager.largestClassId() <= Short.MAX_VALUE, "Support for 1 << 16 number of classes not supported yet");
+        for (Assumption a : assumptions) {
+            ClassActor contextClassActor = (ClassActor) ((ContextAssumption) a).context;
+            ClassDeps classDeps = get(packedDeps, contextClassActor);
+            DependencyProcessor dependencyProcessor = DependenciesManager.dependencyProcessors.get(a.getClass());
+
+            if (dependencyProcessor != null) {
+                classDeps.flags |= dependencyProcessor.bitMask;
+                if (!dependencyProcessor.validate(a, classDeps)) {
+                    return null;
+                }
+            } else {
+                assert false : "unhandled subtype of CiAssumptions: " + a.getClass().getName();
             }
 
-            // Calculate the size of the array needed for all the dependencies
-            int size = 0;
-            for (Map.Entry<ClassActor, ClassDeps> e : packedDeps.entrySet()) {
-                ClassDeps classDeps = e.getValue();
-                size += 2; // context type and flags
-
-                for (int d = 0; d < dependencyProcessorsArray.length; d++) {
-                    DependencyProcessor dp = dependencyProcessorsArray[d];
-                    ClassDeps.Records records = classDeps.records[dp.id];
-                    if (records != null && records.count > 0) {
-                        size += 1 + records.count;
-                    }
+        }
+
+        // Calculate the size of the array needed for all the dependencies
+        int size = 0;
+        for (Map.Entry<ClassActor, ClassDeps> e : packedDeps.entrySet()) {
+            ClassDeps classDeps = e.getValue();
+            size += 2; // context type and flags
+
+            for (int d = 0; d < dependencyProcessorsArray.length; d++) {
+                DependencyProcessor dp = dependencyProcessorsArray[d];
+                ClassDeps.Records records = classDeps.records[dp.id];
+                if (records != null && records.count > 0) {
+                    size += 1 + records.count;
                 }
             }
+        }
 
-            short[] packed = new short[size];
-            int i = 0;
-            for (Map.Entry<ClassActor, ClassDeps> e : packedDeps.entrySet()) {
-                ClassActor classActor = e.getKey();
-                ClassDeps classDeps = e.getValue();
-                packed[i++] = (short) classActor.id;
-                packed[i++] = classDeps.flags;
-                for (int d = 0; d < dependencyProcessorsArray.length; d++) {
-                    DependencyProcessor dp = dependencyProcessorsArray[d];
-                    ClassDeps.Records records = classDeps.records[dp.id];
-                    if (records != null && records.count > 0) {
-                        assert i < packed.length;
-                        packed[i++] = records.count;
-                        assert i + records.count <= packed.length;
-                        System.arraycopy(records.buf, 0, packed, i, records.count);
-                        i += records.count;
-                    }
+        short[] packed = new short[size];
+        int i = 0;
+        for (Map.Entry<ClassActor, ClassDeps> e : packedDeps.entrySet()) {
+            ClassActor classActor = e.getKey();
+            ClassDeps classDeps = e.getValue();
+            packed[i++] = (short) classActor.id;
+            packed[i++] = classDeps.flags;
+            for (int d = 0; d < dependencyProcessorsArray.length; d++) {
+                DependencyProcessor dp = dependencyProcessorsArray[d];
+                ClassDeps.Records records = classDeps.records[dp.id];
+                if (records != null && records.count > 0) {
+                    assert i < packed.length;
+                    packed[i++] = records.count;
+                    assert i + records.count <= packed.length;
+                    System.arraycopy(records.buf, 0, packed, i, records.count);
+                    i += records.count;
                 }
             }
-            assert i == packed.length;
+        }
+        assert i == packed.length;
+        return packed;
+    }
 
-            Dependencies deps = new Dependencies(packed);
-            contextDependents.addDependencies(deps, packedDeps.keySet());
-            return deps;
-        } finally {
-            classHierarchyLock.readLock().unlock();
+    /**
+     * Installs validated dependencies so that they are invalidated by later changes to the class hierarchy.
+     * The caller must hold the class hierarchy lock in read mode.
+     *
+     * @param packed the result of {@link #pack}
+     */
+    private static Dependencies install(short[] packed, HashMap<ClassActor, ClassDeps> packedDeps) {
+        if (packed == null) {
+            return Dependencies.INVALID;
         }
+        Dependencies deps = new Dependencies(packed);
+        contextDependents.addDependencies(deps, packedDeps.keySet());
+        return deps;
     }
 
     /**
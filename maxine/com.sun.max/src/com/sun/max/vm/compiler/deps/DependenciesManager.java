@@ -79,13 +79,23 @@ public final class DependenciesManager {
      * Read-write lock used to synchronize modifications to the class hierarchy with validation of dependencies.
      * New class definition must acquire the lock in write mode to exclude all concurrent updates to the class hierarchy,
      * and, more importantly, to exclude all concurrent validations or installations of validated dependencies.
-     * Validation and installation of dependencies acquire the lock in read mode to exclude all modifications to
+     * Installation of dependencies acquires the lock in read mode to exclude all modifications to
      * class hierarchy information by concurrent class definition. This allows
-     * multiple validation to be performed concurrently. Installation of dependencies in the dependency table
+     * multiple installations to be performed concurrently. Installation of dependencies in the dependency table
      * requires additional synchronization as it updates both the table and per class type dependency information.
+     * Validation normally runs without the lock and relies on {@link #hierarchyVersion} instead.
      */
     public static final ReentrantReadWriteLock classHierarchyLock = new ReentrantReadWriteLock();
 
+    /**
+     * The version of the class hierarchy, used to validate dependencies without holding {@link #classHierarchyLock}
+     * (see {@link Dependencies#validateDependencies(CiAssumptions)}). It is incremented under the lock in write mode
+     * when a class starts being added to the hierarchy and again once the addition is complete, so it is odd while
+     * the hierarchy is changing. A validation that started at an even version and finds the same version once it holds
+     * the lock in read mode has seen a stable hierarchy.
+     */
+    static volatile int hierarchyVersion;
+
     /**
      * Used during registration to accumulate {@linkplain DependencyProcessor} instances.
      */
@@ -140,12 +150,14 @@ public final class DependenciesManager {
     public static void addToHierarchy(ClassActor classActor) {
         boolean refreshTables = false;
         classHierarchyLock.writeLock().lock();
+        hierarchyVersion++;
         try {
             classActor.prependToSiblingList();
             ArrayList<Dependencies> invalidated = ConcreteTypeDependencyProcessor.recordUniqueConcreteSubtype(classActor);
             ConcreteTypeDependencyProcessor.invalidateDependencies(invalidated, classActor);
             refreshTables = true;
         } finally {
+            hierarchyVersion++;
             classHierarchyLock.writeLock().unlock();
             if (!MaxineVM.isHosted() && refreshTables) {
                 // Don't need to be under the class hierarchy lock to do this.
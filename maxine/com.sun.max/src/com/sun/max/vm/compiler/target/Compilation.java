@@ -28,9 +28,11 @@ import java.util.concurrent.*;
 import com.sun.max.annotate.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.code.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.RuntimeCompiler.Nature;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.management.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.tele.*;
@@ -302,6 +304,11 @@ public class Compilation {
             stopCompilationMetricsCollection();
 
             logAfterCompilation();
+
+            if (PerfData.isEnabled()) {
+                PerfData.increment(PerfData.COMPILATIONS);
+                PerfData.set(PerfData.CODE_CACHE_USED, CodeManager.runtimeCodeUsed().toLong());
+            }
         } catch (RuntimeException t) {
             error = t;
         } catch (Error t) {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.compiler.target;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.deopt.*;
+
+/**
+ * A small, direct mapped cache of the exception handler lookups performed by a thread while
+ * {@linkplain TargetMethod#catchException unwinding} its stack. An entry maps a (target method,
+ * throw position, exception class) triple to the position of the handler in the target method,
+ * so that an exception repeatedly thrown along the same path does not search the exception handler
+ * table and type check the catch types of each frame on every throw.
+ * <p>
+ * Each thread owns one cache. Lookups and updates never allocate, as they occur while the stack is
+ * being unwound with safepoints disabled. For the same reason, no synchronization is required:
+ * the VM operations that {@linkplain #invalidateAll() invalidate} the caches ({@linkplain CodeEviction code eviction}
+ * and {@linkplain Deoptimization deoptimization}) never run while a thread is unwinding. Invalidation
+ * is lazy: it advances a global epoch and a cache that observes a new epoch discards its entries
+ * before its next lookup.
+ */
+public final class ExceptionDispatchCache {
+
+    public static boolean UseExceptionDispatchCache = true;
+    static {
+        addFieldOption("-XX:", "UseExceptionDispatchCache", ExceptionDispatchCache.class, "Cache exception handler lookups per thread.");
+    }
+
+    /**
+     * The number of entries in a cache. Must be a power of 2.
+     */
+    private static final int SIZE = 32;
+
+    /**
+     * Handler position denoting that a cached lookup found no handler.
+     */
+    public static final int NO_HANDLER = -1;
+
+    /**
+     * Value returned by {@link #lookup} if there is no cached entry.
+     */
+    public static final int MISS = -2;
+
+    private static volatile int epoch;
+
+    private final TargetMethod[] targetMethods = new TargetMethod[SIZE];
+    private final ClassActor[] exceptionClasses = new ClassActor[SIZE];
+    private final int[] throwPositions = new int[SIZE];
+    private final int[] catchPositions = new int[SIZE];
+    private int cacheEpoch;
+
+    /**
+     * Invalidates the entries of all caches. This must only be called while mutator threads are stopped.
+     */
+    public static void invalidateAll() {
+        epoch++;
+    }
+
+    @INLINE
+    private static int indexFor(TargetMethod targetMethod, int throwPos, ClassActor exceptionClass) {
+        int hash = (int) (targetMethod.codeStart().toLong() >>> 4) + throwPos;
+        return (hash ^ (hash >>> 16) ^ (exceptionClass.id * 31)) & (SIZE - 1);
+    }
+
+    /**
+     * Gets the cached handler position for an exception thrown at a given position.
+     *
+     * @return the handler position, {@link #NO_HANDLER} if it was determined that there is no handler
+     *         or {@link #MISS} if there is no entry for the lookup
+     */
+    public int lookup(TargetMethod targetMethod, int throwPos, ClassActor exceptionClass) {
+        if (cacheEpoch != epoch) {
+            for (int i = 0; i < SIZE; i++) {
+                targetMethods[i] = null;
+                exceptionClasses[i] = null;
+            }
+            cacheEpoch = epoch;
+            return MISS;
+        }
+        final int index = indexFor(targetMethod, throwPos, exceptionClass);
+        if (targetMethods[index] == targetMethod && throwPositions[index] == throwPos && exceptionClasses[index] == exceptionClass) {
+            return catchPositions[index];
+        }
+        return MISS;
+    }
+
+    /**
+     * Records the result of an exception handler lookup, replacing any entry it collides with.
+     *
+     * @param catchPos the handler position or {@link #NO_HANDLER}
+     */
+    public void record(TargetMethod targetMethod, int throwPos, ClassActor exceptionClass, int catchPos) {
+        final int index = indexFor(targetMethod, throwPos, exceptionClass);
+        targetMethods[index] = targetMethod;
+        exceptionClasses[index] = exceptionClass;
+        throwPositions[index] = throwPos;
+        catchPositions[index] = catchPos;
+    }
+}
@@ -40,6 +40,7 @@ import com.sun.max.lang.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.classfile.*;
 import com.sun.max.vm.code.*;
@@ -54,6 +55,7 @@ import com.sun.max.vm.compiler.target.amd64.AMD64TargetMethodUtil;
 import com.sun.max.vm.compiler.target.arm.*;
 import com.sun.max.vm.compiler.target.riscv64.RISCV64TargetMethodUtil;
 import com.sun.max.vm.jni.*;
+import com.sun.max.vm.object.*;
 import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
@@ -248,6 +250,25 @@ public abstract class TargetMethod extends MemoryRegion {
         return false;
     }
 
+    /**
+     * Samples the usage counters of this method at the start of an {@linkplain CodeEviction eviction cycle}.
+     * This advances the {@linkplain #idleEvictionEpochs() idle epoch count} if the method has not been
+     * entered since the previous sample and resets it otherwise.
+     */
+    public void sampleUsage() {
+        // empty
+    }
+
+    /**
+     * Gets the number of consecutive {@linkplain CodeEviction eviction cycles} during which this method
+     * was not entered, as of the last {@linkplain #sampleUsage() sample}.
+     *
+     * @return {@link Integer#MAX_VALUE} if usage is not tracked for this method
+     */
+    public int idleEvictionEpochs() {
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * @return the number of survived {@linkplain CodeEviction eviction cycles}.
      */
@@ -1247,6 +1268,29 @@ public abstract class TargetMethod extends MemoryRegion {
      */
     public abstract CodePointer throwAddressToCatchAddress(CodePointer throwAddress, Throwable throwable);
 
+    /**
+     * Same as {@link #throwAddressToCatchAddress(CodePointer, Throwable)} except that the current thread's
+     * {@link ExceptionDispatchCache} is consulted (and updated) first. This must only be called while the
+     * current thread is unwinding its stack.
+     *
+     * @param throwAddress the throw address
+     */
+    protected final CodePointer cachedThrowAddressToCatchAddress(CodePointer throwAddress, Throwable throwable) {
+        final int throwPos = posFor(throwAddress);
+        if (!ExceptionDispatchCache.UseExceptionDispatchCache || throwPos < 0) {
+            return throwAddressToCatchAddress(throwAddress, throwable);
+        }
+        final ClassActor exceptionClass = ObjectAccess.readClassActor(throwable);
+        final ExceptionDispatchCache cache = VmThread.current().exceptionDispatchCache();
+        final int catchPos = cache.lookup(this, throwPos, exceptionClass);
+        if (catchPos == ExceptionDispatchCache.MISS) {
+            final CodePointer catchAddress = throwAddressToCatchAddress(throwAddress, throwable);
+            cache.record(this, throwPos, exceptionClass, catchAddress.isZero() ? ExceptionDispatchCache.NO_HANDLER : posFor(catchAddress));
+            return catchAddress;
+        }
+        return catchPos == ExceptionDispatchCache.NO_HANDLER ? CodePointer.zero() : codeAt(catchPos);
+    }
+
     public static class CatchExceptionInfo {
 
         public CodePointer codePointer;
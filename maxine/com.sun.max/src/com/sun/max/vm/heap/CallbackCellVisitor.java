@@ -33,6 +33,8 @@ import com.sun.max.vm.reference.*;
  */
 public abstract class CallbackCellVisitor implements CellVisitor {
 
+    private boolean aborted;
+
     @Override
     public Pointer visitCell(Pointer cell) {
         final Pointer origin = Layout.cellToOrigin(cell);
@@ -40,6 +42,7 @@ public abstract class CallbackCellVisitor implements CellVisitor {
 
         Object object = Reference.fromOrigin(origin).toJava();
         if (!callback(object)) {
+            aborted = true;
             return Pointer.zero();
         }
 
@@ -57,4 +60,11 @@ public abstract class CallbackCellVisitor implements CellVisitor {
      */
     protected abstract boolean callback(Object object);
 
+    /**
+     * Determines if a {@link #callback} has aborted the walk, in which case the remaining heap partitions are not walked.
+     */
+    public boolean aborted() {
+        return aborted;
+    }
+
 }
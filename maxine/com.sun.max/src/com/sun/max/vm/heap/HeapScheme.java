@@ -485,12 +485,32 @@ public interface HeapScheme extends VMScheme {
 
     /**
      * Encapsulates the structure of the heap from a tool (e.g. JVMTI) that want to visit every object
-     * in the heap.
+     * in the heap. This is equivalent to walking each {@linkplain #prepareHeapWalk() partition} in turn until the
+     * visitor {@linkplain CallbackCellVisitor#aborted() aborts}.
      *
      * @param visitor
      */
     void walkHeap(CallbackCellVisitor visitor);
 
+    /**
+     * Prepares the heap for being walked partition by partition, e.g. by filling unused TLAB space, and gets the number
+     * of partitions. Partitions are disjoint sets of cells, such as the immortal heap, the boot heap and each space or
+     * region, that {@link #walkHeapPartition} can walk independently and concurrently. The heap must not change until the
+     * walk completes, so this is only called during a safepoint {@link com.sun.max.vm.runtime.VmOperation}.
+     *
+     * @return the number of partitions
+     */
+    int prepareHeapWalk();
+
+    /**
+     * Visits the cells of one heap partition in address order. The walk of the partition stops if the visitor returns a
+     * zero cell.
+     *
+     * @param partition a partition index less than the value returned by the preceding {@link #prepareHeapWalk()}
+     * @param visitor the visitor
+     */
+    void walkHeapPartition(int partition, CellVisitor visitor);
+
     /**
      *
      */
@@ -292,6 +292,42 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
 
     @Override
     public void walkHeap(CallbackCellVisitor visitor) {
+        final int partitions = prepareHeapWalk();
+        for (int partition = 0; partition < partitions && !visitor.aborted(); partition++) {
+            walkHeapPartition(partition, visitor);
+        }
+    }
+
+    /**
+     * Number of heap partitions common to all heap schemes: the immortal heap and the boot heap.
+     */
+    protected static final int COMMON_HEAP_PARTITIONS = 2;
+
+    /**
+     * By default, only the {@linkplain #COMMON_HEAP_PARTITIONS common partitions} are walked. Heap schemes that can walk
+     * their dynamic heap add their own partitions after these.
+     */
+    @Override
+    public int prepareHeapWalk() {
+        return COMMON_HEAP_PARTITIONS;
+    }
+
+    /**
+     * Walks the {@linkplain #COMMON_HEAP_PARTITIONS common partitions}. Heap schemes that add partitions handle the
+     * ones from {@link #COMMON_HEAP_PARTITIONS} on and delegate the others to this method.
+     */
+    @Override
+    public void walkHeapPartition(int partition, CellVisitor visitor) {
+        switch (partition) {
+            case 0:
+                ImmortalHeap.visitCells(visitor);
+                break;
+            case 1:
+                Heap.bootHeapRegion.visitCells(visitor);
+                break;
+            default:
+                throw FatalError.unexpected("invalid heap partition");
+        }
     }
 
     public boolean supportsPinning(PIN_SUPPORT_FLAG flag) {
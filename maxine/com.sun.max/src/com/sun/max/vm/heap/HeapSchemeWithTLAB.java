@@ -39,6 +39,7 @@ import com.sun.max.vm.intrinsics.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.management.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.profilers.tracing.numa.NUMAProfiler;
 import com.sun.max.vm.reference.*;
@@ -391,6 +392,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
 
         TLAB_TOP.store(etla, tlabTop);
         TLAB_MARK.store(etla, tlab);
+        PerfData.increment(PerfData.TLAB_REFILLS);
         if (logTLAB()) {
             VmThread vmThread = UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava());
             logger.logRefill(vmThread, tlabTop, tlabTop, tlab.plus(initialTlabSize), initialTlabSize.toInt());
@@ -401,6 +403,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     protected final void fastRefillTLAB(Pointer etla, Pointer tlab, Size size) {
         TLAB_TOP.store(etla, tlab.plus(size));
         TLAB_MARK.store(etla, tlab);
+        PerfData.increment(PerfData.TLAB_REFILLS);
     }
 
     /**
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.heap;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Walks the {@linkplain HeapScheme#prepareHeapWalk() partitions} of the heap with several threads during a safepoint
+ * {@link VmOperation}. The thread calling {@link #walk} walks partitions itself, and is helped by
+ * {@code -XX:HeapWalkThreads} - 1 daemon helper threads, which claim partitions one at a time.
+ * <p>
+ * A VM operation that uses this walker must {@linkplain #ensureHelpers() create} the helpers before it is submitted
+ * and must not {@linkplain VmOperation#operateOnThread(VmThread) operate} on them, so that they keep running while the
+ * mutator threads are frozen. Since the frozen threads may hold any lock, the partition visitors run by the helpers
+ * must not allocate on the application heap or synchronize on anything but the partition they produce. Helpers
+ * allocate from the immortal heap while walking.
+ */
+public final class ParallelHeapWalker {
+
+    /**
+     * The number of threads, including the VM operation thread, that walk the heap.
+     */
+    private static int HeapWalkThreads = 1;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "HeapWalkThreads", ParallelHeapWalker.class,
+            "Number of threads, including the VM operation thread, that walk the heap for tools such as JVMTI.");
+    }
+
+    /**
+     * Visits one partition of the heap on behalf of a {@link ParallelHeapWalker#walk}.
+     */
+    public interface PartitionVisitor {
+        /**
+         * @param partition the partition to visit
+         * @param worker the index of the visiting thread, 0 for the thread that called {@link ParallelHeapWalker#walk}
+         */
+        void visitPartition(int partition, int worker);
+    }
+
+    private static final Object LOCK = new Object();
+    static {
+        JavaMonitorManager.bindStickyMonitor(LOCK);
+    }
+
+    private static Helper[] helpers = new Helper[0];
+
+    private static PartitionVisitor task;
+    private static int partitionCount;
+    private static int nextPartition;
+    private static int generation;
+    private static int activeHelpers;
+
+    /**
+     * The number of helpers that have started running and are ready to take part in a walk.
+     */
+    private static int runningHelpers;
+
+    private ParallelHeapWalker() {
+    }
+
+    /**
+     * Gets the number of threads that will walk the heap, which is also the number of distinct worker indexes passed to
+     * a {@link PartitionVisitor}.
+     */
+    public static int workers() {
+        return helpers.length + 1;
+    }
+
+    /**
+     * Starts the helper threads if they have not been started yet, and waits until they are running. This must be
+     * called by a mutator thread, before submitting the VM operation that will {@linkplain #walk walk} the heap: a
+     * thread that is still attaching to the VM needs the {@linkplain VmThreadMap#THREAD_LOCK thread lock}, which the
+     * VM operation holds while it walks the heap.
+     */
+    public static void ensureHelpers() {
+        synchronized (LOCK) {
+            if (helpers.length >= HeapWalkThreads - 1) {
+                return;
+            }
+            final Helper[] newHelpers = new Helper[HeapWalkThreads - 1];
+            System.arraycopy(helpers, 0, newHelpers, 0, helpers.length);
+            for (int i = helpers.length; i < newHelpers.length; i++) {
+                newHelpers[i] = new Helper(i + 1, generation);
+                newHelpers[i].start();
+            }
+            helpers = newHelpers;
+            while (runningHelpers < newHelpers.length) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a thread is one of the helpers, which a VM operation calling {@link #walk} must not operate on.
+     */
+    public static boolean isHelper(VmThread thread) {
+        final Helper[] helpers = ParallelHeapWalker.helpers;
+        for (Helper helper : helpers) {
+            if (VmThread.fromJava(helper) == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits each of a number of partitions exactly once, using the calling thread and the helper threads, and returns
+     * when all partitions have been visited. Must be called with the mutator threads frozen.
+     *
+     * @param partitions the number of partitions, normally the result of {@link HeapScheme#prepareHeapWalk()}
+     * @param visitor the partition visitor
+     */
+    public static void walk(int partitions, PartitionVisitor visitor) {
+        synchronized (LOCK) {
+            FatalError.check(task == null, "nested parallel heap walk");
+            task = visitor;
+            partitionCount = partitions;
+            nextPartition = 0;
+            activeHelpers = helpers.length;
+            generation++;
+            LOCK.notifyAll();
+        }
+        work(visitor, 0);
+        synchronized (LOCK) {
+            while (activeHelpers > 0) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                }
+            }
+            task = null;
+        }
+    }
+
+    private static void work(PartitionVisitor visitor, int worker) {
+        while (true) {
+            final int partition;
+            synchronized (LOCK) {
+                if (nextPartition >= partitionCount) {
+                    return;
+                }
+                partition = nextPartition++;
+            }
+            visitor.visitPartition(partition, worker);
+        }
+    }
+
+    private static final class Helper extends Thread {
+        private final int worker;
+
+        /**
+         * The generation of the last walk this helper took part in, or that preceded its creation.
+         */
+        private int seen;
+
+        Helper(int worker, int generation) {
+            super("Heap Walker " + worker);
+            this.worker = worker;
+            this.seen = generation;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            synchronized (LOCK) {
+                runningHelpers++;
+                LOCK.notifyAll();
+            }
+            while (true) {
+                final PartitionVisitor visitor;
+                synchronized (LOCK) {
+                    while (generation == seen) {
+                        try {
+                            LOCK.wait();
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    seen = generation;
+                    visitor = task;
+                }
+                Heap.enableImmortalMemoryAllocation();
+                try {
+                    work(visitor, worker);
+                } finally {
+                    Heap.disableImmortalMemoryAllocation();
+                    synchronized (LOCK) {
+                        if (--activeHelpers == 0) {
+                            LOCK.notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -83,6 +83,73 @@ public class SpecialReferenceManager {
         boolean mayRelocateLiveObjects();
     }
 
+    /**
+     * A table of weak references to heap objects that is kept outside of the object graph, for example as object
+     * addresses in primitive arrays, and is updated by the GC directly instead of through {@link java.lang.ref.Reference}
+     * objects. Registered tables are {@linkplain SpecialReferenceManager#processWeakRoots(GC) processed} once per GC,
+     * after the objects preserved for the discovered special references have been traced, so that objects only
+     * reachable from finalizers or phantom references are still live.
+     */
+    public abstract static class WeakRoots {
+        private WeakRoots nextWeakRoots;
+
+        /**
+         * Clears the entries for objects that are not {@linkplain GC#isReachable(Reference) reachable} and, if the GC
+         * {@linkplain GC#mayRelocateLiveObjects() relocates} live objects, updates the other entries with the objects'
+         * {@linkplain GC#preserve(Reference) new locations}. Called during GC, so it must not allocate or synchronize.
+         *
+         * @param gc interface to the GC implementation
+         */
+        protected abstract void processWeakRoots(GC gc);
+    }
+
+    /**
+     * Head of the list of registered {@link WeakRoots}.
+     */
+    private static WeakRoots weakRoots;
+
+    /**
+     * Registers a table of weak roots to be processed by every subsequent GC.
+     */
+    public static synchronized void registerWeakRoots(WeakRoots roots) {
+        assert roots.nextWeakRoots == null && roots != weakRoots : "already registered";
+        roots.nextWeakRoots = weakRoots;
+        weakRoots = roots;
+    }
+
+    /**
+     * Unregisters a table of weak roots, which is not processed by any subsequent GC. The table's entries are left
+     * as they are and must no longer be used.
+     */
+    public static synchronized void unregisterWeakRoots(WeakRoots roots) {
+        if (weakRoots == roots) {
+            weakRoots = roots.nextWeakRoots;
+        } else {
+            WeakRoots prev = weakRoots;
+            while (prev != null && prev.nextWeakRoots != roots) {
+                prev = prev.nextWeakRoots;
+            }
+            assert prev != null : "not registered";
+            if (prev != null) {
+                prev.nextWeakRoots = roots.nextWeakRoots;
+            }
+        }
+        roots.nextWeakRoots = null;
+    }
+
+    /**
+     * Processes the registered {@link WeakRoots}. The GC calls this once per collection, after
+     * {@link #processDiscoveredSpecialReferences(GC)} and after it has traced the objects preserved by it, so that
+     * {@link GC#isReachable(Reference)} is final for every object.
+     *
+     * @param gc interface to the GC implementation
+     */
+    public static void processWeakRoots(GC gc) {
+        for (WeakRoots roots = weakRoots; roots != null; roots = roots.nextWeakRoots) {
+            roots.processWeakRoots(gc);
+        }
+    }
+
     /**
      * The lock object associated with managing special references. This lock must
      * be held by the GC when it is updating the list of pending special references.
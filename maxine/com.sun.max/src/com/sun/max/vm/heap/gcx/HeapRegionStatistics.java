@@ -81,7 +81,7 @@ public final class HeapRegionStatistics {
     }
 
     public void clear() {
-        for (int i = log2MinFragmentSize; i <= log2MinFragmentSize; i++) {
+        for (int i = 0; i < fragmentSizes.length; i++) {
             fragmentSizes[i] = 0;
             freeSpaceSizes[i] = 0;
         }
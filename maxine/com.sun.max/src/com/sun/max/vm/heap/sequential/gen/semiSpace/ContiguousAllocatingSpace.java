@@ -150,7 +150,7 @@ public class ContiguousAllocatingSpace<T extends BaseAtomicBumpPointerAllocator<
         Pointer cell = space.start().asPointer();
         do {
             cell = visitor.visitCell(cell);
-        } while (cell.lessThan(top));
+        } while (cell.isNotZero() && cell.lessThan(top));
     }
 
     @Override
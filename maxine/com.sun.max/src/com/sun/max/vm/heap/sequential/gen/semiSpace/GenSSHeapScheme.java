@@ -858,12 +858,20 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
     }
 
     @Override
-    public void walkHeap(CallbackCellVisitor visitor) {
-        ImmortalHeap.visitCells(visitor);
-        Heap.bootHeapRegion.visitCells(visitor);
+    public int prepareHeapWalk() {
         VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
-        oldSpace.visitAllocatedCells(visitor);
-        youngSpace.visitAllocatedCells(visitor);
+        return COMMON_HEAP_PARTITIONS + 2;
+    }
+
+    @Override
+    public void walkHeapPartition(int partition, CellVisitor visitor) {
+        if (partition < COMMON_HEAP_PARTITIONS) {
+            super.walkHeapPartition(partition, visitor);
+        } else if (partition == COMMON_HEAP_PARTITIONS) {
+            oldSpace.visitAllocatedCells(visitor);
+        } else {
+            youngSpace.visitAllocatedCells(visitor);
+        }
     }
 
     @Override
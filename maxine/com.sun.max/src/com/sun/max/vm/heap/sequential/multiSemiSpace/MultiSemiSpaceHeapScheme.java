@@ -449,6 +449,8 @@ public class MultiSemiSpaceHeapScheme extends HeapSchemeWithTLAB implements Cell
                 }
                 startTimer(weakRefTimer);
                 SpecialReferenceManager.processDiscoveredSpecialReferences(refForwarder);
+                // preserve() has already moved everything reachable from the preserved referents
+                SpecialReferenceManager.processWeakRoots(refForwarder);
                 stopTimer(weakRefTimer);
                 stopTimer(gcTimer);
                 if (Heap.logGCPhases()) {
@@ -700,18 +702,16 @@ public class MultiSemiSpaceHeapScheme extends HeapSchemeWithTLAB implements Cell
      * heap but are not usually filled.
      * @param visitor
      */
-    private void visitCells(CellVisitor visitor) {
-        for (int i = 0; i < NUMBER_OF_SPLITS; i++) {
-            Pointer start = toSpaces[i].start().asPointer();
-            Pointer cell  = start;
-            if (Heap.verbose()) {
-                Log.print("Visit Region: To Space");
-                Log.println();
-            }
-            while (cell.isNotZero() && cell.lessThan(allocationMark(i)) && cell.getWord().isNotZero()) {
-                cell = DebugHeap.checkDebugCellTag(start, cell);
-                cell = visitor.visitCell(cell);
-            }
+    private void visitCells(int i, CellVisitor visitor) {
+        Pointer start = toSpaces[i].start().asPointer();
+        Pointer cell  = start;
+        if (Heap.verbose()) {
+            Log.print("Visit Region: To Space ");
+            Log.println(i);
+        }
+        while (cell.isNotZero() && cell.lessThan(allocationMark(i)) && cell.getWord().isNotZero()) {
+            cell = DebugHeap.checkDebugCellTag(start, cell);
+            cell = visitor.visitCell(cell);
         }
     }
 
@@ -1266,11 +1266,21 @@ public class MultiSemiSpaceHeapScheme extends HeapSchemeWithTLAB implements Cell
         return growHeap.result;
     }
 
+    /**
+     * The partitions are the immortal heap, the boot heap and each of the {@link #toSpaces}.
+     */
     @Override
-    public void walkHeap(CallbackCellVisitor visitor) {
-        ImmortalHeap.visitCells(visitor);
-        Heap.bootHeapRegion.visitCells(visitor);
-        visitCells(visitor);
+    public int prepareHeapWalk() {
+        return COMMON_HEAP_PARTITIONS + NUMBER_OF_SPLITS;
+    }
+
+    @Override
+    public void walkHeapPartition(int partition, CellVisitor visitor) {
+        if (partition < COMMON_HEAP_PARTITIONS) {
+            super.walkHeapPartition(partition, visitor);
+        } else {
+            visitCells(partition - COMMON_HEAP_PARTITIONS, visitor);
+        }
     }
 
     /**
@@ -409,6 +409,8 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 }
                 startTimer(weakRefTimer);
                 SpecialReferenceManager.processDiscoveredSpecialReferences(refForwarder);
+                // preserve() has already moved everything reachable from the preserved referents
+                SpecialReferenceManager.processWeakRoots(refForwarder);
                 stopTimer(weakRefTimer);
                 stopTimer(gcTimer);
                 if (Heap.logGCPhases()) {
@@ -1162,10 +1164,17 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
     }
 
     @Override
-    public void walkHeap(CallbackCellVisitor visitor) {
-        ImmortalHeap.visitCells(visitor);
-        Heap.bootHeapRegion.visitCells(visitor);
-        visitCells(visitor);
+    public int prepareHeapWalk() {
+        return COMMON_HEAP_PARTITIONS + 1;
+    }
+
+    @Override
+    public void walkHeapPartition(int partition, CellVisitor visitor) {
+        if (partition < COMMON_HEAP_PARTITIONS) {
+            super.walkHeapPartition(partition, visitor);
+        } else {
+            visitCells(visitor);
+        }
     }
 
     /**
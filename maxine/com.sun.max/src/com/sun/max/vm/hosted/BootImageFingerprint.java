@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.hosted;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.io.Files;
+import com.sun.max.program.*;
+import com.sun.max.vm.classfile.*;
+
+/**
+ * The fingerprint of the inputs from which a boot image is built, used by the
+ * {@linkplain BootImageGenerator#skipIfUnchangedOption -skip-if-unchanged} option of the boot image generator to avoid
+ * rebuilding an image whose inputs have not changed since it was built.
+ * <p>
+ * This is not an incremental build: any change to the inputs causes a full rebuild. The image's relocation data ({@link DataPrototype#relocationData()})
+ * only marks the words of the image that hold pointers, so that the substrate can rebase the whole image by its load
+ * address. It cannot move individual objects or methods. Reusing part of a previous image would need stable object
+ * identities and per-object fixups, which the generator does not keep: the layout of the heap and code regions depends
+ * on the complete object graph.
+ * <p>
+ * The fingerprint maps each input to a {@linkplain ClassfileDigest digest}:
+ * <ul>
+ * <li>every file in a directory on the class path, by its resource path (the first one on the class path wins). This
+ * includes resources and any other file the generator may read, not just class files,</li>
+ * <li>every archive or other file on the class path, by its length and modification time,</li>
+ * <li>the generator's arguments, the host Java runtime and the {@code max.*} system properties.</li>
+ * </ul>
+ * The current working directory is excluded from the class path as the generator only uses it to dump the
+ * proxy classes it generates.
+ */
+final class BootImageFingerprint {
+
+    private static final String HEADER = "# Maxine boot image fingerprint v3";
+
+    private final SortedMap<String, String> entries;
+
+    private BootImageFingerprint(SortedMap<String, String> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Computes the fingerprint for the current class path and a given set of generator arguments.
+     */
+    static BootImageFingerprint compute(String[] programArguments) {
+        final TreeMap<String, String> entries = new TreeMap<String, String>();
+        entries.put("input arguments", digest(Arrays.toString(programArguments)));
+        entries.put("input runtime", digest(System.getProperty("java.version") + ' ' + System.getProperty("java.home") + ' ' +
+                                            System.getProperty("os.name") + ' ' + System.getProperty("os.arch")));
+        final TreeMap<String, String> maxProperties = new TreeMap<String, String>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("max.")) {
+                maxProperties.put(name, System.getProperty(name));
+            }
+        }
+        entries.put("input properties", digest(maxProperties.toString()));
+
+        final File cwd = new File(System.getProperty("user.dir")).getAbsoluteFile();
+        for (Classpath.Entry entry : Classpath.fromSystem().entries()) {
+            final File file = entry.file().getAbsoluteFile();
+            if (entry.isDirectory()) {
+                if (!file.equals(cwd)) {
+                    addFiles(file, "", entries);
+                }
+            } else {
+                entries.put("file " + file.getPath(), digest(file.length() + " " + file.lastModified()));
+            }
+        }
+        return new BootImageFingerprint(entries);
+    }
+
+    private static void addFiles(File directory, String prefix, TreeMap<String, String> entries) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                addFiles(file, path + '/', entries);
+            } else if (!entries.containsKey("resource " + path)) {
+                try {
+                    final byte[] bytes = Files.toBytes(file);
+                    entries.put("resource " + path, ClassfileDigest.compute(bytes, 0, bytes.length));
+                } catch (IOException e) {
+                    // an unreadable input never matches a recorded fingerprint
+                    entries.put("resource " + path, "unreadable");
+                }
+            }
+        }
+    }
+
+    private static String digest(String s) {
+        final byte[] bytes = s.getBytes();
+        return ClassfileDigest.compute(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads the fingerprint recorded for a previously built image.
+     *
+     * @return {@code null} if there is no (readable) fingerprint
+     */
+    static BootImageFingerprint read(File file) {
+        final HashMap<String, String> entries = ClassfileDigest.readTable(file, HEADER, "boot image fingerprint");
+        return entries.isEmpty() ? null : new BootImageFingerprint(new TreeMap<String, String>(entries));
+    }
+
+    void write(File file) {
+        ClassfileDigest.writeTable(file, HEADER, "boot image fingerprint", entries);
+    }
+
+    /**
+     * Gets the inputs that differ between this fingerprint and a previous one, each prefixed with
+     * {@code '+'} (added), {@code '-'} (removed) or {@code '*'} (changed).
+     */
+    List<String> changesSince(BootImageFingerprint previous) {
+        final ArrayList<String> changes = new ArrayList<String>();
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            final String old = previous.entries.get(e.getKey());
+            if (old == null) {
+                changes.add("+" + e.getKey());
+            } else if (!old.equals(e.getValue())) {
+                changes.add("*" + e.getKey());
+            }
+        }
+        for (String key : previous.entries.keySet()) {
+            if (!entries.containsKey(key)) {
+                changes.add("-" + key);
+            }
+        }
+        return changes;
+    }
+}
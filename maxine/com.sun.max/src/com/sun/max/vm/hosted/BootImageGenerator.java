@@ -62,6 +62,7 @@ public final class BootImageGenerator {
     public static final String IMAGE_FILE_NAME = "maxine.vm";
     public static final String STATS_FILE_NAME = "maxine.stats";
     public static final String DEPS_FILE_NAME = "maxine.deps";
+    public static final String IMAGE_FINGERPRINT_FILE_NAME = "maxine.vm.fingerprint";
 
     public static final String DEFAULT_VM_DIRECTORY = Prototype.TARGET_GENERATED_ROOT;
 
@@ -95,6 +96,10 @@ public final class BootImageGenerator {
     private static final Option<Boolean> useOutOfLineStubs = options.newBooleanOption("out-stubs", true,
             "Uses out of line runtime stubs when generating inlined TLAB allocations with XIR");
 
+    static final Option<Boolean> skipIfUnchangedOption = options.newBooleanOption("skip-if-unchanged", false,
+            "Do not rebuild the image if none of its inputs (the files on the class path, the arguments of the generator, " +
+            "the host Java runtime and the max.* system properties) changed since the image in the output directory was built. " +
+            "Any change causes a full rebuild.");
     private static final Option<Boolean> useNumaProfiler = options.newBooleanOption("use-numa-profiler", false,
             "Uses NUMA memory profiler.");
 
@@ -206,6 +211,7 @@ public final class BootImageGenerator {
      */
     public BootImageGenerator(String[] programArguments) {
         final long start = System.currentTimeMillis();
+        final String[] originalArguments = programArguments.clone();
         try {
             VMConfigurator configurator = new VMConfigurator(options);
             PrototypeGenerator prototypeGenerator = new PrototypeGenerator(options);
@@ -238,13 +244,26 @@ public final class BootImageGenerator {
                 System.setProperty(JavaPrototype.EXTRA_CLASSES_AND_PACKAGES_PROPERTY_NAME, Utils.toString(extraClassesAndPackages, " "));
             }
 
+            final File vmDirectory = getDefaultVMDirectory(true);
+            vmDirectory.mkdirs();
+
+            // The fingerprint must be computed before the class path is extended for proxy class dumping
+            final File fingerprintFile = new File(vmDirectory, IMAGE_FINGERPRINT_FILE_NAME);
+            BootImageFingerprint fingerprint = null;
+            if (skipIfUnchangedOption.getValue()) {
+                fingerprint = BootImageFingerprint.compute(originalArguments);
+                if (isUpToDate(fingerprint, vmDirectory)) {
+                    System.out.println("Boot image in " + vmDirectory + " is up to date");
+                    return;
+                }
+            }
+            // a fingerprint is only valid for the image that was built from its inputs
+            fingerprintFile.delete();
+
             enableProxyClassFileDumping();
 
             nativeTests = testNative.getValue();
 
-            final File vmDirectory = getDefaultVMDirectory(true);
-            vmDirectory.mkdirs();
-
             // Create and installs the VM
             configurator.create();
 
@@ -282,6 +301,9 @@ public final class BootImageGenerator {
             if (statsOption.getValue()) {
                 writeMiscStatistics(Trace.stream());
             }
+            if (fingerprint != null) {
+                fingerprint.write(fingerprintFile);
+            }
         } catch (IOException ioException) {
             throw ProgramError.unexpected("could not write file ", ioException);
         } finally {
@@ -291,6 +313,27 @@ public final class BootImageGenerator {
         }
     }
 
+    /**
+     * Determines if the image in a given VM directory was built from the inputs denoted by a given fingerprint.
+     * The inputs that changed since the image was built are traced.
+     */
+    private static boolean isUpToDate(BootImageFingerprint fingerprint, File vmDirectory) {
+        final BootImageFingerprint previous = BootImageFingerprint.read(new File(vmDirectory, IMAGE_FINGERPRINT_FILE_NAME));
+        if (previous == null || !new File(vmDirectory, IMAGE_FILE_NAME).exists() || !new File(vmDirectory, IMAGE_JAR_FILE_NAME).exists()) {
+            Trace.line(1, "no previous image to reuse in " + vmDirectory);
+            return false;
+        }
+        final List<String> changes = fingerprint.changesSince(previous);
+        if (!changes.isEmpty()) {
+            Trace.line(1, changes.size() + " input(s) changed since the previous image was built:");
+            for (String change : changes) {
+                Trace.line(1, "    " + change);
+            }
+            return false;
+        }
+        return true;
+    }
+
     /**
      * This is an array of directory names relative to the current working directory (system property "user.dir")
      * to which proxies will be dumped. These directories are created before boot image construction, and deleted
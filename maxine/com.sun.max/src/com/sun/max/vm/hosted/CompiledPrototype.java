@@ -376,11 +376,17 @@ public class CompiledPrototype extends Prototype {
      */
     public HashSet<TargetMethod> invalidatedTargetMethods = new HashSet<TargetMethod>();
 
-    CompiledPrototype(int numberCompilerThreads) {
+    /**
+     * The profile of the methods used while the VM starts up, or {@code null} if there is none.
+     */
+    private final StartupProfile startupProfile;
+
+    CompiledPrototype(int numberCompilerThreads, StartupProfile startupProfile) {
         assert instance == null;
         instance = this;
         vmConfig().initializeSchemes(Phase.HOSTED_COMPILING);
         numberOfCompilerThreads = numberCompilerThreads;
+        this.startupProfile = startupProfile;
         Trace.line(1, "# compiler threads:" + numberOfCompilerThreads);
     }
 
@@ -515,9 +521,45 @@ public class CompiledPrototype extends Prototype {
 
     private boolean entryPointsDone;
 
+    /**
+     * Adds the methods of the {@linkplain StartupProfile startup profile} to the worklist before any other method
+     * so that they are compiled, and therefore allocated in the boot code region, first. When compiling with
+     * more than one thread, the order in which the methods are allocated only approximates the worklist order.
+     */
+    private void addProfiledMethods() {
+        if (startupProfile == null) {
+            return;
+        }
+        Trace.begin(1, "addProfiledMethods");
+        int count = 0;
+        for (String key : startupProfile.methods()) {
+            final String className = key.substring(0, key.lastIndexOf('.', key.indexOf('(')));
+            final ClassActor classActor;
+            try {
+                classActor = ClassActor.fromJava(Classes.load(HostedVMClassLoader.HOSTED_VM_CLASS_LOADER, className));
+            } catch (Exception | LinkageError e) {
+                Trace.line(1, "ignoring profiled method of class that cannot be loaded: " + key);
+                continue;
+            }
+            for (MethodActor methodActor : classActor.localVirtualMethodActors()) {
+                if (key.equals(StartupProfile.key(methodActor)) && add(methodActor, null, null)) {
+                    count++;
+                }
+            }
+            for (MethodActor methodActor : classActor.localStaticMethodActors()) {
+                if (key.equals(StartupProfile.key(methodActor)) && add(methodActor, null, null)) {
+                    count++;
+                }
+            }
+        }
+        Trace.end(1, "addProfiledMethods: " + count + " of " + startupProfile.methods().size() + " methods");
+    }
+
     private void addEntrypoints0() {
         final Relationship entryPoint = null;
 
+        addProfiledMethods();
+
         final RunScheme runScheme = vmConfig().runScheme();
         add(ClassRegistry.MaxineVM_run, null, entryPoint);
         add(ClassRegistry.VmThread_run, null, entryPoint);
@@ -165,6 +165,13 @@ public final class DataPrototype extends Prototype {
 
     private List<Object> heapObjects = new ArrayList<Object>();
 
+    private final StartupProfile startupProfile;
+
+    /**
+     * The objects that the {@linkplain #startupProfile startup profile} designates as used during startup.
+     */
+    private Set<Object> profiledObjects;
+
     /**
      * Assigns a heap cell to the specified object.
      *
@@ -262,7 +269,7 @@ public final class DataPrototype extends Prototype {
         int count = 0;
         final Address mark = heapRegion.getAllocationMark();
         final List<Object> mutableHeapObjects = new ArrayList<Object>(graphPrototype.objects().size());
-        for (Object object : graphPrototype.objects()) {
+        for (Object object : profiledObjectsFirst(graphPrototype.objects())) {
             final ClassInfo classInfo = graphPrototype.classInfoFor(object);
             if (classInfo.containsMutableReferences(object) == objectsWithMutableReferences) {
                 Address cell = objectToCell.get(object);
@@ -288,6 +295,51 @@ public final class DataPrototype extends Prototype {
         }
     }
 
+    /**
+     * Orders a given list of objects so that the objects used while the VM starts up, as recorded by the
+     * {@linkplain StartupProfile startup profile}, come first. These are the class actors, hubs and static tuples of
+     * the profiled classes as well as the method actors and target methods of the profiled methods. The relative order
+     * of the objects within each of the two groups is preserved.
+     *
+     * @return {@code objects} if there is no startup profile, otherwise a reordered copy of {@code objects}
+     */
+    private List<Object> profiledObjectsFirst(List<Object> objects) {
+        if (startupProfile == null) {
+            return objects;
+        }
+        if (profiledObjects == null) {
+            profiledObjects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            final Set<String> classes = startupProfile.classes();
+            for (ClassActor classActor : ClassRegistry.allBootImageClasses()) {
+                if (classes.contains(classActor.name.string)) {
+                    profiledObjects.add(classActor);
+                    profiledObjects.add(classActor.dynamicHub());
+                    profiledObjects.add(classActor.staticHub());
+                    profiledObjects.add(classActor.staticTuple());
+                }
+            }
+            for (TargetMethod targetMethod : Code.bootCodeRegion().copyOfTargetMethods()) {
+                final ClassMethodActor classMethodActor = targetMethod.classMethodActor();
+                if (classMethodActor != null && startupProfile.contains(classMethodActor)) {
+                    profiledObjects.add(classMethodActor);
+                    profiledObjects.add(targetMethod);
+                }
+            }
+        }
+        final List<Object> result = new ArrayList<Object>(objects.size());
+        for (Object object : objects) {
+            if (profiledObjects.contains(object)) {
+                result.add(object);
+            }
+        }
+        for (Object object : objects) {
+            if (!profiledObjects.contains(object)) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
     /**
      * Creates the reference map covering the objects in the boot heap that contain runtime-mutable references.
      * The assignment of addresses for the boot heap will have ensured that such mutable objects are
@@ -1152,7 +1204,20 @@ public final class DataPrototype extends Prototype {
      * @param mapFile a file to which to write map information; if {@code null}, no map information will be written
      */
     public DataPrototype(GraphPrototype graphPrototype, File mapFile, int threadCount) {
+        this(graphPrototype, mapFile, threadCount, null);
+    }
+
+    /**
+     * Create and build a new data prototype from the specified graph prototype, laying out the objects used
+     * while the VM starts up before all others.
+     *
+     * @param graphPrototype the graph prototype for which to build the data prototype
+     * @param mapFile a file to which to write map information; if {@code null}, no map information will be written
+     * @param startupProfile the profile of the objects used while the VM starts up; may be {@code null}
+     */
+    public DataPrototype(GraphPrototype graphPrototype, File mapFile, int threadCount, StartupProfile startupProfile) {
         this.graphPrototype = graphPrototype;
+        this.startupProfile = startupProfile;
         final Platform platform = platform();
         this.threadCount = threadCount;
         pageSize = platform.pageSize;
@@ -22,6 +22,8 @@ package com.sun.max.vm.hosted;
 
 import static com.sun.max.vm.VMConfiguration.*;
 
+import java.io.*;
+
 import com.sun.max.program.*;
 import com.sun.max.program.option.*;
 import com.sun.max.vm.MaxineVM.*;
@@ -40,6 +42,7 @@ import com.sun.max.vm.type.*;
 public final class PrototypeGenerator {
 
     final Option<Integer> threadsOption;
+    final Option<File> startupProfileOption;
 
     /**
      * Creates a new prototype generator.
@@ -49,6 +52,21 @@ public final class PrototypeGenerator {
     public PrototypeGenerator(OptionSet optionSet) {
         threadsOption = optionSet.newIntegerOption("threads", Runtime.getRuntime().availableProcessors(),
             "Specifies the number of threads to be used for parallel compilation.");
+        startupProfileOption = optionSet.newFileOption("startup-profile", (File) null,
+            "A profile written by a VM run with -XX:StartupProfile. The methods and classes used while that VM " +
+            "started up are laid out before all others in the boot code and boot heap regions.");
+    }
+
+    private StartupProfile startupProfile() {
+        final File file = startupProfileOption.getValue();
+        if (file == null) {
+            return null;
+        }
+        try {
+            return StartupProfile.read(file);
+        } catch (IOException e) {
+            throw ProgramError.unexpected("Error reading startup profile " + file, e);
+        }
     }
 
     /**
@@ -60,13 +78,17 @@ public final class PrototypeGenerator {
      * @return the final graph prototype of the VM
      */
     public GraphPrototype createGraphPrototype() {
+        return createGraphPrototype(startupProfile());
+    }
+
+    private GraphPrototype createGraphPrototype(StartupProfile startupProfile) {
         // This initial graph prototype ensures that ClassActors are created for
         // all objects hanging off static fields.
         GraphPrototype graphPrototype = new GraphPrototype(null);
 
         int numberOfClassActors = 0;
         int numberOfCompilationThreads = threadsOption.getValue();
-        final CompiledPrototype compiledPrototype = new CompiledPrototype(numberOfCompilationThreads);
+        final CompiledPrototype compiledPrototype = new CompiledPrototype(numberOfCompilationThreads, startupProfile);
         compiledPrototype.addEntrypoints();
         compiledPrototype.addJavaLangObject();
         compiledPrototype.addClassesWithHostedOnlyConstructors();
@@ -108,8 +130,9 @@ public final class PrototypeGenerator {
             threadsOption.setValue(1);
         }
 
-        final GraphPrototype graphPrototype = createGraphPrototype();
-        final DataPrototype dataPrototype = new DataPrototype(graphPrototype, null, threadsOption.getValue());
+        final StartupProfile startupProfile = startupProfile();
+        final GraphPrototype graphPrototype = createGraphPrototype(startupProfile);
+        final DataPrototype dataPrototype = new DataPrototype(graphPrototype, null, threadsOption.getValue(), startupProfile);
         return dataPrototype;
     }
 
@@ -22,6 +22,7 @@
  */
 package com.sun.max.vm.jdk;
 
+import static com.sun.max.vm.compiler.target.Stub.Type.*;
 import static com.sun.max.vm.intrinsics.Infopoints.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
@@ -32,9 +33,11 @@ import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.thread.*;
+import com.sun.max.vm.type.*;
 
 /**
  * Substitutions for {@link Throwable} that collect the stack trace.
@@ -48,9 +51,17 @@ public final class JDK_java_lang_Throwable {
         VMOptions.addFieldOption("-XX:", "StackTraceInThrowable", JDK_java_lang_Throwable.class, "Collect backtrace in throwable when exception happens.");
     }
 
+    public static int MaxJavaStackTraceDepth = 0;
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxJavaStackTraceDepth", JDK_java_lang_Throwable.class, "Maximum number of frames recorded in the backtrace of an exception (0 means all).");
+    }
+
     private static final ObjectThreadLocal<Throwable> TRACE_UNDER_CONSTRUCTION = new ObjectThreadLocal<Throwable>("TRACE_UNDER_CONSTRUCTION",
                     "Exception whose back or stack trace is currently being constructed");
 
+    private static final ObjectThreadLocal<FrameRecorder> FRAME_RECORDER = new ObjectThreadLocal<FrameRecorder>("FRAME_RECORDER",
+                    "Reusable stack walker and frame buffer for recording exception back traces");
+
 
     private JDK_java_lang_Throwable() {
     }
@@ -73,8 +84,10 @@ public final class JDK_java_lang_Throwable {
     private static StackTraceElement[] UNASSIGNED_STACK;
 
     /**
-     * Fills in the stack trace for this exception. This implementation eagerly creates a
-     * stack trace and fills in all the {@link java.lang.StackTraceElement stack trace elements}.
+     * Fills in the stack trace for this exception. This implementation only records the
+     * raw frames (target method and code position) of the stack in a {@link Backtrace}.
+     * Source frames, line numbers and the {@link java.lang.StackTraceElement stack trace elements}
+     * are only derived from them when the stack trace is first requested.
      *
      * @see java.lang.Throwable#fillInStackTrace()
      * @return the throwable with a filled-in stack trace (typically this object)
@@ -94,14 +107,17 @@ public final class JDK_java_lang_Throwable {
         TRACE_UNDER_CONSTRUCTION.set(throwable);
 
         final ClassActor throwableActor = ClassActor.fromJava(throwable.getClass());
-        // use the stack walker to collect the frames
-        final StackFrameWalker sfw = new VmStackFrameWalker(VmThread.current().tla());
         final Pointer ip = Pointer.fromLong(here());
         final Pointer sp = VMRegister.getCpuStackPointer();
         final Pointer fp = VMRegister.getCpuFramePointer();
         try {
-            Backtrace backtrace = getBacktrace(sfw, ip, sp, fp, throwableActor, Integer.MAX_VALUE);
-            this.backtrace = backtrace;
+            // use the current thread's stack walker to record the raw frames
+            FrameRecorder recorder = FRAME_RECORDER.get();
+            if (recorder == null) {
+                recorder = new FrameRecorder();
+                FRAME_RECORDER.set(recorder);
+            }
+            this.backtrace = recorder.record(ip, sp, fp, throwableActor, MaxJavaStackTraceDepth > 0 ? MaxJavaStackTraceDepth : Integer.MAX_VALUE);
         } catch (OutOfMemoryError e) {
             // Could not build backtrace due to memory shortage
             stackTrace = new StackTraceElement[0];
@@ -110,26 +126,147 @@ public final class JDK_java_lang_Throwable {
         return throwable;
     }
 
+    /**
+     * Records the raw frames of the current thread's stack for an exception back trace. Each thread
+     * has one recorder whose stack walker and frame buffer are reused across exceptions so that
+     * the only allocation per exception is the right-sized copy of the recorded frames.
+     */
+    static final class FrameRecorder extends RawStackFrameVisitor {
+
+        /**
+         * Bit set in a recorded code position if the frame was stopped at a trap. Masking this bit off an
+         * unknown position (i.e. -1) yields a position that is invalid for any target method.
+         */
+        static final int TRAPPED = 0x80000000;
+
+        final StackFrameWalker walker = new VmStackFrameWalker(VmThread.current().tla());
+        TargetMethod[] targetMethods = new TargetMethod[Backtrace.INITIAL_LENGTH];
+        int[] positions = new int[Backtrace.INITIAL_LENGTH];
+        int count;
+        int maxDepth;
+
+        /**
+         * The number of recorded frames that count towards {@link #maxDepth}, i.e. those that are not
+         * {@linkplain #isElided elided} when the back trace is decoded.
+         */
+        int depth;
+
+        Backtrace record(Pointer ip, Pointer sp, Pointer fp, ClassActor exceptionClass, int maxDepth) {
+            this.maxDepth = maxDepth;
+            count = 0;
+            depth = 0;
+            try {
+                walker.inspect(ip, sp, fp, this);
+                return new Backtrace(exceptionClass, maxDepth, Arrays.copyOf(targetMethods, count), Arrays.copyOf(positions, count));
+            } finally {
+                // don't keep target methods reachable from the buffer
+                Arrays.fill(targetMethods, 0, count, null);
+                count = 0;
+            }
+        }
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            final TargetMethod targetMethod = current.targetMethod();
+            if (targetMethod == null || targetMethod.classMethodActor == null) {
+                // ignore native frames, stubs, trampolines, adapters etc
+                return true;
+            }
+            int pos = targetMethod.posFor(current.vmIP()) & ~TRAPPED;
+            if (callee.targetMethod() != null && callee.targetMethod().is(TrapStub)) {
+                // the frames above a trap are discarded from the trace when it is decoded
+                Arrays.fill(targetMethods, 0, count, null);
+                count = 0;
+                depth = 0;
+                pos |= TRAPPED;
+            }
+            if (count == positions.length) {
+                targetMethods = Arrays.copyOf(targetMethods, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            targetMethods[count] = targetMethod;
+            positions[count] = pos;
+            count++;
+            if (!isElided(targetMethod.classMethodActor)) {
+                depth++;
+            }
+            return depth < maxDepth;
+        }
+
+        /**
+         * Determines if a frame of a given method is removed from the trace when it is decoded, as it is part of
+         * filling in the stack trace or constructing the exception, or a reflection stub.
+         */
+        private static boolean isElided(ClassMethodActor method) {
+            final ClassMethodActor original = method.original();
+            final ClassActor holder = original.holder();
+            if (holder.isReflectionStub()) {
+                return true;
+            }
+            return ClassRegistry.THROWABLE.isAssignableFrom(holder) && (original.isInstanceInitializer() || original.name.string.equals("fillInStackTrace"));
+        }
+    }
+
     /**
      * A back trace is a lighter weight representation of a stack trace than
-     * an array of {@link StackTraceElement}s.
+     * an array of {@link StackTraceElement}s. A back trace built by {@link #fillInStackTrace()}
+     * holds the raw frames of the stack which are only {@linkplain #decode() decoded}
+     * into source methods and line numbers on demand.
      */
     public static class Backtrace extends StackTraceVisitor {
 
         static final int INITIAL_LENGTH = 200;
 
+        /**
+         * The number of decoded elements. Only valid once the back trace has been {@linkplain #decode() decoded}.
+         */
         public int count;
         public int[] lineNos;
         public ClassMethodActor[] methods;
 
+        private final int maxDepth;
+        private TargetMethod[] targetMethods;
+        private int[] positions;
+
         public Backtrace(ClassActor exceptionClass, int maxDepth) {
             super(exceptionClass);
-
+            this.maxDepth = maxDepth;
             int len = Math.min(maxDepth, INITIAL_LENGTH);
             lineNos = new int[len];
             methods = new ClassMethodActor[len];
         }
 
+        Backtrace(ClassActor exceptionClass, int maxDepth, TargetMethod[] targetMethods, int[] positions) {
+            super(exceptionClass);
+            this.maxDepth = maxDepth;
+            this.targetMethods = targetMethods;
+            this.positions = positions;
+        }
+
+        /**
+         * Decodes the raw frames (if any) of this back trace into source methods and line numbers.
+         *
+         * @return this back trace
+         */
+        public Backtrace decode() {
+            if (targetMethods != null) {
+                int len = Math.min(targetMethods.length, INITIAL_LENGTH);
+                lineNos = new int[len];
+                methods = new ClassMethodActor[len];
+                for (int i = 0; i < targetMethods.length; i++) {
+                    int pos = positions[i];
+                    boolean trapped = (pos & FrameRecorder.TRAPPED) != 0;
+                    if (!visitRecordedFrame(targetMethods[i], pos & ~FrameRecorder.TRAPPED, trapped, i)) {
+                        break;
+                    }
+                }
+                // Let the GC clean up the raw frames
+                targetMethods = null;
+                positions = null;
+            }
+            return this;
+        }
+
         @Override
         public void clear() {
             for (int i = count - 1; i >= 0; i--) {
@@ -146,7 +283,7 @@ public final class JDK_java_lang_Throwable {
             lineNos[count] = sourceLineNumber;
             methods[count] = methodActor;
             count++;
-            return true;
+            return count < maxDepth;
         }
 
         private void expand() {
@@ -164,6 +301,7 @@ public final class JDK_java_lang_Throwable {
 
         @Override
         public StackTraceElement[] getTrace() {
+            decode();
             StackTraceElement[] trace = new StackTraceElement[count];
             for (int i = 0; i != count; i++) {
                 trace[i] = stackTraceElement(i);
@@ -214,11 +352,12 @@ public final class JDK_java_lang_Throwable {
      * Gets the backtrace from an exception object. This is only non-null between the call to
      * {@link #fillInStackTrace()} and the first call to {@link #getOurStackTrace()}.
      *
-     * @return the {@link Backtrace} object fro {@code t} if available, {@code null} otherwise
+     * @return the {@linkplain Backtrace#decode() decoded} {@link Backtrace} object for {@code t} if available, {@code null} otherwise
      */
     public static Backtrace getBacktrace(Throwable t) {
         final JDK_java_lang_Throwable jlt = asJLT(t);
-        return (Backtrace) jlt.backtrace;
+        final Backtrace backtrace = (Backtrace) jlt.backtrace;
+        return backtrace == null ? null : backtrace.decode();
     }
 
     @SUBSTITUTE
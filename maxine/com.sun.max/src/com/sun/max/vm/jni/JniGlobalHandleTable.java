@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.jni;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A table of JNI global (or weak global) handles that can be allocated and released without locking.
+ *
+ * The table is a directory of fixed size {@linkplain #SEGMENT_SIZE segments}. A handle is an index
+ * into the table and never moves once allocated, so growing the table only ever appends a segment
+ * and never copies handles. Each segment is an ordinary object array reachable from the directory,
+ * which means the garbage collector traces the handles like any other object graph (and, for weak
+ * global handles, clears them through {@link java.lang.ref.WeakReference}s) without any special
+ * support. There is consequently no separate root scan or weak handle clearing phase for JNI global
+ * handles; they are processed as and when the collector processes the heap and its references.
+ *
+ * Free slots are managed in two levels:
+ * <ul>
+ * <li>Each thread owns a small {@link LocalCache} of free indexes from which it allocates and to which
+ * it releases without any synchronization.</li>
+ * <li>When a local cache overflows, half of it is published as a {@link FreeBatch} on a global lock-free
+ * stack. A thread whose cache is empty takes a whole batch from that stack before falling back to
+ * atomically bumping the {@linkplain #freshIndex fresh index}.</li>
+ * </ul>
+ * A batch is never pushed twice, so the usual ABA hazard of a lock-free stack cannot arise: a batch
+ * that a thread is trying to pop stays reachable (and thus unique) until that thread drops it.
+ *
+ * The only lock is taken when a new segment must be installed, i.e. once every {@link #SEGMENT_SIZE}
+ * allocations of a fresh index.
+ *
+ * A free slot holds {@code null}. Releasing a handle atomically clears its slot and only the thread that
+ * cleared it returns the index to a free list, so releasing the same handle twice (e.g. a repeated
+ * {@code DeleteGlobalRef}) is a no-op rather than putting the index on the free lists twice.
+ */
+public final class JniGlobalHandleTable {
+
+    public static final int SEGMENT_SIZE_LOG2 = 10;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SIZE_LOG2;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * The number of segments the directory initially has room for. The directory is expanded
+     * by doubling when this is exceeded.
+     */
+    static final int INITIAL_DIRECTORY_LENGTH = 16;
+
+    /**
+     * The maximum index representable in a {@link JniHandle} after the {@linkplain JniHandles.Tag tag} bits.
+     */
+    private static final int MAX_INDEX = Integer.MAX_VALUE >> JniHandles.Tag.BITS;
+
+    /**
+     * The number of free indexes a {@linkplain LocalCache local cache} can hold.
+     */
+    public static final int LOCAL_CACHE_SIZE = 64;
+
+    /**
+     * The number of free indexes published to, or taken from, the global stack at once.
+     */
+    public static final int BATCH_SIZE = LOCAL_CACHE_SIZE / 2;
+
+    /**
+     * A thread-local cache of free indexes in a table.
+     */
+    public static final class LocalCache {
+        final int[] slots = new int[LOCAL_CACHE_SIZE];
+        int count;
+    }
+
+    /**
+     * A batch of free indexes released by some thread.
+     */
+    static final class FreeBatch {
+        final int[] slots;
+        final FreeBatch next;
+
+        FreeBatch(int[] slots, FreeBatch next) {
+            this.slots = slots;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Identifies this table in the per-thread array of local caches (see {@link VmThread#jniGlobalHandleCache(int)}).
+     */
+    final int id;
+
+    /**
+     * The {@linkplain JniHandles.Tag tag} of the handles allocated from this table.
+     */
+    private final int tag;
+
+    /**
+     * The segments of the table. Elements at index {@code >= segmentCount} are null.
+     */
+    private volatile Object[][] directory = new Object[INITIAL_DIRECTORY_LENGTH][];
+
+    private volatile int segmentCount;
+
+    /**
+     * The next index that has never been allocated.
+     */
+    private volatile int freshIndex;
+
+    /**
+     * Top of the lock-free stack of released index batches.
+     */
+    private volatile FreeBatch freeBatches;
+
+    /**
+     * The cache used for allocation while bootstrapping, when there are no VM threads.
+     */
+    @HOSTED_ONLY
+    private LocalCache hostedCache;
+
+    JniGlobalHandleTable(int id, int tag) {
+        this.id = id;
+        this.tag = tag;
+    }
+
+    @FOLD
+    private static int freshIndexOffset() {
+        return ClassActor.fromJava(JniGlobalHandleTable.class).findLocalInstanceFieldActor("freshIndex").offset();
+    }
+
+    @FOLD
+    private static int freeBatchesOffset() {
+        return ClassActor.fromJava(JniGlobalHandleTable.class).findLocalInstanceFieldActor("freeBatches").offset();
+    }
+
+    /**
+     * Gets the object stored at a given index.
+     */
+    @INLINE
+    Object get(int index) {
+        return directory[index >> SEGMENT_SIZE_LOG2][index & SEGMENT_MASK];
+    }
+
+    /**
+     * Allocates a handle for a given object.
+     */
+    JniHandle allocate(Object object) {
+        assert object != null;
+        final int index;
+        if (MaxineVM.isHosted()) {
+            synchronized (this) {
+                if (hostedCache == null) {
+                    hostedCache = new LocalCache();
+                }
+                index = allocateIndex(hostedCache);
+            }
+        } else {
+            index = allocateIndex(VmThread.current().jniGlobalHandleCache(id));
+        }
+        directory[index >> SEGMENT_SIZE_LOG2][index & SEGMENT_MASK] = object;
+        return JniHandles.indexToJniHandle(index, tag);
+    }
+
+    /**
+     * Releases a handle previously {@linkplain #allocate(Object) allocated} from this table.
+     * Releasing a handle whose slot is already free does nothing.
+     */
+    void release(JniHandle jniHandle) {
+        final int index = JniHandles.jniHandleToIndex(jniHandle);
+        if (index < 0 || index >= freshIndex) {
+            throw new IllegalArgumentException("invalid JNI handle: " + jniHandle.to0xHexString());
+        }
+        final Object[] segment = directory[index >> SEGMENT_SIZE_LOG2];
+        final int slot = index & SEGMENT_MASK;
+        if (MaxineVM.isHosted()) {
+            synchronized (this) {
+                if (segment[slot] != null) {
+                    segment[slot] = null;
+                    releaseIndex(hostedCache, index);
+                }
+            }
+        } else if (clearSlot(segment, slot)) {
+            releaseIndex(VmThread.current().jniGlobalHandleCache(id), index);
+        }
+    }
+
+    /**
+     * Atomically clears a non-free slot.
+     *
+     * @return {@code false} if the slot was already free, i.e. the handle has already been released
+     */
+    private static boolean clearSlot(Object[] segment, int slot) {
+        final Offset offset = Layout.referenceArrayLayout().getElementOffsetFromOrigin(slot);
+        while (true) {
+            final Object object = segment[slot];
+            if (object == null) {
+                return false;
+            }
+            if (Reference.fromJava(segment).compareAndSwapReference(offset, Reference.fromJava(object), Reference.zero()).toJava() == object) {
+                return true;
+            }
+        }
+    }
+
+    private int allocateIndex(LocalCache cache) {
+        if (cache.count == 0 && !takeBatch(cache)) {
+            return allocateFreshIndex();
+        }
+        return cache.slots[--cache.count];
+    }
+
+    private void releaseIndex(LocalCache cache, int index) {
+        if (cache.count == LOCAL_CACHE_SIZE) {
+            publishBatch(cache);
+        }
+        cache.slots[cache.count++] = index;
+    }
+
+    /**
+     * Moves the top {@link #BATCH_SIZE} indexes of a local cache to the global stack of free batches.
+     */
+    private void publishBatch(LocalCache cache) {
+        final int[] slots = new int[BATCH_SIZE];
+        cache.count -= BATCH_SIZE;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            slots[i] = cache.slots[cache.count + i];
+        }
+        pushBatch(slots);
+    }
+
+    private void pushBatch(int[] slots) {
+        if (MaxineVM.isHosted()) {
+            freeBatches = new FreeBatch(slots, freeBatches);
+            return;
+        }
+        while (true) {
+            final FreeBatch top = freeBatches;
+            final FreeBatch batch = new FreeBatch(slots, top);
+            if (Reference.fromJava(this).compareAndSwapReference(freeBatchesOffset(), Reference.fromJava(top), Reference.fromJava(batch)).toJava() == top) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Refills an empty local cache with a batch from the global stack.
+     *
+     * @return {@code false} if the global stack is empty
+     */
+    private boolean takeBatch(LocalCache cache) {
+        FreeBatch top;
+        if (MaxineVM.isHosted()) {
+            top = freeBatches;
+            if (top != null) {
+                freeBatches = top.next;
+            }
+        } else {
+            do {
+                top = freeBatches;
+                if (top == null) {
+                    break;
+                }
+            } while (Reference.fromJava(this).compareAndSwapReference(freeBatchesOffset(), Reference.fromJava(top), Reference.fromJava(top.next)).toJava() != top);
+        }
+        if (top == null) {
+            return false;
+        }
+        final int[] slots = top.slots;
+        for (int i = 0; i < slots.length; i++) {
+            cache.slots[i] = slots[i];
+        }
+        cache.count = slots.length;
+        return true;
+    }
+
+    private int allocateFreshIndex() {
+        int index;
+        if (MaxineVM.isHosted()) {
+            index = freshIndex++;
+        } else {
+            do {
+                index = freshIndex;
+                if (index == MAX_INDEX) {
+                    throw new OutOfMemoryError("JNI handle table exhausted");
+                }
+            } while (Reference.fromJava(this).compareAndSwapInt(freshIndexOffset(), index, index + 1) != index);
+        }
+        final int segment = index >> SEGMENT_SIZE_LOG2;
+        if (segment >= segmentCount) {
+            addSegments(segment);
+        }
+        return index;
+    }
+
+    /**
+     * Ensures that the directory contains all segments up to and including a given segment.
+     * Several threads may be racing to allocate the first indexes of a new segment, hence the lock.
+     */
+    private synchronized void addSegments(int segment) {
+        Object[][] dir = directory;
+        if (segment >= dir.length) {
+            int newLength = dir.length * 2;
+            while (segment >= newLength) {
+                newLength *= 2;
+            }
+            final Object[][] newDirectory = new Object[newLength][];
+            // Can't use System.arraycopy - it's a native method which may require allocating JNI handles!
+            for (int i = 0; i < segmentCount; i++) {
+                newDirectory[i] = dir[i];
+            }
+            dir = newDirectory;
+        }
+        int count = segmentCount;
+        while (count <= segment) {
+            dir[count++] = new Object[SEGMENT_SIZE];
+        }
+        // Publish the directory before the count so that a thread seeing the new count also sees the new segments
+        directory = dir;
+        segmentCount = count;
+    }
+
+    /**
+     * Returns all the free indexes cached by a terminating thread to the global stack.
+     */
+    void releaseLocalCache(LocalCache cache) {
+        while (cache.count > 0) {
+            final int n = cache.count < BATCH_SIZE ? cache.count : BATCH_SIZE;
+            final int[] slots = new int[n];
+            cache.count -= n;
+            for (int i = 0; i < n; i++) {
+                slots[i] = cache.slots[cache.count + i];
+            }
+            pushBatch(slots);
+        }
+    }
+
+    /**
+     * Gets the number of segments currently in this table.
+     */
+    public int segmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Gets the number of handles that have ever been allocated from this table, i.e. an upper bound on the
+     * number of live handles.
+     */
+    public int capacityUsed() {
+        return freshIndex;
+    }
+}
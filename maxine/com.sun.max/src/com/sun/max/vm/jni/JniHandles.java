@@ -44,7 +44,8 @@ import com.sun.max.vm.type.*;
  * global pool per VM (or isolate?) for global references and
  * another global pool for weak global references.
  *
- * This class implements a pool of JNI handles.
+ * This class implements a pool of JNI handles. Global and weak global handles are allocated from
+ * a {@link JniGlobalHandleTable} instead, as they are shared between threads.
  *
  * In the Maxine VM, we need to take into account that objects may be allocated
  * in a hardware object memory where one cannot take the address of an element or field within
@@ -100,8 +101,13 @@ public final class JniHandles {
 
     public static final int INITIAL_NUMBER_OF_HANDLES = 32;
 
-    private static final JniHandles globalHandles = new JniHandles();
-    private static final JniHandles weakGlobalHandles = new JniHandles();
+    private static final JniGlobalHandleTable globalHandles = new JniGlobalHandleTable(0, Tag.GLOBAL);
+    private static final JniGlobalHandleTable weakGlobalHandles = new JniGlobalHandleTable(1, Tag.WEAK_GLOBAL);
+
+    /**
+     * The number of {@link JniGlobalHandleTable}s, i.e. the number of local caches each thread may need.
+     */
+    public static final int NUMBER_OF_GLOBAL_HANDLE_TABLES = 2;
 
     /**
      * The objects exposed to native code via handles.
@@ -239,11 +245,11 @@ public final class JniHandles {
         return allocateHandle(object, tag);
     }
 
-    private static JniHandle indexToJniHandle(int index, int tag) {
+    static JniHandle indexToJniHandle(int index, int tag) {
         return Address.fromInt(index << Tag.BITS | tag).asJniHandle();
     }
 
-    private static int jniHandleToIndex(JniHandle jniHandle) {
+    static int jniHandleToIndex(JniHandle jniHandle) {
         return jniHandle.asOffset().toInt() >> Tag.BITS;
     }
 
@@ -341,18 +347,14 @@ public final class JniHandles {
         if (object == null) {
             return JniHandle.zero();
         }
-        synchronized (globalHandles) {
-            return globalHandles.allocateHandle(object, Tag.GLOBAL);
-        }
+        return globalHandles.allocate(object);
     }
 
     public static JniHandle createWeakGlobalHandle(Object object) {
         if (object == null) {
             return JniHandle.zero();
         }
-        synchronized (weakGlobalHandles) {
-            return weakGlobalHandles.allocateHandle(new WeakReference<Object>(object), Tag.WEAK_GLOBAL);
-        }
+        return weakGlobalHandles.allocate(new WeakReference<Object>(object));
     }
 
     public static void destroyLocalHandle(JniHandle jniHandle) {
@@ -375,18 +377,28 @@ public final class JniHandles {
     public static void destroyGlobalHandle(JniHandle jniHandle) {
         if (!jniHandle.isZero()) {
             assert tag(jniHandle) == Tag.GLOBAL;
-            synchronized (globalHandles) {
-                globalHandles.freeHandle(jniHandleToIndex(jniHandle));
-            }
+            globalHandles.release(jniHandle);
         }
     }
 
     public static void destroyWeakGlobalHandle(JniHandle jniHandle) {
         if (!jniHandle.isZero()) {
             assert tag(jniHandle) == Tag.WEAK_GLOBAL;
-            synchronized (weakGlobalHandles) {
-                weakGlobalHandles.freeHandle(jniHandleToIndex(jniHandle));
-            }
+            weakGlobalHandles.release(jniHandle);
+        }
+    }
+
+    /**
+     * Returns the free global handle slots cached by a terminating thread so that other threads can reuse them.
+     */
+    public static void releaseGlobalHandleCaches(VmThread thread) {
+        JniGlobalHandleTable.LocalCache cache = thread.jniGlobalHandleCacheOrNull(globalHandles.id);
+        if (cache != null) {
+            globalHandles.releaseLocalCache(cache);
+        }
+        cache = thread.jniGlobalHandleCacheOrNull(weakGlobalHandles.id);
+        if (cache != null) {
+            weakGlobalHandles.releaseLocalCache(cache);
         }
     }
 
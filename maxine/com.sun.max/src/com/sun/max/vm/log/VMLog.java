@@ -369,6 +369,9 @@ public abstract class VMLog implements Heap.GCCallback {
             }
         } else if (phase == MaxineVM.Phase.TERMINATING) {
             flush(FLUSHMODE_EXIT);
+            if (flusher == fileFlusher) {
+                fileFlusher.close();
+            }
         }
     }
 
@@ -459,6 +462,9 @@ public abstract class VMLog implements Heap.GCCallback {
                 vmLog.loggers[i].checkOptions();
             }
         }
+        if (vmLog.flusher == fileFlusher && !fileFlusher.open(vmLog.loggers)) {
+            vmLog.flusher = null;
+        }
     }
 
     /**
@@ -605,13 +611,15 @@ public abstract class VMLog implements Heap.GCCallback {
      *
      * The default output is "raw", which means no interpretation of the bits, which is left to an offline tool. This is
      * the most robust approach. The alternative is "trace" which invokes the trace method on the logger, which
-     * may crash, particularly if the log is being flushed on a VM crash.
+     * may crash, particularly if the log is being flushed on a VM crash. The "binary" output streams the raw records
+     * into a memory-mapped file, see {@link VMLogFileFlusher}, which with "full" allows tracing at high rates
+     * without losing records.
      */
     private static class VMLogFlushOption extends VMStringOption {
 
         @HOSTED_ONLY
         VMLogFlushOption() {
-            super("-XX:VMLogFlush=", false, null, "flush VMLog: mode,output. mode=crash|exit|full, output=raw|trace");
+            super("-XX:VMLogFlush=", false, null, "flush VMLog: mode,output. mode=crash|exit|full, output=raw|trace|binary");
         }
 
         @Override
@@ -625,6 +633,8 @@ public abstract class VMLog implements Heap.GCCallback {
                         vmLog.flusher = rawDumpFlusher;
                     } else if (param.equals("trace")) {
                         vmLog.flusher = traceDumpFlusher;
+                    } else if (param.equals("binary")) {
+                        vmLog.flusher = fileFlusher;
                     } else if (param.equals("exit")) {
                         vmLog.flushMode |= FLUSHMODE_EXIT;
                     } else if (param.equals("crash")) {
@@ -748,6 +758,7 @@ public abstract class VMLog implements Heap.GCCallback {
 
     public static final RawDumpFlusher rawDumpFlusher = new RawDumpFlusher();
     private static TraceDumpFlusher traceDumpFlusher;
+    private static final VMLogFileFlusher fileFlusher = new VMLogFileFlusher();
 
     /**
      * Flusher used to dump a log to the external world using {@link Log} in raw mode.
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.log;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.log.VMLogFileFormat.*;
+
+import java.io.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.memory.*;
+import com.sun.max.platform.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.log.VMLog.Record;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A {@link VMLog.Flusher} that streams log records into a memory-mapped file in the compact binary
+ * {@linkplain VMLogFileFormat format}, selected with the {@code binary} output of {@code -XX:VMLogFlush}.
+ * <p>
+ * Combined with a per-thread log and the {@code full} flush mode, each thread drains its own buffer into the file
+ * when the buffer fills, so no records are lost to the buffer wrapping. Space in the file is reserved with a compare
+ * and swap on the cursor in the mapped header, so flushing threads never block each other, and writing a record is
+ * just a copy into the page cache, which the operating system writes back to the file asynchronously. The file is
+ * itself a circular buffer of {@code -XX:VMLogFileSize} bytes, so it keeps the most recent records of a
+ * long-running VM.
+ * <p>
+ * The file can be converted to text with the {@code -vmlog} option of {@code ConvertLog}.
+ */
+public final class VMLogFileFlusher extends VMLog.Flusher {
+
+    private static final VMStringOption fileOption = register(new VMStringOption("-XX:VMLogFile=", false, "maxine.vmlog",
+        "file written by the binary output of -XX:VMLogFlush"), MaxineVM.Phase.STARTING);
+
+    private static final VMSizeOption fileSizeOption = register(new VMSizeOption("-XX:VMLogFileSize=", Size.M.times(64),
+        "size of the record area of the file written by the binary output of -XX:VMLogFlush"), MaxineVM.Phase.STARTING);
+
+    /**
+     * The mapped file, or zero if it has not been opened.
+     */
+    private Pointer base = Pointer.zero();
+    private Pointer syncTable;
+    private Pointer data;
+    private long capacity;
+    private long pages;
+
+    /**
+     * Creates, sizes and maps the log file, and writes the header and logger table.
+     *
+     * @param loggers the loggers of the log being flushed
+     * @return {@code false} if the file could not be created
+     */
+    boolean open(VMLogger[] loggers) {
+        final int pageSize = Platform.platform().pageSize;
+        capacity = fileSizeOption.getValue().alignUp(Math.max(pageSize, SYNC_PAGE_SIZE)).toLong();
+        pages = capacity >> SYNC_PAGE_SHIFT;
+
+        int tableSize = 4;
+        for (VMLogger logger : loggers) {
+            if (logger != null) {
+                tableSize += 4 + nameSize(utf8(logger.name)) + 4;
+                for (int op = 0; op < logger.numOps(); op++) {
+                    tableSize += nameSize(utf8(logger.operationName(op)));
+                }
+            }
+        }
+        final long syncTableOffset = (HEADER_SIZE + tableSize + 7) & ~7;
+        final long dataOffset = Address.fromLong(syncTableOffset + pages * 8).alignUp(pageSize).toLong();
+        final long fileSize = dataOffset + capacity;
+
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(fileOption.getValue(), "rw");
+            try {
+                raf.setLength(0);
+                raf.setLength(fileSize);
+                final Pointer mapping = VirtualMemory.mapFileShared(Size.fromLong(fileSize), raf.getFD(), Address.zero());
+                if (mapping.isZero()) {
+                    throw new IOException("mmap failed");
+                }
+                syncTable = mapping.plus(syncTableOffset);
+                data = mapping.plus(dataOffset);
+                mapping.writeInt(MAGIC_OFFSET, MAGIC);
+                mapping.writeInt(VERSION_OFFSET, VERSION);
+                mapping.writeInt(WORD_SIZE_OFFSET, Word.size());
+                mapping.writeLong(CAPACITY_OFFSET, capacity);
+                mapping.writeLong(SYNC_TABLE_OFFSET, syncTableOffset);
+                mapping.writeLong(DATA_OFFSET, dataOffset);
+                Pointer table = mapping.plus(HEADER_SIZE);
+                for (VMLogger logger : loggers) {
+                    if (logger != null) {
+                        table.writeInt(0, logger.loggerId);
+                        table = writeName(table.plus(4), utf8(logger.name));
+                        table.writeInt(0, logger.numOps());
+                        table = table.plus(4);
+                        for (int op = 0; op < logger.numOps(); op++) {
+                            table = writeName(table, utf8(logger.operationName(op)));
+                        }
+                    }
+                }
+                // the file was extended with zeros, so the table is already terminated
+                MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+                base = mapping;
+            } finally {
+                // the mapping outlives the file descriptor
+                raf.close();
+            }
+            return true;
+        } catch (IOException ex) {
+            Log.print("Could not create VM log file ");
+            Log.print(fileOption.getValue());
+            Log.print(": ");
+            Log.println(ex.getMessage());
+            return false;
+        }
+    }
+
+    private static byte[] utf8(String name) {
+        try {
+            return name.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new InternalError();
+        }
+    }
+
+    private static Pointer writeName(Pointer p, byte[] utf8) {
+        p.writeInt(0, utf8.length);
+        Memory.writeBytes(utf8, p.plus(4));
+        return p.plus(nameSize(utf8));
+    }
+
+    /**
+     * Marks the file as complete, after the logs have been flushed on exit.
+     */
+    void close() {
+        if (base.isNotZero()) {
+            MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+            base.writeInt(FLAGS_OFFSET, CLOSED);
+        }
+    }
+
+    @Override
+    public void flushRecord(VmThread vmThread, Record r, int uuid) {
+        if (base.isZero()) {
+            // records flushed before the file is opened are dropped
+            return;
+        }
+        final int argCount = r.getArgCount();
+        final long size = RECORD_ARGS_OFFSET + argCount * Word.size();
+        long cursor;
+        long start;
+        do {
+            cursor = base.readLong(CURSOR_OFFSET);
+            start = recordStart(cursor, size, capacity);
+        } while (base.compareAndSwapLong(CURSOR_OFFSET, cursor, start + size) != cursor);
+
+        if (start != cursor) {
+            data.writeInt(Offset.fromLong(cursor % capacity), PAD);
+            updateSyncTable(cursor, start);
+        }
+        updateSyncTable(start, start + size);
+        final Pointer record = data.plus(start % capacity);
+        // after the first lap the slot still holds the header of an older record, which must not
+        // be seen together with the arguments written below
+        record.writeInt(0, 0);
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        record.writeInt(RECORD_ID_OFFSET, uuid);
+        for (int i = 1; i <= argCount; i++) {
+            record.writeWord(RECORD_ARGS_OFFSET + (i - 1) * Word.size(), r.getArg(i));
+        }
+        // publish the record by writing its header last
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        record.writeInt(0, r.getHeader());
+    }
+
+    /**
+     * Records the first record boundary of each sync page starting within the byte range {@code [start, end)}, which
+     * has been reserved for a single record or pad.
+     */
+    private void updateSyncTable(long start, long end) {
+        for (long page = firstSyncPage(start); page < end; page += SYNC_PAGE_SIZE) {
+            syncTable.writeLong(Offset.fromLong(syncTableIndex(page, pages) * 8L), page == start ? start : end);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.log;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * The layout of the binary file written by {@link VMLogFileFlusher}, and a {@link Reader} for it that runs outside
+ * the VM. All values are in the byte order of the VM that wrote the file, which a reader detects from the
+ * {@link #MAGIC} number.
+ * <p>
+ * The file starts with a fixed size header:
+ * <pre>
+ *  0: int  MAGIC
+ *  4: int  VERSION
+ *  8: int  word size of the VM in bytes
+ * 12: int  flags, {@link #CLOSED} once the VM has exited
+ * 16: long capacity of the data area in bytes
+ * 24: long cursor, the number of bytes ever reserved in the data area
+ * 32: long file offset of the sync table
+ * 40: long file offset of the data area
+ * </pre>
+ * The header is followed by the logger table, which gives the name of each logger and of each of its operations.
+ * Each entry is the {@linkplain VMLogger#loggerId logger id}, the logger name, the number of operations and the
+ * operation names, and the table ends with a zero logger id. Names are stored as an int byte length followed by
+ * UTF-8 bytes, padded to a multiple of 4 bytes.
+ * <p>
+ * The data area is a circular buffer of records, addressed by a cursor that only ever grows. A record is the
+ * {@linkplain VMLog.Record#getHeader() record header}, the record's unique id and the arguments, each one word.
+ * Records never straddle the end of the data area; the unused tail of the data area is then marked with a
+ * {@link #PAD} header. A writer first clears the header of the record's slot, then writes the id and the arguments and
+ * writes the header last, so a zero header denotes a record that was still being written.
+ * <p>
+ * Once the buffer has wrapped, the oldest record in the data area may have been partly overwritten. The sync table
+ * records, for each {@link #SYNC_PAGE_SIZE} page of the data area, the cursor value of the first record starting at
+ * or after the start of the page, which is where a reader starts.
+ */
+public final class VMLogFileFormat {
+
+    public static final int MAGIC = 0x4D584C47;
+    public static final int VERSION = 1;
+
+    public static final int MAGIC_OFFSET = 0;
+    public static final int VERSION_OFFSET = 4;
+    public static final int WORD_SIZE_OFFSET = 8;
+    public static final int FLAGS_OFFSET = 12;
+    public static final int CAPACITY_OFFSET = 16;
+    public static final int CURSOR_OFFSET = 24;
+    public static final int SYNC_TABLE_OFFSET = 32;
+    public static final int DATA_OFFSET = 40;
+    public static final int HEADER_SIZE = 48;
+
+    /**
+     * Set in the flags once the VM has flushed its logs on exit.
+     */
+    public static final int CLOSED = 1;
+
+    public static final int RECORD_ID_OFFSET = 4;
+    public static final int RECORD_ARGS_OFFSET = 8;
+
+    /**
+     * Header of the unused tail of the data area.
+     */
+    public static final int PAD = VMLog.Record.FREE;
+
+    public static final int SYNC_PAGE_SHIFT = 12;
+    public static final int SYNC_PAGE_SIZE = 1 << SYNC_PAGE_SHIFT;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private VMLogFileFormat() {
+    }
+
+    /**
+     * Gets the number of bytes used to store a name in the logger table.
+     */
+    public static int nameSize(byte[] utf8) {
+        return 4 + ((utf8.length + 3) & ~3);
+    }
+
+    /**
+     * Gets the cursor value at which a record of {@code size} bytes reserved at {@code cursor} starts. A record that
+     * does not fit before the end of the data area goes at the start of the next lap.
+     */
+    public static long recordStart(long cursor, long size, long capacity) {
+        final long offset = cursor % capacity;
+        return offset + size > capacity ? cursor + capacity - offset : cursor;
+    }
+
+    /**
+     * Gets the cursor value of the first sync page boundary at or after {@code position}.
+     */
+    public static long firstSyncPage(long position) {
+        return (position + SYNC_PAGE_SIZE - 1) & ~(SYNC_PAGE_SIZE - 1);
+    }
+
+    /**
+     * Gets the index of the sync table entry for the sync page starting at cursor value {@code page}, in a data area
+     * of {@code pages} sync pages.
+     */
+    public static int syncTableIndex(long page, long pages) {
+        return (int) ((page >> SYNC_PAGE_SHIFT) % pages);
+    }
+
+    /**
+     * Visits the records of a log file.
+     */
+    public interface RecordVisitor {
+        /**
+         * @param header the record header, from which the logger, operation and thread can be decoded with the
+         *            static methods of {@link VMLog.Record}
+         * @param id the unique id of the record
+         * @param args the arguments of the record, valid up to the argument count encoded in the header
+         */
+        void visitRecord(int header, int id, long[] args);
+    }
+
+    /**
+     * Reads a log file written by {@link VMLogFileFlusher}.
+     */
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private final int wordSize;
+        private final long capacity;
+        private final int syncTable;
+        private final int data;
+        private String[] loggerNames = new String[0];
+        private String[][] operationNames = new String[0][];
+
+        public Reader(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                if (raf.length() > Integer.MAX_VALUE) {
+                    throw new IOException(file + " is too large");
+                }
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+            if (buffer.limit() < HEADER_SIZE) {
+                throw new IOException(file + " is not a VM log file");
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IOException(file + " is not a VM log file");
+                }
+            }
+            if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(file + " has unsupported version " + buffer.getInt(VERSION_OFFSET));
+            }
+            wordSize = buffer.getInt(WORD_SIZE_OFFSET);
+            capacity = buffer.getLong(CAPACITY_OFFSET);
+            syncTable = (int) buffer.getLong(SYNC_TABLE_OFFSET);
+            data = (int) buffer.getLong(DATA_OFFSET);
+            if (data + capacity > buffer.limit()) {
+                throw new IOException(file + " is truncated");
+            }
+            readLoggerTable();
+        }
+
+        private void readLoggerTable() {
+            int offset = HEADER_SIZE;
+            while (true) {
+                final int loggerId = buffer.getInt(offset);
+                offset += 4;
+                if (loggerId == 0) {
+                    break;
+                }
+                if (loggerId >= loggerNames.length) {
+                    final String[] newLoggerNames = new String[loggerId + 1];
+                    System.arraycopy(loggerNames, 0, newLoggerNames, 0, loggerNames.length);
+                    loggerNames = newLoggerNames;
+                    final String[][] newOperationNames = new String[loggerId + 1][];
+                    System.arraycopy(operationNames, 0, newOperationNames, 0, operationNames.length);
+                    operationNames = newOperationNames;
+                }
+                loggerNames[loggerId] = readName(offset);
+                offset += 4 + ((buffer.getInt(offset) + 3) & ~3);
+                final String[] names = new String[buffer.getInt(offset)];
+                offset += 4;
+                for (int op = 0; op < names.length; op++) {
+                    names[op] = readName(offset);
+                    offset += 4 + ((buffer.getInt(offset) + 3) & ~3);
+                }
+                operationNames[loggerId] = names;
+            }
+        }
+
+        private String readName(int offset) {
+            final byte[] utf8 = new byte[buffer.getInt(offset)];
+            for (int i = 0; i < utf8.length; i++) {
+                utf8[i] = buffer.get(offset + 4 + i);
+            }
+            return new String(utf8, UTF8);
+        }
+
+        /**
+         * Determines if the VM that wrote the log exited normally. The records of a log that is not closed may be
+         * incomplete.
+         */
+        public boolean isClosed() {
+            return (buffer.getInt(FLAGS_OFFSET) & CLOSED) != 0;
+        }
+
+        public int wordSize() {
+            return wordSize;
+        }
+
+        public String loggerName(int loggerId) {
+            if (loggerId < loggerNames.length && loggerNames[loggerId] != null) {
+                return loggerNames[loggerId];
+            }
+            return "Logger " + loggerId;
+        }
+
+        public String operationName(int loggerId, int op) {
+            if (loggerId < operationNames.length && operationNames[loggerId] != null && op < operationNames[loggerId].length) {
+                return operationNames[loggerId][op];
+            }
+            return "Op " + op;
+        }
+
+        /**
+         * Visits the records in the data area, oldest first.
+         */
+        public void read(RecordVisitor visitor) {
+            final long cursor = buffer.getLong(CURSOR_OFFSET);
+            long position = firstRecord(cursor);
+            final long[] args = new long[VMLog.Record.MAX_ARGS];
+            while (position < cursor) {
+                final int offset = (int) (position % capacity);
+                final int header = buffer.getInt(data + offset);
+                if (header == PAD) {
+                    position += capacity - offset;
+                    continue;
+                }
+                if (header == 0) {
+                    // the writer of this record has not finished
+                    break;
+                }
+                final int argCount = VMLog.Record.getArgCount(header);
+                for (int i = 0; i < argCount; i++) {
+                    final int argOffset = data + offset + RECORD_ARGS_OFFSET + i * wordSize;
+                    args[i] = wordSize == 8 ? buffer.getLong(argOffset) : buffer.getInt(argOffset) & 0xFFFFFFFFL;
+                }
+                visitor.visitRecord(header, buffer.getInt(data + offset + RECORD_ID_OFFSET), args);
+                position += RECORD_ARGS_OFFSET + argCount * wordSize;
+            }
+        }
+
+        /**
+         * Gets the cursor value of the oldest complete record.
+         */
+        private long firstRecord(long cursor) {
+            if (cursor <= capacity) {
+                return 0;
+            }
+            final long pages = capacity >> SYNC_PAGE_SHIFT;
+            for (long page = firstSyncPage(cursor - capacity); page < cursor; page += SYNC_PAGE_SIZE) {
+                final long first = buffer.getLong(syncTable + syncTableIndex(page, pages) * 8);
+                if (first >= page) {
+                    return first;
+                }
+            }
+            return cursor;
+        }
+    }
+}
@@ -296,10 +296,15 @@
  * <li>full: flush the log whenever it becomes full (i.e., is about to overwrite old records)</li>
  * <li>raw: output the log records as uninterpreted, raw, bits.</li>
  * <li>trace: output the log records using the {@link com.sun.max.vm.log.VMLogger#trace} method</li>
+ * <li>binary: stream the log records into the memory-mapped file given by {@code -XX:VMLogFile}</li>
  * </ul>
  * The default output mode is raw, which is robust, but requires off-line interpretation. Trace mode
  * may be unstable after a VM crash as it may provoke a recursive crash.
  * <p>
+ * Binary mode with {@code full} is intended for always-on tracing: each thread drains its full buffer into the
+ * file without locking and without formatting, see {@link com.sun.max.vm.log.VMLogFileFlusher}. The file can be
+ * converted to text with {@code ConvertLog -vmlog -f file}.
+ * <p>
  * Note that flushing the log when full, using trace mode output, is essentially equivalent to setting
  * the associated trace options, <i>except</i> that the data might be "stale" by delaying the
  * interpretation until the log is flushed.
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.management;
+
+import static com.sun.max.vm.VMConfiguration.*;
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.management.PerfDataFormat.*;
+
+import java.io.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
+
+/**
+ * VM counters published in a memory-mapped file, in the spirit of HotSpot's hsperfdata, so that an external process
+ * can {@linkplain PerfDataFormat.Reader read} them at any time without attaching to or otherwise disturbing the VM.
+ * Publishing is enabled with {@code -XX:+UsePerfData}, which creates a file named after the process id in the
+ * {@linkplain PerfDataFormat#defaultDirectory() default directory}, or with {@code -XX:PerfDataFile}.
+ * The file is deleted when the VM exits; a file left behind by a VM that crashed still has its
+ * {@link PerfDataFormat#ALIVE} flag set, which is why readers also check that the process is running.
+ * <p>
+ * The counters are updated with plain loads and stores, which cost a single test of {@link #region} when publishing
+ * is disabled. Counters updated concurrently by several threads, such as {@link #TLAB_REFILLS}, may therefore lose
+ * updates and are approximate.
+ */
+public final class PerfData {
+
+    public static final int GC_COUNT = 0;
+    public static final int GC_TIME = 1;
+    public static final int HEAP_USED = 2;
+    public static final int HEAP_CAPACITY = 3;
+    public static final int TLAB_REFILLS = 4;
+    public static final int COMPILATION_QUEUE_LENGTH = 5;
+    public static final int COMPILATIONS = 6;
+    public static final int CODE_CACHE_USED = 7;
+    public static final int SAFEPOINTS = 8;
+    public static final int SAFEPOINT_TIME = 9;
+    public static final int COALESCED_OPERATIONS = 10;
+    public static final int SAFEPOINT_SYNC_TIME = 11;
+    public static final int SAFEPOINT_MAX_SYNC_TIME = 12;
+
+    private static final String[] NAMES = {
+        "gc.count", "gc.time", "heap.used", "heap.capacity", "tlab.refills",
+        "compiler.queueLength", "compiler.compilations", "code.used", "safepoint.count", "safepoint.time",
+        "safepoint.coalesced", "safepoint.syncTime", "safepoint.maxSyncTime"
+    };
+
+    private static final int[] UNITS = {
+        UNITS_EVENTS, UNITS_NANOS, UNITS_BYTES, UNITS_BYTES, UNITS_EVENTS,
+        UNITS_ITEMS, UNITS_EVENTS, UNITS_BYTES, UNITS_EVENTS, UNITS_NANOS,
+        UNITS_EVENTS, UNITS_NANOS, UNITS_NANOS
+    };
+
+    private static boolean UsePerfData;
+
+    private static final VMStringOption fileOption = register(new VMStringOption("-XX:PerfDataFile=", false, null,
+        "publish VM counters in the given file (implies -XX:+UsePerfData)"), MaxineVM.Phase.STARTING);
+
+    static {
+        addFieldOption("-XX:", "UsePerfData", PerfData.class, "Publish VM counters in a memory-mapped file for external monitoring.");
+        Heap.registerGCCallback(new GCCounters());
+    }
+
+    /**
+     * The mapped file, or zero if the counters are not published.
+     */
+    private static Pointer region = Pointer.zero();
+
+    /**
+     * The path of the mapped file, deleted when the VM exits.
+     */
+    private static String regionPath;
+
+    private PerfData() {
+    }
+
+    /**
+     * Creates and maps the counter file if publishing is enabled. Called once the VM options have been parsed.
+     */
+    public static void initialize() {
+        String path = fileOption.getValue();
+        if (path == null) {
+            if (!UsePerfData) {
+                return;
+            }
+            final File dir = defaultDirectory();
+            dir.mkdirs();
+            path = new File(dir, processId()).getPath();
+        }
+        int nameTableSize = 0;
+        for (String name : NAMES) {
+            nameTableSize += 4 + nameSize(utf8(name));
+        }
+        final int nameTableOffset = COUNTERS_OFFSET + NAMES.length * 8;
+        final int fileSize = nameTableOffset + nameTableSize;
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(path, "rw");
+            try {
+                raf.setLength(0);
+                raf.setLength(fileSize);
+                final Pointer mapping = VirtualMemory.mapFileShared(Size.fromInt(fileSize), raf.getFD(), Address.zero());
+                if (mapping.isZero()) {
+                    throw new IOException("mmap failed");
+                }
+                mapping.writeInt(MAGIC_OFFSET, MAGIC);
+                mapping.writeInt(VERSION_OFFSET, VERSION);
+                mapping.writeInt(COUNT_OFFSET, NAMES.length);
+                mapping.writeLong(START_TIME_OFFSET, MaxineVM.getStartupTime());
+                mapping.writeLong(NAME_TABLE_OFFSET, nameTableOffset);
+                Pointer table = mapping.plus(nameTableOffset);
+                for (int i = 0; i < NAMES.length; i++) {
+                    final byte[] utf8 = utf8(NAMES[i]);
+                    table.writeInt(0, UNITS[i]);
+                    table.writeInt(4, utf8.length);
+                    Memory.writeBytes(utf8, table.plus(8));
+                    table = table.plus(4 + nameSize(utf8));
+                }
+                MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+                mapping.writeInt(FLAGS_OFFSET, ALIVE);
+                region = mapping;
+                regionPath = path;
+            } finally {
+                // the mapping outlives the file descriptor
+                raf.close();
+            }
+        } catch (IOException ex) {
+            Log.print("Could not create VM counter file ");
+            Log.print(path);
+            Log.print(": ");
+            Log.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Marks the counters as no longer being updated and deletes the file. Called when the VM exits.
+     * A reader that has already mapped the file can still read the final values.
+     */
+    public static void terminate() {
+        if (region.isNotZero()) {
+            region.writeInt(FLAGS_OFFSET, 0);
+            new File(regionPath).delete();
+        }
+    }
+
+    private static String processId() {
+        try {
+            // Linux, and the most portable way to get the pid without a native method
+            return new File("/proc/self").getCanonicalFile().getName();
+        } catch (IOException ex) {
+            return Long.toString(MaxineVM.getStartupTime());
+        }
+    }
+
+    private static byte[] utf8(String name) {
+        try {
+            return name.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Determines if the counters are published, for callers that need to do some work to compute a counter value.
+     */
+    @INLINE
+    public static boolean isEnabled() {
+        return region.isNotZero();
+    }
+
+    @INLINE
+    public static void increment(int counter) {
+        add(counter, 1);
+    }
+
+    @INLINE
+    public static void add(int counter, long delta) {
+        final Pointer r = region;
+        if (r.isNotZero()) {
+            final int offset = COUNTERS_OFFSET + counter * 8;
+            r.writeLong(offset, r.readLong(offset) + delta);
+        }
+    }
+
+    @INLINE
+    public static void set(int counter, long value) {
+        final Pointer r = region;
+        if (r.isNotZero()) {
+            r.writeLong(COUNTERS_OFFSET + counter * 8, value);
+        }
+    }
+
+    private static final class GCCounters implements Heap.GCCallback {
+        private long startTime;
+
+        public void gcCallback(Heap.GCCallbackPhase gcCallbackPhase) {
+            if (!isEnabled()) {
+                return;
+            }
+            if (gcCallbackPhase == Heap.GCCallbackPhase.BEFORE) {
+                startTime = System.nanoTime();
+            } else if (gcCallbackPhase == Heap.GCCallbackPhase.AFTER) {
+                increment(GC_COUNT);
+                add(GC_TIME, System.nanoTime() - startTime);
+                final long used = vmConfig().heapScheme().reportUsedSpace().toLong();
+                set(HEAP_USED, used);
+                set(HEAP_CAPACITY, used + vmConfig().heapScheme().reportFreeSpace().toLong());
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.management;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * The layout of the counter file written by {@link PerfData}, and a {@link Reader} for it that runs outside the VM.
+ * All values are in the byte order of the VM, which a reader detects from the {@link #MAGIC} number.
+ * <pre>
+ *  0: int  MAGIC
+ *  4: int  VERSION
+ *  8: int  number of counters
+ * 12: int  flags, {@link #ALIVE} while the VM is running
+ * 16: long VM start time in milliseconds since the epoch
+ * 24: long file offset of the name table
+ * 32: long counter values, one per counter
+ * </pre>
+ * The name table gives the units and the name of each counter, the name being stored as an int byte length followed
+ * by UTF-8 bytes, padded to a multiple of 4 bytes.
+ */
+public final class PerfDataFormat {
+
+    public static final int MAGIC = 0x4D585046;
+    public static final int VERSION = 1;
+
+    public static final int MAGIC_OFFSET = 0;
+    public static final int VERSION_OFFSET = 4;
+    public static final int COUNT_OFFSET = 8;
+    public static final int FLAGS_OFFSET = 12;
+    public static final int START_TIME_OFFSET = 16;
+    public static final int NAME_TABLE_OFFSET = 24;
+    public static final int COUNTERS_OFFSET = 32;
+
+    /**
+     * Set in the flags from the time the counters are published until the VM exits.
+     */
+    public static final int ALIVE = 1;
+
+    public static final int UNITS_EVENTS = 1;
+    public static final int UNITS_BYTES = 2;
+    public static final int UNITS_NANOS = 3;
+    public static final int UNITS_ITEMS = 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private PerfDataFormat() {
+    }
+
+    /**
+     * Gets the number of bytes used to store a name in the name table.
+     */
+    public static int nameSize(byte[] utf8) {
+        return 4 + ((utf8.length + 3) & ~3);
+    }
+
+    /**
+     * Gets the default directory in which VMs publish their counters, one file per VM named after the process id.
+     */
+    public static File defaultDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"), "maxperfdata_" + System.getProperty("user.name"));
+    }
+
+    /**
+     * Reads the counters published by a VM. The counters are read from a mapping of the file, so each call to
+     * {@link #value} returns the current value of the counter without any system call.
+     */
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private final String[] names;
+        private final int[] units;
+
+        public Reader(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+            if (buffer.limit() < COUNTERS_OFFSET) {
+                throw new IOException(file + " is not a VM counter file");
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IOException(file + " is not a VM counter file");
+                }
+            }
+            if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(file + " has unsupported version " + buffer.getInt(VERSION_OFFSET));
+            }
+            final int count = buffer.getInt(COUNT_OFFSET);
+            names = new String[count];
+            units = new int[count];
+            int offset = (int) buffer.getLong(NAME_TABLE_OFFSET);
+            for (int i = 0; i < count; i++) {
+                units[i] = buffer.getInt(offset);
+                final byte[] utf8 = new byte[buffer.getInt(offset + 4)];
+                for (int j = 0; j < utf8.length; j++) {
+                    utf8[j] = buffer.get(offset + 8 + j);
+                }
+                names[i] = new String(utf8, UTF8);
+                offset += 4 + nameSize(utf8);
+            }
+        }
+
+        /**
+         * Determines if the VM that published the counters is still running. The counters of a VM that crashed stay
+         * alive, so a caller should also check that the process exists.
+         */
+        public boolean isAlive() {
+            return (buffer.getInt(FLAGS_OFFSET) & ALIVE) != 0;
+        }
+
+        public long startTime() {
+            return buffer.getLong(START_TIME_OFFSET);
+        }
+
+        public int count() {
+            return names.length;
+        }
+
+        public String name(int counter) {
+            return names[counter];
+        }
+
+        public int units(int counter) {
+            return units[counter];
+        }
+
+        public long value(int counter) {
+            return buffer.getLong(COUNTERS_OFFSET + counter * 8);
+        }
+    }
+}
@@ -30,6 +30,8 @@ import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.actor.holder.ClassActor;
 import com.sun.max.vm.actor.member.MethodActor;
 import com.sun.max.vm.actor.member.StaticMethodActor;
+import com.sun.max.vm.code.CodeEviction;
+import com.sun.max.vm.code.StartupProfile;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.deopt.Deoptimization;
 import com.sun.max.vm.heap.Heap;
@@ -38,6 +40,7 @@ import com.sun.max.vm.instrument.InstrumentationManager;
 import com.sun.max.vm.jdk.JDK_sun_launcher_LauncherHelper;
 import com.sun.max.vm.jni.JniFunctions;
 import com.sun.max.vm.log.VMLog;
+import com.sun.max.vm.management.PerfData;
 import com.sun.max.vm.profilers.tracing.numa.NUMAProfiler;
 import com.sun.max.vm.profilers.tracing.numa.ProfilerGCCallback;
 import com.sun.max.vm.profilers.sampling.*;
@@ -45,10 +48,12 @@ import com.sun.max.vm.run.RunScheme;
 import com.sun.max.vm.runtime.CriticalMethod;
 import com.sun.max.vm.runtime.FatalError;
 import com.sun.max.vm.runtime.PrintThreads;
+import com.sun.max.vm.runtime.SafepointStatistics;
 import com.sun.max.vm.thread.VmThread;
 import com.sun.max.vm.ti.VMTI;
 import com.sun.max.vm.type.SignatureDescriptor;
 import com.sun.max.vm.type.VMClassLoader;
+import com.sun.max.vm.verifier.VerificationCache;
 import sun.misc.Launcher;
 import sun.misc.Signal;
 
@@ -232,6 +237,8 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
                 // because 'PrintWriter.<init>()' relies on a system property ("line.separator"), which is accessed during 'initializeSystemClass()'.
                 initializeSystemClass();
 
+                VerificationCache.initialize(phase);
+
                 // reinitialise any registered classes
                 for (String className : reinitClasses) {
                     try {
@@ -245,6 +252,8 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
             }
 
             case RUNNING: {
+                VerificationCache.initialize(phase);
+
                 // This is always the last scheme to be initialized, so now is the right time
                 // to start the profiler if requested.
                 final String cpuProfOptionValue = cprofOption.getValue();
@@ -273,6 +282,9 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
             case TERMINATING: {
                 JniFunctions.printJniFunctionTimers();
                 terminateProfilers();
+                SafepointStatistics.printIfEnabled();
+                CodeEviction.printStatisticsIfEnabled();
+                PerfData.terminate();
                 break;
             }
             default: {
@@ -294,6 +306,7 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
             VMLog.checkLogOptions();
 
             vmConfig().initializeSchemes(MaxineVM.Phase.STARTING);
+            PerfData.initialize();
             if (Heap.ExcessiveGCFrequency != 0) {
                 new ExcessiveGCDaemon(Heap.ExcessiveGCFrequency).start();
             }
@@ -355,6 +368,7 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
             classKindName = "main";
             Class<?> mainClass = loadMainClass();
             if (mainClass != null) {
+                StartupProfile.recordIfEnabled();
                 lookupAndInvokeMain(mainClass);
                 error = false;
             }
@@ -50,6 +50,11 @@ public abstract class GCOperation extends VmOperation {
         return true;
     }
 
+    @Override
+    protected boolean allowsCoalescing() {
+        return true;
+    }
+
     /**
      * Stops the current mutator thread for a garbage collection. Just before stopping, the
      * thread prepares its own stack reference map up to the trap frame. The remainder of the
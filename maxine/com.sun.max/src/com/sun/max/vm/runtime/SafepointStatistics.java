@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.runtime;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.log.VMLog.Record;
+import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.management.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Statistics about the safepoints of {@linkplain VmOperation VM operations}. They are gathered for
+ * every operation, at the cost of a few time stamps, in three histograms per operation type:
+ * <ul>
+ * <li>the time to safepoint, from requesting the threads to freeze until the last of them is frozen,</li>
+ * <li>the time in the safepoint, running {@link VmOperation#doIt()},</li>
+ * <li>the time to thaw the frozen threads again.</li>
+ * </ul>
+ * The buckets of a histogram are powers of two microseconds. All tables are allocated when the boot image is built,
+ * so recording a safepoint, which may be part of a GC, never allocates. The operations of a
+ * {@linkplain VmOperationBatch batch} are recorded under their own types, each with the time to safepoint and to thaw
+ * of the shared safepoint.
+ * <p>
+ * The histograms are printed when the VM exits if {@code -XX:+PrintSafepointStatistics} is given. Each safepoint is
+ * also recorded by the {@link #safepointLogger} ({@code -XX:+LogSafepoint}), and the accumulated and maximum time to
+ * safepoint are published as {@link PerfData} counters. With {@code -XX:+TraceSafepointStragglers}, the thread that
+ * took the longest to freeze and the method it was executing are recorded as well.
+ */
+public final class SafepointStatistics {
+
+    /**
+     * The number of operation types that get their own histograms. Any further types share the last entry.
+     */
+    static final int MAX_TYPES = 32;
+
+    /**
+     * The number of buckets in a histogram. Bucket 0 counts times below one microsecond, bucket {@code i} times in
+     * {@code [2^(i-1), 2^i)} microseconds and the last bucket all longer times.
+     */
+    static final int BUCKETS = 24;
+
+    static final int SYNC = 0;
+    static final int RUN = 1;
+    static final int THAW = 2;
+    private static final int PHASES = 3;
+
+    private static final String[] PHASE_NAMES = {"time to safepoint", "time in safepoint", "time to thaw"};
+
+    private static boolean PrintSafepointStatistics;
+
+    /**
+     * Determines if the VM operation thread records which thread took the longest to freeze in each operation.
+     */
+    static boolean TraceSafepointStragglers;
+
+    static {
+        addFieldOption("-XX:", "PrintSafepointStatistics", SafepointStatistics.class,
+            "Print histograms of the time to safepoint, time in safepoint and time to thaw of each VM operation type when the VM exits.");
+        addFieldOption("-XX:", "TraceSafepointStragglers", SafepointStatistics.class,
+            "Record the thread that took the longest to freeze for each VM operation, and the method it was executing.");
+    }
+
+    private static final Class<?>[] types = new Class<?>[MAX_TYPES];
+    private static final String[] typeNames = new String[MAX_TYPES];
+    private static int typeCount;
+
+    private static final long[] counts = new long[MAX_TYPES * PHASES * BUCKETS];
+    private static final long[] totals = new long[MAX_TYPES * PHASES];
+    private static final long[] maxima = new long[MAX_TYPES * PHASES];
+
+    private static long maxSyncTime;
+
+    private SafepointStatistics() {
+    }
+
+    /**
+     * Gets the index of the histograms for the type of a given operation, claiming a free entry for a new type.
+     */
+    private static int typeIndex(VmOperation operation) {
+        final Class<?> type = operation.getClass();
+        for (int i = 0; i < typeCount; i++) {
+            if (types[i] == type) {
+                return i;
+            }
+        }
+        if (typeCount == MAX_TYPES - 1) {
+            return typeCount;
+        }
+        types[typeCount] = type;
+        typeNames[typeCount] = operation.name;
+        return typeCount++;
+    }
+
+    private static int bucket(long nanos) {
+        final long micros = nanos / 1000;
+        if (micros == 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static void add(int type, int phase, long nanos) {
+        final int index = type * PHASES + phase;
+        counts[index * BUCKETS + bucket(nanos)]++;
+        totals[index] += nanos;
+        if (nanos > maxima[index]) {
+            maxima[index] = nanos;
+        }
+    }
+
+    /**
+     * Records a safepoint operation. Only called on the VM operation thread, which is therefore the only
+     * writer of the tables.
+     *
+     * @param operation the operation that ran, which may be a {@link VmOperationBatch}
+     * @param syncNanos the time from requesting the threads to freeze until the last of them was frozen
+     * @param runNanos the time spent running the operation
+     * @param thawNanos the time to thaw the frozen threads
+     * @param straggler the thread that took the longest to freeze, or {@code null} if not {@linkplain #TraceSafepointStragglers traced}
+     * @param stragglerMethod the method {@code straggler} was executing when it froze, or {@code null} if unknown
+     */
+    static void record(VmOperation operation, long syncNanos, long runNanos, long thawNanos, VmThread straggler, ClassMethodActor stragglerMethod) {
+        if (operation instanceof VmOperationBatch) {
+            final VmOperationBatch batch = (VmOperationBatch) operation;
+            for (int i = 0; i < batch.length(); i++) {
+                final int type = typeIndex(batch.operation(i));
+                add(type, SYNC, syncNanos);
+                add(type, RUN, batch.runTime(i));
+                add(type, THAW, thawNanos);
+            }
+        } else {
+            final int type = typeIndex(operation);
+            add(type, SYNC, syncNanos);
+            add(type, RUN, runNanos);
+            add(type, THAW, thawNanos);
+        }
+
+        PerfData.add(PerfData.SAFEPOINT_SYNC_TIME, syncNanos);
+        if (syncNanos > maxSyncTime) {
+            maxSyncTime = syncNanos;
+            PerfData.set(PerfData.SAFEPOINT_MAX_SYNC_TIME, syncNanos);
+        }
+
+        if (safepointLogger.enabled()) {
+            safepointLogger.logSafepoint(operation, syncNanos, runNanos, thawNanos, straggler, stragglerMethod);
+        }
+    }
+
+    /**
+     * Prints the histograms if {@code -XX:+PrintSafepointStatistics} was given. Called when the VM exits.
+     */
+    public static void printIfEnabled() {
+        if (PrintSafepointStatistics) {
+            print();
+        }
+    }
+
+    /**
+     * Prints the histograms of all operation types that have run.
+     */
+    public static void print() {
+        boolean lockDisabledSafepoints = Log.lock();
+        Log.println("Safepoint statistics (microseconds):");
+        for (int type = 0; type < MAX_TYPES; type++) {
+            final int first = type * PHASES;
+            long operations = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                operations += counts[first * BUCKETS + b];
+            }
+            if (operations == 0) {
+                continue;
+            }
+            Log.print("  ");
+            Log.print(typeNames[type] == null ? "<other>" : typeNames[type]);
+            Log.print(": ");
+            Log.print(operations);
+            Log.println(" operations");
+            for (int phase = 0; phase < PHASES; phase++) {
+                final int index = first + phase;
+                Log.print("    ");
+                Log.print(PHASE_NAMES[phase]);
+                Log.print(": average ");
+                Log.print(totals[index] / operations / 1000);
+                Log.print(", max ");
+                Log.println(maxima[index] / 1000);
+                for (int b = 0; b < BUCKETS; b++) {
+                    final long count = counts[index * BUCKETS + b];
+                    if (count != 0) {
+                        Log.print("      ");
+                        if (b == BUCKETS - 1) {
+                            Log.print(">= ");
+                            Log.print(1L << (b - 1));
+                        } else {
+                            Log.print("< ");
+                            Log.print(1L << b);
+                        }
+                        Log.print(": ");
+                        Log.println(count);
+                    }
+                }
+            }
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
+
+    @HOSTED_ONLY
+    @VMLoggerInterface
+    private interface SafepointLoggerInterface {
+        void safepoint(
+            @VMLogParam(name = "operation") VmOperation operation,
+            @VMLogParam(name = "syncNanos") long syncNanos,
+            @VMLogParam(name = "runNanos") long runNanos,
+            @VMLogParam(name = "thawNanos") long thawNanos,
+            @VMLogParam(name = "straggler") VmThread straggler,
+            @VMLogParam(name = "stragglerMethod") ClassMethodActor stragglerMethod);
+    }
+
+    public static final SafepointLogger safepointLogger = new SafepointLogger();
+
+    public static final class SafepointLogger extends SafepointLoggerAuto {
+        SafepointLogger() {
+            super("Safepoint", "safepoints of VM operations.");
+        }
+
+        @Override
+        protected void traceSafepoint(VmOperation operation, long syncNanos, long runNanos, long thawNanos, VmThread straggler, ClassMethodActor stragglerMethod) {
+            Log.print("Safepoint[");
+            Log.print(operation.name);
+            Log.print("]: sync ");
+            Log.print(syncNanos / 1000);
+            Log.print("us, run ");
+            Log.print(runNanos / 1000);
+            Log.print("us, thaw ");
+            Log.print(thawNanos / 1000);
+            Log.print("us");
+            if (straggler != null) {
+                Log.print(", straggler ");
+                Log.printThread(straggler, false);
+                if (stragglerMethod != null) {
+                    Log.print(" in ");
+                    Log.printMethod(stragglerMethod, false);
+                }
+            }
+            Log.println();
+        }
+    }
+
+// START GENERATED CODE
+    private static abstract class SafepointLoggerAuto extends com.sun.max.vm.log.VMLogger {
+        public enum Operation {
+            Safepoint;
+
+            @SuppressWarnings("hiding")
+            public static final Operation[] VALUES = values();
+        }
+
+        private static final int[] REFMAPS = new int[] {0x1};
+
+        protected SafepointLoggerAuto(String name, String optionDescription) {
+            super(name, Operation.VALUES.length, optionDescription, REFMAPS);
+        }
+
+        @Override
+        public String operationName(int opCode) {
+            return Operation.VALUES[opCode].name();
+        }
+
+        @INLINE
+        public final void logSafepoint(VmOperation operation, long syncNanos, long runNanos, long thawNanos, VmThread straggler,
+                ClassMethodActor stragglerMethod) {
+            log(Operation.Safepoint.ordinal(), objectArg(operation), longArg(syncNanos), longArg(runNanos), longArg(thawNanos), vmThreadArg(straggler),
+                methodActorArg(stragglerMethod));
+        }
+        protected abstract void traceSafepoint(VmOperation operation, long syncNanos, long runNanos, long thawNanos, VmThread straggler,
+                ClassMethodActor stragglerMethod);
+
+        @Override
+        protected void trace(Record r) {
+            switch (r.getOperation()) {
+                case 0: { //Safepoint
+                    traceSafepoint(toVmOperation(r, 1), toLong(r, 2), toLong(r, 3), toLong(r, 4), toVmThread(r, 5), toClassMethodActor(r, 6));
+                    break;
+                }
+            }
+        }
+        static VmOperation toVmOperation(Record r, int argNum) {
+            if (MaxineVM.isHosted()) {
+                return (VmOperation) ObjectArg.getArg(r, argNum);
+            } else {
+                return asVmOperation(toObject(r, argNum));
+            }
+        }
+        @INTRINSIC(UNSAFE_CAST)
+        private static native VmOperation asVmOperation(Object arg);
+
+    }
+
+// END GENERATED CODE
+
+}
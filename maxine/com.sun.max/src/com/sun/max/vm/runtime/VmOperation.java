@@ -30,7 +30,11 @@ import com.sun.max.unsafe.*;
 import com.sun.max.unsafe.Pointer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.management.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.stack.*;
@@ -181,6 +185,15 @@ public class VmOperation {
      */
     public final boolean disAllowsNestedOperations;
 
+    /**
+     * Determines if a nested operation may be requested while this operation is running.
+     *
+     * @see #disAllowsNestedOperations
+     */
+    boolean allowsNestedOperations() {
+        return !disAllowsNestedOperations;
+    }
+
     /**
      * Constants denoting the conditions under which a VM operation must be run.
      */
@@ -253,6 +266,38 @@ public class VmOperation {
         return false;
     }
 
+    /**
+     * Determines if this operation can be run in the same safepoint as other pending operations that allow it,
+     * instead of freezing and thawing the threads by itself. Operations are only coalesced with the operations
+     * queued directly behind them and only if they {@linkplain #requiresGlobalSafepoint() require a global safepoint}.
+     * An operation that allows coalescing must not depend on the state of the threads being unchanged since they were
+     * frozen, as an operation running before it in the same safepoint may have modified it.
+     * The default is {@code false}. Coalescing is only done when -XX:+CoalesceVmOperations is given.
+     *
+     * @see VmOperationBatch
+     */
+    protected boolean allowsCoalescing() {
+        return false;
+    }
+
+    /**
+     * Called on the VM operation thread if {@link #doIt()} threw while this operation ran as part of a
+     * {@linkplain VmOperationBatch batch}. It is called once the other operations of the batch have run and the
+     * threads have been thawed, and before the thread that submitted this operation is notified that it completed.
+     * The default rethrows {@code error}, as would have happened had this operation run in a safepoint of its own.
+     *
+     * @param error the error thrown by {@link #doIt()}
+     */
+    protected void doItFailed(Throwable error) {
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else {
+            throw (InternalError) new InternalError().initCause(error);
+        }
+    }
+
     /**
      * Called by the {@linkplain Trap trap} handler on a thread that hit a safepoint.
      * This is always called with safepoints {@linkplain SafepointPoll#disable() disabled}
@@ -548,6 +593,8 @@ public class VmOperation {
                 }
 
                 tracePhase("-- Begin --");
+                resetStraggler();
+                final long startTime = System.nanoTime();
 
                 freeze();
 
@@ -556,6 +603,7 @@ public class VmOperation {
                 MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
 
                 waitUntilFrozen();
+                final long frozenTime = System.nanoTime();
 
                 boolean oldAtSafepoint = atSafepoint;
                 try {
@@ -577,9 +625,14 @@ public class VmOperation {
                     error = t;
                 }
                 atSafepoint = oldAtSafepoint;
+                final long doneTime = System.nanoTime();
 
                 thaw();
 
+                final long endTime = System.nanoTime();
+                SafepointStatistics.record(this, frozenTime - startTime, doneTime - frozenTime, endTime - doneTime, straggler, stragglerMethod);
+                PerfData.increment(PerfData.SAFEPOINTS);
+                PerfData.add(PerfData.SAFEPOINT_TIME, endTime - startTime);
                 tracePhase("-- End --");
             }
 
@@ -701,6 +754,50 @@ public class VmOperation {
         }
     };
 
+    /**
+     * The thread that took the longest to freeze in the current run of this operation, if
+     * {@linkplain SafepointStatistics#TraceSafepointStragglers traced}.
+     */
+    private VmThread straggler;
+
+    /**
+     * The time the VM operation thread spent waiting for {@link #straggler} to freeze.
+     */
+    private long stragglerWait;
+
+    /**
+     * The method {@link #straggler} was executing when it froze, or {@code null} if it was not executing Java code.
+     */
+    private ClassMethodActor stragglerMethod;
+
+    private void resetStraggler() {
+        straggler = null;
+        stragglerWait = 0L;
+        stragglerMethod = null;
+    }
+
+    /**
+     * Records {@code thread} as the {@link #straggler} if the VM operation thread waited longer for it than for any
+     * other thread so far. Its top frame is the safepoint it trapped at or, if it froze in native code, the
+     * frame that called the native code.
+     */
+    private void noteStraggler(VmThread thread, long waitTime) {
+        if (straggler == null || waitTime > stragglerWait) {
+            final Pointer tla = thread.tla();
+            Pointer ip = TRAP_INSTRUCTION_POINTER.load(tla);
+            if (ip.isZero()) {
+                final Pointer frameAnchor = JavaFrameAnchor.from(tla);
+                if (!frameAnchor.isZero()) {
+                    ip = JavaFrameAnchor.PC.get(frameAnchor);
+                }
+            }
+            final TargetMethod targetMethod = ip.isZero() ? null : Code.codePointerToTargetMethod(ip);
+            straggler = thread;
+            stragglerWait = waitTime;
+            stragglerMethod = targetMethod == null ? null : targetMethod.classMethodActor;
+        }
+    }
+
     /**
      * Called by {@link #waitForThreadFreeze(VmThread)}. Subclasses can use this to perform extra actions
      * on a thread once it is frozen.
@@ -763,6 +860,7 @@ public class VmOperation {
         Pointer tla = thread.tla();
         final Pointer etla = ETLA.load(tla);
 
+        final long waitStart = SafepointStatistics.TraceSafepointStragglers ? System.nanoTime() : 0L;
         int steps = 0;
         if (!frozenByEnclosing(thread)) {
             if (UseCASBasedThreadFreezing) {
@@ -790,6 +888,10 @@ public class VmOperation {
             }
         }
 
+        if (waitStart != 0L) {
+            noteStraggler(thread, System.nanoTime() - waitStart);
+        }
+
         doAfterFrozen(thread);
 
         if (TraceVmOperations) {
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.runtime;
+
+import static com.sun.max.vm.runtime.VmOperationThread.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.management.*;
+import com.sun.max.vm.object.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A sequence of pending {@linkplain VmOperation#allowsCoalescing() coalescable} operations that are run back to back
+ * in a single safepoint. The threads frozen for the batch are those targeted by any of its operations, and the
+ * freezing and thawing hooks of each operation are applied to the threads it targets. Each operation is timed
+ * separately. A nested operation may only be requested while the batch runs if all its operations allow it, and an
+ * error thrown by one operation is {@linkplain VmOperation#doItFailed(Throwable) reported} to that operation once the
+ * batch is complete.
+ * <p>
+ * There is a single batch, owned by the {@linkplain VmOperationThread VM operation thread} and allocated when the
+ * boot image is built, so that forming a batch never allocates. This matters as a batch may include a garbage
+ * collection requested because the heap is exhausted.
+ */
+final class VmOperationBatch extends VmOperation {
+
+    /**
+     * The maximum number of operations in a batch.
+     */
+    static final int CAPACITY = 16;
+
+    private final VmOperation[] operations = new VmOperation[CAPACITY];
+
+    /**
+     * The time each operation of the last run of this batch spent in {@link VmOperation#doIt()}.
+     */
+    private final long[] runTimes = new long[CAPACITY];
+
+    /**
+     * The error, if any, that each operation of the last run of this batch threw from {@link VmOperation#doIt()}.
+     */
+    private final Throwable[] failures = new Throwable[CAPACITY];
+
+    private int length;
+
+    /**
+     * Denotes if any operation of this batch {@linkplain VmOperation#disAllowsNestedOperations disallows} nested
+     * operations.
+     */
+    private boolean disallowsNested;
+
+    VmOperationBatch() {
+        super("VmOperationBatch", null, Mode.Safepoint, false);
+    }
+
+    /**
+     * Starts a new batch with a given operation.
+     */
+    void reset(VmOperation first) {
+        operations[0] = first;
+        length = 1;
+        disallowsNested = !first.allowsNestedOperations();
+        setCallingThread(first.callingThread());
+    }
+
+    /**
+     * Determines if a given operation can be appended to this batch.
+     */
+    boolean accepts(VmOperation operation) {
+        return length < CAPACITY && operation.allowsCoalescing() && operation.requiresGlobalSafepoint();
+    }
+
+    void add(VmOperation operation) {
+        operations[length++] = operation;
+        disallowsNested |= !operation.allowsNestedOperations();
+    }
+
+    int length() {
+        return length;
+    }
+
+    VmOperation operation(int index) {
+        return operations[index];
+    }
+
+    long runTime(int index) {
+        return runTimes[index];
+    }
+
+    /**
+     * Gets the error the operation at a given index threw in the last run of this batch.
+     *
+     * @return {@code null} if the operation completed normally
+     */
+    Throwable failure(int index) {
+        return failures[index];
+    }
+
+    void clear() {
+        for (int i = 0; i < length; i++) {
+            operations[i] = null;
+            failures[i] = null;
+        }
+        length = 0;
+        disallowsNested = false;
+    }
+
+    @Override
+    boolean allowsNestedOperations() {
+        return !disallowsNested;
+    }
+
+    @Override
+    protected boolean operateOnThread(VmThread thread) {
+        for (int i = 0; i < length; i++) {
+            if (operations[i].operateOnThread(thread)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doAtSafepointBeforeBlocking(Pointer trapFrame) {
+        final VmThread thread = VmThread.current();
+        for (int i = 0; i < length; i++) {
+            if (operations[i].operateOnThread(thread)) {
+                operations[i].doAtSafepointBeforeBlocking(trapFrame);
+            }
+        }
+    }
+
+    @Override
+    protected void doAtSafepointAfterBlocking(Pointer trapFrame) {
+        final VmThread thread = VmThread.current();
+        for (int i = length - 1; i >= 0; i--) {
+            if (operations[i].operateOnThread(thread)) {
+                operations[i].doAtSafepointAfterBlocking(trapFrame);
+            }
+        }
+    }
+
+    @Override
+    protected void doAfterFrozen(VmThread thread) {
+        for (int i = 0; i < length; i++) {
+            if (operations[i].operateOnThread(thread)) {
+                operations[i].doAfterFrozen(thread);
+            }
+        }
+    }
+
+    @Override
+    protected void doBeforeThawingThread(VmThread thread) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (operations[i].operateOnThread(thread)) {
+                operations[i].doBeforeThawingThread(thread);
+            }
+        }
+    }
+
+    /**
+     * Runs the operations of this batch in order. An error thrown by one operation does not prevent the others from
+     * running, as they do not depend on each other. It is recorded as that operation's {@linkplain #failure(int)
+     * failure}.
+     */
+    @Override
+    protected void doIt() {
+        for (int i = 0; i < length; i++) {
+            final VmOperation operation = operations[i];
+            final boolean disablesHeapAllocation = operation.disablesHeapAllocation();
+            if (disablesHeapAllocation) {
+                Heap.disableAllocationForCurrentThread();
+            }
+            final long startTime = System.nanoTime();
+            try {
+                operation.doIt();
+            } catch (Throwable t) {
+                failures[i] = t;
+                if (TraceVmOperations) {
+                    boolean lockDisabledSafepoints = Log.lock();
+                    Log.print("VmOperationBatch: error while running ");
+                    Log.print(operation.name);
+                    Log.print(": ");
+                    Log.println(ObjectAccess.readClassActor(t).name.string);
+                    Log.unlock(lockDisabledSafepoints);
+                }
+            } finally {
+                if (disablesHeapAllocation) {
+                    Heap.enableAllocationForCurrentThread();
+                }
+            }
+            final long time = System.nanoTime() - startTime;
+            runTimes[i] = time;
+            if (TraceVmOperations) {
+                boolean lockDisabledSafepoints = Log.lock();
+                Log.print("VmOperationBatch: ran ");
+                Log.print(operation.name);
+                Log.print(" in ");
+                Log.print(time / 1000);
+                Log.println(" us");
+                Log.unlock(lockDisabledSafepoints);
+            }
+        }
+        PerfData.add(PerfData.COALESCED_OPERATIONS, length - 1);
+    }
+}
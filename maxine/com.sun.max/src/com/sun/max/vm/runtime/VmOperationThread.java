@@ -59,6 +59,7 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
 
     static boolean TraceVmOperations;
     static boolean TraceRequestLock;
+    static boolean CoalesceVmOperations;
 
     public static VmOperationThread instance() {
         return (VmOperationThread) VmThread.vmOperationThread.javaThread();
@@ -67,12 +68,15 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
     static {
         VMOptions.addFieldOption("-XX:", "TraceVmOperations", VmOperationThread.class, "Trace VM operations.");
         VMOptions.addFieldOption("-XX:", "TraceRequestLock", VmOperationThread.class, "Trace VM_OPERATION_REQUEST_LOCK.");
+        VMOptions.addFieldOption("-XX:", "CoalesceVmOperations", VmOperationThread.class,
+            "Run consecutive pending VM operations that allow it in a single safepoint.");
     }
 
     @HOSTED_ONLY
     public VmOperationThread(ThreadGroup group) {
         super(group, "VmOperationThread");
         queue = new VmOperationQueue();
+        batch = new VmOperationBatch();
         setDaemon(true);
         setUncaughtExceptionHandler(this);
     }
@@ -107,6 +111,57 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
 
     private VmOperation currentOperation;
 
+    /**
+     * The batch used to {@linkplain #coalesce(VmOperation) coalesce} operations.
+     */
+    private final VmOperationBatch batch;
+
+    /**
+     * Removes the operations that can be coalesced with a given operation and that are queued directly behind it
+     * from the queue and forms a {@linkplain VmOperationBatch batch} with them. Must be called while holding
+     * {@link #QUEUE_LOCK}.
+     *
+     * @param operation an operation just removed from the head of the queue
+     * @return {@code operation} if no other operation can be coalesced with it, otherwise the batch
+     */
+    private VmOperation coalesce(VmOperation operation) {
+        if (!CoalesceVmOperations || !operation.allowsCoalescing() || !operation.requiresGlobalSafepoint()) {
+            return operation;
+        }
+        batch.reset(operation);
+        VmOperation next = queue.peek();
+        while (next != null && batch.accepts(next)) {
+            batch.add(queue.poll());
+            next = queue.peek();
+        }
+        if (batch.length() == 1) {
+            batch.clear();
+            return operation;
+        }
+        return batch;
+    }
+
+    /**
+     * Notifies the thread that submitted an operation, if it is blocked, that the operation completed.
+     */
+    private static void operationCompleted(VmOperation operation) {
+        if (operation.mode.isBlocking()) {
+            synchronized (REQUEST_LOCK) {
+                operation.callingThread().decrementPendingOperations();
+                if (TraceVmOperations || TraceRequestLock) {
+                    boolean lockDisabledSafepoints = Log.lock();
+                    Log.print("VM operation thread finished operation ");
+                    Log.print(operation.name);
+                    Log.print(" submitted by ");
+                    Log.printThread(operation.callingThread(), false);
+                    Log.println(" and is notifying REQUEST_LOCK waiters");
+                    Log.unlock(lockDisabledSafepoints);
+                }
+                REQUEST_LOCK.notifyAll();
+            }
+        }
+    }
+
     public void promoteToGlobalSafepoint() {
         if (VmThread.current().isVmOperationThread()) {
             if (currentOperation != null && currentOperation.requiresGlobalSafepoint()) {
@@ -122,6 +177,39 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
         return vmOp != null && vmOp.requiresGlobalSafepoint();
     }
 
+    /**
+     * Reports the failure of each operation of the {@linkplain #batch batch} that just ran to that operation and
+     * notifies the threads that submitted them. All the operations are completed even if reporting a failure throws;
+     * the first error thrown is rethrown once they are.
+     */
+    private void completeBatch() {
+        Throwable error = null;
+        for (int i = 0; i < batch.length(); i++) {
+            final VmOperation operation = batch.operation(i);
+            final Throwable failure = batch.failure(i);
+            if (failure != null) {
+                try {
+                    operation.doItFailed(failure);
+                } catch (Throwable t) {
+                    if (error == null) {
+                        error = t;
+                    }
+                }
+            }
+            operationCompleted(operation);
+        }
+        batch.clear();
+        if (error != null) {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else {
+                throw (InternalError) new InternalError().initCause(error);
+            }
+        }
+    }
+
     @Override
     public void run() {
         if (TraceVmOperations) {
@@ -153,6 +241,8 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
                 if (shouldTerminate) {
                     break;
                 }
+
+                currentOperation = coalesce(currentOperation);
             }
 
             if (TraceVmOperations) {
@@ -175,22 +265,13 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
                     Heap.enableAllocationForCurrentThread();
                 }
 
-                if (currentOperation.mode.isBlocking()) {
-                    synchronized (REQUEST_LOCK) {
-                        currentOperation.callingThread().decrementPendingOperations();
-                        if (TraceVmOperations || TraceRequestLock) {
-                            boolean lockDisabledSafepoints = Log.lock();
-                            Log.print("VM operation thread finished operation ");
-                            Log.print(currentOperation.name);
-                            Log.print(" submitted by ");
-                            Log.printThread(currentOperation.callingThread(), false);
-                            Log.println(" and is notifying REQUEST_LOCK waiters");
-                            Log.unlock(lockDisabledSafepoints);
-                        }
-                        REQUEST_LOCK.notifyAll();
-                    }
-                }
+                final VmOperation operation = currentOperation;
                 currentOperation = null;
+                if (operation == batch) {
+                    completeBatch();
+                } else {
+                    operationCompleted(operation);
+                }
             }
         }
 
@@ -251,7 +332,7 @@ public class VmOperationThread extends Thread implements UncaughtExceptionHandle
             boolean nested = enclosingOperation != null;
             if (nested) {
                 // Nested operation: check that it's allowed for the enclosing operation
-                boolean fatal = enclosingOperation.disAllowsNestedOperations;
+                boolean fatal = !enclosingOperation.allowsNestedOperations();
                 if (TraceVmOperations || fatal) {
                     boolean lockDisabledSafepoints = Log.lock();
                     Log.print("Nested VM operation ");
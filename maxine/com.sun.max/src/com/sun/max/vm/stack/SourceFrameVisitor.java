@@ -84,9 +84,35 @@ public class SourceFrameVisitor extends RawStackFrameVisitor implements TargetMe
         // TODO this value is not stable in the face of deoptimzation as frames can move.
         frameId = current.sp().toLong() << 16;
 
-        trapped = callee.targetMethod() != null && callee.targetMethod().is(TrapStub);
+        boolean trapped = callee.targetMethod() != null && callee.targetMethod().is(TrapStub);
+        return visitCodePositions(targetMethod, current.vmIP(), true, trapped);
+    }
+
+    /**
+     * Visits the source frames of a frame that was recorded earlier as a {@linkplain TargetMethod#posFor(CodePointer)
+     * code position} in a target method, exactly as {@link #visitFrame(StackFrameCursor, StackFrameCursor)} would
+     * have visited them while the frame was still on the stack. If the target method has since been
+     * {@linkplain TargetMethod#wasEvicted() evicted} or {@code pos} is not a valid code position, a single
+     * source frame without a bytecode index is visited.
+     *
+     * @param targetMethod the target method of the recorded frame
+     * @param pos the code position of the recorded frame
+     * @param trapped specifies if the recorded frame was stopped at a trap
+     * @param frameId an identifier for the recorded frame
+     * @return {@code true} if the visit of subsequent recorded frames should continue
+     */
+    public boolean visitRecordedFrame(TargetMethod targetMethod, int pos, boolean trapped, long frameId) {
+        this.frameId = frameId;
+        if (pos >= 0 && pos < targetMethod.codeLength() && !targetMethod.wasEvicted()) {
+            return visitCodePositions(targetMethod, targetMethod.codeAt(pos), true, trapped);
+        }
+        return visitCodePositions(targetMethod, CodePointer.zero(), false, trapped);
+    }
+
+    private boolean visitCodePositions(TargetMethod targetMethod, CodePointer ip, boolean validIP, boolean trapped) {
+        this.trapped = trapped;
         stopped = false;
-        int count = targetMethod.forEachCodePos(this, current.vmIP());
+        int count = validIP ? targetMethod.forEachCodePos(this, ip) : 0;
         if (count == 0 && !stopped) {
             return visitSourceFrame(targetMethod.classMethodActor, -1, trapped, frameId);
         }
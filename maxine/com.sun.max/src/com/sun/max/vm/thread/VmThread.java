@@ -270,6 +270,8 @@ public class VmThread {
 
     private final VmStackFrameWalker stackDumpStackFrameWalker = new VmStackFrameWalker(Pointer.zero());
 
+    private final ExceptionDispatchCache exceptionDispatchCache = new ExceptionDispatchCache();
+
     @CONSTANT_WHEN_NOT_ZERO
     private VmStackFrameWalker samplingProfilerStackFrameWalker;
 
@@ -420,6 +422,11 @@ public class VmThread {
      */
     private JniHandles jniHandles;
 
+    /**
+     * Caches of free slots in the {@linkplain JniGlobalHandleTable JNI global handle tables}, indexed by table.
+     */
+    private JniGlobalHandleTable.LocalCache[] jniGlobalHandleCaches;
+
     /**
      * Next thread waiting on the same monitor this thread is {@linkplain Object#wait() waiting} on.
      * Any thread can only be waiting on at most one monitor.
@@ -818,6 +825,9 @@ public class VmThread {
 
         thread.traceThreadAfterTermination();
 
+        // Give back any cached JNI global handle slots
+        JniHandles.releaseGlobalHandleCaches(thread);
+
         // GC may now reclaim or prepare any of its resources before the thread vanishes forever.
         vmConfig().heapScheme().notifyCurrentThreadDetach();
 
@@ -1032,6 +1042,14 @@ public class VmThread {
         return stackDumpStackFrameWalker;
     }
 
+    /**
+     * Gets the preallocated, thread local cache of exception handler lookups used while unwinding this thread's stack.
+     */
+    @INLINE
+    public final ExceptionDispatchCache exceptionDispatchCache() {
+        return exceptionDispatchCache;
+    }
+
     /**
      * Gets a preallocated, thread local object that can be used to log a stack dump without incurring any allocation.
      */
@@ -1282,6 +1300,30 @@ public class VmThread {
         }
     }
 
+    /**
+     * Gets this thread's cache of free slots in a given {@linkplain JniGlobalHandleTable JNI global handle table},
+     * creating it first if necessary.
+     */
+    public final JniGlobalHandleTable.LocalCache jniGlobalHandleCache(int tableId) {
+        if (jniGlobalHandleCaches == null) {
+            jniGlobalHandleCaches = new JniGlobalHandleTable.LocalCache[JniHandles.NUMBER_OF_GLOBAL_HANDLE_TABLES];
+        }
+        JniGlobalHandleTable.LocalCache cache = jniGlobalHandleCaches[tableId];
+        if (cache == null) {
+            cache = new JniGlobalHandleTable.LocalCache();
+            jniGlobalHandleCaches[tableId] = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Gets this thread's cache of free slots in a given {@linkplain JniGlobalHandleTable JNI global handle table}
+     * if it has been created.
+     */
+    public final JniGlobalHandleTable.LocalCache jniGlobalHandleCacheOrNull(int tableId) {
+        return jniGlobalHandleCaches == null ? null : jniGlobalHandleCaches[tableId];
+    }
+
     /**
      * Gets the JNI handles for this thread, creating them first if necessary.
      */
@@ -22,10 +22,13 @@
  */
 package com.sun.max.vm.verifier;
 
+import java.util.*;
+
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.classfile.*;
+import com.sun.max.vm.type.*;
 
 /**
  * An instance of {@code ClassVerifier} is created to verify the methods in a given class.
@@ -33,33 +36,80 @@ import com.sun.max.vm.classfile.*;
 public abstract class ClassVerifier extends Verifier {
 
     public final ClassActor classActor;
+
+    /**
+     * The classes resolved during verification, recorded for the {@link VerificationCache}, or {@code null} if the
+     * cache is not in use. Shared with the verifiers that {@linkplain #shareContext(ClassVerifier) help} this one.
+     */
+    Set<ClassActor> dependencies;
+
+    /**
+     * Determines if this verifier may load classes to resolve types. A verifier running in a
+     * {@linkplain ParallelVerification helper thread} may not, as the thread that requested the verification may hold
+     * locks needed for loading.
+     */
+    boolean mayLoadClasses = true;
+
     protected ClassVerifier(ClassActor classActor) {
         super(classActor.constantPool());
         this.classActor = classActor;
+        if (VerificationCache.isEnabled()) {
+            dependencies = Collections.synchronizedSet(new HashSet<ClassActor>());
+        }
+    }
+
+    /**
+     * Makes this verifier, which verifies some methods on behalf of another verifier of the same class, record its
+     * dependencies with the other one and follow its class loading restriction.
+     */
+    void shareContext(ClassVerifier other) {
+        dependencies = other.dependencies;
+        mayLoadClasses = other.mayLoadClasses;
+    }
+
+    @Override
+    public ClassActor resolve(TypeDescriptor type) {
+        if (!mayLoadClasses && !type.isResolvableWithoutClassLoading(classActor.classLoader)) {
+            throw ParallelVerification.CLASS_LOADING_REQUIRED;
+        }
+        final ClassActor resolved = super.resolve(type);
+        if (dependencies != null) {
+            dependencies.add(resolved);
+        }
+        return resolved;
     }
 
     /**
      * Performs bytecode verification for all methods in {@linkplain #classActor the given class} that have a non-null
-     * {@link ClassMethodActor#codeAttribute() code attribute}.
+     * {@link ClassMethodActor#codeAttribute() code attribute}. The methods of a class with stack maps may be verified
+     * {@linkplain ParallelVerification in parallel}.
      */
     public synchronized void verify() {
         if (TraceVerifierLevel >= TRACE_CLASS) {
             Log.println("[Verifying class " + classActor.name + "]");
         }
-        verifyMethods(classActor.localVirtualMethodActors());
-        verifyMethods(classActor.localStaticMethodActors());
-        verifyMethods(classActor.localInterfaceMethodActors());
+        final ArrayList<ClassMethodActor> methods = new ArrayList<ClassMethodActor>();
+        collectMethods(classActor.localVirtualMethodActors(), methods);
+        collectMethods(classActor.localStaticMethodActors(), methods);
+        collectMethods(classActor.localInterfaceMethodActors(), methods);
+        if (ParallelVerification.isApplicable(classActor, methods.size())) {
+            new ParallelVerification(this, methods.toArray(new ClassMethodActor[methods.size()])).verify();
+        } else {
+            for (ClassMethodActor classMethodActor : methods) {
+                verifyMethod(classMethodActor);
+            }
+        }
         if (TraceVerifierLevel >= TRACE_CLASS) {
             Log.println("[Verified class " + classActor.name + "]");
         }
     }
 
-    private void verifyMethods(MethodActor[] methodActors) {
+    private static void collectMethods(MethodActor[] methodActors, ArrayList<ClassMethodActor> methods) {
         for (MethodActor methodActor : methodActors) {
             if (methodActor instanceof ClassMethodActor && !methodActor.isProxyToDefault()) {
                 final ClassMethodActor classMethodActor = (ClassMethodActor) methodActor;
                 if (classMethodActor.compilee() == classMethodActor) {
-                    verifyMethod(classMethodActor);
+                    methods.add(classMethodActor);
                 } else {
                     // Cannot verify substituted methods as the receiver and holder type will not match
                 }
@@ -67,6 +117,14 @@ public abstract class ClassVerifier extends Verifier {
         }
     }
 
+    /**
+     * Creates a verifier of the same kind as this one for verifying some of the methods of {@link #classActor}
+     * in another thread.
+     */
+    protected ClassVerifier newHelper() {
+        return Verifier.verifierFor(classActor);
+    }
+
     protected void verifyMethod(final ClassMethodActor classMethodActor) {
         classMethodActor.verify(this);
     }
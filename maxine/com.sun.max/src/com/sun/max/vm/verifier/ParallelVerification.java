@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.verifier;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+
+/**
+ * Verifies the methods of a class in parallel. The methods are shared out between the thread requesting the
+ * verification and up to {@link Verifier#VerificationThreads} helper threads. Each thread uses its own
+ * {@link ClassVerifier} as verifiers keep per-verification state.
+ * <p>
+ * The requesting thread claims methods in the same way as the helpers. Verification therefore completes even if
+ * no helper thread becomes available and the requesting thread only waits for helpers that claimed a method.
+ * <p>
+ * The requesting thread holds the monitor of the class being initialized, and possibly class loader locks, while it
+ * waits for the helpers. Helpers therefore never load classes: a helper that needs a class that is not loaded yet gives
+ * the method back and the requesting thread verifies it after the helpers are done. Helpers do not initialize classes
+ * either, as verification only resolves types.
+ */
+final class ParallelVerification implements Runnable {
+
+    /**
+     * The minimum number of methods each participating thread should verify.
+     */
+    private static final int METHODS_PER_THREAD = 8;
+
+    /**
+     * Thrown by a verifier in a helper thread that would have to load a class to resolve a type.
+     */
+    static final class ClassLoadingRequired extends RuntimeException {
+        private static final long serialVersionUID = -3386417046129854620L;
+
+        private ClassLoadingRequired() {
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    static final ClassLoadingRequired CLASS_LOADING_REQUIRED = new ClassLoadingRequired();
+
+    private static ExecutorService helpers;
+
+    private final ClassVerifier verifier;
+    private final ClassMethodActor[] methods;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * The methods given back by helpers because verifying them requires class loading.
+     */
+    private final ConcurrentLinkedQueue<ClassMethodActor> requesterOnly = new ConcurrentLinkedQueue<ClassMethodActor>();
+    private volatile Throwable failure;
+    private int activeHelpers;
+
+    ParallelVerification(ClassVerifier verifier, ClassMethodActor[] methods) {
+        this.verifier = verifier;
+        this.methods = methods;
+    }
+
+    /**
+     * Determines if the methods of a given class should be verified in parallel.
+     */
+    static boolean isApplicable(ClassActor classActor, int methodCount) {
+        return Verifier.VerificationThreads > 0 &&
+               MaxineVM.isRunning() &&
+               classActor.majorVersion >= 50 &&
+               methodCount >= 2 * METHODS_PER_THREAD &&
+               !(Thread.currentThread() instanceof HelperThread);
+    }
+
+    private static synchronized ExecutorService helpers() {
+        if (helpers == null) {
+            helpers = Executors.newFixedThreadPool(Verifier.VerificationThreads, new ThreadFactory() {
+                private int count;
+                public Thread newThread(Runnable r) {
+                    return new HelperThread(r, "VerificationThread-" + count++);
+                }
+            });
+        }
+        return helpers;
+    }
+
+    static final class HelperThread extends Thread {
+        HelperThread(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    /**
+     * Verifies all the methods, returning when they have all been verified.
+     *
+     * @throws VerifyError (or some other error) if a method failed verification
+     */
+    void verify() {
+        final int helperCount = Math.min(Verifier.VerificationThreads, methods.length / METHODS_PER_THREAD - 1);
+        final ExecutorService executor = helpers();
+        for (int i = 0; i < helperCount; i++) {
+            executor.execute(this);
+        }
+        verifyMethods(verifier);
+
+        boolean interrupted = false;
+        synchronized (this) {
+            while (activeHelpers != 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        ClassMethodActor method;
+        while (failure == null && (method = requesterOnly.poll()) != null) {
+            try {
+                verifier.verifyMethod(method);
+            } catch (Error e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        final Throwable t = failure;
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw (RuntimeException) t;
+        }
+    }
+
+    /**
+     * The task run by a helper thread.
+     */
+    public void run() {
+        synchronized (this) {
+            if (next.get() >= methods.length || failure != null) {
+                return;
+            }
+            activeHelpers++;
+        }
+        try {
+            final ClassVerifier helper = verifier.newHelper();
+            helper.shareContext(verifier);
+            helper.mayLoadClasses = false;
+            verifyMethods(helper);
+        } finally {
+            synchronized (this) {
+                activeHelpers--;
+                notifyAll();
+            }
+        }
+    }
+
+    private void verifyMethods(ClassVerifier v) {
+        int i;
+        while (failure == null && (i = next.getAndIncrement()) < methods.length) {
+            try {
+                v.verifyMethod(methods[i]);
+            } catch (ClassLoadingRequired e) {
+                requesterOnly.add(methods[i]);
+            } catch (Error e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+}
@@ -61,6 +61,7 @@ public class TypeCheckingVerifier extends ClassVerifier {
     private TypeInferencingVerifier failoverVerifier() {
         if (failoverVerifier == null) {
             failoverVerifier = new TypeInferencingVerifier(classActor);
+            failoverVerifier.shareContext(this);
         }
         return failoverVerifier;
     }
@@ -39,6 +39,11 @@ public class TypeInferencingVerifier extends ClassVerifier {
         //setVerbose(true);
     }
 
+    @Override
+    protected ClassVerifier newHelper() {
+        return new TypeInferencingVerifier(classActor);
+    }
+
     @Override
     public CodeAttribute verify(ClassMethodActor classMethodActor, CodeAttribute originalCodeAttribute) {
 
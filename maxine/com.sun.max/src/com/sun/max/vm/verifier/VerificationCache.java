@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.verifier;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.classfile.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * A cache, persisted across VM runs, of the classes that passed bytecode verification.
+ * <p>
+ * Each entry identifies a class by its name and the class of its defining class loader and records the
+ * {@linkplain ClassfileDigest digest} of its class file. The outcome of verification also depends on the classes the
+ * verifier consults, for example to check that one type is assignable to another. An entry therefore also records
+ * the digest of each class the {@linkplain ClassVerifier#resolve verifier resolved} and of all the supertypes of those
+ * classes and of the verified class. A class is not verified again only if its class file and the class files of all
+ * of these dependencies are unchanged. The dependencies are resolved through the class's loader to check this, which
+ * loads the same classes as verification would. Classes in the boot image have no digest and are instead recorded as
+ * part of the image, whose identity is recorded in the file header.
+ * <p>
+ * Only classes that were verified in full are recorded. In particular, classes whose verification was
+ * {@linkplain Verifier#LazyVerification deferred} are not. The cache file is read when the VM starts running and
+ * rewritten when it shuts down.
+ */
+public final class VerificationCache {
+
+    private VerificationCache() {
+    }
+
+    private static final String HEADER = "# Maxine verification cache v2";
+
+    /**
+     * Identifies the boot image, as the classes in it are recorded as dependencies without a class file digest.
+     * Computed when the image is built.
+     */
+    private static final String IMAGE_ID = UUID.randomUUID().toString();
+
+    /**
+     * The digest recorded for a dependency defined in the boot image.
+     */
+    private static final String IN_IMAGE = "image";
+
+    @RESET
+    static String VerificationCacheFile;
+
+    static {
+        addFieldOption("-XX:", "VerificationCacheFile", VerificationCache.class,
+            "Path of a file in which the classes that passed bytecode verification are recorded at VM exit. " +
+            "Classes recorded in the file by a previous run are not verified again if neither their class file " +
+            "nor those of the classes their verification depended on have changed.");
+    }
+
+    /**
+     * A verified class.
+     */
+    static final class Entry {
+        final String digest;
+
+        /**
+         * Maps the keys of the classes the verification depended on to their digests.
+         */
+        final TreeMap<String, String> dependencies;
+
+        Entry(String digest, TreeMap<String, String> dependencies) {
+            this.digest = digest;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Gives the current digests of the dependencies recorded in an {@link Entry}.
+     */
+    interface Digests {
+        /**
+         * Gets the current digest of a class.
+         *
+         * @param key the key of the class
+         * @return {@code null} if there is no such class or it has no digest
+         */
+        String digest(String key);
+    }
+
+    /**
+     * Entries read from the cache file, mapping class keys to entries.
+     */
+    private static HashMap<String, Entry> cached;
+
+    /**
+     * Entries for classes verified during this run.
+     */
+    private static final HashMap<String, Entry> recorded = new HashMap<String, Entry>();
+
+    /**
+     * Initializes the cache for a given VM phase. Class file digests must be enabled before any application
+     * class is defined, so this is called while the VM is starting.
+     */
+    public static void initialize(MaxineVM.Phase phase) {
+        if (VerificationCacheFile == null) {
+            return;
+        }
+        if (phase == MaxineVM.Phase.STARTING) {
+            ClassfileDigest.enable();
+        } else if (phase == MaxineVM.Phase.RUNNING) {
+            final File file = new File(VerificationCacheFile);
+            cached = read(file);
+            if (Verifier.TraceVerifierLevel >= Verifier.TRACE_CLASS) {
+                Log.println("[Read " + cached.size() + " entries from verification cache " + file + "]");
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread("VerificationCacheWriter") {
+                @Override
+                public void run() {
+                    write(file);
+                }
+            });
+        }
+    }
+
+    /**
+     * Determines if the classes resolved during verification are recorded.
+     */
+    static boolean isEnabled() {
+        return cached != null;
+    }
+
+    private static String key(ClassActor classActor) {
+        final ClassLoader classLoader = classActor.classLoader;
+        final String loader = classLoader == null || classLoader == BootClassLoader.BOOT_CLASS_LOADER ? "boot" : classLoader.getClass().getName();
+        return loader + ' ' + classActor.name.string;
+    }
+
+    /**
+     * Gets the digest to record for a class.
+     *
+     * @return {@code null} if the class has no digest and is not in the boot image
+     */
+    private static String digestOf(ClassActor classActor) {
+        final String digest = classActor.classfileDigest();
+        if (digest != null) {
+            return digest;
+        }
+        return Heap.isInBootImage(classActor) ? IN_IMAGE : null;
+    }
+
+    /**
+     * Gets the current digest of a dependency recorded for a class.
+     *
+     * @return {@code null} if the dependency cannot be resolved or resolves to a class with a different key
+     */
+    private static String currentDigest(ClassLoader classLoader, String key) {
+        final ClassActor classActor;
+        try {
+            classActor = JavaTypeDescriptor.getDescriptorForJavaString(key.substring(key.indexOf(' ') + 1)).resolve(classLoader);
+        } catch (LinkageError e) {
+            return null;
+        }
+        return key.equals(key(classActor)) ? digestOf(classActor) : null;
+    }
+
+    /**
+     * Determines if a class was verified in a previous run and neither its class file nor those of the classes its
+     * verification depended on have changed since.
+     */
+    public static boolean isVerified(final ClassActor classActor) {
+        HashMap<String, Entry> map = cached;
+        if (map == null) {
+            return false;
+        }
+        String digest = classActor.classfileDigest();
+        if (digest == null) {
+            return false;
+        }
+        return isUnchanged(map.get(key(classActor)), digest, new Digests() {
+            public String digest(String key) {
+                return currentDigest(classActor.classLoader, key);
+            }
+        });
+    }
+
+    /**
+     * Determines if a cache entry is still valid for a class with a given digest.
+     *
+     * @param entry the entry for the class or {@code null}
+     * @param digest the current digest of the class
+     * @param current gives the current digests of the dependencies, which are only looked up until one has changed
+     */
+    static boolean isUnchanged(Entry entry, String digest, Digests current) {
+        if (entry == null || !digest.equals(entry.digest)) {
+            return false;
+        }
+        for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+            if (!dependency.getValue().equals(current.digest(dependency.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that a class passed verification with a given verifier.
+     */
+    public static void recordVerified(ClassVerifier verifier) {
+        if (cached == null || verifier.dependencies == null) {
+            return;
+        }
+        final ClassActor classActor = verifier.classActor;
+        String digest = classActor.classfileDigest();
+        if (digest == null) {
+            return;
+        }
+        final ClassActor[] resolved;
+        synchronized (verifier.dependencies) {
+            resolved = verifier.dependencies.toArray(new ClassActor[verifier.dependencies.size()]);
+        }
+        final TreeMap<String, String> dependencies = new TreeMap<String, String>();
+        if (!addDependency(classActor, classActor, dependencies)) {
+            return;
+        }
+        for (ClassActor dependency : resolved) {
+            if (!addDependency(dependency, classActor, dependencies)) {
+                return;
+            }
+        }
+        String key = key(classActor);
+        synchronized (recorded) {
+            recorded.put(key, new Entry(digest, dependencies));
+        }
+    }
+
+    /**
+     * Adds a class and its supertypes to the dependencies of a verified class.
+     *
+     * @return {@code false} if a class has no digest to record, in which case the verified class cannot be cached
+     */
+    private static boolean addDependency(ClassActor dependency, ClassActor verified, TreeMap<String, String> dependencies) {
+        final ClassActor classActor = dependency.isArrayClass() ? dependency.elementClassActor() : dependency;
+        if (classActor.isPrimitiveClassActor()) {
+            return true;
+        }
+        if (classActor != verified) {
+            final String key = key(classActor);
+            if (dependencies.containsKey(key)) {
+                return true;
+            }
+            final String digest = digestOf(classActor);
+            if (digest == null) {
+                return false;
+            }
+            dependencies.put(key, digest);
+        }
+        if (classActor.superClassActor != null && !addDependency(classActor.superClassActor, verified, dependencies)) {
+            return false;
+        }
+        for (InterfaceActor interfaceActor : classActor.localInterfaceActors()) {
+            if (!addDependency(interfaceActor, verified, dependencies)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the cache file. A verified class is recorded on a line with its digest and key, followed by one line per
+     * dependency, which is indented by a space.
+     *
+     * @return the entries of the file, which is empty if the file does not exist, cannot be read or was written by
+     *         another boot image
+     */
+    static HashMap<String, Entry> read(File file) {
+        HashMap<String, Entry> map = new HashMap<String, Entry>();
+        if (!file.exists()) {
+            return map;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line = reader.readLine();
+                if (!(HEADER + ' ' + IMAGE_ID).equals(line)) {
+                    if (Verifier.TraceVerifierLevel >= Verifier.TRACE_CLASS) {
+                        Log.println("[Ignoring verification cache written by another VM image: " + file + "]");
+                    }
+                    return map;
+                }
+                Entry entry = null;
+                while ((line = reader.readLine()) != null) {
+                    final boolean isDependency = line.startsWith(" ");
+                    final String text = isDependency ? line.substring(1) : line;
+                    final int space = text.indexOf(' ');
+                    if (space <= 0) {
+                        continue;
+                    }
+                    if (!isDependency) {
+                        entry = new Entry(text.substring(0, space), new TreeMap<String, String>());
+                        map.put(text.substring(space + 1), entry);
+                    } else if (entry != null) {
+                        entry.dependencies.put(text.substring(space + 1), text.substring(0, space));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.println("Error reading verification cache " + file + ": " + e);
+            map.clear();
+        }
+        return map;
+    }
+
+    /**
+     * Writes the union of the entries read at startup and those recorded during this run. An entry recorded in this
+     * run replaces a stale one for the same class.
+     */
+    private static void write(File file) {
+        TreeMap<String, Entry> entries = new TreeMap<String, Entry>(cached);
+        synchronized (recorded) {
+            entries.putAll(recorded);
+        }
+        write(file, entries);
+    }
+
+    /**
+     * Writes the cache file in the format described at {@link #read}, replacing it atomically.
+     */
+    static void write(File file, SortedMap<String, Entry> entries) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+            try {
+                out.println(HEADER + ' ' + IMAGE_ID);
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    out.println(e.getValue().digest + ' ' + e.getKey());
+                    for (Map.Entry<String, String> dependency : e.getValue().dependencies.entrySet()) {
+                        out.println(' ' + dependency.getValue() + ' ' + dependency.getKey());
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    Log.println("Could not write verification cache " + file);
+                }
+            }
+        } catch (IOException e) {
+            Log.println("Error writing verification cache " + file + ": " + e);
+        }
+    }
+}
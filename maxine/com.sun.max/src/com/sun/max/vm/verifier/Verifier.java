@@ -79,6 +79,25 @@ public class Verifier implements VerificationRegistry {
         VMOptions.addFieldOption("-XX:", "BytecodeVerificationRemote", Verifier.class,  "Enable verification of remote classes.");
     }
 
+    /**
+     * Determines if the verification of a class whose class file has stack maps is deferred from its initialization to
+     * the first compilation of each of its methods.
+     */
+    public static boolean LazyVerification;
+    static {
+        VMOptions.addFieldOption("-XX:", "LazyVerification", Verifier.class,
+            "Verify the methods of classes with stack maps when they are first compiled instead of when the class is initialized.");
+    }
+
+    /**
+     * The number of helper threads used to verify the methods of a class with stack maps in parallel.
+     */
+    public static int VerificationThreads;
+    static {
+        VMOptions.addFieldOption("-XX:", "VerificationThreads", Verifier.class,
+            "Number of helper threads used to verify the methods of a class in parallel (0 = verify serially).");
+    }
+
     static {
         // -Xverify option
         VMOptions.register(new VMOption("-Xverify",
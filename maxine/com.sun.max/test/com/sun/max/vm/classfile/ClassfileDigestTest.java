@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.classfile;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.ide.*;
+
+/**
+ * Tests for {@link ClassfileDigest}.
+ */
+public class ClassfileDigestTest extends MaxTestCase {
+
+    public ClassfileDigestTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ClassfileDigestTest.class);
+    }
+
+    private static final String HEADER = "# test digests v1";
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("digests", ".txt");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static String compute(String s) throws UnsupportedEncodingException {
+        final byte[] bytes = s.getBytes("US-ASCII");
+        return ClassfileDigest.compute(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The SHA-256 test vectors of FIPS 180-2.
+     */
+    public void test_knownDigests() throws UnsupportedEncodingException {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", compute(""));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", compute("abc"));
+        assertEquals("248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1",
+            compute("abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq"));
+    }
+
+    /**
+     * Only the given range of the array is digested.
+     */
+    public void test_range() {
+        final byte[] classfile = new byte[1000];
+        new Random(1).nextBytes(classfile);
+        final byte[] padded = new byte[classfile.length + 30];
+        Arrays.fill(padded, (byte) 0xCA);
+        System.arraycopy(classfile, 0, padded, 10, classfile.length);
+        final String digest = ClassfileDigest.compute(classfile, 0, classfile.length);
+        assertEquals(digest, ClassfileDigest.compute(padded, 10, classfile.length));
+        assertFalse(digest.equals(ClassfileDigest.compute(padded, 9, classfile.length)));
+        assertFalse(digest.equals(ClassfileDigest.compute(padded, 10, classfile.length - 1)));
+    }
+
+    /**
+     * Digests are lower case hexadecimal, do not depend on earlier digests and differ for a single changed bit.
+     */
+    public void test_independentDigests() {
+        final byte[] classfile = new byte[500];
+        new Random(2).nextBytes(classfile);
+        final String digest = ClassfileDigest.compute(classfile, 0, classfile.length);
+        assertTrue(digest.matches("[0-9a-f]{64}"));
+        classfile[250] ^= 1;
+        final String changed = ClassfileDigest.compute(classfile, 0, classfile.length);
+        assertFalse(digest.equals(changed));
+        classfile[250] ^= 1;
+        assertEquals(digest, ClassfileDigest.compute(classfile, 0, classfile.length));
+    }
+
+    /**
+     * Tables round trip, including keys that contain spaces, and replace an existing file.
+     */
+    public void test_table() throws UnsupportedEncodingException {
+        final TreeMap<String, String> entries = new TreeMap<String, String>();
+        entries.put("boot java.lang.Object", compute("Object"));
+        entries.put("app.Loader app.Main", compute("Main"));
+        entries.put("k", compute(""));
+        ClassfileDigest.writeTable(file, HEADER, "test table", entries);
+        assertEquals(entries, ClassfileDigest.readTable(file, HEADER, "test table"));
+
+        entries.remove("k");
+        entries.put("app.Loader app.Main", compute("Main2"));
+        ClassfileDigest.writeTable(file, HEADER, "test table", entries);
+        assertEquals(entries, ClassfileDigest.readTable(file, HEADER, "test table"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    public void test_missingTable() {
+        assertTrue(ClassfileDigest.readTable(file, HEADER, "test table").isEmpty());
+    }
+}
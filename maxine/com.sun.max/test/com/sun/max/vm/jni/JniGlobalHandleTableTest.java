@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.jni;
+
+import static com.sun.max.vm.jni.JniGlobalHandleTable.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import com.sun.max.ide.*;
+import com.sun.max.vm.jni.JniHandles.Tag;
+
+/**
+ * Tests the allocation, release and reuse of handles in a {@link JniGlobalHandleTable}.
+ * These run hosted, where the table uses a single local cache and no atomic updates,
+ * but the same cache, batch and segment logic as the target VM.
+ */
+public class JniGlobalHandleTableTest extends MaxTestCase {
+
+    public JniGlobalHandleTableTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(JniGlobalHandleTableTest.class);
+    }
+
+    private JniGlobalHandleTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        table = new JniGlobalHandleTable(0, Tag.GLOBAL);
+    }
+
+    private static int index(JniHandle handle) {
+        return JniHandles.jniHandleToIndex(handle);
+    }
+
+    private JniHandle[] allocate(int n) {
+        final JniHandle[] handles = new JniHandle[n];
+        for (int i = 0; i < n; i++) {
+            handles[i] = table.allocate(new Object());
+        }
+        return handles;
+    }
+
+    /**
+     * Releases handles and returns their indexes.
+     */
+    private Set<Integer> release(JniHandle[] handles, int from, int to) {
+        final Set<Integer> indexes = new HashSet<Integer>();
+        for (int i = from; i < to; i++) {
+            table.release(handles[i]);
+            indexes.add(index(handles[i]));
+        }
+        return indexes;
+    }
+
+    /**
+     * Allocates {@code n} handles and returns their (distinct) indexes.
+     */
+    private Set<Integer> reallocate(int n) {
+        final Set<Integer> indexes = new HashSet<Integer>();
+        for (int i = 0; i < n; i++) {
+            assertTrue(indexes.add(index(table.allocate(new Object()))));
+        }
+        return indexes;
+    }
+
+    /**
+     * Gets the local cache the table uses while hosted.
+     */
+    private LocalCache cache() throws Exception {
+        final Field field = JniGlobalHandleTable.class.getDeclaredField("hostedCache");
+        field.setAccessible(true);
+        return (LocalCache) field.get(table);
+    }
+
+    /**
+     * Asserts that the next allocation takes a never used index.
+     */
+    private void assertFresh() {
+        final int fresh = table.capacityUsed();
+        assertEquals(fresh, index(table.allocate(new Object())));
+        assertEquals(fresh + 1, table.capacityUsed());
+    }
+
+    public void test_allocate() {
+        final Object object = new Object();
+        final JniHandle handle = table.allocate(object);
+        assertEquals(Tag.GLOBAL, JniHandles.tag(handle));
+        assertEquals(0, index(handle));
+        assertSame(object, table.get(index(handle)));
+        assertEquals(1, table.capacityUsed());
+        assertEquals(1, table.segmentCount());
+    }
+
+    public void test_releaseAndReuse() {
+        final JniHandle[] handles = allocate(3);
+        table.release(handles[1]);
+        assertNull(table.get(index(handles[1])));
+        final Object object = new Object();
+        final JniHandle handle = table.allocate(object);
+        assertEquals(index(handles[1]), index(handle));
+        assertSame(object, table.get(index(handle)));
+        assertEquals(3, table.capacityUsed());
+    }
+
+    public void test_doubleRelease() throws Exception {
+        final JniHandle[] handles = allocate(2);
+        table.release(handles[0]);
+        table.release(handles[0]);
+        assertEquals(1, cache().count);
+        assertEquals(index(handles[0]), index(table.allocate(new Object())));
+        assertFresh();
+
+        // Releasing again after the index has been reused frees the new handle
+        table.release(handles[0]);
+        table.release(handles[0]);
+        assertEquals(1, cache().count);
+    }
+
+    public void test_invalidHandle() {
+        allocate(2);
+        try {
+            table.release(JniHandles.indexToJniHandle(2, Tag.GLOBAL));
+            fail();
+        } catch (IllegalArgumentException illegalArgumentException) {
+        }
+    }
+
+    /**
+     * Fills the local cache and overflows it by one, which publishes a batch to the global stack,
+     * and then allocates every released index again before taking a fresh one.
+     */
+    public void test_localCacheOverflow() throws Exception {
+        final JniHandle[] handles = allocate(2 * LOCAL_CACHE_SIZE);
+        final Set<Integer> released = release(handles, 0, LOCAL_CACHE_SIZE);
+        assertEquals(LOCAL_CACHE_SIZE, cache().count);
+
+        released.addAll(release(handles, LOCAL_CACHE_SIZE, LOCAL_CACHE_SIZE + 1));
+        assertEquals(LOCAL_CACHE_SIZE - BATCH_SIZE + 1, cache().count);
+
+        final Set<Integer> reused = reallocate(LOCAL_CACHE_SIZE - BATCH_SIZE + 1);
+        assertEquals(0, cache().count);
+
+        // The cache is empty so the next allocation takes the published batch
+        reused.addAll(reallocate(1));
+        assertEquals(BATCH_SIZE - 1, cache().count);
+        reused.addAll(reallocate(BATCH_SIZE - 1));
+
+        assertEquals(released, reused);
+        assertEquals(2 * LOCAL_CACHE_SIZE, table.capacityUsed());
+        assertFresh();
+    }
+
+    /**
+     * Releases enough handles to publish several batches and allocates them all again.
+     */
+    public void test_manyBatches() {
+        final int n = 5 * LOCAL_CACHE_SIZE + 3;
+        final JniHandle[] handles = allocate(n);
+        final Set<Integer> released = release(handles, 0, n);
+        assertEquals(released, reallocate(n));
+        assertFresh();
+    }
+
+    /**
+     * Allocates past the end of the first segment and past the initial length of the directory, and checks that
+     * the handles in the existing segments survive the directory being expanded.
+     */
+    public void test_growth() {
+        final int n = (INITIAL_DIRECTORY_LENGTH + 1) * SEGMENT_SIZE + 1;
+        final Object[] objects = new Object[n];
+        final JniHandle[] handles = new JniHandle[n];
+        for (int i = 0; i < n; i++) {
+            objects[i] = new Object();
+            handles[i] = table.allocate(objects[i]);
+            assertEquals(i, index(handles[i]));
+            if (i == SEGMENT_SIZE - 1) {
+                assertEquals(1, table.segmentCount());
+            } else if (i == SEGMENT_SIZE) {
+                assertEquals(2, table.segmentCount());
+            } else if (i == INITIAL_DIRECTORY_LENGTH * SEGMENT_SIZE) {
+                assertEquals(INITIAL_DIRECTORY_LENGTH + 1, table.segmentCount());
+            }
+        }
+        assertEquals(INITIAL_DIRECTORY_LENGTH + 2, table.segmentCount());
+        for (int i = 0; i < n; i++) {
+            assertSame(objects[i], table.get(i));
+        }
+
+        // Released indexes in any segment are reused before the table grows further
+        final Set<Integer> released = new HashSet<Integer>();
+        for (int i = 0; i < n; i += SEGMENT_SIZE / 2) {
+            table.release(handles[i]);
+            released.add(i);
+        }
+        assertEquals(released, reallocate(released.size()));
+        assertEquals(n, table.capacityUsed());
+        assertEquals(INITIAL_DIRECTORY_LENGTH + 2, table.segmentCount());
+    }
+
+    /**
+     * Checks that {@link JniGlobalHandleTable#releaseLocalCache(LocalCache)} returns every cached index,
+     * whether the cache holds less than, exactly, or more than a batch.
+     */
+    public void test_releaseLocalCache() throws Exception {
+        final int[] counts = {1, BATCH_SIZE - 1, BATCH_SIZE, BATCH_SIZE + 1, LOCAL_CACHE_SIZE - 1, LOCAL_CACHE_SIZE};
+        for (int count : counts) {
+            table = new JniGlobalHandleTable(0, Tag.GLOBAL);
+            final JniHandle[] handles = allocate(count + 1);
+            final Set<Integer> released = release(handles, 0, count);
+            final LocalCache cache = cache();
+            assertEquals(count, cache.count);
+
+            table.releaseLocalCache(cache);
+            assertEquals(0, cache.count);
+            assertEquals("count " + count, released, reallocate(count));
+            assertFresh();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.sun.max.vm.verifier;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.ide.*;
+import com.sun.max.vm.verifier.VerificationCache.Entry;
+
+/**
+ * Tests for the file format of the {@link VerificationCache} and for the validity check of its entries.
+ */
+public class VerificationCacheTest extends MaxTestCase {
+
+    public VerificationCacheTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(VerificationCacheTest.class);
+    }
+
+    private static final String HEADER = "# Maxine verification cache v2";
+
+    private static final String CLASS = "app.Loader app.Main";
+    private static final String SUPER = "app.Loader app.Base";
+    private static final String INTERFACE = "app.Loader app.Service";
+    private static final String RESOLVED = "boot java.lang.String";
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("verification", ".cache");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static TreeMap<String, String> map(String... keysAndValues) {
+        final TreeMap<String, String> map = new TreeMap<String, String>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static Entry mainEntry() {
+        return new Entry("d0", map(SUPER, "d1", INTERFACE, "d2", RESOLVED, "image"));
+    }
+
+    private static TreeMap<String, Entry> entries() {
+        final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+        entries.put(CLASS, mainEntry());
+        entries.put(SUPER, new Entry("d1", map(INTERFACE, "d2")));
+        entries.put("boot app.NoDependencies", new Entry("d3", map()));
+        return entries;
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static void writeLines(File file, List<String> lines) throws IOException {
+        final PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            for (String line : lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public void test_roundTrip() {
+        final TreeMap<String, Entry> written = entries();
+        VerificationCache.write(file, written);
+        final HashMap<String, Entry> read = VerificationCache.read(file);
+        assertEquals(written.keySet(), read.keySet());
+        for (String key : written.keySet()) {
+            assertEquals(written.get(key).digest, read.get(key).digest);
+            assertEquals(written.get(key).dependencies, read.get(key).dependencies);
+        }
+    }
+
+    public void test_format() throws IOException {
+        final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+        entries.put(CLASS, mainEntry());
+        VerificationCache.write(file, entries);
+        final List<String> lines = lines(file);
+        assertTrue(lines.get(0).startsWith(HEADER + ' '));
+        assertEquals(Arrays.asList("d0 " + CLASS, " d1 " + SUPER, " d2 " + INTERFACE, " image " + RESOLVED), lines.subList(1, lines.size()));
+    }
+
+    public void test_missingFile() {
+        assertTrue(VerificationCache.read(file).isEmpty());
+    }
+
+    /**
+     * A file written by another boot image, or in another format, is ignored as a whole.
+     */
+    public void test_otherImage() throws IOException {
+        VerificationCache.write(file, entries());
+        final List<String> lines = lines(file);
+        final String header = lines.get(0);
+        assertFalse(VerificationCache.read(file).isEmpty());
+
+        lines.set(0, HEADER + ' ' + UUID.randomUUID());
+        writeLines(file, lines);
+        assertTrue(VerificationCache.read(file).isEmpty());
+
+        lines.set(0, "# Maxine verification cache v1");
+        writeLines(file, lines);
+        assertTrue(VerificationCache.read(file).isEmpty());
+
+        lines.set(0, header);
+        writeLines(file, lines);
+        assertEquals(entries().keySet(), VerificationCache.read(file).keySet());
+    }
+
+    /**
+     * Lines without a digest and dependencies that do not follow a class are skipped.
+     */
+    public void test_malformedLines() throws IOException {
+        VerificationCache.write(file, new TreeMap<String, Entry>());
+        final List<String> lines = lines(file);
+        lines.add(" d9 " + SUPER);
+        lines.add("nodigest");
+        lines.add("d0 " + CLASS);
+        lines.add(" d1 " + SUPER);
+        lines.add(" ");
+        writeLines(file, lines);
+        final HashMap<String, Entry> read = VerificationCache.read(file);
+        assertEquals(Collections.singleton(CLASS), read.keySet());
+        assertEquals(map(SUPER, "d1"), read.get(CLASS).dependencies);
+    }
+
+    /**
+     * Gives the digests of a map and counts the lookups.
+     */
+    private static final class Digests implements VerificationCache.Digests {
+        final Map<String, String> digests;
+        int lookups;
+
+        Digests(Map<String, String> digests) {
+            this.digests = digests;
+        }
+
+        public String digest(String key) {
+            lookups++;
+            return digests.get(key);
+        }
+    }
+
+    public void test_unchanged() {
+        final Digests current = new Digests(map(SUPER, "d1", INTERFACE, "d2", RESOLVED, "image"));
+        assertTrue(VerificationCache.isUnchanged(mainEntry(), "d0", current));
+        assertEquals(3, current.lookups);
+        assertTrue(VerificationCache.isUnchanged(new Entry("d3", map()), "d3", current));
+    }
+
+    public void test_changedClass() {
+        final Digests current = new Digests(map(SUPER, "d1", INTERFACE, "d2", RESOLVED, "image"));
+        assertFalse(VerificationCache.isUnchanged(mainEntry(), "d0'", current));
+        assertFalse(VerificationCache.isUnchanged(null, "d0", current));
+        assertEquals(0, current.lookups);
+    }
+
+    /**
+     * A changed supertype forces verification, and the remaining dependencies (which would have to be loaded) are not
+     * looked up.
+     */
+    public void test_changedSupertype() {
+        final Digests current = new Digests(map(SUPER, "d1'", INTERFACE, "d2", RESOLVED, "image"));
+        assertFalse(VerificationCache.isUnchanged(mainEntry(), "d0", current));
+        // the dependencies are checked in key order: SUPER, INTERFACE, RESOLVED
+        assertEquals(1, current.lookups);
+    }
+
+    public void test_changedInterface() {
+        final Digests current = new Digests(map(SUPER, "d1", INTERFACE, "d2'", RESOLVED, "image"));
+        assertFalse(VerificationCache.isUnchanged(mainEntry(), "d0", current));
+        assertEquals(2, current.lookups);
+    }
+
+    /**
+     * A dependency that was in the boot image when the entry was recorded but is now loaded from a class file, or that
+     * cannot be resolved any more, is a change.
+     */
+    public void test_changedOrMissingDependency() {
+        assertFalse(VerificationCache.isUnchanged(mainEntry(), "d0", new Digests(map(SUPER, "d1", INTERFACE, "d2", RESOLVED, "d4"))));
+        assertFalse(VerificationCache.isUnchanged(mainEntry(), "d0", new Digests(map(SUPER, "d1", INTERFACE, "d2"))));
+    }
+}
@@ -174,7 +174,7 @@ def gate(args):
 
     testme(['-image-configs=java',
             '-maxvm-configs=std,forceC1X,forceT1X',
-            '-jtt-image-configs=jtt-c1xc1x,jtt-t1xc1x,jtt-c1xt1x,jtt-t1xt1x',
+            '-jtt-image-configs=jtt-c1xc1x,jtt-t1xc1x,jtt-c1xt1x,jtt-t1xt1x,jtt-t1xt1x-tos',
             '-tests=c1x,junit:uk.ac+tests.unsafe+tests.vm+max.l+max.c+max.u+max.i+max.M+max.p,jsr292,output,javatester'] + testArgs)
     testme(['-image-configs=ss', '-tests=output:Hello+Catch+GC+WeakRef+Final', '-fail-fast'] + testArgs)
 
@@ -418,6 +418,24 @@ def inspect(args):
         mx.run(cmd, cwd=cwd, env=ldenv)
 
 
+def heapanalyze(args):
+    """analyze the heap of a VM core dump
+
+    Walk the heap of a Maxine VM core dump in parallel and write a report with
+    a class histogram, the objects with the largest retained sizes, duplicate
+    strings and empty collections.
+
+    The dump file is given with the -location option. The mode and target
+    options default to analyzing a dump file.
+
+    Use "mx heapanalyze -help" to see what other options this command accepts."""
+
+    cmd = [mx.get_jdk().java]
+    cmd += mx.get_jdk().processArgs(['-cp', suite_classpath(), 'com.sun.max.tele.heap.analysis.HeapDumpAnalyzer',
+                                     '-vmdir=' + _vmdir] + args)
+    mx.run(cmd, env=ldenv)
+
+
 def inspectoragent(args):
     """launch the Inspector agent
 
@@ -1039,6 +1057,7 @@ def mx_init(suite):
         'gate': [gate, '[-nocheck] [args...]'],
         'gitinit': [gitinit, ''],
         'hcfdis': [hcfdis, '[options] files...'],
+        'heapanalyze': [heapanalyze, '[options]'],
         'helloworld': [helloworld, '[VM options]'],
         'inspecthelloworld': [inspecthelloworld, '[VM options]'],
         'image': [image, '[options] classes|packages...'],
@@ -129,7 +129,8 @@ suite = {
         },
 
         "com.oracle.max.elf": {
-            "sourceDirs": ["src"],
+            "sourceDirs": ["src", "test"],
+            "dependencies": ["mx:JUNIT"],
             "checkstyle": "com.sun.max",
             "javaCompliance": "1.7+",
         },
@@ -292,7 +293,7 @@ suite = {
         },
 
         "com.oracle.max.vma.tools": {
-            "sourceDirs": ["src"],
+            "sourceDirs": ["src", "test"],
             "dependencies": ["com.oracle.max.vm.ext.vma"],
             "checkstyle": "com.sun.max",
             "javaCompliance": "1.7+",